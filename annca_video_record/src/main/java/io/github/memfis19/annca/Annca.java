@@ -52,7 +52,13 @@ public class Annca {
         Intent cameraIntent;
 
         //todo CHỈ DÙNG CAMERA1, CAMERA2 BỊ LỖI - NOTE ONLY
-        if (CameraHelper.hasCamera2(anncaConfiguration.getActivity())) {
+        if (anncaConfiguration.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_VIDEO_HIGH_SPEED
+                && CameraHelper.hasCamera2(anncaConfiguration.getActivity())) {
+            // high speed recording is available only in Camera2
+            if (anncaConfiguration.getFragment() != null)
+                cameraIntent = new Intent(anncaConfiguration.getFragment().getContext(), Camera2Activity.class);
+            else cameraIntent = new Intent(anncaConfiguration.getActivity(), Camera2Activity.class);
+        } else if (CameraHelper.hasCamera2(anncaConfiguration.getActivity())) {
             if (anncaConfiguration.getFragment() != null)
                 cameraIntent = new Intent(anncaConfiguration.getFragment().getContext(), Camera1Activity.class);//Camera2Activity
             else
@@ -85,6 +91,21 @@ public class Annca {
 
         cameraIntent.putExtra(AnncaConfiguration.Arguments.FLASH_MODE, anncaConfiguration.getFlashMode());
 
+        if (anncaConfiguration.getZeroShutterLagBufferSize() > 0)
+            cameraIntent.putExtra(AnncaConfiguration.Arguments.ZERO_SHUTTER_LAG_BUFFER_SIZE, anncaConfiguration.getZeroShutterLagBufferSize());
+
+        cameraIntent.putExtra(AnncaConfiguration.Arguments.VIDEO_ENCODER, anncaConfiguration.getVideoEncoder());
+
+        if (anncaConfiguration.getPreRollMillis() > 0)
+            cameraIntent.putExtra(AnncaConfiguration.Arguments.PRE_ROLL_MILLIS, anncaConfiguration.getPreRollMillis());
+
+        if (anncaConfiguration.getVideoSegmentSize() > 0)
+            cameraIntent.putExtra(AnncaConfiguration.Arguments.VIDEO_SEGMENT_SIZE, anncaConfiguration.getVideoSegmentSize());
+
+        cameraIntent.putExtra(AnncaConfiguration.Arguments.OUTPUT_SYNC_POLICY, anncaConfiguration.getOutputSyncPolicy());
+
+        cameraIntent.putExtra(AnncaConfiguration.Arguments.IMAGE_WRITE_MODE, anncaConfiguration.getImageWriteMode());
+
         if (anncaConfiguration.getFragment() != null) {
 
             anncaConfiguration.getFragment().startActivityForResult(cameraIntent, anncaConfiguration.getRequestCode());
@@ -0,0 +1,128 @@
+package io.github.memfis19.annca.internal.analysis;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+
+/**
+ * Runs one analyzer on its own thread with the queue of the chosen backpressure.
+ */
+final class AnalyzerWorker implements Runnable {
+
+    private static final String TAG = "AnalyzerWorker";
+
+    static final int BLOCKING_QUEUE_CAPACITY = 3;
+
+    private static final long STOP_TIMEOUT_MS = 1000;
+
+    private final FrameAnalyzer analyzer;
+    @FrameAnalyzer.Backpressure
+    private final int backpressure;
+    private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+    private final Thread thread;
+
+    private boolean running = true;
+    private long analyzedFrames = 0;
+    private long droppedFrames = 0;
+
+    AnalyzerWorker(FrameAnalyzer analyzer, @FrameAnalyzer.Backpressure int backpressure) {
+        this.analyzer = analyzer;
+        this.backpressure = backpressure;
+        this.thread = new Thread(this, "AnncaFrameAnalyzer");
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    FrameAnalyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    /***
+     * @return frames held by the worker at most, queued ones and the one being analyzed
+     */
+    int getMaxFramesInFlight() {
+        return (backpressure == FrameAnalyzer.BACKPRESSURE_KEEP_LATEST ? 1 : BLOCKING_QUEUE_CAPACITY) + 1;
+    }
+
+    /***
+     * Takes over the reference of the frame, never waits. With the blocking backpressure the queued frames keep
+     * the buffers of the source, so the source runs out of them and drops the frames before the queue is full,
+     * a frame which still doesn't fit is dropped.
+     */
+    synchronized void offer(Frame frame) {
+        if (backpressure == FrameAnalyzer.BACKPRESSURE_KEEP_LATEST) {
+            Frame dropped = queue.pollFirst();
+            if (dropped != null) {
+                dropped.release();
+                droppedFrames++;
+            }
+        }
+
+        if (!running || queue.size() >= BLOCKING_QUEUE_CAPACITY) {
+            frame.release();
+            droppedFrames++;
+            return;
+        }
+        queue.addLast(frame);
+        notifyAll();
+    }
+
+    void stop() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        if (Thread.currentThread() == thread) return;
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    synchronized long getAnalyzedFrames() {
+        return analyzedFrames;
+    }
+
+    synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Frame frame;
+            synchronized (this) {
+                while (running && queue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException error) {
+                        running = false;
+                    }
+                }
+                if (!running) break;
+
+                frame = queue.pollFirst();
+            }
+
+            try {
+                analyzer.analyze(frame);
+            } catch (RuntimeException error) {
+                Log.e(TAG, "Frame analyzer failed: " + error.getMessage());
+            } finally {
+                frame.release();
+            }
+
+            synchronized (this) {
+                analyzedFrames++;
+            }
+        }
+
+        synchronized (this) {
+            Frame frame;
+            while ((frame = queue.pollFirst()) != null) frame.release();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package io.github.memfis19.annca.internal.analysis;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Preview frame shared by all the analyzers. The buffer goes back to its source when the last reference is released.
+ * Planes keep the layout of the source: Y and the interleaved VU plane of NV21 or Y, U and V planes of YV12
+ * from Camera1, three YUV_420_888 planes from Camera2.
+ * Camera2 frames wrap the planes of the image without a copy, the image is closed on the last release.
+ */
+public final class Frame {
+
+    static final int MAX_PLANES = 3;
+
+    interface Recycler {
+
+        void recycle(Frame frame);
+    }
+
+    private final ByteBuffer data;
+    private final Recycler recycler;
+    private final AtomicInteger references = new AtomicInteger(0);
+
+    private final ByteBuffer[] planeBuffers = new ByteBuffer[MAX_PLANES];
+    private final int[] planeOffsets = new int[MAX_PLANES];
+    private final int[] planeSizes = new int[MAX_PLANES];
+    private final int[] rowStrides = new int[MAX_PLANES];
+    private final int[] pixelStrides = new int[MAX_PLANES];
+    private int planeCount = 0;
+
+    private int width;
+    private int height;
+    private int format;
+    private long timestamp;
+    private int rotation;
+
+    /***
+     * @param data - buffer of the planes added by offset, null if they come with their own buffers
+     */
+    Frame(ByteBuffer data, Recycler recycler) {
+        this.data = data;
+        this.recycler = recycler;
+    }
+
+    void set(int width, int height, int format, long timestamp, int rotation) {
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.timestamp = timestamp;
+        this.rotation = rotation;
+        this.planeCount = 0;
+        Arrays.fill(planeBuffers, null);
+    }
+
+    void addPlane(int offset, int size, int rowStride, int pixelStride) {
+        addPlane(data, offset, size, rowStride, pixelStride);
+    }
+
+    void addPlane(ByteBuffer buffer, int offset, int size, int rowStride, int pixelStride) {
+        planeBuffers[planeCount] = buffer;
+        planeOffsets[planeCount] = offset;
+        planeSizes[planeCount] = size;
+        rowStrides[planeCount] = rowStride;
+        pixelStrides[planeCount] = pixelStride;
+        planeCount++;
+    }
+
+    /***
+     * Called by the source before the frame is dispatched, the source owns the first reference.
+     */
+    void open() {
+        references.set(1);
+    }
+
+    ByteBuffer getData() {
+        return data;
+    }
+
+    /***
+     * Keeps the frame after {@link FrameAnalyzer#analyze(Frame)} returns.
+     *
+     * @return this frame
+     */
+    public Frame acquire() {
+        if (references.getAndIncrement() <= 0) {
+            references.decrementAndGet();
+            throw new IllegalStateException("Frame is already released.");
+        }
+        return this;
+    }
+
+    public void release() {
+        int left = references.decrementAndGet();
+        if (left == 0) recycler.recycle(this);
+        else if (left < 0) references.incrementAndGet();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /***
+     * @return preview format of Camera1, NV21 unless it's changed, or ImageFormat.YUV_420_888
+     */
+    public int getFormat() {
+        return format;
+    }
+
+    /***
+     * @return timestamp of the frame in nanoseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /***
+     * @return clockwise rotation in degrees which makes the frame upright
+     */
+    public int getRotation() {
+        return rotation;
+    }
+
+    public int getPlaneCount() {
+        return planeCount;
+    }
+
+    /***
+     * @return read only view of the plane
+     */
+    public ByteBuffer getPlane(int index) {
+        checkPlane(index);
+        ByteBuffer plane = planeBuffers[index].duplicate();
+        plane.limit(planeOffsets[index] + planeSizes[index]).position(planeOffsets[index]);
+        return plane.slice().asReadOnlyBuffer();
+    }
+
+    public int getRowStride(int index) {
+        checkPlane(index);
+        return rowStrides[index];
+    }
+
+    public int getPixelStride(int index) {
+        checkPlane(index);
+        return pixelStrides[index];
+    }
+
+    private void checkPlane(int index) {
+        if (index < 0 || index >= planeCount) throw new IndexOutOfBoundsException("No plane " + index);
+    }
+}
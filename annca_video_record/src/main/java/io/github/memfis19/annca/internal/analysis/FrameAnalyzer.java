@@ -0,0 +1,34 @@
+package io.github.memfis19.annca.internal.analysis;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Receives the preview frames on its own thread, a slow analyzer affects neither the preview nor the other analyzers.
+ */
+public interface FrameAnalyzer {
+
+    /**
+     * Only the newest frame waits for the analyzer, older frames are dropped.
+     */
+    int BACKPRESSURE_KEEP_LATEST = 0;
+
+    /**
+     * Frames wait in a short queue holding the buffers of the frame source, when the source runs out of them
+     * the camera drops the frames of the analysis stream. Neither the camera nor the other analyzers wait.
+     */
+    int BACKPRESSURE_BLOCK_PRODUCER = 1;
+
+    @IntDef({BACKPRESSURE_KEEP_LATEST, BACKPRESSURE_BLOCK_PRODUCER})
+    @Retention(RetentionPolicy.SOURCE)
+    @interface Backpressure {
+    }
+
+    /***
+     * The frame is valid only during this call, call {@link Frame#acquire()} to keep it longer
+     * and {@link Frame#release()} when it's not needed anymore.
+     */
+    void analyze(Frame frame);
+}
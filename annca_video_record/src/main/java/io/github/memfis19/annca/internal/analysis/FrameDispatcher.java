@@ -0,0 +1,93 @@
+package io.github.memfis19.annca.internal.analysis;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Fans the frames of a source out to the registered analyzers. Every analyzer gets its own reference
+ * of the frame, so the buffer is shared and recycled when the slowest analyzer is done with it.
+ * Frames are dispatched on a separate thread, the camera callbacks are never blocked by the analyzers.
+ */
+public final class FrameDispatcher {
+
+    private final CopyOnWriteArrayList<AnalyzerWorker> workers = new CopyOnWriteArrayList<>();
+
+    private HandlerThread dispatchThread;
+    private Handler dispatchHandler;
+
+    public synchronized void addAnalyzer(FrameAnalyzer analyzer, @FrameAnalyzer.Backpressure int backpressure) {
+        if (analyzer == null || findWorker(analyzer) != null) return;
+
+        AnalyzerWorker worker = new AnalyzerWorker(analyzer, backpressure);
+        worker.start();
+        workers.add(worker);
+    }
+
+    public synchronized void removeAnalyzer(FrameAnalyzer analyzer) {
+        AnalyzerWorker worker = findWorker(analyzer);
+        if (worker == null) return;
+
+        workers.remove(worker);
+        worker.stop();
+    }
+
+    public boolean hasAnalyzers() {
+        return !workers.isEmpty();
+    }
+
+    /***
+     * @return number of frames which can be held by the analyzers at the same time
+     */
+    public int getMaxFramesInFlight() {
+        int frames = 0;
+        for (AnalyzerWorker worker : workers) frames += worker.getMaxFramesInFlight();
+        return frames;
+    }
+
+    public long getDroppedFrames() {
+        long frames = 0;
+        for (AnalyzerWorker worker : workers) frames += worker.getDroppedFrames();
+        return frames;
+    }
+
+    /***
+     * @return handler of the dispatch thread, the frame sources deliver the frames on it
+     */
+    public synchronized Handler getHandler() {
+        if (dispatchHandler == null) {
+            dispatchThread = new HandlerThread("AnncaFrameDispatcher", Process.THREAD_PRIORITY_BACKGROUND);
+            dispatchThread.start();
+            dispatchHandler = new Handler(dispatchThread.getLooper());
+        }
+        return dispatchHandler;
+    }
+
+    /***
+     * Hands the frame to all the analyzers and releases the reference of the source.
+     */
+    void dispatch(Frame frame) {
+        for (AnalyzerWorker worker : workers) worker.offer(frame.acquire());
+        frame.release();
+    }
+
+    public synchronized void release() {
+        for (AnalyzerWorker worker : workers) worker.stop();
+        workers.clear();
+
+        if (dispatchThread != null) {
+            dispatchThread.quit();
+            dispatchThread = null;
+            dispatchHandler = null;
+        }
+    }
+
+    private AnalyzerWorker findWorker(FrameAnalyzer analyzer) {
+        for (AnalyzerWorker worker : workers) {
+            if (worker.getAnalyzer() == analyzer) return worker;
+        }
+        return null;
+    }
+}
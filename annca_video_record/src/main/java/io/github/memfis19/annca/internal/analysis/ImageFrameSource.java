@@ -0,0 +1,134 @@
+package io.github.memfis19.annca.internal.analysis;
+
+import android.annotation.TargetApi;
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.view.Surface;
+
+import java.nio.ByteBuffer;
+
+/**
+ * YUV_420_888 stream of the Camera2 session. Frames wrap the planes of the images without a copy and the images
+ * are closed when the analyzers release them. The reader has an image for every frame the analyzers can hold,
+ * while all of them are held the camera drops the frames of this stream and nothing waits for the analyzers.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public final class ImageFrameSource implements ImageReader.OnImageAvailableListener, Frame.Recycler {
+
+    // the frame being dispatched and the one acquireLatestImage() needs to skip to the latest image
+    private static final int EXTRA_IMAGES = 2;
+
+    private final FrameDispatcher dispatcher;
+    private final ImageReader imageReader;
+    private final int maxFrames;
+
+    private final Frame[] frames;
+    private final Image[] images;
+    private int openFrames = 0;
+
+    private volatile int rotation = 0;
+    private boolean closed = false;
+    private long droppedFrames = 0;
+
+    public ImageFrameSource(FrameDispatcher dispatcher, int width, int height) {
+        this.dispatcher = dispatcher;
+        this.maxFrames = dispatcher.getMaxFramesInFlight();
+        this.frames = new Frame[maxFrames + EXTRA_IMAGES];
+        this.images = new Image[frames.length];
+        for (int i = 0; i < frames.length; i++) frames[i] = new Frame(null, this);
+        this.imageReader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, frames.length);
+        this.imageReader.setOnImageAvailableListener(this, dispatcher.getHandler());
+    }
+
+    public Surface getSurface() {
+        return imageReader.getSurface();
+    }
+
+    /***
+     * @return false if the analyzers can hold more frames than the reader has images, the source has to be recreated
+     */
+    public boolean isSizedFor(FrameDispatcher dispatcher) {
+        return dispatcher.getMaxFramesInFlight() <= maxFrames;
+    }
+
+    public void setRotation(int rotation) {
+        this.rotation = rotation;
+    }
+
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /***
+     * Closing the reader closes its images, it's postponed until the analyzers release the last frame.
+     */
+    public void close() {
+        imageReader.setOnImageAvailableListener(null, null);
+        synchronized (this) {
+            closed = true;
+            if (openFrames > 0) return;
+        }
+        imageReader.close();
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+        Image image;
+        try {
+            image = reader.acquireLatestImage();
+        } catch (IllegalStateException error) {
+            // all the images are held by the analyzers, the camera drops the frames until one is released
+            synchronized (this) {
+                droppedFrames++;
+            }
+            return;
+        }
+        if (image == null) return;
+
+        Frame frame = obtainFrame(image);
+        if (frame == null) {
+            image.close();
+            return;
+        }
+        frame.set(image.getWidth(), image.getHeight(), ImageFormat.YUV_420_888, image.getTimestamp(), rotation);
+        for (Image.Plane plane : image.getPlanes()) {
+            ByteBuffer buffer = plane.getBuffer();
+            frame.addPlane(buffer, buffer.position(), buffer.remaining(), plane.getRowStride(), plane.getPixelStride());
+        }
+        dispatcher.dispatch(frame);
+    }
+
+    @Override
+    public void recycle(Frame frame) {
+        Image image = null;
+        boolean closeReader;
+        synchronized (this) {
+            for (int i = 0; i < frames.length; i++) {
+                if (frames[i] != frame) continue;
+                image = images[i];
+                images[i] = null;
+                break;
+            }
+            if (image == null) return;
+            openFrames--;
+            closeReader = closed && openFrames == 0;
+        }
+        image.close();
+        if (closeReader) imageReader.close();
+    }
+
+    private synchronized Frame obtainFrame(Image image) {
+        if (closed) return null;
+        for (int i = 0; i < frames.length; i++) {
+            if (images[i] != null) continue;
+            images[i] = image;
+            openFrames++;
+            frames[i].open();
+            return frames[i];
+        }
+        droppedFrames++;
+        return null;
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.memfis19.annca.internal.analysis;
+
+import android.graphics.ImageFormat;
+import android.hardware.Camera;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Callback buffers of the Camera1 preview. The buffers are sized for the preview size and format, given to the camera
+ * with addCallbackBuffer and given back when the frame wrapping the buffer is released. They are kept when the preview
+ * is stopped, so restarting the preview with the same size doesn't allocate.
+ */
+@SuppressWarnings("deprecation")
+public final class PreviewBufferPool implements Frame.Recycler {
+
+    private static final String TAG = "PreviewBufferPool";
+
+    private final Map<byte[], Frame> frames = new IdentityHashMap<>();
+    // delivered and not released by the analyzers yet, these can't be given to the camera
+    private final Set<byte[]> deliveredBuffers = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+
+    private Camera camera;
+    private int bufferSize = 0;
+    private int queuedBuffers = 0;
+
+    private long allocations = 0;
+    private long exhaustions = 0;
+    private long recycledBuffers = 0;
+    private long totalRecycleNanos = 0;
+    private long maxRecycleNanos = 0;
+
+    /***
+     * @return bytes of one preview frame, the YV12 planes are aligned to 16 bytes as required by Camera1
+     */
+    public static int getBufferSize(int width, int height, int format) {
+        if (format == ImageFormat.YV12) {
+            int yStride = (int) Math.ceil(width / 16.0) * 16;
+            int uvStride = (int) Math.ceil((yStride / 2) / 16.0) * 16;
+            return yStride * height + uvStride * height / 2 * 2;
+        }
+        return width * height * ImageFormat.getBitsPerPixel(format) / 8;
+    }
+
+    /***
+     * Gives the buffers to the camera, allocating only the missing ones. Buffers of another size are dropped.
+     */
+    public synchronized void attach(Camera camera, int width, int height, int format, int bufferCount) {
+        int size = getBufferSize(width, height, format);
+        if (size != bufferSize) {
+            frames.clear();
+            deliveredBuffers.clear();
+            bufferSize = size;
+        }
+        while (frames.size() < bufferCount) {
+            byte[] buffer = new byte[bufferSize];
+            frames.put(buffer, new Frame(ByteBuffer.wrap(buffer), this));
+            allocations++;
+        }
+
+        this.camera = camera;
+        queuedBuffers = 0;
+        for (byte[] buffer : frames.keySet()) {
+            if (deliveredBuffers.contains(buffer)) continue;
+            camera.addCallbackBuffer(buffer);
+            queuedBuffers++;
+        }
+    }
+
+    /***
+     * Buffers held by the analyzers are not given back to the camera, they stay in the pool for the next preview.
+     */
+    public synchronized void detach() {
+        camera = null;
+        queuedBuffers = 0;
+    }
+
+    /***
+     * Drops the buffers, called when the camera manager is released.
+     */
+    public synchronized void clear() {
+        detach();
+        frames.clear();
+        deliveredBuffers.clear();
+        bufferSize = 0;
+    }
+
+    /***
+     * @return frame wrapping the buffer delivered by the camera, null if the buffer isn't from the pool
+     */
+    synchronized Frame onBufferDelivered(byte[] data, Camera camera) {
+        Frame frame = frames.get(data);
+        if (frame == null || this.camera != camera) return null;
+
+        deliveredBuffers.add(data);
+        queuedBuffers--;
+        if (queuedBuffers == 0) exhaustions++;
+        return frame;
+    }
+
+    @Override
+    public synchronized void recycle(Frame frame) {
+        byte[] buffer = frame.getData().array();
+        if (frames.get(buffer) != frame || !deliveredBuffers.remove(buffer)) return;
+
+        long recycleNanos = SystemClock.elapsedRealtimeNanos() - frame.getTimestamp();
+        recycledBuffers++;
+        totalRecycleNanos += recycleNanos;
+        if (recycleNanos > maxRecycleNanos) maxRecycleNanos = recycleNanos;
+
+        if (camera == null) return;
+        try {
+            camera.addCallbackBuffer(buffer);
+            queuedBuffers++;
+        } catch (RuntimeException error) {
+            Log.e(TAG, "Can't return preview buffer: " + error.getMessage());
+        }
+    }
+
+    public synchronized PreviewBufferStats getStats() {
+        return new PreviewBufferStats(frames.size(), bufferSize, allocations, exhaustions,
+                recycledBuffers, totalRecycleNanos, maxRecycleNanos);
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.memfis19.annca.internal.analysis;
+
+/**
+ * Snapshot of the counters of the Camera1 preview buffer pool. The recycle latency is measured
+ * from the delivery of the frame to the return of its buffer to the camera.
+ */
+public final class PreviewBufferStats {
+
+    private final int buffers;
+    private final int bufferSize;
+    private final long allocations;
+    private final long exhaustions;
+    private final long recycledBuffers;
+    private final long totalRecycleNanos;
+    private final long maxRecycleNanos;
+
+    public PreviewBufferStats(int buffers, int bufferSize, long allocations, long exhaustions,
+                              long recycledBuffers, long totalRecycleNanos, long maxRecycleNanos) {
+        this.buffers = buffers;
+        this.bufferSize = bufferSize;
+        this.allocations = allocations;
+        this.exhaustions = exhaustions;
+        this.recycledBuffers = recycledBuffers;
+        this.totalRecycleNanos = totalRecycleNanos;
+        this.maxRecycleNanos = maxRecycleNanos;
+    }
+
+    public int getBuffers() {
+        return buffers;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /***
+     * @return buffers allocated since the pool was created, the buffers are reused while the preview size is the same
+     */
+    public long getAllocations() {
+        return allocations;
+    }
+
+    /***
+     * @return times the camera was left without a free buffer, it skips the frames until one is recycled
+     */
+    public long getExhaustions() {
+        return exhaustions;
+    }
+
+    public long getRecycledBuffers() {
+        return recycledBuffers;
+    }
+
+    public float getAverageRecycleMillis() {
+        return recycledBuffers > 0 ? totalRecycleNanos / 1000000f / recycledBuffers : 0;
+    }
+
+    public float getMaxRecycleMillis() {
+        return maxRecycleNanos / 1000000f;
+    }
+
+    @Override
+    public String toString() {
+        return "buffers: " + buffers + ", buffer size: " + bufferSize + ", allocations: " + allocations
+                + ", exhaustions: " + exhaustions + ", recycled: " + recycledBuffers
+                + ", average recycle, ms: " + getAverageRecycleMillis() + ", max recycle, ms: " + getMaxRecycleMillis();
+    }
+}
@@ -0,0 +1,153 @@
+package io.github.memfis19.annca.internal.analysis;
+
+import android.graphics.ImageFormat;
+import android.hardware.Camera;
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+
+/**
+ * Preview callback stream of Camera1. The callback buffers of the pool are wrapped without a copy and given back
+ * to the camera when the last analyzer releases the frame, while all of them are held the camera skips the callbacks.
+ * It's installed without analyzers only to timestamp the frames for the preview health, the buffers go back at once.
+ */
+@SuppressWarnings("deprecation")
+public final class PreviewFrameSource implements Camera.PreviewCallback {
+
+    /**
+     * Receives the time of each delivered preview frame, called on the thread of the camera callbacks.
+     */
+    public interface FrameTimestampListener {
+        void onFrameTimestamp(long timestampNanos);
+    }
+
+    // one buffer is filled by the camera while the other one is delivered
+    private static final int MIN_BUFFERS = 2;
+
+    private final FrameDispatcher dispatcher;
+    private final PreviewBufferPool bufferPool;
+
+    private Camera camera;
+    private int width;
+    private int height;
+    private int format;
+    private volatile int rotation = 0;
+    private volatile FrameTimestampListener timestampListener;
+
+    // frames waiting for the dispatch thread, one runnable is posted for all of them
+    private final ArrayDeque<Frame> pendingFrames = new ArrayDeque<>();
+    private final Runnable dispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Frame frame;
+            while ((frame = pollPendingFrame()) != null) dispatcher.dispatch(frame);
+        }
+    };
+
+    public PreviewFrameSource(FrameDispatcher dispatcher, PreviewBufferPool bufferPool) {
+        this.dispatcher = dispatcher;
+        this.bufferPool = bufferPool;
+    }
+
+    public void setFrameTimestampListener(FrameTimestampListener timestampListener) {
+        this.timestampListener = timestampListener;
+    }
+
+    /***
+     * Installs the preview callback with the buffers for the current preview size and format,
+     * has to be called before startPreview().
+     */
+    public synchronized void attach(Camera camera, int width, int height, int format) {
+        detach();
+
+        this.camera = camera;
+        this.width = width;
+        this.height = height;
+        this.format = format;
+
+        camera.setPreviewCallbackWithBuffer(this);
+        bufferPool.attach(camera, width, height, format, Math.max(MIN_BUFFERS, dispatcher.getMaxFramesInFlight() + 1));
+    }
+
+    public synchronized void detach() {
+        if (camera != null) {
+            try {
+                camera.setPreviewCallbackWithBuffer(null);
+            } catch (RuntimeException error) {
+                // camera is already released
+            }
+        }
+        camera = null;
+        bufferPool.detach();
+    }
+
+    public void setRotation(int rotation) {
+        this.rotation = rotation;
+    }
+
+    @Override
+    public void onPreviewFrame(byte[] data, Camera camera) {
+        final Frame frame;
+        synchronized (this) {
+            if (this.camera != camera) return;
+            frame = bufferPool.onBufferDelivered(data, camera);
+            if (frame == null) return;
+        }
+
+        long timestamp = SystemClock.elapsedRealtimeNanos();
+        FrameTimestampListener listener = timestampListener;
+        if (listener != null) listener.onFrameTimestamp(timestamp);
+
+        frame.set(width, height, format, timestamp, rotation);
+        addPlanes(frame, width, height, format);
+        frame.open();
+        if (!dispatcher.hasAnalyzers()) {
+            frame.release();
+            return;
+        }
+
+        boolean post;
+        synchronized (pendingFrames) {
+            post = pendingFrames.isEmpty();
+            pendingFrames.addLast(frame);
+        }
+        if (post) dispatcher.getHandler().post(dispatchRunnable);
+    }
+
+    /***
+     * Describes the planes of the preview buffer: Y and the interleaved VU plane for NV21, Y, U and V planes
+     * with the rows aligned to 16 bytes for YV12, one plane for the other formats.
+     */
+    static void addPlanes(Frame frame, int width, int height, int format) {
+        int ySize = width * height;
+        switch (format) {
+            case ImageFormat.NV21:
+                frame.addPlane(0, ySize, width, 1);
+                frame.addPlane(ySize, ySize / 2, width, 2);
+                break;
+            case ImageFormat.YV12:
+                int yStride = align16(width);
+                int uvStride = align16(yStride / 2);
+                int yPlaneSize = yStride * height;
+                int uvPlaneSize = uvStride * height / 2;
+                frame.addPlane(0, yPlaneSize, yStride, 1);
+                // V plane comes first in the buffer
+                frame.addPlane(yPlaneSize + uvPlaneSize, uvPlaneSize, uvStride, 1);
+                frame.addPlane(yPlaneSize, uvPlaneSize, uvStride, 1);
+                break;
+            default:
+                frame.addPlane(0, frame.getData().capacity(), width, 1);
+                break;
+        }
+    }
+
+    private Frame pollPendingFrame() {
+        synchronized (pendingFrames) {
+            return pendingFrames.pollFirst();
+        }
+    }
+
+    private static int align16(int value) {
+        return (value + 15) / 16 * 16;
+    }
+}
@@ -24,6 +24,11 @@ public final class AnncaConfiguration {
     public static final int MEDIA_ACTION_VIDEO = 100;
     public static final int MEDIA_ACTION_PHOTO = 101;
     public static final int MEDIA_ACTION_UNSPECIFIED = 102;
+    /**
+     * Slow motion recording with the constrained high speed session of Camera2,
+     * regular video recording is used if the camera doesn't support it.
+     */
+    public static final int MEDIA_ACTION_VIDEO_HIGH_SPEED = 103;
 
     public static final int CAMERA_FACE_FRONT = 0x6;
     public static final int CAMERA_FACE_REAR = 0x7;
@@ -50,6 +55,17 @@ public final class AnncaConfiguration {
     public static final int CLOSE = 2;
     public static final int CONTINUE = 3;
 
+    public static final int VIDEO_ENCODER_MEDIA_RECORDER = 0x31;
+    public static final int VIDEO_ENCODER_MEDIA_CODEC = 0x32;
+
+    public static final int OUTPUT_SYNC_NONE = 0x41;
+    public static final int OUTPUT_SYNC_DATA = 0x42;
+    public static final int OUTPUT_SYNC_FULL = 0x43;
+
+    public static final int IMAGE_WRITE_CHANNEL = 0x51;
+    public static final int IMAGE_WRITE_PREALLOCATED = 0x52;
+    public static final int IMAGE_WRITE_MAPPED = 0x53;
+
     public interface Arguments {
         String REQUEST_CODE = "io.memfis19.annca.request_code";
         String MEDIA_ACTION = "io.memfis19.annca.media_action";
@@ -61,6 +77,13 @@ public final class AnncaConfiguration {
         String FILE_PATH = "io.memfis19.annca.camera_video_file_path";
         String CAMERA_FACE = "io.memfis19.annca.camera_face";
         String MEDIA_RESULT_BEHAVIOUR = "io.memfis19.annca.media_result_behaviour";
+        String ZERO_SHUTTER_LAG_BUFFER_SIZE = "io.memfis19.annca.zero_shutter_lag_buffer_size";
+        String VIDEO_ENCODER = "io.memfis19.annca.video_encoder";
+        String PRE_ROLL_MILLIS = "io.memfis19.annca.pre_roll_millis";
+        String VIDEO_SEGMENT_SIZE = "io.memfis19.annca.video_segment_size";
+        String OUTPUT_SYNC_POLICY = "io.memfis19.annca.output_sync_policy";
+        String IMAGE_WRITE_MODE = "io.memfis19.annca.image_write_mode";
+        String VIDEO_SNAPSHOT_PATHS = "io.memfis19.annca.video_snapshot_paths";
     }
 
     @IntDef({MEDIA_QUALITY_AUTO, MEDIA_QUALITY_LOWEST, MEDIA_QUALITY_LOW, MEDIA_QUALITY_MEDIUM, MEDIA_QUALITY_HIGH, MEDIA_QUALITY_HIGHEST})
@@ -73,7 +96,7 @@ public final class AnncaConfiguration {
     public @interface MediaResultBehaviour {
     }
 
-    @IntDef({MEDIA_ACTION_VIDEO, MEDIA_ACTION_PHOTO, MEDIA_ACTION_UNSPECIFIED})
+    @IntDef({MEDIA_ACTION_VIDEO, MEDIA_ACTION_PHOTO, MEDIA_ACTION_UNSPECIFIED, MEDIA_ACTION_VIDEO_HIGH_SPEED})
     @Retention(RetentionPolicy.SOURCE)
     public @interface MediaAction {
     }
@@ -103,6 +126,21 @@ public final class AnncaConfiguration {
     public @interface DeviceDefaultOrientation {
     }
 
+    @IntDef({VIDEO_ENCODER_MEDIA_RECORDER, VIDEO_ENCODER_MEDIA_CODEC})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface VideoEncoder {
+    }
+
+    @IntDef({OUTPUT_SYNC_NONE, OUTPUT_SYNC_DATA, OUTPUT_SYNC_FULL})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface OutputSyncPolicy {
+    }
+
+    @IntDef({IMAGE_WRITE_CHANNEL, IMAGE_WRITE_PREALLOCATED, IMAGE_WRITE_MAPPED})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface ImageWriteMode {
+    }
+
     private Activity activity = null;
     private Fragment fragment = null;
 
@@ -131,6 +169,21 @@ public final class AnncaConfiguration {
     @FlashMode
     private int flashMode = FLASH_MODE_AUTO;
 
+    private int zeroShutterLagBufferSize = -1;
+
+    @VideoEncoder
+    private int videoEncoder = VIDEO_ENCODER_MEDIA_RECORDER;
+
+    private int preRollMillis = -1;
+
+    private long videoSegmentSize = -1;
+
+    @OutputSyncPolicy
+    private int outputSyncPolicy = OUTPUT_SYNC_NONE;
+
+    @ImageWriteMode
+    private int imageWriteMode = IMAGE_WRITE_CHANNEL;
+
     private AnncaConfiguration(Activity activity, int requestCode) {
         this.activity = activity;
         this.requestCode = requestCode;
@@ -213,6 +266,68 @@ public final class AnncaConfiguration {
             return this;
         }
 
+        /***
+         * @param bufferSizeInFrames - number of the latest full resolution frames kept in memory to take
+         *                           a photo without focus and exposure locking, used only by camera2 in photo mode.
+         * @return
+         */
+        public Builder setZeroShutterLagBufferSize(@IntRange(from = 1, to = 8) int bufferSizeInFrames) {
+            anncaConfiguration.zeroShutterLagBufferSize = bufferSizeInFrames;
+            return this;
+        }
+
+        /***
+         * @param videoEncoder - engine used for recording, {@link #VIDEO_ENCODER_MEDIA_CODEC} gives control over the encoded
+         *                     stream and is used only by camera2, camera1 always records with MediaRecorder.
+         * @return
+         */
+        public Builder setVideoEncoder(@VideoEncoder int videoEncoder) {
+            anncaConfiguration.videoEncoder = videoEncoder;
+            return this;
+        }
+
+        /***
+         * @param preRollMillis - duration of the video kept in memory while the preview is shown and added to the start
+         *                      of the recording, used only by camera2 with {@link #VIDEO_ENCODER_MEDIA_CODEC} on Android 6.0+.
+         * @return
+         */
+        public Builder setPreRollMillis(@IntRange(from = 500, to = 30000) int preRollMillis) {
+            anncaConfiguration.preRollMillis = preRollMillis;
+            return this;
+        }
+
+        /***
+         * @param segmentSizeInBytes - recording continues into the next file when the current one reaches this size,
+         *                           file size limit isn't applied then. Requires Android 8.0+ for MediaRecorder.
+         * @return
+         */
+        public Builder setVideoSegmentSize(@IntRange(from = 1048576, to = Long.MAX_VALUE) long segmentSizeInBytes) {
+            anncaConfiguration.videoSegmentSize = segmentSizeInBytes;
+            return this;
+        }
+
+        /***
+         * @param outputSyncPolicy - how the photos and the videos are flushed to the storage before they are renamed
+         *                         to the final file, {@link #OUTPUT_SYNC_DATA} and {@link #OUTPUT_SYNC_FULL} keep
+         *                         the file complete after a power loss at the cost of the fsync time.
+         * @return
+         */
+        public Builder setOutputSyncPolicy(@OutputSyncPolicy int outputSyncPolicy) {
+            anncaConfiguration.outputSyncPolicy = outputSyncPolicy;
+            return this;
+        }
+
+        /***
+         * @param imageWriteMode - how the Camera2 photos are written to the file, {@link #IMAGE_WRITE_PREALLOCATED}
+         *                       sets the file length before the write, {@link #IMAGE_WRITE_MAPPED} copies the photo
+         *                       into the memory mapped file when its EXIF isn't changed.
+         * @return
+         */
+        public Builder setImageWriteMode(@ImageWriteMode int imageWriteMode) {
+            anncaConfiguration.imageWriteMode = imageWriteMode;
+            return this;
+        }
+
         public AnncaConfiguration build() throws IllegalArgumentException {
             if (anncaConfiguration.requestCode < 0)
                 throw new IllegalArgumentException("Wrong request code value. Please set the value > 0.");
@@ -272,4 +387,28 @@ public final class AnncaConfiguration {
     public int getFlashMode() {
         return flashMode;
     }
+
+    public int getZeroShutterLagBufferSize() {
+        return zeroShutterLagBufferSize;
+    }
+
+    public int getVideoEncoder() {
+        return videoEncoder;
+    }
+
+    public int getPreRollMillis() {
+        return preRollMillis;
+    }
+
+    public long getVideoSegmentSize() {
+        return videoSegmentSize;
+    }
+
+    public int getOutputSyncPolicy() {
+        return outputSyncPolicy;
+    }
+
+    public int getImageWriteMode() {
+        return imageWriteMode;
+    }
 }
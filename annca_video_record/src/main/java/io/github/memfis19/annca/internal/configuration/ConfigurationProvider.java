@@ -36,4 +36,19 @@ public interface ConfigurationProvider {
 
     @AnncaConfiguration.MediaResultBehaviour
     int getMediaResultBehaviour();
+
+    int getZeroShutterLagBufferSize();
+
+    @AnncaConfiguration.VideoEncoder
+    int getVideoEncoder();
+
+    int getPreRollMillis();
+
+    long getVideoSegmentSize();
+
+    @AnncaConfiguration.OutputSyncPolicy
+    int getOutputSyncPolicy();
+
+    @AnncaConfiguration.ImageWriteMode
+    int getImageWriteMode();
 }
@@ -6,6 +6,8 @@ import java.io.File;
 
 import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
 import io.github.memfis19.annca.internal.manager.CameraManager;
+import io.github.memfis19.annca.internal.manager.PreviewHealth;
+import io.github.memfis19.annca.internal.output.OutputSink;
 
 /**
  * Created by memfis on 7/6/16.
@@ -22,12 +24,28 @@ public interface CameraController<CameraId> {
 
     void takePhoto();
 
+    /***
+     * @param photoSink - destination of the photo, e.g. a content Uri of the host app
+     */
+    void takePhoto(OutputSink photoSink);
+
     void startVideoRecord();
 
+    /***
+     * @param videoSink - destination of the video, it must give a seekable descriptor if it isn't a file
+     */
+    void startVideoRecord(OutputSink videoSink);
+
     void stopVideoRecord();
 
+    void pauseVideoRecord();
+
+    void resumeVideoRecord();
+
     boolean isVideoRecording();
 
+    boolean isVideoRecordPaused();
+
     void openCamera();
 
     void switchCamera(@AnncaConfiguration.CameraFace int cameraFace);
@@ -43,7 +61,15 @@ public interface CameraController<CameraId> {
 
     CameraId getCurrentCameraId();
 
+    /***
+     * @return file of the last photo or video, null if it was written to a sink without a file
+     */
     File getOutputFile();
 
     CameraManager getCameraManager();
+
+    /***
+     * @return frame rate, frame interval percentiles and stalls of the preview, null if it isn't monitored
+     */
+    PreviewHealth getPreviewHealth();
 }
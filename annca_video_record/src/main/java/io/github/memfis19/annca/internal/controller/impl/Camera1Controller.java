@@ -12,11 +12,14 @@ import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
 import io.github.memfis19.annca.internal.configuration.ConfigurationProvider;
 import io.github.memfis19.annca.internal.controller.view.CameraView;
 import io.github.memfis19.annca.internal.manager.CameraManager;
+import io.github.memfis19.annca.internal.manager.PreviewHealth;
 import io.github.memfis19.annca.internal.manager.impl.Camera1Manager;
 import io.github.memfis19.annca.internal.manager.listener.CameraCloseListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraOpenListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraPhotoListener;
+import io.github.memfis19.annca.internal.manager.listener.CameraReconfigureListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraVideoListener;
+import io.github.memfis19.annca.internal.output.OutputSink;
 import io.github.memfis19.annca.internal.ui.view.AutoFitSurfaceView;
 import io.github.memfis19.annca.internal.ui.view.CameraSwitchView;
 import io.github.memfis19.annca.internal.utils.CameraHelper;
@@ -28,7 +31,8 @@ import io.github.memfis19.annca.internal.utils.Size;
 
 @SuppressWarnings("deprecation")
 public class Camera1Controller implements io.github.memfis19.annca.internal.controller.CameraController<Integer>,
-        CameraOpenListener<Integer, SurfaceHolder.Callback>, CameraPhotoListener, CameraCloseListener<Integer>, CameraVideoListener {
+        CameraOpenListener<Integer, SurfaceHolder.Callback>, CameraPhotoListener, CameraCloseListener<Integer>, CameraVideoListener,
+        CameraReconfigureListener {
 
     private final static String TAG = "Camera1Controller";
 
@@ -82,27 +86,55 @@ public class Camera1Controller implements io.github.memfis19.annca.internal.cont
         cameraManager.takePhoto(outputFile, this);
     }
 
+    @Override
+    public void takePhoto(OutputSink photoSink) {
+        outputFile = photoSink.getFile();
+        cameraManager.takePhoto(photoSink, this);
+    }
+
     @Override
     public void startVideoRecord() {
         outputFile = TextUtils.isEmpty(configurationProvider.getFilePath()) ? CameraHelper.getOutputMediaFile(cameraView.getActivity(), AnncaConfiguration.MEDIA_ACTION_VIDEO) : new File(configurationProvider.getFilePath());
         cameraManager.startVideoRecord(outputFile, this);
     }
 
+    @Override
+    public void startVideoRecord(OutputSink videoSink) {
+        outputFile = videoSink.getFile();
+        cameraManager.startVideoRecord(videoSink, this);
+    }
+
     @Override
     public void stopVideoRecord() {
         cameraManager.stopVideoRecord();
     }
 
+    @Override
+    public void pauseVideoRecord() {
+        cameraManager.pauseVideoRecord();
+    }
+
+    @Override
+    public void resumeVideoRecord() {
+        cameraManager.resumeVideoRecord();
+    }
+
     @Override
     public boolean isVideoRecording() {
         return cameraManager.isVideoRecording();
     }
 
+    @Override
+    public boolean isVideoRecordPaused() {
+        return cameraManager.isVideoRecordPaused();
+    }
+
     @Override
     public void switchCamera(@AnncaConfiguration.CameraFace final int cameraFace) {
         currentCameraId = cameraManager.getCurrentCameraId().equals(cameraManager.getFaceFrontCameraId()) ?
                 cameraManager.getFaceBackCameraId() : cameraManager.getFaceFrontCameraId();
 
+        cameraManager.onCameraSwitchRequested();
         cameraManager.closeCamera(this);
     }
 
@@ -113,7 +145,7 @@ public class Camera1Controller implements io.github.memfis19.annca.internal.cont
 
     @Override
     public void switchQuality() {
-        cameraManager.closeCamera(this);
+        cameraManager.reconfigureOutputs(this);
     }
 
     @Override
@@ -161,6 +193,16 @@ public class Camera1Controller implements io.github.memfis19.annca.internal.cont
         cameraManager.openCamera(currentCameraId, this);
     }
 
+    @Override
+    public void onOutputsReconfigured() {
+        cameraView.onCameraReconfigured();
+    }
+
+    @Override
+    public void onReconfigureRequiresReopen() {
+        cameraManager.closeCamera(this);
+    }
+
     @Override
     public void onPhotoTaken(File photoFile) {
         cameraView.onPhotoTaken();
@@ -180,6 +222,16 @@ public class Camera1Controller implements io.github.memfis19.annca.internal.cont
         cameraView.onVideoRecordStop();
     }
 
+    @Override
+    public void onVideoRecordPaused() {
+        cameraView.onVideoRecordPause();
+    }
+
+    @Override
+    public void onVideoRecordResumed() {
+        cameraView.onVideoRecordResume();
+    }
+
     @Override
     public void onVideoRecordError() {
 
@@ -189,4 +241,9 @@ public class Camera1Controller implements io.github.memfis19.annca.internal.cont
     public CameraManager getCameraManager() {
         return cameraManager;
     }
+
+    @Override
+    public PreviewHealth getPreviewHealth() {
+        return cameraManager.getPreviewHealth();
+    }
 }
@@ -16,11 +16,14 @@ import io.github.memfis19.annca.internal.configuration.ConfigurationProvider;
 import io.github.memfis19.annca.internal.controller.CameraController;
 import io.github.memfis19.annca.internal.controller.view.CameraView;
 import io.github.memfis19.annca.internal.manager.CameraManager;
+import io.github.memfis19.annca.internal.manager.PreviewHealth;
 import io.github.memfis19.annca.internal.manager.impl.Camera2Manager;
 import io.github.memfis19.annca.internal.manager.listener.CameraCloseListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraOpenListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraPhotoListener;
+import io.github.memfis19.annca.internal.manager.listener.CameraReconfigureListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraVideoListener;
+import io.github.memfis19.annca.internal.output.OutputSink;
 import io.github.memfis19.annca.internal.ui.view.AutoFitTextureView;
 import io.github.memfis19.annca.internal.ui.view.CameraSwitchView;
 import io.github.memfis19.annca.internal.utils.CameraHelper;
@@ -32,7 +35,7 @@ import io.github.memfis19.annca.internal.utils.Size;
 @TargetApi(Build.VERSION_CODES.LOLLIPOP)
 public class Camera2Controller implements CameraController<String>,
         CameraOpenListener<String, TextureView.SurfaceTextureListener>,
-        CameraPhotoListener, CameraVideoListener, CameraCloseListener<String> {
+        CameraPhotoListener, CameraVideoListener, CameraCloseListener<String>, CameraReconfigureListener {
 
     private final static String TAG = "Camera2Controller";
 
@@ -43,6 +46,18 @@ public class Camera2Controller implements CameraController<String>,
 
     private File outputFile;
 
+    private CameraPhotoListener videoSnapshotListener = new CameraPhotoListener() {
+        @Override
+        public void onPhotoTaken(File photoFile) {
+            cameraView.onVideoSnapshotTaken(photoFile);
+        }
+
+        @Override
+        public void onPhotoTakeError() {
+            Log.e(TAG, "Can't take video snapshot.");
+        }
+    };
+
     public Camera2Controller(CameraView cameraView, ConfigurationProvider configurationProvider) {
         this.cameraView = cameraView;
         this.configurationProvider = configurationProvider;
@@ -83,31 +98,68 @@ public class Camera2Controller implements CameraController<String>,
 
     @Override
     public void takePhoto() {
+        if (camera2Manager.isVideoRecording()) {
+            // snapshot of the recording, the output file of the video is kept
+            camera2Manager.takePhoto(CameraHelper.getOutputMediaFile(cameraView.getActivity(), AnncaConfiguration.MEDIA_ACTION_PHOTO), videoSnapshotListener);
+            return;
+        }
         outputFile = TextUtils.isEmpty(configurationProvider.getFilePath()) ? CameraHelper.getOutputMediaFile(cameraView.getActivity(), AnncaConfiguration.MEDIA_ACTION_PHOTO) : new File(configurationProvider.getFilePath());
         camera2Manager.takePhoto(outputFile, this);
     }
 
+    @Override
+    public void takePhoto(OutputSink photoSink) {
+        if (camera2Manager.isVideoRecording()) {
+            camera2Manager.takePhoto(photoSink, videoSnapshotListener);
+            return;
+        }
+        outputFile = photoSink.getFile();
+        camera2Manager.takePhoto(photoSink, this);
+    }
+
     @Override
     public void startVideoRecord() {
         outputFile = TextUtils.isEmpty(configurationProvider.getFilePath()) ? CameraHelper.getOutputMediaFile(cameraView.getActivity(), AnncaConfiguration.MEDIA_ACTION_VIDEO) : new File(configurationProvider.getFilePath());
         camera2Manager.startVideoRecord(outputFile, this);
     }
 
+    @Override
+    public void startVideoRecord(OutputSink videoSink) {
+        outputFile = videoSink.getFile();
+        camera2Manager.startVideoRecord(videoSink, this);
+    }
+
     @Override
     public void stopVideoRecord() {
         camera2Manager.stopVideoRecord();
     }
 
+    @Override
+    public void pauseVideoRecord() {
+        camera2Manager.pauseVideoRecord();
+    }
+
+    @Override
+    public void resumeVideoRecord() {
+        camera2Manager.resumeVideoRecord();
+    }
+
     @Override
     public boolean isVideoRecording() {
         return camera2Manager.isVideoRecording();
     }
 
+    @Override
+    public boolean isVideoRecordPaused() {
+        return camera2Manager.isVideoRecordPaused();
+    }
+
     @Override
     public void switchCamera(final @AnncaConfiguration.CameraFace int cameraFace) {
         currentCameraId = camera2Manager.getCurrentCameraId().equals(camera2Manager.getFaceFrontCameraId()) ?
                 camera2Manager.getFaceBackCameraId() : camera2Manager.getFaceFrontCameraId();
 
+        camera2Manager.onCameraSwitchRequested();
         camera2Manager.closeCamera(this);
     }
 
@@ -118,7 +170,7 @@ public class Camera2Controller implements CameraController<String>,
 
     @Override
     public void switchQuality() {
-        camera2Manager.closeCamera(this);
+        camera2Manager.reconfigureOutputs(this);
     }
 
     @Override
@@ -165,6 +217,16 @@ public class Camera2Controller implements CameraController<String>,
         camera2Manager.openCamera(currentCameraId, this);
     }
 
+    @Override
+    public void onOutputsReconfigured() {
+        cameraView.onCameraReconfigured();
+    }
+
+    @Override
+    public void onReconfigureRequiresReopen() {
+        camera2Manager.closeCamera(this);
+    }
+
     @Override
     public void onPhotoTaken(File photoFile) {
         cameraView.onPhotoTaken();
@@ -184,6 +246,16 @@ public class Camera2Controller implements CameraController<String>,
         cameraView.onVideoRecordStop();
     }
 
+    @Override
+    public void onVideoRecordPaused() {
+        cameraView.onVideoRecordPause();
+    }
+
+    @Override
+    public void onVideoRecordResumed() {
+        cameraView.onVideoRecordResume();
+    }
+
     @Override
     public void onVideoRecordError() {
 
@@ -193,4 +265,9 @@ public class Camera2Controller implements CameraController<String>,
     public CameraManager getCameraManager() {
         return camera2Manager;
     }
+
+    @Override
+    public PreviewHealth getPreviewHealth() {
+        return camera2Manager.getPreviewHealth();
+    }
 }
@@ -3,6 +3,8 @@ package io.github.memfis19.annca.internal.controller.view;
 import android.app.Activity;
 import android.view.View;
 
+import java.io.File;
+
 import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
 import io.github.memfis19.annca.internal.utils.Size;
 
@@ -21,11 +23,25 @@ public interface CameraView {
 
     void onPhotoTaken();
 
+    /***
+     * Called when a photo taken during the recording is saved, the recording goes on.
+     */
+    void onVideoSnapshotTaken(File snapshotFile);
+
     void onVideoRecordStart(int width, int height);
 
     void onVideoRecordStop();
 
+    void onVideoRecordPause();
+
+    void onVideoRecordResume();
+
     void releaseCameraPreview();
 
     void onCameraReady();
+
+    /***
+     * Called when the changed quality is applied without reopening the camera, the preview is the same.
+     */
+    void onCameraReconfigured();
 }
@@ -0,0 +1,151 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Bundle;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link EncoderCodec} backed by MediaCodec.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+final class AndroidEncoderCodec implements EncoderCodec<MediaFormat> {
+
+    private static final int AUDIO_MAX_INPUT_SIZE = 16 * 1024;
+
+    private final MediaCodec codec;
+    private final Surface inputSurface;
+    private final boolean ownsInputSurface;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+    private AndroidEncoderCodec(MediaCodec codec, Surface inputSurface, boolean ownsInputSurface) {
+        this.codec = codec;
+        this.inputSurface = inputSurface;
+        this.ownsInputSurface = ownsInputSurface;
+    }
+
+    static AndroidEncoderCodec createVideoEncoder(EncoderConfig config, Surface persistentInputSurface) throws IOException {
+        MediaFormat format = MediaFormat.createVideoFormat(MediaFormat.MIMETYPE_VIDEO_AVC,
+                config.getVideoWidth(), config.getVideoHeight());
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, config.getVideoBitRate());
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, config.getVideoFrameRate());
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, config.getKeyFrameInterval());
+
+        MediaCodec codec = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_VIDEO_AVC);
+        try {
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            if (persistentInputSurface != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                codec.setInputSurface(persistentInputSurface);
+                return new AndroidEncoderCodec(codec, persistentInputSurface, false);
+            }
+            return new AndroidEncoderCodec(codec, codec.createInputSurface(), true);
+        } catch (RuntimeException error) {
+            codec.release();
+            throw new IOException("Can't configure video encoder: " + error.getMessage());
+        }
+    }
+
+    static AndroidEncoderCodec createAudioEncoder(EncoderConfig config) throws IOException {
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC,
+                config.getAudioSampleRate(), config.getAudioChannels());
+        format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, config.getAudioBitRate());
+        format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, AUDIO_MAX_INPUT_SIZE);
+
+        MediaCodec codec = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AAC);
+        try {
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            return new AndroidEncoderCodec(codec, null, false);
+        } catch (RuntimeException error) {
+            codec.release();
+            throw new IOException("Can't configure audio encoder: " + error.getMessage());
+        }
+    }
+
+    /***
+     * @return surface the frames are sent to, or null if the codec is fed through input buffers
+     */
+    Surface getInputSurface() {
+        return inputSurface;
+    }
+
+    @Override
+    public void start() {
+        codec.start();
+    }
+
+    @Override
+    public int dequeueInputBuffer(long timeoutUs) {
+        return codec.dequeueInputBuffer(timeoutUs);
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        return codec.getInputBuffer(index);
+    }
+
+    @Override
+    public void queueInputBuffer(int index, int size, long presentationTimeUs, int flags) {
+        codec.queueInputBuffer(index, 0, size, presentationTimeUs, flags);
+    }
+
+    @Override
+    public void signalEndOfInputStream() {
+        codec.signalEndOfInputStream();
+    }
+
+    @Override
+    public void setVideoBitRate(int bitRate) {
+        Bundle parameters = new Bundle();
+        parameters.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, bitRate);
+        codec.setParameters(parameters);
+    }
+
+    @Override
+    public void requestKeyFrame() {
+        Bundle parameters = new Bundle();
+        parameters.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+        codec.setParameters(parameters);
+    }
+
+    @Override
+    public int dequeueOutputBuffer(SampleInfo sampleInfo, long timeoutUs) {
+        int index = codec.dequeueOutputBuffer(bufferInfo, timeoutUs);
+        if (index >= 0)
+            sampleInfo.set(bufferInfo.offset, bufferInfo.size, bufferInfo.presentationTimeUs, bufferInfo.flags);
+        return index;
+    }
+
+    @Override
+    public ByteBuffer getOutputBuffer(int index) {
+        return codec.getOutputBuffer(index);
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index) {
+        codec.releaseOutputBuffer(index, false);
+    }
+
+    @Override
+    public MediaFormat getOutputFormat() {
+        return codec.getOutputFormat();
+    }
+
+    @Override
+    public void stop() {
+        codec.stop();
+    }
+
+    @Override
+    public void release() {
+        codec.release();
+        if (ownsInputSurface && inputSurface != null) inputSurface.release();
+    }
+}
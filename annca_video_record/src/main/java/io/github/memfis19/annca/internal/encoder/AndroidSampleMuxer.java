@@ -0,0 +1,52 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link SampleMuxer} writing mp4 files with MediaMuxer.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+final class AndroidSampleMuxer implements SampleMuxer<MediaFormat> {
+
+    private final MediaMuxer muxer;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+    AndroidSampleMuxer(EncoderConfig config, File outputFile) throws IOException {
+        muxer = new MediaMuxer(outputFile.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        muxer.setOrientationHint(config.getOrientationHint());
+    }
+
+    @Override
+    public int addTrack(MediaFormat format) {
+        return muxer.addTrack(format);
+    }
+
+    @Override
+    public void start() {
+        muxer.start();
+    }
+
+    @Override
+    public void writeSampleData(int trackIndex, ByteBuffer buffer, SampleInfo sampleInfo) {
+        bufferInfo.set(sampleInfo.offset, sampleInfo.size, sampleInfo.presentationTimeUs, sampleInfo.flags);
+        muxer.writeSampleData(trackIndex, buffer, bufferInfo);
+    }
+
+    @Override
+    public void stop() {
+        muxer.stop();
+    }
+
+    @Override
+    public void release() {
+        muxer.release();
+    }
+}
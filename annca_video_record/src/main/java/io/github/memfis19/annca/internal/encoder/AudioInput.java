@@ -0,0 +1,20 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Source of 16 bit PCM samples for the audio track.
+ */
+public interface AudioInput {
+
+    void start();
+
+    /***
+     * @return number of bytes read into the buffer starting from its position, negative value on error
+     */
+    int read(ByteBuffer buffer, int size);
+
+    void stop();
+
+    void release();
+}
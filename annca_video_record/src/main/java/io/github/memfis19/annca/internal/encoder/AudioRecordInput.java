@@ -0,0 +1,51 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link AudioInput} reading the camcorder microphone with AudioRecord.
+ */
+final class AudioRecordInput implements AudioInput {
+
+    private final AudioRecord audioRecord;
+
+    AudioRecordInput(EncoderConfig config) {
+        int channelConfig = config.getAudioChannels() == 2
+                ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+        int minBufferSize = AudioRecord.getMinBufferSize(config.getAudioSampleRate(), channelConfig,
+                AudioFormat.ENCODING_PCM_16BIT);
+        audioRecord = new AudioRecord(MediaRecorder.AudioSource.CAMCORDER, config.getAudioSampleRate(),
+                channelConfig, AudioFormat.ENCODING_PCM_16BIT, Math.max(minBufferSize, 0) * 2);
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            audioRecord.release();
+            throw new IllegalStateException("Can't initialize audio record.");
+        }
+    }
+
+    @Override
+    public void start() {
+        audioRecord.startRecording();
+    }
+
+    @Override
+    public int read(ByteBuffer buffer, int size) {
+        return audioRecord.read(buffer, size);
+    }
+
+    @Override
+    public void stop() {
+        try {
+            audioRecord.stop();
+        } catch (IllegalStateException ignore) {
+        }
+    }
+
+    @Override
+    public void release() {
+        audioRecord.release();
+    }
+}
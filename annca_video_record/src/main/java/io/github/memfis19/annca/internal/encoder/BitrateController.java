@@ -0,0 +1,109 @@
+package io.github.memfis19.annca.internal.encoder;
+
+/**
+ * Closed loop control of the video bit rate, so the recording fits into the file size budget
+ * for the expected duration. The encoder rarely produces exactly the requested bit rate,
+ * so the ratio of the measured to the requested rate is tracked and compensated.
+ */
+public final class BitrateController {
+
+    public static final int NO_CHANGE = -1;
+
+    // leaves space for the container index written on stop and the last group of pictures
+    private static final float SIZE_SAFETY_MARGIN = 0.97f;
+
+    private static final float MIN_RELATIVE_CHANGE = 0.05f;
+    private static final float MAX_RELATIVE_STEP = 0.3f;
+    private static final float EFFICIENCY_SMOOTHING = 0.5f;
+    private static final float MIN_EFFICIENCY = 0.3f;
+    private static final float MAX_EFFICIENCY = 3f;
+    private static final int MIN_VIDEO_BIT_RATE = 100000;
+
+    private final long targetFileSize;
+    private final long targetDurationMs;
+    private final int audioBitRate;
+    private final int minVideoBitRate;
+    private final int maxVideoBitRate;
+
+    private int videoBitRate;
+    private float efficiency = 1f;
+    private long measuredBitRate = 0;
+
+    private long lastElapsedMs = 0;
+    private long lastWrittenBytes = 0;
+
+    /***
+     * @param initialVideoBitRate - bit rate the encoder is configured with, the controller doesn't go above the double of it
+     */
+    public BitrateController(long targetFileSize, long targetDurationMs, int initialVideoBitRate, int audioBitRate) {
+        if (targetFileSize <= 0 || targetDurationMs <= 0 || initialVideoBitRate <= 0)
+            throw new IllegalArgumentException("File size, duration and bit rate have to be > 0.");
+
+        this.targetFileSize = targetFileSize;
+        this.targetDurationMs = targetDurationMs;
+        this.audioBitRate = Math.max(0, audioBitRate);
+        this.videoBitRate = initialVideoBitRate;
+        this.minVideoBitRate = Math.min(MIN_VIDEO_BIT_RATE, initialVideoBitRate);
+        this.maxVideoBitRate = initialVideoBitRate * 2;
+    }
+
+    /***
+     * Takes one sample of the recording progress.
+     *
+     * @param elapsedMs    - time since the recording start
+     * @param writtenBytes - size of the file at that time
+     * @return new video bit rate or {@link #NO_CHANGE}
+     */
+    public int onProgress(long elapsedMs, long writtenBytes) {
+        long periodMs = elapsedMs - lastElapsedMs;
+        long periodBytes = writtenBytes - lastWrittenBytes;
+        if (periodMs <= 0 || periodBytes < 0) return NO_CHANGE;
+
+        lastElapsedMs = elapsedMs;
+        lastWrittenBytes = writtenBytes;
+
+        measuredBitRate = periodBytes * 8000 / periodMs;
+        float observedEfficiency = measuredBitRate / (float) (videoBitRate + audioBitRate);
+        efficiency = clamp(efficiency * (1 - EFFICIENCY_SMOOTHING) + observedEfficiency * EFFICIENCY_SMOOTHING,
+                MIN_EFFICIENCY, MAX_EFFICIENCY);
+
+        long remainingMs = targetDurationMs - elapsedMs;
+        if (remainingMs <= 0) return NO_CHANGE;
+
+        long remainingBytes = Math.max(0, (long) (targetFileSize * SIZE_SAFETY_MARGIN) - writtenBytes);
+        long affordableBitRate = remainingBytes * 8000 / remainingMs;
+        long requiredVideoBitRate = (long) (affordableBitRate / efficiency) - audioBitRate;
+
+        long lowerStep = (long) (videoBitRate * (1 - MAX_RELATIVE_STEP));
+        long upperStep = (long) (videoBitRate * (1 + MAX_RELATIVE_STEP));
+        long newBitRate = Math.max(lowerStep, Math.min(upperStep, requiredVideoBitRate));
+        newBitRate = Math.max(minVideoBitRate, Math.min(maxVideoBitRate, newBitRate));
+
+        if (Math.abs(newBitRate - videoBitRate) < videoBitRate * MIN_RELATIVE_CHANGE) return NO_CHANGE;
+
+        videoBitRate = (int) newBitRate;
+        return videoBitRate;
+    }
+
+    public int getVideoBitRate() {
+        return videoBitRate;
+    }
+
+    /***
+     * @return bit rate of the file during the last sampled period
+     */
+    public long getMeasuredBitRate() {
+        return measuredBitRate;
+    }
+
+    /***
+     * @return ratio of the produced to the requested bit rate
+     */
+    public float getEfficiency() {
+        return efficiency;
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Subset of MediaCodec used by the engine, return codes and flags have the same values as in MediaCodec.
+ * The output format is only passed to the muxer, so it's a type parameter and the draining doesn't depend
+ * on android classes.
+ */
+public interface EncoderCodec<F> {
+
+    int INFO_TRY_AGAIN_LATER = -1;
+    int INFO_OUTPUT_FORMAT_CHANGED = -2;
+    int INFO_OUTPUT_BUFFERS_CHANGED = -3;
+
+    void start();
+
+    int dequeueInputBuffer(long timeoutUs);
+
+    ByteBuffer getInputBuffer(int index);
+
+    void queueInputBuffer(int index, int size, long presentationTimeUs, int flags);
+
+    void signalEndOfInputStream();
+
+    void setVideoBitRate(int bitRate);
+
+    void requestKeyFrame();
+
+    int dequeueOutputBuffer(SampleInfo sampleInfo, long timeoutUs);
+
+    ByteBuffer getOutputBuffer(int index);
+
+    void releaseOutputBuffer(int index);
+
+    F getOutputFormat();
+
+    void stop();
+
+    void release();
+}
@@ -0,0 +1,194 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import java.io.File;
+
+/**
+ * Immutable parameters of a recording made with {@link VideoEncoderEngine}.
+ */
+public final class EncoderConfig {
+
+    private File outputFile;
+
+    private int videoWidth;
+    private int videoHeight;
+    private int videoFrameRate = 30;
+    private int videoBitRate;
+    private int keyFrameIntervalSeconds = 1;
+
+    private boolean audioEnabled = true;
+    private int audioSampleRate = 44100;
+    private int audioChannels = 1;
+    private int audioBitRate = 96000;
+
+    private int orientationHint = 0;
+    private long maxFileSize = -1;
+    private int maxDurationMs = -1;
+    private boolean realtimeClock = false;
+    private int preRollDurationMs = -1;
+    private long segmentSize = -1;
+
+    private EncoderConfig() {
+    }
+
+    public static class Builder {
+
+        private EncoderConfig encoderConfig = new EncoderConfig();
+
+        public Builder setOutputFile(File outputFile) {
+            encoderConfig.outputFile = outputFile;
+            return this;
+        }
+
+        public Builder setVideoSize(int width, int height) {
+            encoderConfig.videoWidth = width;
+            encoderConfig.videoHeight = height;
+            return this;
+        }
+
+        public Builder setVideoFrameRate(int videoFrameRate) {
+            encoderConfig.videoFrameRate = videoFrameRate;
+            return this;
+        }
+
+        public Builder setVideoBitRate(int videoBitRate) {
+            encoderConfig.videoBitRate = videoBitRate;
+            return this;
+        }
+
+        /***
+         * @param keyFrameIntervalSeconds - group of pictures length in seconds
+         * @return
+         */
+        public Builder setKeyFrameInterval(int keyFrameIntervalSeconds) {
+            encoderConfig.keyFrameIntervalSeconds = keyFrameIntervalSeconds;
+            return this;
+        }
+
+        public Builder setAudioEnabled(boolean audioEnabled) {
+            encoderConfig.audioEnabled = audioEnabled;
+            return this;
+        }
+
+        public Builder setAudio(int sampleRate, int channels, int bitRate) {
+            encoderConfig.audioSampleRate = sampleRate;
+            encoderConfig.audioChannels = channels;
+            encoderConfig.audioBitRate = bitRate;
+            return this;
+        }
+
+        public Builder setOrientationHint(int degrees) {
+            encoderConfig.orientationHint = degrees;
+            return this;
+        }
+
+        public Builder setMaxFileSize(long maxFileSize) {
+            encoderConfig.maxFileSize = maxFileSize;
+            return this;
+        }
+
+        public Builder setMaxDuration(int maxDurationMs) {
+            encoderConfig.maxDurationMs = maxDurationMs;
+            return this;
+        }
+
+        /***
+         * @param realtimeClock - frames are stamped with elapsedRealtime instead of the monotonic clock,
+         *                      the audio track has to use the same clock
+         * @return
+         */
+        public Builder setRealtimeClock(boolean realtimeClock) {
+            encoderConfig.realtimeClock = realtimeClock;
+            return this;
+        }
+
+        /***
+         * @param preRollDurationMs - duration of the encoded samples kept before {@link VideoEncoderEngine#start()}
+         * @return
+         */
+        public Builder setPreRollDuration(int preRollDurationMs) {
+            encoderConfig.preRollDurationMs = preRollDurationMs;
+            return this;
+        }
+
+        /***
+         * @param segmentSize - output continues into the next file after this size is reached
+         * @return
+         */
+        public Builder setSegmentSize(long segmentSize) {
+            encoderConfig.segmentSize = segmentSize;
+            return this;
+        }
+
+        public EncoderConfig build() throws IllegalArgumentException {
+            if (encoderConfig.outputFile == null)
+                throw new IllegalArgumentException("Output file is not set.");
+            if (encoderConfig.videoWidth <= 0 || encoderConfig.videoHeight <= 0 || encoderConfig.videoBitRate <= 0)
+                throw new IllegalArgumentException("Video size and bit rate have to be > 0.");
+            return encoderConfig;
+        }
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    public int getVideoWidth() {
+        return videoWidth;
+    }
+
+    public int getVideoHeight() {
+        return videoHeight;
+    }
+
+    public int getVideoFrameRate() {
+        return videoFrameRate;
+    }
+
+    public int getVideoBitRate() {
+        return videoBitRate;
+    }
+
+    public int getKeyFrameInterval() {
+        return keyFrameIntervalSeconds;
+    }
+
+    public boolean isAudioEnabled() {
+        return audioEnabled;
+    }
+
+    public int getAudioSampleRate() {
+        return audioSampleRate;
+    }
+
+    public int getAudioChannels() {
+        return audioChannels;
+    }
+
+    public int getAudioBitRate() {
+        return audioBitRate;
+    }
+
+    public int getOrientationHint() {
+        return orientationHint;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public int getMaxDuration() {
+        return maxDurationMs;
+    }
+
+    public boolean isRealtimeClock() {
+        return realtimeClock;
+    }
+
+    public int getPreRollDuration() {
+        return preRollDurationMs;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+}
@@ -0,0 +1,383 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import android.annotation.TargetApi;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Records H.264 video from the camera surface and AAC audio from AudioRecord into an mp4 file
+ * with MediaCodec and MediaMuxer. Each track is drained on its own thread, the codecs and the muxer
+ * are released only when both threads are finished.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public final class MediaCodecEncoderEngine implements VideoEncoderEngine {
+
+    private static final String TAG = "MediaCodecEncoder";
+
+    private static final long STOP_TIMEOUT_MS = 3000;
+
+    interface ComponentFactory {
+
+        EncoderCodec<MediaFormat> createVideoCodec(EncoderConfig config, Surface persistentInputSurface) throws IOException;
+
+        /***
+         * @return surface the frames are sent to the video codec through
+         */
+        Surface getInputSurface(EncoderCodec<MediaFormat> videoCodec);
+
+        EncoderCodec<MediaFormat> createAudioCodec(EncoderConfig config) throws IOException;
+
+        AudioInput createAudioInput(EncoderConfig config);
+
+        SampleMuxer<MediaFormat> createMuxer(EncoderConfig config, File outputFile) throws IOException;
+    }
+
+    private final EncoderConfig config;
+    private final Listener listener;
+    private final ComponentFactory componentFactory;
+
+    private EncoderCodec<MediaFormat> videoCodec;
+    private EncoderCodec<MediaFormat> audioCodec;
+    private AudioInput audioInput;
+    private MuxerSession<MediaFormat> muxerSession;
+
+    private TrackEncoder<MediaFormat> videoTrack;
+    private TrackEncoder<MediaFormat> audioTrack;
+    private PcmFeeder pcmFeeder;
+    private PreRollBuffer preRollBuffer;
+
+    private Thread videoThread;
+    private Thread audioThread;
+    private volatile boolean stopRequested = false;
+    private volatile boolean running = false;
+
+    private final Object threadLock = new Object();
+    private int runningThreads = 0;
+    // threads didn't finish in time on stop, the last one releases the codecs and the muxer
+    private boolean releasePending = false;
+    private volatile boolean recording = false;
+    private volatile boolean paused = false;
+
+    public MediaCodecEncoderEngine(EncoderConfig config, Listener listener) {
+        this(config, listener, new AndroidComponentFactory());
+    }
+
+    MediaCodecEncoderEngine(EncoderConfig config, Listener listener, ComponentFactory componentFactory) {
+        this.config = config;
+        this.listener = listener;
+        this.componentFactory = componentFactory;
+    }
+
+    private final MuxerSession.SegmentCallback<MediaFormat> segmentCallback = new MuxerSession.SegmentCallback<MediaFormat>() {
+        @Override
+        public SampleMuxer<MediaFormat> createNextMuxer(int segmentIndex) throws IOException {
+            if (listener == null) throw new IOException("No listener to provide the next segment file.");
+            File nextSegmentFile = listener.getNextSegmentFile(segmentIndex);
+            return componentFactory.createMuxer(config, nextSegmentFile);
+        }
+
+        @Override
+        public void onSegmentFinalized(int segmentIndex, boolean valid) {
+            if (listener != null) listener.onSegmentFinalized(segmentIndex, valid);
+        }
+    };
+
+    @Override
+    public void prepare(Surface persistentInputSurface) throws IOException {
+        try {
+            videoCodec = componentFactory.createVideoCodec(config, persistentInputSurface);
+            if (config.isAudioEnabled()) {
+                audioCodec = componentFactory.createAudioCodec(config);
+                audioInput = componentFactory.createAudioInput(config);
+            }
+
+            long maxDurationUs = config.getMaxDuration() > 0 ? config.getMaxDuration() * 1000L : MuxerSession.NO_LIMIT;
+            muxerSession = new MuxerSession<>(componentFactory.createMuxer(config, config.getOutputFile()),
+                    audioCodec != null ? 2 : 1, config.getMaxFileSize(), maxDurationUs, listener);
+            if (config.getSegmentSize() > 0) muxerSession.setSegmentation(config.getSegmentSize(), segmentCallback);
+
+            if (config.getPreRollDuration() > 0) {
+                preRollBuffer = new PreRollBuffer(config.getPreRollDuration() * 1000L, getPreRollMaxBytes());
+                muxerSession.holdSamples(preRollBuffer);
+            }
+
+            videoTrack = new TrackEncoder<>(videoCodec, muxerSession, true);
+            videoCodec.start();
+
+            if (audioCodec != null) {
+                audioTrack = new TrackEncoder<>(audioCodec, muxerSession, false);
+                pcmFeeder = new PcmFeeder(audioInput, audioCodec, config.getAudioSampleRate(), config.getAudioChannels());
+                audioCodec.start();
+            }
+        } catch (IOException error) {
+            release();
+            throw error;
+        } catch (RuntimeException error) {
+            release();
+            throw new IOException("Can't prepare encoders: " + error.getMessage());
+        }
+    }
+
+    @Override
+    public Surface getInputSurface() {
+        EncoderCodec<MediaFormat> codec = videoCodec;
+        return codec != null ? componentFactory.getInputSurface(codec) : null;
+    }
+
+    @Override
+    public void startPreRoll() {
+        if (preRollBuffer != null && !running) startEncoding();
+    }
+
+    @Override
+    public void start() {
+        if (recording || videoTrack == null) return;
+
+        recording = true;
+        if (!running) startEncoding();
+        muxerSession.releaseHeldSamples();
+    }
+
+    private void startEncoding() {
+        running = true;
+        stopRequested = false;
+        synchronized (threadLock) {
+            runningThreads = audioTrack != null ? 2 : 1;
+        }
+
+        final EncoderCodec<MediaFormat> videoCodec = this.videoCodec;
+        final TrackEncoder<MediaFormat> videoTrack = this.videoTrack;
+        videoThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!stopRequested) videoTrack.drain(false);
+
+                    videoCodec.signalEndOfInputStream();
+                    videoTrack.drain(true);
+                } catch (RuntimeException error) {
+                    Log.e(TAG, "Video encoding failed: " + error.getMessage());
+                    notifyError();
+                } finally {
+                    onThreadFinished();
+                }
+            }
+        }, "AnncaVideoEncoder");
+        videoThread.start();
+
+        if (audioTrack == null) return;
+
+        final TrackEncoder<MediaFormat> audioTrack = this.audioTrack;
+        final PcmFeeder pcmFeeder = this.pcmFeeder;
+        audioThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pcmFeeder.start(getCurrentTimeUs());
+                    while (!stopRequested) {
+                        pcmFeeder.feed(false);
+                        audioTrack.drain(false);
+                    }
+                    pcmFeeder.stop();
+
+                    while (!pcmFeeder.feed(true)) audioTrack.drain(false);
+                    audioTrack.drain(true);
+                } catch (RuntimeException error) {
+                    Log.e(TAG, "Audio encoding failed: " + error.getMessage());
+                    notifyError();
+                } finally {
+                    onThreadFinished();
+                }
+            }
+        }, "AnncaAudioEncoder");
+        audioThread.start();
+    }
+
+    /***
+     * @return false if the file isn't valid, or if the encoding threads didn't finish in time,
+     * then the file is finalized when they finish
+     */
+    @Override
+    public boolean stop() {
+        if (!running) return false;
+
+        stopRequested = true;
+        join(videoThread);
+        join(audioThread);
+        videoThread = null;
+        audioThread = null;
+        running = false;
+        recording = false;
+        paused = false;
+
+        synchronized (threadLock) {
+            if (runningThreads > 0) {
+                Log.e(TAG, "Encoding threads didn't stop in " + STOP_TIMEOUT_MS + " ms.");
+                releasePending = true;
+                return false;
+            }
+        }
+        boolean result = muxerSession.stop();
+        releaseComponents();
+        return result;
+    }
+
+    @Override
+    public boolean pause() {
+        if (!recording || paused) return false;
+
+        muxerSession.pause();
+        paused = true;
+        return true;
+    }
+
+    @Override
+    public boolean resume() {
+        if (!recording || !paused) return false;
+
+        muxerSession.resume();
+        paused = false;
+
+        EncoderCodec codec = videoCodec;
+        if (codec == null) return true;
+        try {
+            // otherwise the output waits for the next scheduled key frame
+            codec.requestKeyFrame();
+        } catch (RuntimeException error) {
+            Log.e(TAG, "Can't request key frame: " + error.getMessage());
+        }
+        return true;
+    }
+
+    @Override
+    public void release() {
+        if (running) stop();
+        synchronized (threadLock) {
+            if (releasePending) return;
+        }
+        if (muxerSession != null) muxerSession.stop();
+        releaseComponents();
+    }
+
+    @Override
+    public boolean setVideoBitRate(int bitRate) {
+        EncoderCodec codec = videoCodec;
+        if (!running || codec == null) return false;
+        try {
+            codec.setVideoBitRate(bitRate);
+            return true;
+        } catch (RuntimeException error) {
+            Log.e(TAG, "Can't change video bit rate: " + error.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public long getWrittenBytes() {
+        return muxerSession != null ? muxerSession.getWrittenBytes() : 0;
+    }
+
+    @Override
+    public long getPreRollBufferedBytes() {
+        PreRollBuffer buffer = preRollBuffer;
+        return buffer != null && !recording ? buffer.getBufferedBytes() : 0;
+    }
+
+    /***
+     * Double of the nominal size of the pre-roll and one more group of pictures, the encoder can overshoot.
+     */
+    private long getPreRollMaxBytes() {
+        long bytesPerSecond = (config.getVideoBitRate() + (config.isAudioEnabled() ? config.getAudioBitRate() : 0)) / 8;
+        return bytesPerSecond * (config.getPreRollDuration() + config.getKeyFrameInterval() * 1000L) / 1000 * 2;
+    }
+
+    private long getCurrentTimeUs() {
+        // camera frames are stamped with the sensor clock, audio has to be on the same time base
+        return config.isRealtimeClock() ? SystemClock.elapsedRealtimeNanos() / 1000 : System.nanoTime() / 1000;
+    }
+
+    private void onThreadFinished() {
+        synchronized (threadLock) {
+            if (--runningThreads > 0 || !releasePending) return;
+            releasePending = false;
+        }
+        muxerSession.stop();
+        releaseComponents();
+    }
+
+    private void releaseComponents() {
+        if (audioInput != null) {
+            audioInput.release();
+            audioInput = null;
+        }
+        releaseCodec(audioCodec);
+        audioCodec = null;
+        releaseCodec(videoCodec);
+        videoCodec = null;
+
+        videoTrack = null;
+        audioTrack = null;
+        pcmFeeder = null;
+        if (preRollBuffer != null) {
+            preRollBuffer.clear();
+            preRollBuffer = null;
+        }
+    }
+
+    private void releaseCodec(EncoderCodec<?> codec) {
+        if (codec == null) return;
+        try {
+            codec.stop();
+        } catch (RuntimeException ignore) {
+        }
+        codec.release();
+    }
+
+    private void join(Thread thread) {
+        if (thread == null) return;
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void notifyError() {
+        stopRequested = true;
+        if (listener != null) listener.onEncoderError();
+    }
+
+    private static final class AndroidComponentFactory implements ComponentFactory {
+
+        @Override
+        public EncoderCodec<MediaFormat> createVideoCodec(EncoderConfig config, Surface persistentInputSurface) throws IOException {
+            return AndroidEncoderCodec.createVideoEncoder(config, persistentInputSurface);
+        }
+
+        @Override
+        public Surface getInputSurface(EncoderCodec<MediaFormat> videoCodec) {
+            return ((AndroidEncoderCodec) videoCodec).getInputSurface();
+        }
+
+        @Override
+        public EncoderCodec<MediaFormat> createAudioCodec(EncoderConfig config) throws IOException {
+            return AndroidEncoderCodec.createAudioEncoder(config);
+        }
+
+        @Override
+        public AudioInput createAudioInput(EncoderConfig config) {
+            return new AudioRecordInput(config);
+        }
+
+        @Override
+        public SampleMuxer<MediaFormat> createMuxer(EncoderConfig config, File outputFile) throws IOException {
+            return new AndroidSampleMuxer(config, outputFile);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the samples of all tracks into one muxer. Samples produced before every track
+ * has its format are kept in a ring until the muxer can be started, timestamps of all tracks are
+ * rebased to the first written sample and kept strictly increasing per track.
+ * While a pre-roll buffer is set all the samples go to it instead of the muxer.
+ * With a segment size set the output continues into the next muxer at the first video key frame
+ * after the current one reaches the size, so no frame is lost between the files. The finished muxer
+ * is stopped on a background thread, the samples keep going to the next one meanwhile.
+ * While paused the samples are dropped, the paused time is cut out of the timeline on resume.
+ */
+final class MuxerSession<F> {
+
+    static final long NO_LIMIT = -1;
+
+    interface SegmentCallback<F> {
+
+        /***
+         * Called on the writing thread when the segment is full.
+         *
+         * @return muxer for the next segment
+         */
+        SampleMuxer<F> createNextMuxer(int segmentIndex) throws IOException;
+
+        /***
+         * Called on the finalizing thread when the muxer of the segment is stopped and released.
+         *
+         * @param valid - false if the muxer failed to stop, the file isn't playable
+         */
+        void onSegmentFinalized(int segmentIndex, boolean valid);
+    }
+
+    private static final String TAG = "MuxerSession";
+
+    private static final int MAX_PENDING_BYTES = 4 * 1024 * 1024;
+    private static final long FINALIZE_TIMEOUT_MS = 3000;
+
+    private SampleMuxer<F> muxer;
+    private final int expectedTracks;
+    private final long maxFileSize;
+    private final long maxDurationUs;
+    private final VideoEncoderEngine.Listener listener;
+
+    // no duration limit, the ring is allocated only if a sample comes before all the tracks are added
+    private final PreRollBuffer pendingSamples = new PreRollBuffer(Long.MAX_VALUE, MAX_PENDING_BYTES);
+    private final SampleInfo rebasedInfo = new SampleInfo();
+    private final long[] lastTimeUs;
+    private final long[] lastTrackSourceTimeUs;
+    private final List<F> trackFormats = new ArrayList<>();
+
+    private long segmentSize = NO_LIMIT;
+    private SegmentCallback<F> segmentCallback;
+    private int segmentIndex = 0;
+    private long segmentBytes = 0;
+    private long firstBaseTimeUs = -1;
+    // created with the first finished segment
+    private ExecutorService segmentFinalizer;
+
+    private PreRollBuffer preRollBuffer;
+    private int videoTrackIndex = -1;
+
+    private int addedTracks = 0;
+    private boolean started = false;
+    private boolean stopped = false;
+    private boolean limitReached = false;
+
+    private boolean paused = false;
+    private boolean resumePending = false;
+    private long resumeTimeUs = -1;
+    private long pausedDurationUs = 0;
+    private long lastSourceTimeUs = -1;
+
+    private long baseTimeUs = -1;
+    private long writtenBytes = 0;
+    private long writtenSamples = 0;
+    private long droppedSamples = 0;
+
+    private final PreRollBuffer.SampleConsumer heldSampleWriter = new PreRollBuffer.SampleConsumer() {
+        @Override
+        public void onSample(int trackIndex, ByteBuffer buffer, SampleInfo info) {
+            writeSample(trackIndex, buffer, info);
+        }
+    };
+
+    private final PreRollBuffer.SampleConsumer pendingSampleWriter = new PreRollBuffer.SampleConsumer() {
+        @Override
+        public void onSample(int trackIndex, ByteBuffer buffer, SampleInfo info) {
+            write(trackIndex, buffer, info);
+        }
+    };
+
+    MuxerSession(SampleMuxer<F> muxer, int expectedTracks, long maxFileSize, long maxDurationUs,
+                 VideoEncoderEngine.Listener listener) {
+        if (expectedTracks < 1) throw new IllegalArgumentException("At least one track is expected.");
+        this.muxer = muxer;
+        this.expectedTracks = expectedTracks;
+        this.maxFileSize = maxFileSize;
+        this.maxDurationUs = maxDurationUs;
+        this.listener = listener;
+        this.lastTimeUs = new long[expectedTracks];
+        this.lastTrackSourceTimeUs = new long[expectedTracks];
+        Arrays.fill(lastTimeUs, -1);
+        Arrays.fill(lastTrackSourceTimeUs, -1);
+    }
+
+    synchronized int addTrack(F format, boolean video) {
+        if (started || addedTracks >= expectedTracks)
+            throw new IllegalStateException("All tracks are already added.");
+
+        int trackIndex = muxer.addTrack(format);
+        trackFormats.add(format);
+        if (video) {
+            videoTrackIndex = trackIndex;
+            pendingSamples.setVideoTrackIndex(trackIndex);
+            if (preRollBuffer != null) preRollBuffer.setVideoTrackIndex(trackIndex);
+        }
+        if (++addedTracks == expectedTracks) {
+            muxer.start();
+            started = true;
+            writePendingSamples();
+        }
+        return trackIndex;
+    }
+
+    synchronized void writeSample(int trackIndex, ByteBuffer buffer, SampleInfo sampleInfo) {
+        // codec specific data is already a part of the track format
+        if (stopped || sampleInfo.size <= 0 || sampleInfo.isCodecConfig()) return;
+        if (paused || !acceptAfterResume(trackIndex, sampleInfo)) return;
+
+        if (preRollBuffer != null) preRollBuffer.add(trackIndex, buffer, sampleInfo);
+        else if (started) write(trackIndex, buffer, sampleInfo);
+        else pendingSamples.add(trackIndex, buffer, sampleInfo);
+    }
+
+    synchronized void setSegmentation(long segmentSize, SegmentCallback<F> segmentCallback) {
+        this.segmentSize = segmentSize;
+        this.segmentCallback = segmentCallback;
+    }
+
+    /***
+     * Keeps the samples in the buffer until {@link #releaseHeldSamples()} is called.
+     */
+    synchronized void holdSamples(PreRollBuffer preRollBuffer) {
+        this.preRollBuffer = preRollBuffer;
+        if (videoTrackIndex >= 0) preRollBuffer.setVideoTrackIndex(videoTrackIndex);
+    }
+
+    /***
+     * Writes the held samples starting from a video key frame, all the next samples are written directly.
+     */
+    synchronized void releaseHeldSamples() {
+        PreRollBuffer buffer = preRollBuffer;
+        if (buffer == null) return;
+
+        preRollBuffer = null;
+        buffer.drain(heldSampleWriter);
+    }
+
+    synchronized void pause() {
+        paused = true;
+        resumePending = false;
+    }
+
+    /***
+     * The output continues from the next video key frame, the samples of other tracks before it are dropped.
+     */
+    synchronized void resume() {
+        if (!paused) return;
+        paused = false;
+        resumePending = lastSourceTimeUs >= 0;
+    }
+
+    synchronized boolean isPaused() {
+        return paused;
+    }
+
+    synchronized long getPausedDurationUs() {
+        return pausedDurationUs;
+    }
+
+    /***
+     * Waits for the finished segments to be finalized too.
+     *
+     * @return true if at least one sample was written and the file is valid
+     */
+    synchronized boolean stop() {
+        if (stopped) return writtenSamples > 0;
+        stopped = true;
+        droppedSamples += pendingSamples.getSampleCount();
+        pendingSamples.clear();
+
+        boolean result = false;
+        if (muxer != null) {
+            result = finalizeMuxer(muxer, started, segmentBytes > 0);
+            muxer = null;
+        }
+        awaitSegmentsFinalized();
+        return result;
+    }
+
+    synchronized boolean isStarted() {
+        return started;
+    }
+
+    synchronized long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    synchronized long getWrittenSamples() {
+        return writtenSamples;
+    }
+
+    synchronized long getDroppedSamples() {
+        return droppedSamples + pendingSamples.getEvictedSamples();
+    }
+
+    synchronized int getSegmentIndex() {
+        return segmentIndex;
+    }
+
+    private boolean acceptAfterResume(int trackIndex, SampleInfo sampleInfo) {
+        if (resumePending) {
+            if (trackIndex != videoTrackIndex || !sampleInfo.isKeyFrame()) return false;
+
+            // the first frame after resume follows the last written one
+            resumePending = false;
+            resumeTimeUs = sampleInfo.presentationTimeUs;
+            pausedDurationUs += sampleInfo.presentationTimeUs - pausedDurationUs - lastSourceTimeUs;
+        }
+        return resumeTimeUs < 0 || sampleInfo.presentationTimeUs >= resumeTimeUs;
+    }
+
+    private void write(int trackIndex, ByteBuffer buffer, SampleInfo sampleInfo) {
+        long sourceTimeUs = sampleInfo.presentationTimeUs - pausedDurationUs;
+
+        if (segmentSize > 0 && segmentBytes >= segmentSize
+                && trackIndex == videoTrackIndex && sampleInfo.isKeyFrame()) {
+            startNextSegment(sourceTimeUs);
+        }
+
+        if (baseTimeUs < 0) baseTimeUs = sourceTimeUs;
+        if (firstBaseTimeUs < 0) firstBaseTimeUs = baseTimeUs;
+
+        long timeUs = sourceTimeUs - baseTimeUs;
+        if (timeUs < 0) {
+            // captured before the first written sample of the other track
+            droppedSamples++;
+            return;
+        }
+        if (timeUs <= lastTimeUs[trackIndex]) timeUs = lastTimeUs[trackIndex] + 1;
+        lastTimeUs[trackIndex] = timeUs;
+        if (sourceTimeUs > lastTrackSourceTimeUs[trackIndex]) lastTrackSourceTimeUs[trackIndex] = sourceTimeUs;
+
+        rebasedInfo.set(sampleInfo.offset, sampleInfo.size, timeUs, sampleInfo.flags);
+        muxer.writeSampleData(trackIndex, buffer, rebasedInfo);
+        writtenBytes += sampleInfo.size;
+        segmentBytes += sampleInfo.size;
+        writtenSamples++;
+        if (sourceTimeUs > lastSourceTimeUs) lastSourceTimeUs = sourceTimeUs;
+
+        checkLimits(sourceTimeUs - firstBaseTimeUs);
+    }
+
+    private void startNextSegment(long keyFrameTimeUs) {
+        finalizeInBackground(muxer, segmentIndex);
+        muxer = null;
+
+        try {
+            muxer = segmentCallback.createNextMuxer(segmentIndex);
+        } catch (IOException error) {
+            stopped = true;
+            throw new IllegalStateException("Can't start the next segment: " + error.getMessage());
+        }
+        for (F format : trackFormats) muxer.addTrack(format);
+        muxer.start();
+
+        segmentIndex++;
+        segmentBytes = 0;
+        baseTimeUs = getSegmentBaseTimeUs(keyFrameTimeUs);
+        Arrays.fill(lastTimeUs, -1);
+    }
+
+    /***
+     * Other tracks can lag behind the video, their samples after the last written ones can be older
+     * than the key frame, the segment starts early enough to take them.
+     */
+    private long getSegmentBaseTimeUs(long keyFrameTimeUs) {
+        long baseTimeUs = keyFrameTimeUs;
+        for (int i = 0; i < lastTrackSourceTimeUs.length; i++) {
+            if (i == videoTrackIndex || lastTrackSourceTimeUs[i] < 0) continue;
+            baseTimeUs = Math.min(baseTimeUs, lastTrackSourceTimeUs[i] + 1);
+        }
+        return baseTimeUs;
+    }
+
+    private void finalizeInBackground(final SampleMuxer<F> finishedMuxer, final int finishedSegmentIndex) {
+        if (segmentFinalizer == null) segmentFinalizer = Executors.newSingleThreadExecutor();
+        final SegmentCallback<F> callback = segmentCallback;
+        try {
+            segmentFinalizer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onSegmentFinalized(finishedSegmentIndex, finalizeMuxer(finishedMuxer, true, true));
+                }
+            });
+        } catch (RejectedExecutionException error) {
+            callback.onSegmentFinalized(finishedSegmentIndex, finalizeMuxer(finishedMuxer, true, true));
+        }
+    }
+
+    private void awaitSegmentsFinalized() {
+        if (segmentFinalizer == null) return;
+        segmentFinalizer.shutdown();
+        try {
+            if (!segmentFinalizer.awaitTermination(FINALIZE_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                Log.e(TAG, "Segments aren't finalized in " + FINALIZE_TIMEOUT_MS + " ms.");
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /***
+     * @return true if the muxer is stopped with samples and its file is valid
+     */
+    private static boolean finalizeMuxer(SampleMuxer<?> muxer, boolean started, boolean hasSamples) {
+        boolean result = false;
+        try {
+            if (started) {
+                muxer.stop();
+                result = hasSamples;
+            }
+        } catch (RuntimeException error) {
+            // muxer throws if stopped without samples
+            if (hasSamples) Log.e(TAG, "Can't stop the muxer: " + error.getMessage());
+        } finally {
+            muxer.release();
+        }
+        return result;
+    }
+
+    private void checkLimits(long timeUs) {
+        if (limitReached || listener == null) return;
+
+        if (maxFileSize > 0 && writtenBytes >= maxFileSize) {
+            limitReached = true;
+            listener.onMaxFileSizeReached();
+        } else if (maxDurationUs > 0 && timeUs >= maxDurationUs) {
+            limitReached = true;
+            listener.onMaxDurationReached();
+        }
+    }
+
+    private void writePendingSamples() {
+        long earliestTimeUs = pendingSamples.getEarliestTimeUs();
+        if (earliestTimeUs >= 0 && (baseTimeUs < 0 || earliestTimeUs < baseTimeUs)) baseTimeUs = earliestTimeUs;
+        pendingSamples.drain(pendingSampleWriter);
+    }
+}
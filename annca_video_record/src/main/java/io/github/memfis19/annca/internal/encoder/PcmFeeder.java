@@ -0,0 +1,74 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Feeds the audio codec from the audio input. Timestamps are derived from the number of samples read,
+ * so they don't jitter with the read calls.
+ */
+final class PcmFeeder {
+
+    private static final int BYTES_PER_SAMPLE = 2;
+
+    private final AudioInput audioInput;
+    private final EncoderCodec<?> codec;
+    private final int sampleRate;
+    private final int bytesPerFrame;
+
+    private long startTimeUs = -1;
+    private long framesRead = 0;
+    private boolean endOfStreamQueued = false;
+
+    PcmFeeder(AudioInput audioInput, EncoderCodec<?> codec, int sampleRate, int channelCount) {
+        this.audioInput = audioInput;
+        this.codec = codec;
+        this.sampleRate = sampleRate;
+        this.bytesPerFrame = BYTES_PER_SAMPLE * channelCount;
+    }
+
+    /***
+     * @param startTimeUs - time of the first sample in the clock of the video frames
+     */
+    void start(long startTimeUs) {
+        this.startTimeUs = startTimeUs;
+        this.framesRead = 0;
+        audioInput.start();
+    }
+
+    /***
+     * Reads one buffer of samples if the codec has a free input buffer.
+     *
+     * @param endOfStream - queue the end of stream instead of samples
+     * @return false if there was no free input buffer
+     */
+    boolean feed(boolean endOfStream) {
+        if (endOfStreamQueued) return true;
+
+        int index = codec.dequeueInputBuffer(TrackEncoder.TIMEOUT_US);
+        if (index < 0) return false;
+
+        ByteBuffer buffer = codec.getInputBuffer(index);
+        int read = 0;
+        if (!endOfStream && buffer != null) {
+            buffer.clear();
+            // whole frames only, so the sample count stays exact
+            int size = buffer.remaining() - buffer.remaining() % bytesPerFrame;
+            read = Math.max(0, audioInput.read(buffer, size));
+        }
+
+        codec.queueInputBuffer(index, read, getPresentationTimeUs(),
+                endOfStream ? SampleInfo.FLAG_END_OF_STREAM : 0);
+        framesRead += read / bytesPerFrame;
+
+        if (endOfStream) endOfStreamQueued = true;
+        return true;
+    }
+
+    long getPresentationTimeUs() {
+        return startTimeUs + framesRead * 1000000L / sampleRate;
+    }
+
+    void stop() {
+        audioInput.stop();
+    }
+}
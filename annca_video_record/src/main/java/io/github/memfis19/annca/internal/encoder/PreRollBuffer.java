@@ -0,0 +1,323 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bounded ring of the latest encoded samples kept before the recording starts.
+ * Samples are copied into one byte ring and described by a ring of index entries, so nothing is
+ * allocated per sample. Samples are evicted by whole groups of pictures, so the ring always starts
+ * with a video key frame. The newest group of pictures is kept even when it's over the byte limit,
+ * the ring grows for it up to the double of the limit.
+ */
+final class PreRollBuffer {
+
+    interface SampleConsumer {
+
+        /***
+         * @param buffer - the ring, valid only during the call, the sample starts at the offset of the info
+         */
+        void onSample(int trackIndex, ByteBuffer buffer, SampleInfo info);
+    }
+
+    private static final int INITIAL_CAPACITY = 256 * 1024;
+    private static final int INITIAL_INDEX_CAPACITY = 64;
+
+    private final long durationUs;
+    private final long maxBytes;
+    private final int maxCapacity;
+
+    // allocated with the first sample
+    private ByteBuffer ring;
+    private int writePosition = 0;
+
+    private int[] trackIndexes = new int[INITIAL_INDEX_CAPACITY];
+    private int[] offsets = new int[INITIAL_INDEX_CAPACITY];
+    private int[] sizes = new int[INITIAL_INDEX_CAPACITY];
+    private long[] timesUs = new long[INITIAL_INDEX_CAPACITY];
+    private int[] flags = new int[INITIAL_INDEX_CAPACITY];
+    private int head = 0;
+    private int count = 0;
+
+    private final SampleInfo drainedInfo = new SampleInfo();
+
+    private int videoTrackIndex = -1;
+    private long bufferedBytes = 0;
+    private long evictedBytes = 0;
+    private long evictedSamples = 0;
+
+    PreRollBuffer(long durationUs, long maxBytes) {
+        if (durationUs <= 0 || maxBytes <= 0) throw new IllegalArgumentException("Duration and size have to be > 0.");
+        this.durationUs = durationUs;
+        this.maxBytes = maxBytes;
+        this.maxCapacity = (int) Math.min(Integer.MAX_VALUE, maxBytes * 2);
+    }
+
+    synchronized void setVideoTrackIndex(int videoTrackIndex) {
+        this.videoTrackIndex = videoTrackIndex;
+    }
+
+    synchronized void add(int trackIndex, ByteBuffer buffer, SampleInfo sampleInfo) {
+        int size = sampleInfo.size;
+        if (size <= 0) return;
+        if (size > maxCapacity) {
+            // can't be kept at all, the buffered samples can't be continued without it
+            evictSamples(count);
+            evictedBytes += size;
+            evictedSamples++;
+            return;
+        }
+
+        while (bufferedBytes + size > maxBytes && evictOldestGroup()) ;
+
+        int position;
+        while ((position = findSpace(size)) < 0) {
+            if (getCapacity() < maxBytes && grow(size, maxBytes)) continue;
+            if (evictOldestGroup() || compact(size) || grow(size, maxCapacity)) continue;
+            // the newest group of pictures is over the double of the limit, nothing aligned can be kept
+            evictSamples(count);
+        }
+
+        int limit = buffer.limit();
+        int sourcePosition = buffer.position();
+        try {
+            buffer.limit(sampleInfo.offset + size);
+            buffer.position(sampleInfo.offset);
+            ring.clear();
+            ring.position(position);
+            ring.put(buffer);
+        } finally {
+            buffer.limit(limit);
+            buffer.position(sourcePosition);
+        }
+
+        if (count == trackIndexes.length) growIndex();
+        int slot = slot(count++);
+        trackIndexes[slot] = trackIndex;
+        offsets[slot] = position;
+        sizes[slot] = size;
+        timesUs[slot] = sampleInfo.presentationTimeUs;
+        flags[slot] = sampleInfo.flags;
+        writePosition = position + size;
+        bufferedBytes += size;
+
+        trimToDuration(sampleInfo.presentationTimeUs);
+    }
+
+    /***
+     * Passes all the samples starting from the first video key frame to the consumer and clears the buffer,
+     * samples before the key frame are discarded.
+     */
+    synchronized void drain(SampleConsumer consumer) {
+        int first = getFirstDrainedSample();
+        for (int i = 0; i < count; i++) {
+            int slot = slot(i);
+            if (first < 0 || i < first) {
+                evictedBytes += sizes[slot];
+                evictedSamples++;
+                continue;
+            }
+            drainedInfo.set(offsets[slot], sizes[slot], timesUs[slot], flags[slot]);
+            consumer.onSample(trackIndexes[slot], ring, drainedInfo);
+        }
+        clear();
+    }
+
+    /***
+     * @return the earliest time of the samples {@link #drain(SampleConsumer)} would pass, -1 if there are none
+     */
+    synchronized long getEarliestTimeUs() {
+        int first = getFirstDrainedSample();
+        if (first < 0) return -1;
+
+        long earliestTimeUs = Long.MAX_VALUE;
+        for (int i = first; i < count; i++) earliestTimeUs = Math.min(earliestTimeUs, timesUs[slot(i)]);
+        return earliestTimeUs;
+    }
+
+    /***
+     * The ring stays allocated for the next samples.
+     */
+    synchronized void clear() {
+        head = 0;
+        count = 0;
+        writePosition = 0;
+        bufferedBytes = 0;
+    }
+
+    synchronized int getSampleCount() {
+        return count;
+    }
+
+    synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    synchronized long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    synchronized long getEvictedSamples() {
+        return evictedSamples;
+    }
+
+    /***
+     * @return time between the oldest and the newest buffered sample in microseconds
+     */
+    synchronized long getBufferedDurationUs() {
+        if (count == 0) return 0;
+        return timesUs[slot(count - 1)] - timesUs[head];
+    }
+
+    synchronized int getCapacity() {
+        return ring != null ? ring.capacity() : 0;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private int slot(int index) {
+        return (head + index) % trackIndexes.length;
+    }
+
+    private void trimToDuration(long newestTimeUs) {
+        while (count > 1) {
+            int nextKeyFrame = findKeyFrameAfterHead();
+            if (nextKeyFrame < 0 || newestTimeUs - timesUs[slot(nextKeyFrame)] < durationUs) return;
+            evictSamples(nextKeyFrame);
+        }
+    }
+
+    /***
+     * @return false if the oldest group of pictures is the newest one, it's kept
+     */
+    private boolean evictOldestGroup() {
+        if (count == 0) return false;
+        if (videoTrackIndex < 0) {
+            // no video yet, nothing to align to
+            evictSamples(1);
+            return true;
+        }
+        int nextKeyFrame = findKeyFrameAfterHead();
+        if (nextKeyFrame < 0) return false;
+        evictSamples(nextKeyFrame);
+        return true;
+    }
+
+    private int findKeyFrameAfterHead() {
+        for (int i = 1; i < count; i++) {
+            if (isVideoKeyFrame(slot(i))) return i;
+        }
+        return -1;
+    }
+
+    private int getFirstDrainedSample() {
+        if (videoTrackIndex < 0) return 0;
+        for (int i = 0; i < count; i++) {
+            if (isVideoKeyFrame(slot(i))) return i;
+        }
+        return -1;
+    }
+
+    private void evictSamples(int samples) {
+        for (int i = 0; i < samples; i++) {
+            bufferedBytes -= sizes[head];
+            evictedBytes += sizes[head];
+            evictedSamples++;
+            head = slot(1);
+            count--;
+        }
+        if (count == 0) {
+            head = 0;
+            writePosition = 0;
+        }
+    }
+
+    /***
+     * @return position of a free contiguous space in the ring, -1 if there is none
+     */
+    private int findSpace(int size) {
+        int capacity = getCapacity();
+        if (count == 0) return size <= capacity ? 0 : -1;
+
+        int headOffset = offsets[head];
+        if (writePosition > headOffset) {
+            if (writePosition + size <= capacity) return writePosition;
+            // wraps around, the end of the ring is left unused
+            return size <= headOffset ? 0 : -1;
+        }
+        return writePosition + size <= headOffset ? writePosition : -1;
+    }
+
+    /***
+     * Moves the samples to the start of the ring when they don't wrap around, so the free space is in one piece.
+     *
+     * @return false if the samples can't be moved or the new one doesn't fit even then
+     */
+    private boolean compact(int size) {
+        if (count == 0 || bufferedBytes + size > getCapacity()) return false;
+
+        int headOffset = offsets[head];
+        if (headOffset == 0 || writePosition <= headOffset) return false;
+
+        ring.clear();
+        ring.position(headOffset);
+        ring.limit(writePosition);
+        ring.compact();
+        for (int i = 0; i < count; i++) offsets[slot(i)] -= headOffset;
+        writePosition -= headOffset;
+        return true;
+    }
+
+    /***
+     * Moves the samples to the start of a larger ring.
+     *
+     * @return false if the ring can't hold the samples with the new one within the capacity limit
+     */
+    private boolean grow(int size, long capacityLimit) {
+        long required = bufferedBytes + size;
+        if (required > capacityLimit) return false;
+
+        int capacity = getCapacity();
+        long newCapacity = Math.max(required, capacity > 0 ? capacity * 2L : INITIAL_CAPACITY);
+        ByteBuffer newRing = ByteBuffer.allocateDirect((int) Math.min(capacityLimit, newCapacity));
+        for (int i = 0; i < count; i++) {
+            int slot = slot(i);
+            ring.clear();
+            ring.position(offsets[slot]);
+            ring.limit(offsets[slot] + sizes[slot]);
+            offsets[slot] = newRing.position();
+            newRing.put(ring);
+        }
+        writePosition = newRing.position();
+        ring = newRing;
+        return true;
+    }
+
+    private void growIndex() {
+        int capacity = trackIndexes.length * 2;
+        int[] newTrackIndexes = new int[capacity];
+        int[] newOffsets = new int[capacity];
+        int[] newSizes = new int[capacity];
+        long[] newTimesUs = new long[capacity];
+        int[] newFlags = new int[capacity];
+        for (int i = 0; i < count; i++) {
+            int slot = slot(i);
+            newTrackIndexes[i] = trackIndexes[slot];
+            newOffsets[i] = offsets[slot];
+            newSizes[i] = sizes[slot];
+            newTimesUs[i] = timesUs[slot];
+            newFlags[i] = flags[slot];
+        }
+        trackIndexes = newTrackIndexes;
+        offsets = newOffsets;
+        sizes = newSizes;
+        timesUs = newTimesUs;
+        flags = newFlags;
+        head = 0;
+    }
+
+    private boolean isVideoKeyFrame(int slot) {
+        return trackIndexes[slot] == videoTrackIndex && (flags[slot] & SampleInfo.FLAG_KEY_FRAME) != 0;
+    }
+}
@@ -0,0 +1,19 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Subset of MediaMuxer used by the engine, the track format is the output format of {@link EncoderCodec}.
+ */
+public interface SampleMuxer<F> {
+
+    int addTrack(F format);
+
+    void start();
+
+    void writeSampleData(int trackIndex, ByteBuffer buffer, SampleInfo sampleInfo);
+
+    void stop();
+
+    void release();
+}
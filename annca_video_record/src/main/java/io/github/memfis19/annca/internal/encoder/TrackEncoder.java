@@ -0,0 +1,61 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Moves encoded samples of one codec into the muxer session.
+ */
+final class TrackEncoder<F> {
+
+    static final long TIMEOUT_US = 10000;
+
+    // how long to wait for the end of stream before giving up on a stuck codec
+    private static final int MAX_END_OF_STREAM_RETRIES = 200;
+
+    private final EncoderCodec<F> codec;
+    private final MuxerSession<F> muxerSession;
+    private final boolean video;
+    private final SampleInfo sampleInfo = new SampleInfo();
+
+    private int trackIndex = -1;
+    private boolean endOfStream = false;
+
+    TrackEncoder(EncoderCodec<F> codec, MuxerSession<F> muxerSession, boolean video) {
+        this.codec = codec;
+        this.muxerSession = muxerSession;
+        this.video = video;
+    }
+
+    /***
+     * Drains all the samples available at the moment.
+     *
+     * @param untilEndOfStream - keep waiting for the samples until the codec reports the end of stream
+     * @return true if the end of stream is reached
+     */
+    boolean drain(boolean untilEndOfStream) {
+        int retries = 0;
+        while (!endOfStream) {
+            int index = codec.dequeueOutputBuffer(sampleInfo, TIMEOUT_US);
+            if (index == EncoderCodec.INFO_TRY_AGAIN_LATER) {
+                if (!untilEndOfStream) return false;
+                if (++retries > MAX_END_OF_STREAM_RETRIES) {
+                    endOfStream = true;
+                    return false;
+                }
+            } else if (index == EncoderCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                trackIndex = muxerSession.addTrack(codec.getOutputFormat(), video);
+            } else if (index >= 0) {
+                ByteBuffer buffer = codec.getOutputBuffer(index);
+                if (trackIndex >= 0 && buffer != null) muxerSession.writeSample(trackIndex, buffer, sampleInfo);
+                codec.releaseOutputBuffer(index);
+
+                if (sampleInfo.isEndOfStream()) endOfStream = true;
+            }
+        }
+        return true;
+    }
+
+    int getTrackIndex() {
+        return trackIndex;
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Recording engine fed by the camera through its input surface,
+ * an alternative to MediaRecorder when the encoded stream has to be controlled.
+ */
+public interface VideoEncoderEngine {
+
+    interface Listener {
+
+        void onMaxDurationReached();
+
+        void onMaxFileSizeReached();
+
+        void onEncoderError();
+
+        /***
+         * Called on the encoder thread when a segment is full, its file is finalized in the background.
+         *
+         * @return file for the next segment
+         */
+        File getNextSegmentFile(int segmentIndex);
+
+        /***
+         * Called on the finalizing thread when the file of the segment is complete,
+         * all the segments before the last one are finalized when {@link #stop()} returns.
+         *
+         * @param valid - false if the file can't be finalized
+         */
+        void onSegmentFinalized(int segmentIndex, boolean valid);
+    }
+
+    /***
+     * Configures and starts the encoders, the input surface is available after this call.
+     *
+     * @param persistentInputSurface - surface created with MediaCodec.createPersistentInputSurface(), or null
+     */
+    void prepare(Surface persistentInputSurface) throws IOException;
+
+    Surface getInputSurface();
+
+    /***
+     * Starts encoding into the pre-roll buffer, no-op if the pre-roll isn't configured.
+     */
+    void startPreRoll();
+
+    /***
+     * Starts writing to the file, the content of the pre-roll buffer is written first.
+     */
+    void start();
+
+    /***
+     * Blocks until all the encoded samples are written and the file is finalized.
+     *
+     * @return false if nothing was recorded
+     */
+    boolean stop();
+
+    /***
+     * Stops writing the samples, the file stays open and the encoders keep running.
+     *
+     * @return false if the engine isn't recording
+     */
+    boolean pause();
+
+    /***
+     * Continues writing from the next video key frame, the paused time is cut out of the file timeline.
+     *
+     * @return false if the engine isn't paused
+     */
+    boolean resume();
+
+    /***
+     * Changes the video bit rate during recording.
+     *
+     * @return false if the engine can't change it
+     */
+    boolean setVideoBitRate(int bitRate);
+
+    /***
+     * @return bytes written to the file so far
+     */
+    long getWrittenBytes();
+
+    /***
+     * @return memory used by the encoded samples kept for the pre-roll
+     */
+    long getPreRollBufferedBytes();
+
+    void release();
+}
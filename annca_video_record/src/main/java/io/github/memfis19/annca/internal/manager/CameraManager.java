@@ -3,15 +3,23 @@ package io.github.memfis19.annca.internal.manager;
 import android.content.Context;
 
 import java.io.File;
+import java.util.List;
 
+import io.github.memfis19.annca.internal.analysis.FrameAnalyzer;
 import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
 import io.github.memfis19.annca.internal.configuration.ConfigurationProvider;
 import io.github.memfis19.annca.internal.manager.impl.CameraHandler;
 import io.github.memfis19.annca.internal.manager.impl.ParametersHandler;
+import io.github.memfis19.annca.internal.manager.listener.BitrateListener;
+import io.github.memfis19.annca.internal.manager.listener.BurstListener;
+import io.github.memfis19.annca.internal.manager.listener.CaptureMetadataListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraCloseListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraOpenListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraPhotoListener;
+import io.github.memfis19.annca.internal.manager.listener.CameraReconfigureListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraVideoListener;
+import io.github.memfis19.annca.internal.manager.listener.VideoSegmentListener;
+import io.github.memfis19.annca.internal.output.OutputSink;
 import io.github.memfis19.annca.internal.utils.Size;
 
 /**
@@ -29,12 +37,47 @@ public interface CameraManager<CameraId, SurfaceListener, CameraParameters, Came
 
     void takePhoto(File photoFile, CameraPhotoListener cameraPhotoListener);
 
+    /***
+     * Writes the photo to the sink, the listener gets the file of the sink, null if it doesn't write to a file.
+     */
+    void takePhoto(OutputSink photoSink, CameraPhotoListener cameraPhotoListener);
+
+    void takeBurst(int count, BurstListener burstListener);
+
     void startVideoRecord(File videoFile, CameraVideoListener cameraVideoListener);
 
+    /***
+     * Records the video to the sink, it has to give a seekable descriptor unless it writes to a file.
+     * The recording isn't split into segments then, the listener gets the file of the sink or null.
+     */
+    void startVideoRecord(OutputSink videoSink, CameraVideoListener cameraVideoListener);
+
     Size getPhotoSizeForQuality(@AnncaConfiguration.MediaQuality int mediaQuality);
 
+    /***
+     * Applies the changed media quality to the open camera, only the outputs which differ are recreated.
+     */
+    void reconfigureOutputs(CameraReconfigureListener reconfigureListener);
+
     void stopVideoRecord();
 
+    /***
+     * Pauses the recording, the output file and the capture session stay open.
+     */
+    void pauseVideoRecord();
+
+    /***
+     * Continues the paused recording in the same output file.
+     */
+    void resumeVideoRecord();
+
+    boolean isVideoRecordPaused();
+
+    /***
+     * @return false if the recording can't be paused with the current recorder
+     */
+    boolean isVideoRecordPauseSupported();
+
     void releaseCameraManager();
 
     CameraId getCurrentCameraId();
@@ -51,6 +94,80 @@ public interface CameraManager<CameraId, SurfaceListener, CameraParameters, Came
 
     boolean isVideoRecording();
 
+    /***
+     * @return time in milliseconds from the last start request to the first frame sent to the recorder, -1 if unknown.
+     * Camera1 doesn't deliver the recorded frames, there it's the time to the start of the recorder.
+     */
+    long getVideoRecordStartLatency();
+
+    /***
+     * Called before the current camera is closed to open the other one, starts measuring the switch time.
+     */
+    void onCameraSwitchRequested();
+
+    /***
+     * @return time in milliseconds from the last switch request to the first frame of the new camera, -1 if unknown
+     */
+    long getCameraSwitchTime();
+
+    /***
+     * @return memory in bytes used by the encoded video kept before the recording start
+     */
+    long getPreRollBufferedBytes();
+
+    /***
+     * @return frames the camera didn't deliver to the recorder during the last recording, -1 if unknown
+     */
+    long getDroppedVideoFrames();
+
+    /***
+     * @return frames dropped while the photos were taken during the last recording, -1 if unknown
+     */
+    long getVideoSnapshotDroppedFrames();
+
+    /***
+     * @return counters of the camera control, the file writing and the callback queues
+     */
+    List<QueueStats> getQueueStats();
+
+    /***
+     * Listener of the metadata of each frame, null to stop receiving it. Only Camera2 reports the metadata.
+     */
+    void setCaptureMetadataListener(CaptureMetadataListener captureMetadataListener);
+
+    /***
+     * @return dropped frames, frame rate and exposure of the frames since the camera was opened, null if unknown
+     */
+    CaptureMetrics getCaptureMetrics();
+
+    /***
+     * @return frame rate and frame intervals of the running preview, null if the preview frames can't be observed
+     */
+    PreviewHealth getPreviewHealth();
+
+    /***
+     * Camera1 observes the preview frames only with the preview callback, which copies every frame, so its preview
+     * is monitored only with frame analyzers or when the monitoring is enabled. Camera2 monitors it all the time.
+     */
+    void setPreviewHealthMonitoringEnabled(boolean enabled);
+
+    /***
+     * Listener of the bit rate control, it's active only when the video file size is limited.
+     */
+    void setBitrateListener(BitrateListener bitrateListener);
+
+    /***
+     * Listener of the finalized files, used when the recording is split into segments.
+     */
+    void setVideoSegmentListener(VideoSegmentListener videoSegmentListener);
+
+    /***
+     * Adds the analyzer of the preview frames, each analyzer gets the frames on its own thread.
+     */
+    void addFrameAnalyzer(FrameAnalyzer frameAnalyzer, @FrameAnalyzer.Backpressure int backpressure);
+
+    void removeFrameAnalyzer(FrameAnalyzer frameAnalyzer);
+
     boolean handleParameters(ParametersHandler<CameraParameters> parameters);
 
     void handleCamera(CameraHandler<Camera> cameraHandler);
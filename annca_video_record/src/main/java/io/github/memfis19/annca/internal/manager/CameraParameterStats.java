@@ -0,0 +1,46 @@
+package io.github.memfis19.annca.internal.manager;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Snapshot of the Camera1 getParameters() and setParameters() calls since the camera was opened. Each call flattens
+ * and parses all the parameters across the binder, the calls are counted per operation which made them.
+ */
+public final class CameraParameterStats {
+
+    private final long roundTrips;
+    private final Map<String, Long> roundTripsByOperation;
+
+    /***
+     * @param roundTripsByOperation - copy owned by the snapshot
+     */
+    public CameraParameterStats(long roundTrips, Map<String, Long> roundTripsByOperation) {
+        this.roundTrips = roundTrips;
+        this.roundTripsByOperation = Collections.unmodifiableMap(roundTripsByOperation);
+    }
+
+    public long getRoundTrips() {
+        return roundTrips;
+    }
+
+    /***
+     * @return round trips of each operation, e.g. "start preview" or "set flash mode"
+     */
+    public Map<String, Long> getRoundTripsByOperation() {
+        return roundTripsByOperation;
+    }
+
+    /***
+     * @return 0 if the operation made no round trips
+     */
+    public long getRoundTrips(String operation) {
+        Long roundTrips = roundTripsByOperation.get(operation);
+        return roundTrips != null ? roundTrips : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "round trips: " + roundTrips + ", by operation: " + roundTripsByOperation;
+    }
+}
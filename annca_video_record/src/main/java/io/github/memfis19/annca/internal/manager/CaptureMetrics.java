@@ -0,0 +1,97 @@
+package io.github.memfis19.annca.internal.manager;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of the metadata of the frames captured since the camera was opened. The frame rate and
+ * the averages are computed over the recent frames, the counters and the histogram over all of them.
+ */
+public final class CaptureMetrics {
+
+    // upper bounds of the exposure histogram buckets in nanoseconds: 1/1000, 1/250, 1/125, 1/60, 1/30 and 1/15 s
+    private static final long[] EXPOSURE_BUCKET_BOUNDS = {
+            1000000L, 4000000L, 8000000L, 16666667L, 33333333L, 66666667L};
+
+    private final long frames;
+    private final long droppedFrames;
+    private final float effectiveFps;
+    private final long averageExposureTime;
+    private final int averageSensitivity;
+    private final long[] exposureHistogram;
+
+    public CaptureMetrics(long frames, long droppedFrames, float effectiveFps,
+                          long averageExposureTime, int averageSensitivity, long[] exposureHistogram) {
+        this.frames = frames;
+        this.droppedFrames = droppedFrames;
+        this.effectiveFps = effectiveFps;
+        this.averageExposureTime = averageExposureTime;
+        this.averageSensitivity = averageSensitivity;
+        this.exposureHistogram = exposureHistogram.clone();
+    }
+
+    /***
+     * @return number of the buckets of the exposure histogram, the last one has no upper bound
+     */
+    public static int getExposureBucketCount() {
+        return EXPOSURE_BUCKET_BOUNDS.length + 1;
+    }
+
+    /***
+     * @return exclusive upper bound of the bucket in nanoseconds, Long.MAX_VALUE for the last bucket
+     */
+    public static long getExposureBucketBound(int bucket) {
+        return bucket < EXPOSURE_BUCKET_BOUNDS.length ? EXPOSURE_BUCKET_BOUNDS[bucket] : Long.MAX_VALUE;
+    }
+
+    public static int getExposureBucket(long exposureTime) {
+        int bucket = 0;
+        while (bucket < EXPOSURE_BUCKET_BOUNDS.length && exposureTime >= EXPOSURE_BUCKET_BOUNDS[bucket]) bucket++;
+        return bucket;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /***
+     * @return frames missing between the completed ones, by the frame numbers or the sensor timestamps
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /***
+     * @return frames per second delivered by the camera, measured by the sensor timestamps of the recent frames
+     */
+    public float getEffectiveFps() {
+        return effectiveFps;
+    }
+
+    /***
+     * @return average exposure time of the recent frames in nanoseconds, -1 if unknown
+     */
+    public long getAverageExposureTime() {
+        return averageExposureTime;
+    }
+
+    /***
+     * @return average ISO sensitivity of the recent frames, -1 if unknown
+     */
+    public int getAverageSensitivity() {
+        return averageSensitivity;
+    }
+
+    /***
+     * @return frames counted in each exposure bucket, see {@link #getExposureBucketBound(int)}
+     */
+    public long[] getExposureHistogram() {
+        return exposureHistogram.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "frames: " + frames + ", dropped: " + droppedFrames + ", fps: " + effectiveFps
+                + ", average exposure, ns: " + averageExposureTime + ", average iso: " + averageSensitivity
+                + ", exposure histogram: " + Arrays.toString(exposureHistogram);
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.memfis19.annca.internal.manager;
+
+/**
+ * Values of one completed capture reported by the camera, -1 if the camera didn't report the value.
+ */
+public final class FrameMetadata {
+
+    private final long frameNumber;
+    private final long sensorTimestamp;
+    private final long exposureTime;
+    private final int sensitivity;
+
+    public FrameMetadata(long frameNumber, long sensorTimestamp, long exposureTime, int sensitivity) {
+        this.frameNumber = frameNumber;
+        this.sensorTimestamp = sensorTimestamp;
+        this.exposureTime = exposureTime;
+        this.sensitivity = sensitivity;
+    }
+
+    /***
+     * @return number of the frame in the capture session, it grows by one for each request
+     */
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    /***
+     * @return start of the exposure in nanoseconds
+     */
+    public long getSensorTimestamp() {
+        return sensorTimestamp;
+    }
+
+    /***
+     * @return exposure time in nanoseconds
+     */
+    public long getExposureTime() {
+        return exposureTime;
+    }
+
+    /***
+     * @return ISO sensitivity
+     */
+    public int getSensitivity() {
+        return sensitivity;
+    }
+
+    @Override
+    public String toString() {
+        return "frame: " + frameNumber + ", timestamp: " + sensorTimestamp
+                + ", exposure, ns: " + exposureTime + ", iso: " + sensitivity;
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.memfis19.annca.internal.manager;
+
+/**
+ * Snapshot of the preview frame delivery. Intervals are measured between the frames delivered to the preview
+ * over the recent frames, the frame and stall counters since the preview was started.
+ */
+public final class PreviewHealth {
+
+    private final long frames;
+    private final float fps;
+    private final float medianIntervalMillis;
+    private final float p90IntervalMillis;
+    private final float p99IntervalMillis;
+    private final float maxIntervalMillis;
+    private final long stalls;
+    private final boolean stalled;
+
+    public PreviewHealth(long frames, float fps, float medianIntervalMillis, float p90IntervalMillis,
+                         float p99IntervalMillis, float maxIntervalMillis, long stalls, boolean stalled) {
+        this.frames = frames;
+        this.fps = fps;
+        this.medianIntervalMillis = medianIntervalMillis;
+        this.p90IntervalMillis = p90IntervalMillis;
+        this.p99IntervalMillis = p99IntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.stalls = stalls;
+        this.stalled = stalled;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public float getFps() {
+        return fps;
+    }
+
+    public float getMedianIntervalMillis() {
+        return medianIntervalMillis;
+    }
+
+    public float getP90IntervalMillis() {
+        return p90IntervalMillis;
+    }
+
+    public float getP99IntervalMillis() {
+        return p99IntervalMillis;
+    }
+
+    public float getMaxIntervalMillis() {
+        return maxIntervalMillis;
+    }
+
+    /***
+     * @return intervals between the frames longer than the stall threshold
+     */
+    public long getStalls() {
+        return stalls;
+    }
+
+    /***
+     * @return true if there was no frame for longer than the stall threshold at the moment of the snapshot
+     */
+    public boolean isStalled() {
+        return stalled;
+    }
+
+    @Override
+    public String toString() {
+        return "frames: " + frames + ", fps: " + fps + ", interval p50, ms: " + medianIntervalMillis
+                + ", p90, ms: " + p90IntervalMillis + ", p99, ms: " + p99IntervalMillis
+                + ", max, ms: " + maxIntervalMillis + ", stalls: " + stalls + (stalled ? ", stalled" : "");
+    }
+}
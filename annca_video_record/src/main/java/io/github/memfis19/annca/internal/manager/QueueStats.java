@@ -0,0 +1,57 @@
+package io.github.memfis19.annca.internal.manager;
+
+/**
+ * Snapshot of the counters of one task queue of the camera manager. Wait time is measured
+ * from posting a task to the start of its execution.
+ */
+public final class QueueStats {
+
+    private final String name;
+    private final int depth;
+    private final int maxDepth;
+    private final long executedTasks;
+    private final long totalWaitMillis;
+    private final long maxWaitMillis;
+
+    public QueueStats(String name, int depth, int maxDepth, long executedTasks, long totalWaitMillis, long maxWaitMillis) {
+        this.name = name;
+        this.depth = depth;
+        this.maxDepth = maxDepth;
+        this.executedTasks = executedTasks;
+        this.totalWaitMillis = totalWaitMillis;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /***
+     * @return tasks posted and not finished yet, including the running one
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getExecutedTasks() {
+        return executedTasks;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public float getAverageWaitMillis() {
+        return executedTasks > 0 ? (float) totalWaitMillis / executedTasks : 0;
+    }
+
+    @Override
+    public String toString() {
+        return name + " depth: " + depth + ", max depth: " + maxDepth + ", executed: " + executedTasks
+                + ", average wait, ms: " + getAverageWaitMillis() + ", max wait, ms: " + maxWaitMillis;
+    }
+}
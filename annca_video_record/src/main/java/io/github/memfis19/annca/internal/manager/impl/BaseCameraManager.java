@@ -1,5 +1,6 @@
 package io.github.memfis19.annca.internal.manager.impl;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.media.CamcorderProfile;
 import android.media.MediaRecorder;
@@ -8,10 +9,33 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.memfis19.annca.internal.analysis.FrameAnalyzer;
+import io.github.memfis19.annca.internal.analysis.FrameDispatcher;
 import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
 import io.github.memfis19.annca.internal.configuration.ConfigurationProvider;
+import io.github.memfis19.annca.internal.manager.CaptureMetrics;
+import io.github.memfis19.annca.internal.manager.PreviewHealth;
+import io.github.memfis19.annca.internal.manager.QueueStats;
+import io.github.memfis19.annca.internal.manager.listener.BitrateListener;
+import io.github.memfis19.annca.internal.manager.listener.BurstListener;
+import io.github.memfis19.annca.internal.manager.listener.CaptureMetadataListener;
+import io.github.memfis19.annca.internal.manager.listener.CameraReconfigureListener;
+import io.github.memfis19.annca.internal.manager.listener.CameraVideoListener;
+import io.github.memfis19.annca.internal.manager.listener.VideoSegmentListener;
+import io.github.memfis19.annca.internal.output.OutputSink;
+import io.github.memfis19.annca.internal.utils.AtomicOutputFile;
+import io.github.memfis19.annca.internal.utils.CameraHelper;
 import io.github.memfis19.annca.internal.utils.Size;
 
 /**
@@ -22,11 +46,42 @@ abstract class BaseCameraManager<CameraId, SurfaceListener, CameraParameters, Ca
 
     private static final String TAG = "BaseCameraManager";
 
+    /***
+     * Photos waiting for the file writing thread, the one being written is not counted.
+     */
+    static final int IO_QUEUE_SIZE = 2;
+
     protected Context context;
     ConfigurationProvider configurationProvider;
 
     MediaRecorder videoRecorder;
     boolean isVideoRecording = false;
+    boolean isVideoRecordPaused = false;
+    File videoOutputPath;
+    // set when the video is recorded to a sink without a file, the video output path is null then
+    OutputSink videoOutputSink;
+    BitrateListener bitrateListener;
+    VideoSegmentListener videoSegmentListener;
+
+    private File currentVideoSegmentFile;
+    private File nextVideoSegmentFile;
+    private int videoSegmentIndex = 0;
+
+    private File preparedVideoFile;
+    private int preparedVideoOrientation;
+    private long videoRecordRequestTime = -1;
+    private long videoRecordStartLatency = -1;
+
+    private final Map<CameraId, OutputConfig> outputConfigs = new HashMap<>();
+    private OutputConfig appliedOutputConfig;
+    private volatile long cameraSwitchRequestTime = -1;
+    private long cameraSwitchTime = -1;
+
+    volatile BurstSession burstSession;
+
+    final FrameDispatcher frameDispatcher = new FrameDispatcher();
+    final PreviewHealthMonitor previewHealthMonitor = new PreviewHealthMonitor();
+    volatile boolean previewHealthMonitoringEnabled = false;
 
     CameraId currentCameraId = null;
     CameraId faceFrontCameraId = null;
@@ -45,21 +100,92 @@ abstract class BaseCameraManager<CameraId, SurfaceListener, CameraParameters, Ca
     Handler backgroundHandler;
     Handler uiHandler = new Handler(Looper.getMainLooper());
 
+    // camera control runs on the background thread, the files are written on a separate one,
+    // so a photo being saved doesn't delay the capture results and the next capture
+    TaskQueue cameraQueue;
+    TaskQueue ioQueue;
+    final TaskQueue callbackQueue = TaskQueue.forHandler("AnncaCallbacks", uiHandler);
+
     @Override
     public void initializeCameraManager(ConfigurationProvider configurationProvider, Context context) {
         this.context = context;
         this.configurationProvider = configurationProvider;
+        clearOutputConfigs();
         startBackgroundThread();
+        deleteOrphanedOutputFiles(context);
     }
 
     @Override
     public void releaseCameraManager() {
         this.context = null;
+        clearOutputConfigs();
         stopBackgroundThread();
+        frameDispatcher.release();
     }
 
     protected abstract void prepareCameraOutputs();
 
+    /***
+     * @return sizes and profile of the camera for the current configuration, null if they can't be chosen
+     */
+    abstract OutputConfig createOutputConfig(CameraId cameraId);
+
+    /***
+     * @return configuration of the camera computed before, it's computed again only when the media quality has changed
+     */
+    OutputConfig getOutputConfig(CameraId cameraId) {
+        synchronized (outputConfigs) {
+            OutputConfig outputConfig = outputConfigs.get(cameraId);
+            if (outputConfig == null || outputConfig.getMediaQuality() != configurationProvider.getMediaQuality()) {
+                outputConfig = createOutputConfig(cameraId);
+                if (outputConfig != null) outputConfigs.put(cameraId, outputConfig);
+            }
+            return outputConfig;
+        }
+    }
+
+    void applyOutputConfig(OutputConfig outputConfig) {
+        appliedOutputConfig = outputConfig;
+        camcorderProfile = outputConfig.getCamcorderProfile();
+        previewSize = outputConfig.getPreviewSize();
+        photoSize = outputConfig.getPhotoSize();
+        videoSize = outputConfig.getVideoSize();
+    }
+
+    OutputConfig getAppliedOutputConfig() {
+        return appliedOutputConfig;
+    }
+
+    /***
+     * @return configuration for the changed media quality if it can be applied without reopening the camera, otherwise null
+     */
+    OutputConfig getReconfiguredOutputConfig() {
+        OutputConfig previous = appliedOutputConfig;
+        if (previous == null || isVideoRecording || burstSession != null) return null;
+
+        OutputConfig next = getOutputConfig(currentCameraId);
+        if (next == null || !next.hasSamePreview(previous)) return null;
+        return next;
+    }
+
+    void notifyOutputsReconfigured(final CameraReconfigureListener reconfigureListener, final boolean reconfigured) {
+        if (reconfigureListener == null) return;
+        callbackQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                if (reconfigured) reconfigureListener.onOutputsReconfigured();
+                else reconfigureListener.onReconfigureRequiresReopen();
+            }
+        });
+    }
+
+    private void clearOutputConfigs() {
+        synchronized (outputConfigs) {
+            outputConfigs.clear();
+        }
+        appliedOutputConfig = null;
+    }
+
     protected abstract boolean prepareVideoRecorder();
 
     protected abstract void onMaxDurationReached();
@@ -83,13 +209,492 @@ abstract class BaseCameraManager<CameraId, SurfaceListener, CameraParameters, Ca
         }
     }
 
+    /***
+     * Prepares the recorder for the next recording on the background thread,
+     * so the start of the recording doesn't wait for the output file and the encoders.
+     */
+    void prepareNextVideoRecorder() {
+        if (backgroundHandler == null) return;
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                prepareVideoRecorderInAdvance();
+            }
+        });
+    }
+
+    boolean hasVideoRecorder() {
+        return videoRecorder != null;
+    }
+
+    synchronized boolean prepareVideoRecorderInAdvance() {
+        if (hasVideoRecorder()) return preparedVideoFile != null;
+        if (isVideoRecording || context == null) return false;
+
+        File videoFile = CameraHelper.getOutputMediaFile(context, AnncaConfiguration.MEDIA_ACTION_VIDEO);
+        if (videoFile == null) return false;
+
+        videoOutputSink = null;
+        videoOutputPath = videoFile;
+        int videoOrientation = getVideoOrientation(configurationProvider.getSensorPosition());
+        if (!prepareVideoRecorder()) return false;
+
+        preparedVideoFile = videoFile;
+        preparedVideoOrientation = videoOrientation;
+        return true;
+    }
+
+    /***
+     * Prepares the recorder for the sink, the one prepared in advance is taken when the sink writes to a file.
+     *
+     * @return false if the recorder can't be prepared, the sink is aborted then
+     */
+    boolean prepareVideoOutput(OutputSink videoSink) {
+        File videoFile = videoSink.getFile();
+        if (videoFile != null) {
+            if (takePreparedVideoRecorder(videoFile)) return true;
+            videoOutputSink = null;
+            videoOutputPath = videoFile;
+        } else {
+            releasePreparedVideoRecorder();
+            videoOutputSink = videoSink;
+            videoOutputPath = null;
+        }
+        if (prepareVideoRecorder()) return true;
+
+        videoSink.abort();
+        return false;
+    }
+
+    /***
+     * Sets the descriptor of the sink as the output of the recorder, or the temp file of the video file.
+     */
+    void setVideoRecorderOutput(MediaRecorder mediaRecorder) throws IOException {
+        if (videoOutputSink == null) {
+            mediaRecorder.setOutputFile(getVideoRecordingFile(videoOutputPath).toString());
+            return;
+        }
+        FileDescriptor descriptor = videoOutputSink.openFileDescriptor();
+        if (descriptor == null) throw new IOException("Video can't be recorded to " + videoOutputSink);
+        mediaRecorder.setOutputFile(descriptor);
+    }
+
+    /***
+     * @return file the recorder writes the video to, it's renamed to the video file when the recording is finished
+     */
+    File getVideoRecordingFile(File videoFile) {
+        return AtomicOutputFile.getTempFile(videoFile);
+    }
+
+    /***
+     * Renames the completed output from its temp file, synced according to the configured policy.
+     */
+    boolean commitOutputFile(File file) {
+        return AtomicOutputFile.commit(file, configurationProvider.getOutputSyncPolicy());
+    }
+
+    /***
+     * The directory is swept once per process, before anything is written there, so the temp files of the outputs
+     * still written by another manager aren't deleted. The sweep is the first task of the camera thread:
+     * the recorders are prepared there and the photos are taken after the camera is opened there.
+     */
+    private void deleteOrphanedOutputFiles(final Context context) {
+        final File directory = CameraHelper.getOutputMediaDirectory(context);
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                AtomicOutputFile.deleteOrphanedTempFiles(directory);
+            }
+        });
+    }
+
+    /***
+     * Takes the recorder prepared in advance. Its output file is renamed to the requested one,
+     * the descriptor already opened by the recorder is not affected by the rename.
+     * The orientation hint can't be changed after prepare, the recorder is released if the device was rotated since.
+     *
+     * @return false if there is no prepared recorder with the current orientation
+     */
+    synchronized boolean takePreparedVideoRecorder(File videoFile) {
+        if (!hasVideoRecorder() || preparedVideoFile == null) return false;
+
+        if (preparedVideoOrientation != getVideoOrientation(configurationProvider.getSensorPosition())) {
+            releasePreparedVideoRecorder();
+            return false;
+        }
+
+        if (!preparedVideoFile.equals(videoFile)
+                && !getVideoRecordingFile(preparedVideoFile).renameTo(getVideoRecordingFile(videoFile))) {
+            releasePreparedVideoRecorder();
+            return false;
+        }
+        preparedVideoFile = null;
+        videoOutputSink = null;
+        videoOutputPath = videoFile;
+        return true;
+    }
+
+    /***
+     * @return true if there was a prepared recorder
+     */
+    synchronized boolean releasePreparedVideoRecorder() {
+        if (isVideoRecording || preparedVideoFile == null) return false;
+
+        releaseVideoRecorder();
+        if (!getVideoRecordingFile(preparedVideoFile).delete()) Log.d(TAG, "Can't delete unused video file.");
+        preparedVideoFile = null;
+        return true;
+    }
+
+    @Override
+    public boolean isVideoRecordPaused() {
+        return isVideoRecordPaused;
+    }
+
+    @Override
+    public boolean isVideoRecordPauseSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+    }
+
+    /***
+     * @return false if the recorder can't be paused
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    boolean pauseMediaRecorder() {
+        if (videoRecorder == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return false;
+        try {
+            videoRecorder.pause();
+            return true;
+        } catch (IllegalStateException error) {
+            Log.e(TAG, "Can't pause video recorder: " + error.getMessage());
+        }
+        return false;
+    }
+
+    /***
+     * @return false if the recorder can't be resumed
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    boolean resumeMediaRecorder() {
+        if (videoRecorder == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return false;
+        try {
+            videoRecorder.resume();
+            return true;
+        } catch (IllegalStateException error) {
+            Log.e(TAG, "Can't resume video recorder: " + error.getMessage());
+        }
+        return false;
+    }
+
+    void notifyVideoRecordPaused(final CameraVideoListener videoListener, final boolean paused) {
+        if (videoListener == null) return;
+        callbackQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                if (paused) videoListener.onVideoRecordPaused();
+                else videoListener.onVideoRecordResumed();
+            }
+        });
+    }
+
+    void onVideoRecordRequested() {
+        videoRecordRequestTime = SystemClock.elapsedRealtime();
+    }
+
+    void onVideoRecordFirstFrame() {
+        measureVideoRecordStartLatency();
+    }
+
+    /***
+     * Used when the frames sent to the recorder aren't delivered, the latency ends with the start of the recorder.
+     */
+    void onVideoRecorderStarted() {
+        measureVideoRecordStartLatency();
+    }
+
+    private void measureVideoRecordStartLatency() {
+        if (videoRecordRequestTime < 0) return;
+
+        videoRecordStartLatency = SystemClock.elapsedRealtime() - videoRecordRequestTime;
+        videoRecordRequestTime = -1;
+    }
+
+    @Override
+    public long getVideoRecordStartLatency() {
+        return videoRecordStartLatency;
+    }
+
+    @Override
+    public void onCameraSwitchRequested() {
+        cameraSwitchRequestTime = SystemClock.elapsedRealtime();
+    }
+
+    boolean isCameraSwitchPending() {
+        return cameraSwitchRequestTime >= 0;
+    }
+
+    void onCameraFirstFrame() {
+        long requestTime = cameraSwitchRequestTime;
+        if (requestTime < 0) return;
+
+        cameraSwitchRequestTime = -1;
+        cameraSwitchTime = SystemClock.elapsedRealtime() - requestTime;
+    }
+
+    @Override
+    public long getCameraSwitchTime() {
+        return cameraSwitchTime;
+    }
+
+    @Override
+    public long getPreRollBufferedBytes() {
+        return 0;
+    }
+
+    @Override
+    public long getDroppedVideoFrames() {
+        return -1;
+    }
+
+    @Override
+    public long getVideoSnapshotDroppedFrames() {
+        return -1;
+    }
+
+    @Override
+    public List<QueueStats> getQueueStats() {
+        List<QueueStats> queueStats = new ArrayList<>(3);
+        if (cameraQueue != null) queueStats.add(cameraQueue.getStats());
+        if (ioQueue != null) queueStats.add(ioQueue.getStats());
+        queueStats.add(callbackQueue.getStats());
+        return queueStats;
+    }
+
+    @Override
+    public void setCaptureMetadataListener(CaptureMetadataListener captureMetadataListener) {
+    }
+
+    @Override
+    public CaptureMetrics getCaptureMetrics() {
+        return null;
+    }
+
+    @Override
+    public PreviewHealth getPreviewHealth() {
+        return previewHealthMonitor.getHealth();
+    }
+
+    @Override
+    public void setPreviewHealthMonitoringEnabled(boolean enabled) {
+        previewHealthMonitoringEnabled = enabled;
+    }
+
+    @Override
+    public void addFrameAnalyzer(FrameAnalyzer frameAnalyzer, @FrameAnalyzer.Backpressure int backpressure) {
+        frameDispatcher.addAnalyzer(frameAnalyzer, backpressure);
+        onFrameAnalyzersChanged();
+    }
+
+    @Override
+    public void removeFrameAnalyzer(FrameAnalyzer frameAnalyzer) {
+        frameDispatcher.removeAnalyzer(frameAnalyzer);
+        onFrameAnalyzersChanged();
+    }
+
+    /***
+     * Starts or stops the frame stream when the first analyzer is added or the last one is removed.
+     */
+    abstract void onFrameAnalyzersChanged();
+
+    @Override
+    public void setVideoSegmentListener(VideoSegmentListener videoSegmentListener) {
+        this.videoSegmentListener = videoSegmentListener;
+    }
+
+    boolean isVideoSegmentationEnabled() {
+        return configurationProvider.getVideoSegmentSize() > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && videoOutputSink == null;
+    }
+
+    /***
+     * @return size limit of one recorder file, the segment size when the recording is split
+     */
+    long getRecorderMaxFileSize() {
+        return isVideoSegmentationEnabled() ? configurationProvider.getVideoSegmentSize() : configurationProvider.getVideoFileSize();
+    }
+
+    void startVideoSegments() {
+        currentVideoSegmentFile = videoOutputPath;
+        nextVideoSegmentFile = null;
+        videoSegmentIndex = 0;
+    }
+
+    File getNextVideoSegmentFile() {
+        return CameraHelper.getVideoSegmentFile(videoOutputPath, videoSegmentIndex + 1);
+    }
+
+    /***
+     * Hands the finalized segment to the listener, the next one becomes current.
+     */
+    void onVideoSegmentCompleted(File nextSegmentFile) {
+        if (currentVideoSegmentFile != null) notifyVideoSegmentCompleted(currentVideoSegmentFile, videoSegmentIndex);
+        startNextVideoSegment(nextSegmentFile);
+    }
+
+    /***
+     * The next segment becomes current while the completed one is still being finalized,
+     * it's handed to the listener by {@link #onVideoSegmentFinalized(int)}.
+     */
+    void startNextVideoSegment(File nextSegmentFile) {
+        currentVideoSegmentFile = nextSegmentFile;
+        videoSegmentIndex++;
+    }
+
+    void onVideoSegmentFinalized(int segmentIndex) {
+        File firstSegmentFile = videoOutputPath;
+        if (firstSegmentFile == null) return;
+        notifyVideoSegmentCompleted(CameraHelper.getVideoSegmentFile(firstSegmentFile, segmentIndex), segmentIndex);
+    }
+
+    /***
+     * Called after the recorder is stopped, the video file or its last segment is committed with it.
+     */
+    void finishVideoOutput() {
+        if (videoOutputSink != null) {
+            videoOutputSink.commit(configurationProvider.getOutputSyncPolicy());
+            return;
+        }
+        if (!isVideoSegmentationEnabled()) {
+            if (videoOutputPath != null) commitOutputFile(videoOutputPath);
+            return;
+        }
+        if (currentVideoSegmentFile == null) return;
+
+        notifyVideoSegmentCompleted(currentVideoSegmentFile, videoSegmentIndex);
+        currentVideoSegmentFile = null;
+        nextVideoSegmentFile = null;
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private void setNextVideoSegmentFile(MediaRecorder mediaRecorder) {
+        if (nextVideoSegmentFile != null) return;
+
+        File segmentFile = getNextVideoSegmentFile();
+        try {
+            mediaRecorder.setNextOutputFile(getVideoRecordingFile(segmentFile));
+            nextVideoSegmentFile = segmentFile;
+        } catch (IOException error) {
+            // the recording stops when the current file is full
+            Log.e(TAG, "Can't set next video segment: " + error.getMessage());
+        } catch (IllegalStateException error) {
+            Log.e(TAG, "Can't set next video segment: " + error.getMessage());
+        }
+    }
+
+    /***
+     * The segment is committed on the thread that completed it, the listener can read it right away.
+     */
+    private void notifyVideoSegmentCompleted(final File segmentFile, final int segmentIndex) {
+        if (!commitOutputFile(segmentFile)) return;
+
+        final VideoSegmentListener listener = videoSegmentListener;
+        if (listener == null || uiHandler == null) return;
+        callbackQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onVideoSegmentCompleted(segmentFile, segmentIndex);
+            }
+        });
+    }
+
+    @Override
+    public void setBitrateListener(BitrateListener bitrateListener) {
+        this.bitrateListener = bitrateListener;
+    }
+
+    void notifyBitrateChanged(final int videoBitRate, final long measuredBitRate,
+                              final long writtenBytes, final long elapsedMillis) {
+        final BitrateListener listener = bitrateListener;
+        if (listener == null || uiHandler == null) return;
+        callbackQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onBitrateChanged(videoBitRate, measuredBitRate, writtenBytes, elapsedMillis);
+            }
+        });
+    }
+
+    void onBurstFrameSaved(final BurstSession session, final int frameIndex) {
+        final BurstListener burstListener = session.getBurstListener();
+        final File frameFile = session.getFile(frameIndex);
+        boolean finished = session.onFrameSaved();
+
+        if (burstListener != null) {
+            callbackQueue.post(new Runnable() {
+                @Override
+                public void run() {
+                    burstListener.onBurstFrameSaved(frameFile, frameIndex);
+                }
+            });
+        }
+        if (finished) finishBurst(session);
+    }
+
+    void onBurstFrameFailed(BurstSession session) {
+        if (session.onFrameFailed()) finishBurst(session);
+    }
+
+    /***
+     * Marks all frames which were not captured yet as failed, used when the camera can't continue the burst.
+     */
+    void abortBurst(BurstSession session) {
+        while (session.hasPendingCaptures()) {
+            session.nextFrameIndex();
+            onBurstFrameFailed(session);
+        }
+    }
+
+    void notifyBurstError(final BurstListener burstListener) {
+        if (burstListener == null) return;
+        callbackQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                burstListener.onBurstError();
+            }
+        });
+    }
+
+    private void finishBurst(final BurstSession session) {
+        if (burstSession == session) burstSession = null;
+
+        final BurstListener burstListener = session.getBurstListener();
+        if (burstListener == null) return;
+
+        if (session.hasFailedFrames()) {
+            notifyBurstError(burstListener);
+        } else {
+            final float framesPerSecond = session.getFramesPerSecond();
+            callbackQueue.post(new Runnable() {
+                @Override
+                public void run() {
+                    burstListener.onBurstCompleted(session.getFiles(), framesPerSecond);
+                }
+            });
+        }
+    }
+
     private void startBackgroundThread() {
         backgroundThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
         backgroundThread.start();
         backgroundHandler = new Handler(backgroundThread.getLooper());
+        cameraQueue = TaskQueue.forHandler("AnncaCamera", backgroundHandler);
+        ioQueue = TaskQueue.newBounded("AnncaIo", IO_QUEUE_SIZE);
     }
 
     private void stopBackgroundThread() {
+        // pending photos are still written, the queues are kept for their counters
+        if (ioQueue != null) ioQueue.release();
+
         if(backgroundThread!=null){
             if (Build.VERSION.SDK_INT > 17) {
                 backgroundThread.quitSafely();
@@ -112,6 +717,11 @@ abstract class BaseCameraManager<CameraId, SurfaceListener, CameraParameters, Ca
             onMaxDurationReached();
         } else if (MediaRecorder.MEDIA_RECORDER_INFO_MAX_FILESIZE_REACHED == what) {
             onMaxFileSizeReached();
+        } else if (MediaRecorder.MEDIA_RECORDER_INFO_MAX_FILESIZE_APPROACHING == what) {
+            if (isVideoSegmentationEnabled()) setNextVideoSegmentFile(mediaRecorder);
+        } else if (MediaRecorder.MEDIA_RECORDER_INFO_NEXT_OUTPUT_FILE_STARTED == what) {
+            onVideoSegmentCompleted(nextVideoSegmentFile);
+            nextVideoSegmentFile = null;
         }
     }
 
@@ -0,0 +1,118 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import android.os.SystemClock;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import io.github.memfis19.annca.internal.manager.listener.BurstListener;
+
+/**
+ * State of one burst: per frame output files and frame counters. Frames are written on the bounded
+ * file writing queue of the manager while the camera keeps capturing. The camera is held back to
+ * {@link #MAX_FRAMES_IN_FLIGHT} frames being written, a frame the queue still rejects is failed.
+ */
+final class BurstSession {
+
+    /***
+     * The frame being written and the frames waiting in the file writing queue.
+     */
+    static final int MAX_FRAMES_IN_FLIGHT = BaseCameraManager.IO_QUEUE_SIZE + 1;
+
+    private final List<File> files;
+    private final BurstListener burstListener;
+    private final Executor writeExecutor;
+
+    private final long startTime;
+    private long lastFrameTime;
+
+    private int capturedFrames = 0;
+    private int savedFrames = 0;
+    private int failedFrames = 0;
+
+    BurstSession(List<File> files, BurstListener burstListener, Executor writeExecutor) {
+        this.files = files;
+        this.burstListener = burstListener;
+        this.writeExecutor = writeExecutor;
+        this.startTime = SystemClock.elapsedRealtime();
+        this.lastFrameTime = startTime;
+    }
+
+    BurstListener getBurstListener() {
+        return burstListener;
+    }
+
+    int getFrameCount() {
+        return files.size();
+    }
+
+    synchronized boolean hasPendingCaptures() {
+        return capturedFrames < files.size();
+    }
+
+    synchronized int nextFrameIndex() {
+        return capturedFrames++;
+    }
+
+    File getFile(int frameIndex) {
+        return files.get(frameIndex);
+    }
+
+    /***
+     * @return false if the writing queue rejected the task, it's never run on the calling thread
+     */
+    boolean execute(Runnable writeTask) {
+        try {
+            writeExecutor.execute(writeTask);
+            return true;
+        } catch (RejectedExecutionException ignore) {
+            return false;
+        }
+    }
+
+    /***
+     * @return frames captured but not saved or failed yet
+     */
+    synchronized int getFramesInFlight() {
+        return capturedFrames - savedFrames - failedFrames;
+    }
+
+    /***
+     * @return true if it was the last frame of the burst
+     */
+    synchronized boolean onFrameSaved() {
+        savedFrames++;
+        lastFrameTime = SystemClock.elapsedRealtime();
+        return isFinished();
+    }
+
+    /***
+     * @return true if it was the last frame of the burst
+     */
+    synchronized boolean onFrameFailed() {
+        failedFrames++;
+        lastFrameTime = SystemClock.elapsedRealtime();
+        return isFinished();
+    }
+
+    synchronized boolean hasFailedFrames() {
+        return failedFrames > 0;
+    }
+
+    List<File> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    synchronized float getFramesPerSecond() {
+        long duration = lastFrameTime - startTime;
+        if (duration <= 0) return 0;
+        return savedFrames * 1000f / duration;
+    }
+
+    private boolean isFinished() {
+        return savedFrames + failedFrames >= files.size();
+    }
+}
@@ -1,8 +1,10 @@
 package io.github.memfis19.annca.internal.manager.impl;
 
 import android.content.Context;
+import android.graphics.ImageFormat;
 import android.graphics.PixelFormat;
 import android.hardware.Camera;
+import android.media.CamcorderProfile;
 import android.media.ExifInterface;
 import android.media.MediaRecorder;
 import android.os.Build;
@@ -13,17 +15,27 @@ import android.view.WindowManager;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
+import io.github.memfis19.annca.internal.analysis.PreviewBufferPool;
+import io.github.memfis19.annca.internal.analysis.PreviewBufferStats;
+import io.github.memfis19.annca.internal.analysis.PreviewFrameSource;
 import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
 import io.github.memfis19.annca.internal.configuration.ConfigurationProvider;
+import io.github.memfis19.annca.internal.manager.CameraParameterStats;
+import io.github.memfis19.annca.internal.manager.PreviewHealth;
+import io.github.memfis19.annca.internal.manager.listener.BurstListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraCloseListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraOpenListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraPhotoListener;
+import io.github.memfis19.annca.internal.manager.listener.CameraReconfigureListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraVideoListener;
+import io.github.memfis19.annca.internal.output.FileOutputSink;
+import io.github.memfis19.annca.internal.output.OutputSink;
 import io.github.memfis19.annca.internal.utils.CameraHelper;
+import io.github.memfis19.annca.internal.utils.JpegExifWriter;
 import io.github.memfis19.annca.internal.utils.Size;
 
 /**
@@ -34,8 +46,10 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
         implements SurfaceHolder.Callback, Camera.PictureCallback {
 
     private static final String TAG = "Camera1Manager";
+    private static final int PHOTO_JPEG_QUALITY = 75;
 
     private Camera camera;
+    private Camera1Parameters cameraParameters;
     private Surface surface;
 
     private static Camera1Manager currentInstance;
@@ -43,11 +57,69 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
     private int orientation;
     private int displayRotation = 0;
 
-    private File outputPath;
+    private final PreviewBufferPool previewBufferPool = new PreviewBufferPool();
+    private final PreviewFrameSource previewFrameSource = new PreviewFrameSource(frameDispatcher, previewBufferPool);
+
+    private final PreviewFrameSource.FrameTimestampListener previewTimestampListener = new PreviewFrameSource.FrameTimestampListener() {
+        @Override
+        public void onFrameTimestamp(long timestampNanos) {
+            previewHealthMonitor.onFrameTimestamp(timestampNanos);
+            onCameraFirstFrame();
+        }
+    };
+
+    // touched only on the camera thread
+    private boolean previewCallbackAttached = false;
+
+    private OutputSink photoSink;
     private CameraVideoListener videoListener;
     private CameraPhotoListener photoListener;
     private CameraOpenListener<Integer, SurfaceHolder.Callback> cameraOpenListener;
 
+    // camera thread only, the next burst picture isn't taken before the previous one is delivered
+    private boolean burstPictureRequested = false;
+
+    private Camera.PictureCallback burstPictureCallback = new Camera.PictureCallback() {
+        @Override
+        public void onPictureTaken(final byte[] bytes, Camera camera) {
+            burstPictureRequested = false;
+            final BurstSession session = burstSession;
+            if (session == null) return;
+
+            final int frameIndex = session.nextFrameIndex();
+            final File frameFile = session.getFile(frameIndex);
+            final int photoOrientation = getPhotoOrientation(configurationProvider.getSensorPosition());
+
+            boolean posted = session.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (savePicture(bytes, new FileOutputSink(frameFile), photoOrientation))
+                        onBurstFrameSaved(session, frameIndex);
+                    else onBurstFrameFailed(session);
+                    cameraQueue.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            takeNextBurstPicture(session);
+                        }
+                    });
+                }
+            });
+            if (!posted) {
+                Log.e(TAG, "File writing queue rejected the burst frame.");
+                onBurstFrameFailed(session);
+            }
+
+            try {
+                camera.startPreview();
+            } catch (Exception error) {
+                Log.e(TAG, "Can't continue burst: " + error.getMessage());
+                abortBurst(session);
+                return;
+            }
+            takeNextBurstPicture(session);
+        }
+    };
+
     private Camera1Manager() {
 
     }
@@ -62,14 +134,15 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
                            final CameraOpenListener<Integer, SurfaceHolder.Callback> cameraOpenListener) {
         this.currentCameraId = cameraId;
         this.cameraOpenListener = cameraOpenListener;
-        backgroundHandler.post(new Runnable() {
+        cameraQueue.post(new Runnable() {
             @Override
             public void run() {
                 try {
                     camera = Camera.open(cameraId);
+                    cameraParameters = new Camera1Parameters(camera);
                     prepareCameraOutputs();
                     if (cameraOpenListener != null) {
-                        uiHandler.post(new Runnable() {
+                        callbackQueue.post(new Runnable() {
                             @Override
                             public void run() {
                                 cameraOpenListener.onCameraOpened(cameraId, previewSize, currentInstance);
@@ -79,7 +152,7 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
                 } catch (Exception error) {
                     Log.d(TAG, "Can't open camera: " + error.getMessage());
                     if (cameraOpenListener != null) {
-                        uiHandler.post(new Runnable() {
+                        callbackQueue.post(new Runnable() {
                             @Override
                             public void run() {
                                 cameraOpenListener.onCameraOpenError();
@@ -94,14 +167,22 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
     @Override
     public void closeCamera(final CameraCloseListener<Integer> cameraCloseListener) {
         if(backgroundHandler!=null){
-            backgroundHandler.post(new Runnable() {
+            cameraQueue.post(new Runnable() {
                 @Override
                 public void run() {
+                    BurstSession session = burstSession;
+                    if (session != null) abortBurst(session);
+                    releasePreparedVideoRecorder();
+                    previewFrameSource.detach();
+                    previewCallbackAttached = false;
+                    previewHealthMonitor.stop();
+
                     if (camera != null) {
                         camera.release();
                         camera = null;
+                        cameraParameters = null;
                         if (cameraCloseListener != null && uiHandler!=null) {
-                            uiHandler.post(new Runnable() {
+                            callbackQueue.post(new Runnable() {
                                 @Override
                                 public void run() {
                                     cameraCloseListener.onCameraClosed(currentCameraId);
@@ -115,20 +196,71 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
     }
 
     @Override
-    public void setFlashMode(@AnncaConfiguration.FlashMode int flashMode) {
-        setFlashMode(camera, camera.getParameters(), flashMode);
+    public void setFlashMode(@AnncaConfiguration.FlashMode final int flashMode) {
+        if (backgroundHandler == null) return;
+        // the transaction can't interleave with the ones of the camera thread
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                Camera1Parameters cameraParameters = Camera1Manager.this.cameraParameters;
+                if (cameraParameters == null) return;
+
+                // prepared recorder keeps the camera unlocked, parameters can't be changed meanwhile
+                boolean recorderWasPrepared = releasePreparedVideoRecorder();
+                cameraParameters.begin("set flash mode");
+                setFlashMode(cameraParameters, flashMode);
+                cameraParameters.commit();
+                if (recorderWasPrepared) prepareNextVideoRecorder();
+            }
+        });
+    }
+
+    @Override
+    public void reconfigureOutputs(final CameraReconfigureListener reconfigureListener) {
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                OutputConfig previous = getAppliedOutputConfig();
+                OutputConfig next = camera != null ? getReconfiguredOutputConfig() : null;
+                if (next == null) {
+                    notifyOutputsReconfigured(reconfigureListener, false);
+                    return;
+                }
+                applyOutputConfig(next);
+
+                boolean reconfigured = true;
+                boolean photoChanged = !next.hasSamePhotoSize(previous);
+                boolean videoChanged = !next.hasSameVideo(previous);
+                if (photoChanged || videoChanged) {
+                    // prepared recorder keeps the camera unlocked and was prepared with the previous profile
+                    boolean recorderWasPrepared = releasePreparedVideoRecorder();
+                    if (photoChanged) {
+                        cameraParameters.begin("change picture size");
+                        cameraParameters.edit().setPictureSize(photoSize.getWidth(), photoSize.getHeight());
+                        reconfigured = cameraParameters.commit();
+                    }
+                    if (reconfigured && recorderWasPrepared) prepareNextVideoRecorder();
+                }
+                notifyOutputsReconfigured(reconfigureListener, reconfigured);
+            }
+        });
     }
 
     @Override
     public void takePhoto(File photoFile, CameraPhotoListener cameraPhotoListener) {
-        this.outputPath = photoFile;
+        takePhoto(photoFile != null ? new FileOutputSink(photoFile) : null, cameraPhotoListener);
+    }
+
+    @Override
+    public void takePhoto(OutputSink photoSink, CameraPhotoListener cameraPhotoListener) {
+        this.photoSink = photoSink;
         this.photoListener = cameraPhotoListener;
         if(backgroundHandler!=null){
-            backgroundHandler.post(new Runnable() {
+            cameraQueue.post(new Runnable() {
                 @Override
                 public void run() {
-                    setCameraPhotoQuality(camera);
                     if(camera!=null){
+                        setCameraPhotoQuality();
                         camera.takePicture(null, null, currentInstance);
                     }
                 }
@@ -137,20 +269,76 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
     }
 
     @Override
-    public void startVideoRecord(final File videoFile, CameraVideoListener cameraVideoListener) {
-        if (isVideoRecording) return;
+    public void takeBurst(final int count, final BurstListener burstListener) {
+        if (count < 1) return;
+        if (backgroundHandler == null) {
+            notifyBurstError(burstListener);
+            return;
+        }
+
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                if (camera == null || burstSession != null || isVideoRecording) {
+                    notifyBurstError(burstListener);
+                    return;
+                }
+
+                List<File> files = CameraHelper.getBurstOutputMediaFiles(context, count);
+                if (files == null) {
+                    notifyBurstError(burstListener);
+                    return;
+                }
+
+                setCameraPhotoQuality();
+
+                BurstSession session = new BurstSession(files, burstListener, ioQueue);
+                burstSession = session;
+                burstPictureRequested = false;
+                takeNextBurstPicture(session);
+            }
+        });
+    }
+
+    /***
+     * The next picture is taken only when the file writing queue has room for it, otherwise when a frame
+     * is written, so the camera is held back to the speed of the disk.
+     */
+    private void takeNextBurstPicture(BurstSession session) {
+        if (camera == null || burstSession != session || burstPictureRequested || !session.hasPendingCaptures()
+                || session.getFramesInFlight() >= BurstSession.MAX_FRAMES_IN_FLIGHT) return;
+
+        try {
+            camera.takePicture(null, null, burstPictureCallback);
+            burstPictureRequested = true;
+        } catch (Exception error) {
+            Log.e(TAG, "Can't take burst picture: " + error.getMessage());
+            abortBurst(session);
+        }
+    }
+
+    @Override
+    public void startVideoRecord(File videoFile, CameraVideoListener cameraVideoListener) {
+        startVideoRecord(videoFile != null ? new FileOutputSink(videoFile) : null, cameraVideoListener);
+    }
+
+    @Override
+    public void startVideoRecord(final OutputSink videoSink, CameraVideoListener cameraVideoListener) {
+        if (isVideoRecording || videoSink == null) return;
 
-        this.outputPath = videoFile;
         this.videoListener = cameraVideoListener;
+        onVideoRecordRequested();
 
         if (videoListener != null)
-            backgroundHandler.post(new Runnable() {
+            cameraQueue.post(new Runnable() {
                 @Override
                 public void run() {
-                    if (prepareVideoRecorder()) {
+                    if (prepareVideoOutput(videoSink)) {
                         videoRecorder.start();
                         isVideoRecording = true;
-                        uiHandler.post(new Runnable() {
+                        startVideoSegments();
+                        onVideoRecorderStarted();
+                        callbackQueue.post(new Runnable() {
                             @Override
                             public void run() {
                                 videoListener.onVideoRecordStarted(videoSize);
@@ -164,7 +352,7 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
     @Override
     public void stopVideoRecord() {
         if (isVideoRecording)
-            backgroundHandler.post(new Runnable() {
+            cameraQueue.post(new Runnable() {
                 @Override
                 public void run() {
 
@@ -176,23 +364,78 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
                     }
 
                     isVideoRecording = false;
+                    isVideoRecordPaused = false;
                     releaseVideoRecorder();
+                    finishVideoOutput();
 
                     if (videoListener != null) {
-                        uiHandler.post(new Runnable() {
+                        final File videoFile = videoOutputPath;
+                        callbackQueue.post(new Runnable() {
                             @Override
                             public void run() {
-                                videoListener.onVideoRecordStopped(outputPath);
+                                videoListener.onVideoRecordStopped(videoFile);
                             }
                         });
                     }
+                    if (isVideoRecorderPreparedInAdvance()) prepareVideoRecorderInAdvance();
                 }
             });
     }
 
+    @Override
+    public void pauseVideoRecord() {
+        if (!isVideoRecording || isVideoRecordPaused || !isVideoRecordPauseSupported()) return;
+
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!isVideoRecording || isVideoRecordPaused) return;
+
+                if (pauseMediaRecorder()) {
+                    isVideoRecordPaused = true;
+                    notifyVideoRecordPaused(videoListener, true);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void resumeVideoRecord() {
+        if (!isVideoRecording || !isVideoRecordPaused) return;
+
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!isVideoRecording || !isVideoRecordPaused) return;
+
+                if (resumeMediaRecorder()) {
+                    isVideoRecordPaused = false;
+                    notifyVideoRecordPaused(videoListener, false);
+                }
+            }
+        });
+    }
+
     @Override
     public void releaseCameraManager() {
         super.releaseCameraManager();
+        previewBufferPool.clear();
+    }
+
+    /***
+     * @return allocations, exhaustions and recycle latency of the preview callback buffers
+     */
+    public PreviewBufferStats getPreviewBufferStats() {
+        return previewBufferPool.getStats();
+    }
+
+    /***
+     * @return getParameters() and setParameters() calls per operation since the camera was opened,
+     * null while the camera is closed
+     */
+    public CameraParameterStats getParameterStats() {
+        Camera1Parameters cameraParameters = this.cameraParameters;
+        return cameraParameters != null ? cameraParameters.getStats() : null;
     }
 
     @Override
@@ -217,43 +460,56 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
 
     @Override
     public Size getPhotoSizeForQuality(@AnncaConfiguration.MediaQuality int mediaQuality) {
-        return CameraHelper.getPictureSize(Size.fromList(camera.getParameters().getSupportedPictureSizes()), mediaQuality);
+        return CameraHelper.getPictureSize(cameraParameters.getPictureSizes(), mediaQuality);
     }
 
     @Override
     protected void prepareCameraOutputs() {
+        OutputConfig outputConfig = getOutputConfig(currentCameraId);
+        if (outputConfig != null) applyOutputConfig(outputConfig);
+    }
+
+    /***
+     * Camera1 reports the sizes only for the opened camera, so the configuration is computed when each camera
+     * is opened the first time and reused when switching back to it.
+     */
+    @Override
+    OutputConfig createOutputConfig(Integer cameraId) {
+        if (camera == null || !cameraId.equals(currentCameraId)) return null;
         try {
-            if (configurationProvider.getMediaQuality() == AnncaConfiguration.MEDIA_QUALITY_AUTO) {
-                camcorderProfile = CameraHelper.getCamcorderProfile(currentCameraId, configurationProvider.getVideoFileSize(), configurationProvider.getMinimumVideoDuration());
+            int mediaQuality = configurationProvider.getMediaQuality();
+            CamcorderProfile camcorderProfile;
+            if (mediaQuality == AnncaConfiguration.MEDIA_QUALITY_AUTO) {
+                camcorderProfile = CameraHelper.getCamcorderProfile(cameraId, configurationProvider.getVideoFileSize(), configurationProvider.getMinimumVideoDuration());
             } else
-                camcorderProfile = CameraHelper.getCamcorderProfile(configurationProvider.getMediaQuality(), currentCameraId);
+                camcorderProfile = CameraHelper.getCamcorderProfile(mediaQuality, cameraId);
 
-            List<Size> previewSizes = Size.fromList(camera.getParameters().getSupportedPreviewSizes());
-            List<Size> pictureSizes = Size.fromList(camera.getParameters().getSupportedPictureSizes());
-            List<Size> videoSizes;
-            if (Build.VERSION.SDK_INT > 10)
-                videoSizes = Size.fromList(camera.getParameters().getSupportedVideoSizes());
-            else videoSizes = previewSizes;
+            List<Size> previewSizes = cameraParameters.getPreviewSizes();
+            List<Size> pictureSizes = cameraParameters.getPictureSizes();
+            List<Size> videoSizes = cameraParameters.getVideoSizes();
 
-            videoSize = CameraHelper.getSizeWithClosestRatio(
+            Size videoSize = CameraHelper.getSizeWithClosestRatio(
                     (videoSizes == null || videoSizes.isEmpty()) ? previewSizes : videoSizes,
                     camcorderProfile.videoFrameWidth, camcorderProfile.videoFrameHeight);
 
             //AnncaConfiguration.MEDIA_QUALITY_HIGHEST => AnncaConfiguration.MEDIA_QUALITY_HIGH
-            photoSize = CameraHelper.getPictureSize(
+            Size photoSize = CameraHelper.getPictureSize(
                     (pictureSizes == null || pictureSizes.isEmpty()) ? previewSizes : pictureSizes,
-                    configurationProvider.getMediaQuality() == AnncaConfiguration.MEDIA_QUALITY_AUTO
-                            ? AnncaConfiguration.MEDIA_QUALITY_HIGH : configurationProvider.getMediaQuality());
+                    mediaQuality == AnncaConfiguration.MEDIA_QUALITY_AUTO
+                            ? AnncaConfiguration.MEDIA_QUALITY_HIGH : mediaQuality);
 
+            Size previewSize;
             if (configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_PHOTO
                     || configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_UNSPECIFIED) {
                 previewSize = CameraHelper.getSizeWithClosestRatio(previewSizes, photoSize.getWidth(), photoSize.getHeight());
             } else {
                 previewSize = CameraHelper.getSizeWithClosestRatio(previewSizes, videoSize.getWidth(), videoSize.getHeight());
             }
+            return new OutputConfig(mediaQuality, camcorderProfile, previewSize, photoSize, videoSize, null);
         } catch (Exception e) {
             Log.e(TAG, "Error while setup camera sizes.");
         }
+        return null;
     }
 
     @Override
@@ -278,10 +534,10 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
             videoRecorder.setAudioSamplingRate(camcorderProfile.audioSampleRate);
             videoRecorder.setAudioEncoder(camcorderProfile.audioCodec);
 
-            videoRecorder.setOutputFile(outputPath.toString());
+            setVideoRecorderOutput(videoRecorder);
 
-            if (configurationProvider.getVideoFileSize() > 0) {
-                videoRecorder.setMaxFileSize(configurationProvider.getVideoFileSize());
+            if (getRecorderMaxFileSize() > 0) {
+                videoRecorder.setMaxFileSize(getRecorderMaxFileSize());
 
                 videoRecorder.setOnInfoListener(this);
             }
@@ -325,6 +581,8 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
 
         try {
             camera.lock(); // lock camera for later use
+            // the recorder changes the parameters while the camera is unlocked
+            if (cameraParameters != null) cameraParameters.reload();
         } catch (Exception ignore) {
         }
     }
@@ -332,21 +590,12 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
     //------------------------Implementation------------------
 
     private void startPreview(SurfaceHolder surfaceHolder) {
+        releasePreparedVideoRecorder();
         try {
             Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
             Camera.getCameraInfo(currentCameraId, cameraInfo);
             int cameraRotationOffset = cameraInfo.orientation;
 
-            Camera.Parameters parameters = camera.getParameters();
-            setAutoFocus(camera, parameters);
-            setFlashMode(configurationProvider.getFlashMode());
-
-            if (configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_PHOTO
-                    || configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_UNSPECIFIED)
-                turnPhotoCameraFeaturesOn(camera, parameters);
-            else if (configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_PHOTO)
-                turnVideoCameraFeaturesOn(camera, parameters);
-
             int rotation = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay().getRotation();
             int degrees = 0;
             switch (rotation) {
@@ -373,27 +622,58 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
 
             this.camera.setDisplayOrientation(displayRotation);
 
-            if (Build.VERSION.SDK_INT > 13
-                    && (configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_VIDEO
-                    || configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_UNSPECIFIED)) {
-//                parameters.setRecordingHint(true);
-            }
+            // all the changes of the preview are applied with one setParameters call
+            Camera1Parameters cameraParameters = this.cameraParameters;
+            cameraParameters.begin("start preview");
+            try {
+                Camera.Parameters parameters = cameraParameters.edit();
+                setAutoFocus(cameraParameters);
+                setFlashMode(cameraParameters, configurationProvider.getFlashMode());
+
+                if (configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_PHOTO
+                        || configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_UNSPECIFIED)
+                    turnPhotoCameraFeaturesOn(cameraParameters);
+                else if (configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_PHOTO)
+                    turnVideoCameraFeaturesOn(cameraParameters);
+
+                if (Build.VERSION.SDK_INT > 13
+                        && (configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_VIDEO
+                        || configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_VIDEO_HIGH_SPEED
+                        || configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_UNSPECIFIED)) {
+//                    parameters.setRecordingHint(true);
+                }
 
-            if (Build.VERSION.SDK_INT > 14
-                    && parameters.isVideoStabilizationSupported()
-                    && (configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_VIDEO
-                    || configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_UNSPECIFIED)) {
-                parameters.setVideoStabilization(true);
-            }
+                if (cameraParameters.isVideoStabilizationSupported()
+                        && (configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_VIDEO
+                        || configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_VIDEO_HIGH_SPEED
+                        || configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_UNSPECIFIED)) {
+                    parameters.setVideoStabilization(true);
+                }
 
-            parameters.setPreviewSize(previewSize.getWidth(), previewSize.getHeight());
-            parameters.setPictureSize(photoSize.getWidth(), photoSize.getHeight());
+                parameters.setPreviewSize(previewSize.getWidth(), previewSize.getHeight());
+                parameters.setPreviewFormat(ImageFormat.NV21);
+                setPhotoQuality(parameters);
+                setPreviewFpsRange(cameraParameters);
+            } finally {
+                if (!cameraParameters.commit()) applyPreviewFormat(cameraParameters);
+            }
 
-            camera.setParameters(parameters);
             camera.setPreviewDisplay(surfaceHolder);
+            previewHealthMonitor.start();
+            updatePreviewCallback();
+            // without the preview callback the switch is measured up to the first frame of a one-shot callback
+            if (!previewCallbackAttached && isCameraSwitchPending()) {
+                camera.setOneShotPreviewCallback(new Camera.PreviewCallback() {
+                    @Override
+                    public void onPreviewFrame(byte[] data, Camera camera) {
+                        onCameraFirstFrame();
+                    }
+                });
+            }
             camera.startPreview();
 
             if (cameraOpenListener != null) cameraOpenListener.onCameraReady();
+            if (isVideoRecorderPreparedInAdvance()) prepareNextVideoRecorder();
         } catch (IOException error) {
             Log.d(TAG, "Error setting camera preview: " + error.getMessage());
         } catch (Exception ignore) {
@@ -401,22 +681,113 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
         }
     }
 
-    private void turnPhotoCameraFeaturesOn(Camera camera, Camera.Parameters parameters) {
-        if (parameters.getSupportedFocusModes().contains(
-                Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE)) {
+    @Override
+    void onFrameAnalyzersChanged() {
+        if (backgroundHandler == null) return;
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                // the number of the callback buffers follows the analyzers
+                if (camera != null) updatePreviewCallback();
+            }
+        });
+    }
+
+    @Override
+    public void setPreviewHealthMonitoringEnabled(boolean enabled) {
+        super.setPreviewHealthMonitoringEnabled(enabled);
+        onFrameAnalyzersChanged();
+    }
+
+    /***
+     * @return null while the preview callback isn't installed, the frames aren't observed then
+     */
+    @Override
+    public PreviewHealth getPreviewHealth() {
+        return isPreviewObserved() ? super.getPreviewHealth() : null;
+    }
+
+    private boolean isPreviewObserved() {
+        return frameDispatcher.hasAnalyzers() || previewHealthMonitoringEnabled;
+    }
+
+    /***
+     * The camera rejected one of the preview values and all of them are lost, the preview size and format
+     * are applied alone so the callback buffers still match the frames.
+     */
+    private void applyPreviewFormat(Camera1Parameters cameraParameters) {
+        cameraParameters.begin("preview format");
+        try {
+            Camera.Parameters parameters = cameraParameters.edit();
+            parameters.setPreviewSize(previewSize.getWidth(), previewSize.getHeight());
+            parameters.setPreviewFormat(ImageFormat.NV21);
+        } finally {
+            if (!cameraParameters.commit()) Log.e(TAG, "Camera rejected the preview size " + previewSize);
+        }
+    }
+
+    /***
+     * Preview callbacks come in the preview size, Camera1 has no separate analysis stream. SurfaceView has
+     * no frame callback and the preview callback copies every frame, so the pooled callback is installed only
+     * for the analyzers or the enabled preview health monitoring, it timestamps the frames for the preview health
+     * and the camera switch time.
+     */
+    private void updatePreviewCallback() {
+        if (!isPreviewObserved()) {
+            previewFrameSource.detach();
+            previewCallbackAttached = false;
+            return;
+        }
+
+        // the intervals are counted again from the first observed frame
+        if (!previewCallbackAttached) previewHealthMonitor.start();
+        previewFrameSource.setRotation(getPhotoOrientation(configurationProvider.getSensorPosition()));
+        previewFrameSource.setFrameTimestampListener(previewTimestampListener);
+        previewFrameSource.attach(camera, previewSize.getWidth(), previewSize.getHeight(),
+                cameraParameters.get().getPreviewFormat());
+        previewCallbackAttached = true;
+    }
+
+    /***
+     * Camera1 doesn't report the exposure time, so there is no low light range, the preview one doesn't go
+     * below {@link FpsRangeSelector#MIN_PREVIEW_FPS} if the camera allows it.
+     */
+    private void setPreviewFpsRange(Camera1Parameters cameraParameters) {
+        List<int[]> fpsRanges = cameraParameters.getPreviewFpsRanges();
+        if (fpsRanges == null || fpsRanges.isEmpty()) return;
+
+        FpsRangeSelector fpsRangeSelector = FpsRangeSelector.fromCamera1(fpsRanges);
+        int index = isVideoRecorderPreparedInAdvance()
+                ? fpsRangeSelector.select(FpsRangeSelector.MODE_VIDEO, camcorderProfile.videoFrameRate)
+                : fpsRangeSelector.select(FpsRangeSelector.MODE_PREVIEW, FpsRangeSelector.PREVIEW_FRAME_RATE);
+        if (index < 0) return;
+
+        int[] fpsRange = fpsRanges.get(index);
+        cameraParameters.edit().setPreviewFpsRange(fpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+                fpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+    }
+
+    /***
+     * Prepared recorder keeps the camera unlocked, so it's done only when photos can't be taken.
+     */
+    private boolean isVideoRecorderPreparedInAdvance() {
+        // there is no high speed recording in Camera1, it's recorded as a regular video
+        return configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_VIDEO
+                || configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_VIDEO_HIGH_SPEED;
+    }
+
+    private void turnPhotoCameraFeaturesOn(Camera1Parameters cameraParameters) {
+        if (cameraParameters.isFocusModeSupported(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE)) {
             if (Build.VERSION.SDK_INT > 13)
-                parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
-            else parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
+                cameraParameters.edit().setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
+            else cameraParameters.edit().setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
         }
-        camera.setParameters(parameters);
     }
 
-    private void turnVideoCameraFeaturesOn(Camera camera, Camera.Parameters parameters) {
-        if (parameters.getSupportedFocusModes().contains(
-                Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
-            parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
+    private void turnVideoCameraFeaturesOn(Camera1Parameters cameraParameters) {
+        if (cameraParameters.isFocusModeSupported(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
+            cameraParameters.edit().setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
         }
-        camera.setParameters(parameters);
     }
 
     @Override
@@ -426,50 +797,68 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
 
     @Override
     public boolean handleParameters(ParametersHandler<Camera.Parameters> parameters) {
+        Camera1Parameters cameraParameters = this.cameraParameters;
+        if (cameraParameters == null) return false;
+
+        boolean handled = false;
+        cameraParameters.begin("handle parameters");
         try {
-            camera.setParameters(parameters.getParameters(camera.getParameters()));
-            return true;
+            cameraParameters.set(parameters.getParameters(cameraParameters.edit()));
+            handled = true;
         } catch (Throwable ignore) {
+            // the handler could leave the parameters half changed
+            cameraParameters.reload();
         }
-        return false;
+        return cameraParameters.commit() && handled;
     }
 
-    private void setAutoFocus(Camera camera, Camera.Parameters parameters) {
-        try {
-            if (parameters.getSupportedFocusModes().contains(Camera.Parameters.FOCUS_MODE_AUTO)) {
-                parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
-                camera.setParameters(parameters);
-            }
-        } catch (Exception ignore) {
+    private void setAutoFocus(Camera1Parameters cameraParameters) {
+        if (cameraParameters.isFocusModeSupported(Camera.Parameters.FOCUS_MODE_AUTO)) {
+            cameraParameters.edit().setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
         }
     }
 
-    private void setFlashMode(Camera camera, Camera.Parameters parameters, @AnncaConfiguration.FlashMode int flashMode) {
-        try {
-            switch (flashMode) {
-                case AnncaConfiguration.FLASH_MODE_AUTO:
-                    parameters.setFlashMode(Camera.Parameters.FLASH_MODE_AUTO);
-                    break;
-                case AnncaConfiguration.FLASH_MODE_ON:
-                    parameters.setFlashMode(Camera.Parameters.FLASH_MODE_ON);
-                    break;
-                case AnncaConfiguration.FLASH_MODE_OFF:
-                    parameters.setFlashMode(Camera.Parameters.FLASH_MODE_OFF);
-                    break;
-                default:
-                    parameters.setFlashMode(Camera.Parameters.FLASH_MODE_AUTO);
-                    break;
-            }
-            camera.setParameters(parameters);
-        } catch (Exception ignore) {
+    /***
+     * Unsupported mode is skipped, otherwise it would fail the rest of the changes applied with it.
+     */
+    private void setFlashMode(Camera1Parameters cameraParameters, @AnncaConfiguration.FlashMode int flashMode) {
+        String cameraFlashMode;
+        switch (flashMode) {
+            case AnncaConfiguration.FLASH_MODE_ON:
+                cameraFlashMode = Camera.Parameters.FLASH_MODE_ON;
+                break;
+            case AnncaConfiguration.FLASH_MODE_OFF:
+                cameraFlashMode = Camera.Parameters.FLASH_MODE_OFF;
+                break;
+            case AnncaConfiguration.FLASH_MODE_AUTO:
+            default:
+                cameraFlashMode = Camera.Parameters.FLASH_MODE_AUTO;
+                break;
+        }
+        if (cameraParameters.isFlashModeSupported(cameraFlashMode)
+                && !cameraFlashMode.equals(cameraParameters.get().getFlashMode())) {
+            cameraParameters.edit().setFlashMode(cameraFlashMode);
         }
     }
 
-    private void setCameraPhotoQuality(Camera camera) {
-        if(camera!=null){
-            Camera.Parameters parameters = camera.getParameters();
+    /***
+     * The photo quality is set when the preview is started, so nothing is sent to the camera before a photo
+     * unless the picture size was changed meanwhile.
+     */
+    private void setCameraPhotoQuality() {
+        Camera.Parameters parameters = cameraParameters.get();
+        Camera.Size pictureSize = parameters.getPictureSize();
+        if (parameters.getPictureFormat() == PixelFormat.JPEG && parameters.getJpegQuality() == PHOTO_JPEG_QUALITY
+                && pictureSize != null && pictureSize.width == photoSize.getWidth()
+                && pictureSize.height == photoSize.getHeight()) return;
+
+        cameraParameters.begin("set photo quality");
+        setPhotoQuality(cameraParameters.edit());
+        cameraParameters.commit();
+    }
 
-            parameters.setPictureFormat(PixelFormat.JPEG);
+    private void setPhotoQuality(Camera.Parameters parameters) {
+        parameters.setPictureFormat(PixelFormat.JPEG);
 
         /*if (configurationProvider.getMediaQuality() == AnncaConfiguration.MEDIA_QUALITY_LOW) {
             parameters.setJpegQuality(50);
@@ -481,12 +870,9 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
             parameters.setJpegQuality(100);
         }*/
 
-            //todo set cung do phan giai cua hinh
-            parameters.setJpegQuality(75);
-            parameters.setPictureSize(photoSize.getWidth(), photoSize.getHeight());
-
-            camera.setParameters(parameters);
-        }
+        //todo set cung do phan giai cua hinh
+        parameters.setJpegQuality(PHOTO_JPEG_QUALITY);
+        parameters.setPictureSize(photoSize.getWidth(), photoSize.getHeight());
     }
 
     @Override
@@ -577,17 +963,60 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
     }
 
     @Override
-    public void onPictureTaken(byte[] bytes, Camera camera) {
-        File pictureFile = outputPath;
-        if (pictureFile == null) {
+    public void onPictureTaken(final byte[] bytes, Camera camera) {
+        final OutputSink pictureSink = photoSink;
+        if (pictureSink == null) {
             Log.d(TAG, "Error creating media file, check storage permissions.");
             return;
         }
 
+        final int photoOrientation = getPhotoOrientation(configurationProvider.getSensorPosition());
+        boolean posted = ioQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!savePicture(bytes, pictureSink, photoOrientation)) notifyPhotoTakeError();
+                else if (photoListener != null) {
+                    callbackQueue.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            photoListener.onPhotoTaken(pictureSink.getFile());
+                        }
+                    });
+                }
+            }
+        });
+        if (!posted) {
+            // the picture is never written on the camera thread
+            Log.e(TAG, "File writing queue rejected the picture.");
+            pictureSink.abort();
+            notifyPhotoTakeError();
+        }
+    }
+
+    private void notifyPhotoTakeError() {
+        final CameraPhotoListener listener = photoListener;
+        if (listener == null) return;
+        callbackQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onPhotoTakeError();
+            }
+        });
+    }
+
+    /***
+     * The orientation is written with the JPEG, ExifInterface rewrites the file only if that fails.
+     * Other sinks can't be rewritten, the picture without the orientation fails there.
+     * The picture is written to the sink and committed when it's complete.
+     */
+    private boolean savePicture(byte[] bytes, OutputSink pictureSink, int photoOrientation) {
+        boolean saved = false;
+        boolean exifWritten = false;
         try {
-            FileOutputStream fileOutputStream = new FileOutputStream(pictureFile);
-            fileOutputStream.write(bytes);
-            fileOutputStream.close();
+            ByteBuffer jpeg = ByteBuffer.wrap(bytes);
+            JpegExifWriter exifWriter = new JpegExifWriter(photoOrientation).setDateTime(System.currentTimeMillis());
+            exifWritten = exifWriter.write(jpeg, pictureSink.openChannel(exifWriter.getWrittenLength(jpeg)));
+            saved = true;
         } catch (FileNotFoundException error) {
             Log.e(TAG, "File not found: " + error.getMessage());
         } catch (IOException error) {
@@ -596,21 +1025,24 @@ public class Camera1Manager extends BaseCameraManager<Integer, SurfaceHolder.Cal
             Log.e(TAG, "Error saving file: " + error.getMessage());
         }
 
-        try {
-            ExifInterface exif = new ExifInterface(pictureFile.getAbsolutePath());
-            exif.setAttribute(ExifInterface.TAG_ORIENTATION, "" + getPhotoOrientation(configurationProvider.getSensorPosition()));
-            exif.saveAttributes();
-
-            if (photoListener != null) {
-                uiHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        photoListener.onPhotoTaken(outputPath);
-                    }
-                });
+        if (saved && !exifWritten) {
+            if (pictureSink instanceof FileOutputSink) {
+                try {
+                    ExifInterface exif = new ExifInterface(((FileOutputSink) pictureSink).getTempFile().getAbsolutePath());
+                    exif.setAttribute(ExifInterface.TAG_ORIENTATION, "" + photoOrientation);
+                    exif.saveAttributes();
+                } catch (Throwable error) {
+                    Log.e(TAG, "Can't save exif info: " + error.getMessage());
+                    saved = false;
+                }
+            } else {
+                Log.e(TAG, "Can't write the orientation to " + pictureSink);
+                saved = false;
             }
-        } catch (Throwable error) {
-            Log.e(TAG, "Can't save exif info: " + error.getMessage());
         }
+
+        if (saved && pictureSink.commit(configurationProvider.getOutputSyncPolicy())) return true;
+        pictureSink.abort();
+        return false;
     }
 }
@@ -0,0 +1,169 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import android.hardware.Camera;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.memfis19.annca.internal.manager.CameraParameterStats;
+import io.github.memfis19.annca.internal.utils.Size;
+
+/**
+ * Parsed copy of the parameters of the open Camera1 device. Every getParameters() and setParameters() call flattens
+ * and parses all the parameters as a string across the binder, so the supported values are parsed once when the camera
+ * is opened and the changes made inside a transaction are applied with one setParameters() call at its end.
+ * Transactions can be nested, only the outermost one applies the changes.
+ */
+@SuppressWarnings("deprecation")
+final class Camera1Parameters {
+
+    private static final String TAG = "Camera1Parameters";
+
+    static final String OPERATION_OPEN = "open camera";
+    static final String OPERATION_RELOAD = "reload";
+
+    private final Camera camera;
+    private Camera.Parameters parameters;
+
+    private final List<Size> previewSizes;
+    private final List<Size> pictureSizes;
+    private final List<Size> videoSizes;
+    private final List<String> focusModes;
+    private final List<String> flashModes;
+    private final List<int[]> previewFpsRanges;
+    private final boolean videoStabilizationSupported;
+
+    private int transactionDepth = 0;
+    private String transactionName;
+    private boolean changed = false;
+
+    private long roundTrips = 0;
+    private final Map<String, Long> roundTripsByOperation = new LinkedHashMap<>();
+
+    Camera1Parameters(Camera camera) {
+        this.camera = camera;
+        load(OPERATION_OPEN);
+
+        previewSizes = Size.fromList(parameters.getSupportedPreviewSizes());
+        pictureSizes = Size.fromList(parameters.getSupportedPictureSizes());
+        videoSizes = Build.VERSION.SDK_INT > 10 ? Size.fromList(parameters.getSupportedVideoSizes()) : null;
+        focusModes = nonNull(parameters.getSupportedFocusModes());
+        flashModes = nonNull(parameters.getSupportedFlashModes());
+        previewFpsRanges = parameters.getSupportedPreviewFpsRange();
+        videoStabilizationSupported = Build.VERSION.SDK_INT > 14 && parameters.isVideoStabilizationSupported();
+    }
+
+    /***
+     * Reads the parameters from the camera again, e.g. the recorder could change them while the camera was unlocked.
+     * Changes of an open transaction are lost.
+     */
+    synchronized void reload() {
+        load(OPERATION_RELOAD);
+    }
+
+    /***
+     * @param name - name of the operation the round trips of the transaction are counted for
+     */
+    synchronized void begin(String name) {
+        if (transactionDepth++ == 0) transactionName = name;
+    }
+
+    /***
+     * @return parameters to change inside the transaction
+     */
+    synchronized Camera.Parameters edit() {
+        changed = true;
+        return parameters;
+    }
+
+    /***
+     * @return parameters for reading, they must not be changed
+     */
+    synchronized Camera.Parameters get() {
+        return parameters;
+    }
+
+    /***
+     * Replaces the parameters of the transaction, used when a handler returns another instance.
+     */
+    synchronized void set(Camera.Parameters parameters) {
+        this.parameters = parameters;
+        changed = true;
+    }
+
+    /***
+     * @return false if the camera rejected the changes, the parameters are read again from the camera then
+     */
+    synchronized boolean commit() {
+        if (transactionDepth == 0 || --transactionDepth > 0) return true;
+
+        boolean applied = true;
+        if (changed) {
+            try {
+                countRoundTrip(transactionName);
+                camera.setParameters(parameters);
+                changed = false;
+            } catch (RuntimeException error) {
+                Log.e(TAG, "Can't set parameters for " + transactionName + ": " + error.getMessage());
+                load(transactionName);
+                applied = false;
+            }
+        }
+        return applied;
+    }
+
+    synchronized CameraParameterStats getStats() {
+        return new CameraParameterStats(roundTrips, new LinkedHashMap<>(roundTripsByOperation));
+    }
+
+    private void load(String operation) {
+        countRoundTrip(operation);
+        parameters = camera.getParameters();
+        changed = false;
+    }
+
+    private void countRoundTrip(String operation) {
+        roundTrips++;
+        Long operationRoundTrips = roundTripsByOperation.get(operation);
+        roundTripsByOperation.put(operation, operationRoundTrips != null ? operationRoundTrips + 1 : 1L);
+    }
+
+    List<Size> getPreviewSizes() {
+        return previewSizes;
+    }
+
+    List<Size> getPictureSizes() {
+        return pictureSizes;
+    }
+
+    /***
+     * @return null if the camera doesn't report separate video sizes
+     */
+    List<Size> getVideoSizes() {
+        return videoSizes;
+    }
+
+    boolean isFocusModeSupported(String focusMode) {
+        return focusModes.contains(focusMode);
+    }
+
+    boolean isFlashModeSupported(String flashMode) {
+        return flashModes.contains(flashMode);
+    }
+
+    List<int[]> getPreviewFpsRanges() {
+        return previewFpsRanges;
+    }
+
+    boolean isVideoStabilizationSupported() {
+        return videoStabilizationSupported;
+    }
+
+    private static List<String> nonNull(List<String> values) {
+        return values != null ? values : Collections.<String>emptyList();
+    }
+}
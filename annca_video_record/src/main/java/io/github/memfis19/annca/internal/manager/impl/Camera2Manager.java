@@ -10,21 +10,31 @@ import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraConstrainedHighSpeedCaptureSession;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.InputConfiguration;
 import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.CamcorderProfile;
+import android.media.Image;
 import android.media.ImageReader;
+import android.media.ImageWriter;
+import android.media.MediaCodec;
 import android.media.MediaRecorder;
 import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
 import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.Range;
 import android.view.Display;
 import android.view.Surface;
 import android.view.TextureView;
@@ -36,15 +46,28 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
+import io.github.memfis19.annca.internal.analysis.ImageFrameSource;
 import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
 import io.github.memfis19.annca.internal.configuration.ConfigurationProvider;
+import io.github.memfis19.annca.internal.encoder.BitrateController;
+import io.github.memfis19.annca.internal.encoder.EncoderConfig;
+import io.github.memfis19.annca.internal.encoder.MediaCodecEncoderEngine;
+import io.github.memfis19.annca.internal.encoder.VideoEncoderEngine;
+import io.github.memfis19.annca.internal.manager.CaptureMetrics;
+import io.github.memfis19.annca.internal.manager.FrameMetadata;
+import io.github.memfis19.annca.internal.manager.listener.BurstListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraCloseListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraOpenListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraPhotoListener;
+import io.github.memfis19.annca.internal.manager.listener.CameraReconfigureListener;
 import io.github.memfis19.annca.internal.manager.listener.CameraVideoListener;
+import io.github.memfis19.annca.internal.manager.listener.CaptureMetadataListener;
+import io.github.memfis19.annca.internal.output.FileOutputSink;
+import io.github.memfis19.annca.internal.output.OutputSink;
 import io.github.memfis19.annca.internal.utils.CameraHelper;
 import io.github.memfis19.annca.internal.utils.ImageSaver;
 import io.github.memfis19.annca.internal.utils.Size;
@@ -58,16 +81,25 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
 
     private final static String TAG = "Camera2Manager";
 
+    // every acquired image is being written or waits in the file writing queue, the reader holds back the camera
+    private final static int MAX_STILL_IMAGES = BurstSession.MAX_FRAMES_IN_FLIGHT;
+
+    private final static Object VIDEO_SNAPSHOT_TAG = new Object();
+
+    private final static int MAX_ANALYSIS_WIDTH = 640;
+
     private static Camera2Manager currentInstance;
 
     private CameraOpenListener<String, TextureView.SurfaceTextureListener> cameraOpenListener;
     private CameraPhotoListener cameraPhotoListener;
     private CameraVideoListener cameraVideoListener;
 
-    private File outputPath;
+    private OutputSink photoSink;
 
     @CameraPreviewState
     private int previewState = STATE_PREVIEW;
+    private static final long BITRATE_CONTROL_PERIOD_MS = 1000;
+
     private static final int STATE_PREVIEW = 0;
     private static final int STATE_WAITING_LOCK = 1;
     private static final int STATE_WAITING_PRE_CAPTURE = 2;
@@ -81,8 +113,10 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
 
     private CameraManager manager;
     private CameraDevice cameraDevice;
-    private CaptureRequest previewRequest;
-    private CaptureRequest.Builder previewRequestBuilder;
+    private PreviewRequestCache<CaptureRequest.Builder, CaptureRequest> previewRequests;
+    private CaptureRequest submittedPreviewRequest;
+    private boolean previewUpdateScheduled = false;
+    private long previewSubmitTime;
     private CameraCaptureSession captureSession;
 
     private CameraCharacteristics frontCameraCharacteristics;
@@ -95,12 +129,46 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
     private Surface workingSurface;
     private ImageReader imageReader;
 
+    private ImageReader zeroShutterLagImageReader;
+    private volatile ZeroShutterLagBuffer zeroShutterLagBuffer;
+    private ImageWriter zeroShutterLagImageWriter;
+    private int zeroShutterLagInputFormat = -1;
+    // the reprocess results and the still images are delivered on the background thread
+    private int pendingReprocessCaptures = 0;
+    // still images which couldn't be acquired while all the others were being written
+    private int deferredStillImages = 0;
+    private boolean realtimeSensorTimestamp = false;
+
+    private boolean persistentSessionEnabled = false;
+    private VideoEncoderEngine videoEncoderEngine;
+    private BitrateController bitrateController;
+    private long videoRecordStartTime;
+    private long videoRecordPauseTime;
+    private Surface persistentRecorderSurface;
+
+    private final List<Surface> recordSurfaces = new ArrayList<>();
+    private final VideoFrameStats videoFrameStats = new VideoFrameStats();
+    private final CaptureMetadataRing captureMetadata = new CaptureMetadataRing(CaptureMetadataRing.DEFAULT_CAPACITY);
+    private volatile CaptureMetadataListener captureMetadataListener;
+    private boolean videoSnapshotSupported = false;
+    private volatile boolean videoSnapshotAvailable = false;
+
+    private ImageFrameSource imageFrameSource;
+    private Surface frameAnalysisSurface;
+
+    private boolean highSpeedVideoEnabled = false;
+    private Range<Integer> highSpeedFpsRange;
+
+    private Range<Integer>[] availableFpsRanges;
+    private FpsRangeSelector fpsRangeSelector;
+    private boolean lowLightPreview = false;
+
     private CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
         @Override
         public void onOpened(CameraDevice cameraDevice) {
             currentInstance.cameraDevice = cameraDevice;
             if (cameraOpenListener != null) {
-                uiHandler.post(new Runnable() {
+                callbackQueue.post(new Runnable() {
                     @Override
                     public void run() {
                         if (!TextUtils.isEmpty(currentCameraId) && previewSize != null && currentInstance != null)
@@ -115,7 +183,7 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
             cameraDevice.close();
             currentInstance.cameraDevice = null;
 
-            uiHandler.post(new Runnable() {
+            callbackQueue.post(new Runnable() {
                 @Override
                 public void run() {
                     cameraOpenListener.onCameraOpenError();
@@ -128,7 +196,7 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
             cameraDevice.close();
             currentInstance.cameraDevice = null;
 
-            uiHandler.post(new Runnable() {
+            callbackQueue.post(new Runnable() {
                 @Override
                 public void run() {
                     cameraOpenListener.onCameraOpenError();
@@ -137,9 +205,103 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
         }
     };
 
+    private VideoEncoderEngine.Listener videoEncoderListener = new VideoEncoderEngine.Listener() {
+        @Override
+        public void onMaxDurationReached() {
+            stopVideoRecord();
+        }
+
+        @Override
+        public void onMaxFileSizeReached() {
+            stopVideoRecord();
+        }
+
+        @Override
+        public void onEncoderError() {
+            Log.e(TAG, "Video encoder failed, stopping the record.");
+            stopVideoRecord();
+        }
+
+        @Override
+        public File getNextSegmentFile(int segmentIndex) {
+            File nextSegmentFile = getNextVideoSegmentFile();
+            startNextVideoSegment(nextSegmentFile);
+            return getVideoRecordingFile(nextSegmentFile);
+        }
+
+        @Override
+        public void onSegmentFinalized(int segmentIndex, boolean valid) {
+            if (valid) onVideoSegmentFinalized(segmentIndex);
+            else Log.e(TAG, "Video segment " + segmentIndex + " can't be finalized.");
+        }
+    };
+
+    private Runnable bitrateControlRunnable = new Runnable() {
+        @Override
+        public void run() {
+            VideoEncoderEngine engine = videoEncoderEngine;
+            BitrateController controller = bitrateController;
+            if (!isVideoRecording || engine == null || controller == null) return;
+
+            long elapsedMillis = SystemClock.elapsedRealtime() - videoRecordStartTime;
+            long writtenBytes = engine.getWrittenBytes();
+            int videoBitRate = controller.onProgress(elapsedMillis, writtenBytes);
+            if (videoBitRate != BitrateController.NO_CHANGE && engine.setVideoBitRate(videoBitRate))
+                notifyBitrateChanged(videoBitRate, controller.getMeasuredBitRate(), writtenBytes, elapsedMillis);
+
+            backgroundHandler.postDelayed(this, BITRATE_CONTROL_PERIOD_MS);
+        }
+    };
+
+    private CameraCaptureSession.CaptureCallback recordCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                     long timestamp, long frameNumber) {
+            onVideoRecordFirstFrame();
+        }
+
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+            Long frameDuration = result.get(CaptureResult.SENSOR_FRAME_DURATION);
+            if (timestamp != null)
+                videoFrameStats.onFrameCompleted(timestamp, frameDuration != null ? frameDuration : 0);
+            onCaptureMetadata(result);
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                    @NonNull CaptureFailure failure) {
+            videoFrameStats.onFrameFailed();
+            if (request.getTag() == VIDEO_SNAPSHOT_TAG) {
+                Log.e(TAG, "Video snapshot failed, reason: " + failure.getReason());
+                videoFrameStats.onSnapshotFinished();
+                notifyPhotoTakeError();
+            }
+        }
+    };
+
+    private Runnable previewUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (Camera2Manager.this) {
+                previewUpdateScheduled = false;
+            }
+            // the new state is applied when the preview request is restored
+            if (previewState == STATE_PREVIEW && !isVideoRecording) submitPreviewRequest(false);
+        }
+    };
+
     private CameraCaptureSession.CaptureCallback captureCallback
             = new CameraCaptureSession.CaptureCallback() {
 
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                     long timestamp, long frameNumber) {
+            onCameraFirstFrame();
+        }
+
         @Override
         public void onCaptureProgressed(@NonNull CameraCaptureSession session,
                                         @NonNull CaptureRequest request,
@@ -152,8 +314,67 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
                                        @NonNull CaptureRequest request,
                                        @NonNull TotalCaptureResult result) {
             processCaptureResult(result);
+            updateLowLightPreview(result);
+            onCaptureMetadata(result);
+
+            ZeroShutterLagBuffer buffer = zeroShutterLagBuffer;
+            if (buffer != null) buffer.addResult(result);
+        }
+
+    };
+
+    // burst frames take the frame numbers between the preview ones, they are recorded with them
+    private CameraCaptureSession.CaptureCallback burstCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            onCaptureMetadata(result);
+        }
+    };
+
+    /**
+     * The repeating request is stopped for the still picture, so the gaps before and after it aren't dropped frames.
+     */
+    private CameraCaptureSession.CaptureCallback stillCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            onCaptureMetadata(result);
+        }
+
+        @Override
+        public void onCaptureSequenceCompleted(@NonNull CameraCaptureSession session, int sequenceId, long frameNumber) {
+            captureMetadata.onDiscontinuity();
+        }
+    };
+
+    private CameraCaptureSession.CaptureCallback reprocessCaptureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                    @NonNull CaptureFailure failure) {
+            pendingReprocessCaptures--;
+            Log.e(TAG, "Zero shutter lag reprocessing failed, reason: " + failure.getReason());
+            notifyPhotoTakeError();
         }
+    };
+
+    private ImageReader.OnImageAvailableListener zeroShutterLagImageListener = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader imageReader) {
+            Image image;
+            try {
+                image = imageReader.acquireNextImage();
+            } catch (IllegalStateException ignore) {
+                // all images are in use by the buffer and the saver, frame is dropped
+                return;
+            }
+            if (image == null) return;
 
+            // the buffer is closed before it's dropped, the image is closed by it then
+            ZeroShutterLagBuffer buffer = zeroShutterLagBuffer;
+            if (buffer != null) buffer.add(image);
+            else image.close();
+        }
     };
 
     private Camera2Manager() {
@@ -196,19 +417,28 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
         } catch (Exception e) {
             Log.e(TAG, "Error during camera init");
         }
+
+        // both cameras are configured before the first open, so the switch only opens the device
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                if (faceBackCameraId != null) getOutputConfig(faceBackCameraId);
+                if (faceFrontCameraId != null) getOutputConfig(faceFrontCameraId);
+            }
+        });
     }
 
     @Override
     public void openCamera(String cameraId, final CameraOpenListener<String, TextureView.SurfaceTextureListener> cameraOpenListener) {
         this.currentCameraId = cameraId;
         this.cameraOpenListener = cameraOpenListener;
-        backgroundHandler.post(new Runnable() {
+        cameraQueue.post(new Runnable() {
             @Override
             public void run() {
                 if (context == null || configurationProvider == null) {
                     Log.e(TAG, "openCamera: ");
                     if (cameraOpenListener != null) {
-                        uiHandler.post(new Runnable() {
+                        callbackQueue.post(new Runnable() {
                             @Override
                             public void run() {
                                 cameraOpenListener.onCameraOpenError();
@@ -226,7 +456,7 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
                 } catch (Exception e) {
                     Log.e(TAG, "openCamera: ", e);
                     if (cameraOpenListener != null) {
-                        uiHandler.post(new Runnable() {
+                        callbackQueue.post(new Runnable() {
                             @Override
                             public void run() {
                                 cameraOpenListener.onCameraOpenError();
@@ -240,12 +470,12 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
 
     @Override
     public void closeCamera(final CameraCloseListener<String> cameraCloseListener) {
-        backgroundHandler.post(new Runnable() {
+        cameraQueue.post(new Runnable() {
             @Override
             public void run() {
                 closeCamera();
                 if (cameraCloseListener != null) {
-                    uiHandler.post(new Runnable() {
+                    callbackQueue.post(new Runnable() {
                         @Override
                         public void run() {
                             cameraCloseListener.onCameraClosed(currentCameraId);
@@ -264,10 +494,15 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
     @Override
     public boolean handleParameters(ParametersHandler<CaptureRequest.Builder> parameters) {
         try {
-            previewRequestBuilder = parameters.getParameters(previewRequestBuilder);
+            PreviewRequestCache<CaptureRequest.Builder, CaptureRequest> requests = previewRequests;
+            if (requests == null) return false;
 
-            previewRequest = previewRequestBuilder.build();
-            captureSession.setRepeatingRequest(previewRequest, captureCallback, backgroundHandler);
+            CaptureRequest.Builder builder = requests.editBuilder();
+            CaptureRequest.Builder changedBuilder = parameters.getParameters(builder);
+            if (changedBuilder != builder)
+                previewRequests = PreviewRequestCache.forCaptureRequests(changedBuilder, requests.getState());
+
+            submitPreviewRequest(true);
             return true;
         } catch (Throwable ignore) {
         }
@@ -276,93 +511,175 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
 
     @Override
     public void setFlashMode(@AnncaConfiguration.FlashMode int flashMode) {
-        setFlashModeAndBuildPreviewRequest(flashMode);
+        PreviewRequestCache<CaptureRequest.Builder, CaptureRequest> requests = previewRequests;
+        if (requests != null) updatePreviewState(requests.getState().withFlashMode(flashMode));
     }
 
     @Override
     public void takePhoto(File photoFile, CameraPhotoListener cameraPhotoListener) {
-        this.outputPath = photoFile;
+        takePhoto(photoFile != null ? new FileOutputSink(photoFile) : null, cameraPhotoListener);
+    }
+
+    @Override
+    public void takePhoto(OutputSink photoSink, CameraPhotoListener cameraPhotoListener) {
+        this.photoSink = photoSink;
         this.cameraPhotoListener = cameraPhotoListener;
+        if (photoSink == null) {
+            notifyPhotoTakeError();
+            return;
+        }
+
+        if (isVideoRecording) {
+            cameraQueue.post(new Runnable() {
+                @Override
+                public void run() {
+                    takeVideoSnapshot();
+                }
+            });
+            return;
+        }
+        if (highSpeedVideoEnabled) {
+            // there is no still image stream in the high speed session
+            notifyPhotoTakeError();
+            return;
+        }
+
+        final long shutterTimestamp = realtimeSensorTimestamp ? SystemClock.elapsedRealtimeNanos() : -1;
 
-        backgroundHandler.post(new Runnable() {
+        cameraQueue.post(new Runnable() {
             @Override
             public void run() {
-                lockFocus();
+                if (!takeZeroShutterLagPhoto(shutterTimestamp)) lockFocus();
             }
         });
 
     }
 
+    @Override
+    public void takeBurst(final int count, final BurstListener burstListener) {
+        if (count < 1) return;
+        if (backgroundHandler == null) {
+            notifyBurstError(burstListener);
+            return;
+        }
+
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                if (burstSession != null || isVideoRecording || highSpeedVideoEnabled
+                        || captureSession == null || cameraDevice == null) {
+                    notifyBurstError(burstListener);
+                    return;
+                }
+
+                List<File> files = CameraHelper.getBurstOutputMediaFiles(context, count);
+                if (files == null) {
+                    notifyBurstError(burstListener);
+                    return;
+                }
+
+                BurstSession session = new BurstSession(files, burstListener, ioQueue);
+                burstSession = session;
+                try {
+                    CaptureRequest.Builder burstRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+                    burstRequestBuilder.addTarget(workingSurface);
+                    burstRequestBuilder.addTarget(imageReader.getSurface());
+
+                    burstRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+                    burstRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, getPreviewAeMode());
+                    burstRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION, getPhotoOrientation(configurationProvider.getSensorPosition()));
+
+                    CaptureRequest burstRequest = burstRequestBuilder.build();
+                    List<CaptureRequest> burstRequests = new ArrayList<>(count);
+                    for (int i = 0; i < count; ++i) burstRequests.add(burstRequest);
+
+                    captureSession.captureBurst(burstRequests, burstCaptureCallback, backgroundHandler);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error during burst capturing: ", e);
+                    abortBurst(session);
+                }
+            }
+        });
+    }
+
     @Override
     public Size getPhotoSizeForQuality(@AnncaConfiguration.MediaQuality int mediaQuality) {
-        StreamConfigurationMap map = currentCameraId.equals(faceBackCameraId) ? backCameraStreamConfigurationMap : frontCameraStreamConfigurationMap;
+        StreamConfigurationMap map = getStreamConfigurationMap(currentCameraId);
         return CameraHelper.getPictureSize(Size.fromArray2(map.getOutputSizes(ImageFormat.JPEG)), mediaQuality);
     }
 
     @Override
-    public void startVideoRecord(File videoFile, final CameraVideoListener cameraVideoListener) {
-        if (isVideoRecording || texture == null) return;
+    public void reconfigureOutputs(final CameraReconfigureListener reconfigureListener) {
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                OutputConfig previous = getAppliedOutputConfig();
+                OutputConfig next = cameraDevice != null && texture != null ? getReconfiguredOutputConfig() : null;
+                if (next == null) {
+                    notifyOutputsReconfigured(reconfigureListener, false);
+                    return;
+                }
+                applyOutputConfig(next);
+
+                boolean photoChanged = !next.hasSamePhotoSize(previous);
+                boolean videoChanged = !next.hasSameVideo(previous);
+                if (photoChanged || (videoChanged && persistentSessionEnabled)) {
+                    // device and preview texture are kept, only the session is configured with the new outputs
+                    closePreviewSession();
+                    releasePreparedVideoRecorder();
+                    if (photoChanged) {
+                        closeStillImageReaders();
+                        createStillImageReaders();
+                    }
+                    startPreview(texture);
+                } else if (videoChanged && releasePreparedVideoRecorder()) {
+                    prepareNextVideoRecorder();
+                }
+                notifyOutputsReconfigured(reconfigureListener, true);
+            }
+        });
+    }
+
+    @Override
+    public void startVideoRecord(File videoFile, CameraVideoListener cameraVideoListener) {
+        startVideoRecord(videoFile != null ? new FileOutputSink(videoFile) : null, cameraVideoListener);
+    }
+
+    @Override
+    public void startVideoRecord(final OutputSink videoSink, final CameraVideoListener cameraVideoListener) {
+        if (isVideoRecording || texture == null || videoSink == null) return;
 
-        this.outputPath = videoFile;
         this.cameraVideoListener = cameraVideoListener;
+        onVideoRecordRequested();
+
+        if (persistentSessionEnabled) {
+            cameraQueue.post(new Runnable() {
+                @Override
+                public void run() {
+                    startPersistentVideoRecord(videoSink);
+                }
+            });
+            return;
+        }
 
         if (cameraVideoListener != null)
-            backgroundHandler.post(new Runnable() {
+            cameraQueue.post(new Runnable() {
                 @Override
                 public void run() {
                     closePreviewSession();
-                    if (prepareVideoRecorder()) {
+
+                    if (prepareVideoOutput(videoSink)) {
 
                         SurfaceTexture texture = currentInstance.texture;
                         texture.setDefaultBufferSize(videoSize.getWidth(), videoSize.getHeight());
 
-                        try {
-                            previewRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
-                            List<Surface> surfaces = new ArrayList<>();
-
-                            Surface previewSurface = workingSurface;
-                            surfaces.add(previewSurface);
-                            previewRequestBuilder.addTarget(previewSurface);
-
-                            workingSurface = videoRecorder.getSurface();
-                            surfaces.add(workingSurface);
-                            previewRequestBuilder.addTarget(workingSurface);
-
-                            cameraDevice.createCaptureSession(surfaces, new CameraCaptureSession.StateCallback() {
-                                @Override
-                                public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
-                                    captureSession = cameraCaptureSession;
-
-                                    previewRequestBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-                                    try {
-                                        captureSession.setRepeatingRequest(previewRequestBuilder.build(), null, backgroundHandler);
-                                    } catch (Exception e) {
-                                    }
-
-                                    try {
-                                        videoRecorder.start();
-                                    } catch (Exception ignore) {
-                                        Log.e(TAG, "videoRecorder.start(): ", ignore);
-                                    }
-
-                                    isVideoRecording = true;
+                        recordSurfaces.clear();
+                        recordSurfaces.add(workingSurface);
+                        workingSurface = getVideoRecorderSurface();
+                        recordSurfaces.add(workingSurface);
+                        if (frameAnalysisSurface != null) recordSurfaces.add(frameAnalysisSurface);
 
-                                    uiHandler.post(new Runnable() {
-                                        @Override
-                                        public void run() {
-                                            cameraVideoListener.onVideoRecordStarted(videoSize);
-                                        }
-                                    });
-                                }
-
-                                @Override
-                                public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
-                                    Log.d(TAG, "onConfigureFailed");
-                                }
-                            }, backgroundHandler);
-                        } catch (Exception e) {
-                            Log.e(TAG, "startVideoRecord: ", e);
-                        }
+                        createRecordSession(videoSnapshotSupported && !highSpeedVideoEnabled);
                     }
                 }
             });
@@ -371,25 +688,30 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
     @Override
     public void stopVideoRecord() {
         if (isVideoRecording)
-            backgroundHandler.post(new Runnable() {
+            cameraQueue.post(new Runnable() {
                 @Override
                 public void run() {
+                    if (persistentSessionEnabled) {
+                        stopPersistentVideoRecord();
+                        return;
+                    }
+
                     closePreviewSession();
 
-                    if (videoRecorder != null) {
-                        try {
-                            videoRecorder.stop();
-                        } catch (Exception ignore) {
-                        }
+                    try {
+                        stopVideoRecorder();
+                    } catch (Exception ignore) {
                     }
                     isVideoRecording = false;
+                    isVideoRecordPaused = false;
+                    videoSnapshotAvailable = false;
                     releaseVideoRecorder();
 
                     if (cameraVideoListener != null) {
-                        uiHandler.post(new Runnable() {
+                        callbackQueue.post(new Runnable() {
                             @Override
                             public void run() {
-                                cameraVideoListener.onVideoRecordStopped(outputPath);
+                                cameraVideoListener.onVideoRecordStopped(videoOutputPath);
                             }
                         });
                     }
@@ -397,176 +719,656 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
             });
     }
 
-    //--------------------Internal methods------------------
-
-    private void startPreview(SurfaceTexture texture) {
-        try {
-            if (texture == null) return;
-
-            this.texture = texture;
+    @Override
+    public void pauseVideoRecord() {
+        if (!isVideoRecording || isVideoRecordPaused) return;
 
-            texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                // the session keeps streaming into the recorder surface, the recorder drops the frames
+                if (!isVideoRecording || isVideoRecordPaused || !pauseVideoRecorder()) return;
 
-            workingSurface = new Surface(texture);
+                isVideoRecordPaused = true;
+                notifyVideoRecordPaused(cameraVideoListener, true);
+            }
+        });
+    }
 
-            previewRequestBuilder
-                    = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-            previewRequestBuilder.addTarget(workingSurface);
+    @Override
+    public void resumeVideoRecord() {
+        if (!isVideoRecording || !isVideoRecordPaused) return;
 
-            cameraDevice.createCaptureSession(Arrays.asList(workingSurface, imageReader.getSurface()),
-                    new CameraCaptureSession.StateCallback() {
-                        @Override
-                        public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
-                            updatePreview(cameraCaptureSession);
-                        }
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!isVideoRecording || !isVideoRecordPaused || !resumeVideoRecorder()) return;
 
-                        @Override
-                        public void onConfigureFailed(
-                                @NonNull CameraCaptureSession cameraCaptureSession) {
-                            Log.d(TAG, "Fail while starting preview: ");
-                        }
-                    }, null);
-        } catch (Exception e) {
-            Log.e(TAG, "Error while preparing surface for preview: ", e);
-        }
+                isVideoRecordPaused = false;
+                notifyVideoRecordPaused(cameraVideoListener, false);
+            }
+        });
     }
 
     @Override
-    protected void onMaxDurationReached() {
-        stopVideoRecord();
+    public boolean isVideoRecordPauseSupported() {
+        return isMediaCodecEncoderEnabled() || super.isVideoRecordPauseSupported();
     }
 
     @Override
-    protected void onMaxFileSizeReached() {
-        stopVideoRecord();
+    public long getDroppedVideoFrames() {
+        return videoFrameStats.getDroppedFrames();
     }
 
     @Override
-    protected int getPhotoOrientation(@AnncaConfiguration.SensorPosition int sensorPosition) {
-        return getVideoOrientation(sensorPosition);
+    public long getVideoSnapshotDroppedFrames() {
+        return videoFrameStats.getSnapshotDroppedFrames();
     }
 
     @Override
-    protected int getVideoOrientation(@AnncaConfiguration.SensorPosition int sensorPosition) {
-        int degrees = 0;
-        switch (sensorPosition) {
-            case AnncaConfiguration.SENSOR_POSITION_UP:
-                degrees = 0;
-                break; // Natural orientation
-            case AnncaConfiguration.SENSOR_POSITION_LEFT:
-                degrees = 90;
-                break; // Landscape left
-            case AnncaConfiguration.SENSOR_POSITION_UP_SIDE_DOWN:
-                degrees = 180;
-                break;// Upside down
-            case AnncaConfiguration.SENSOR_POSITION_RIGHT:
-                degrees = 270;
-                break;// Landscape right
-            case AnncaConfiguration.SENSOR_POSITION_UNSPECIFIED:
-                break;
-        }
-
-        int rotate;
-        if (Objects.equals(currentCameraId, faceFrontCameraId)) {
-            rotate = (360 + faceFrontCameraOrientation + degrees) % 360;
-        } else {
-            rotate = (360 + faceBackCameraOrientation - degrees) % 360;
-        }
-        return rotate;
-    }
-
-    private void closeCamera() {
-        closePreviewSession();
-        releaseTexture();
-        closeCameraDevice();
-        closeImageReader();
-        releaseVideoRecorder();
-    }
-
-    private void releaseTexture() {
-        if (null != texture) {
-            texture.release();
-            texture = null;
-        }
+    public void setCaptureMetadataListener(CaptureMetadataListener captureMetadataListener) {
+        this.captureMetadataListener = captureMetadataListener;
     }
 
-    private void closeImageReader() {
-        if (null != imageReader) {
-            imageReader.close();
-            imageReader = null;
-        }
+    @Override
+    public CaptureMetrics getCaptureMetrics() {
+        return captureMetadata.getMetrics();
     }
 
-    private void closeCameraDevice() {
-        if (null != cameraDevice) {
-            cameraDevice.close();
-            cameraDevice = null;
-        }
-    }
+    //--------------------Internal methods------------------
 
-    @Override
-    protected void prepareCameraOutputs() {
+    /***
+     * Creates the session of the recording when the preview session can't be used for it.
+     *
+     * @param withVideoSnapshot - add the still image reader, so photos can be taken during the recording
+     */
+    private void createRecordSession(final boolean withVideoSnapshot) {
         try {
-            CameraCharacteristics characteristics = currentCameraId.equals(faceBackCameraId) ? backCameraCharacteristics : frontCameraCharacteristics;
+            final CaptureRequest.Builder recordRequestBuilder;
+            if (highSpeedVideoEnabled) {
+                recordRequestBuilder = createHighSpeedRequestBuilder();
+            } else {
+                recordRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+                setFpsRange(recordRequestBuilder, FpsRangeSelector.MODE_VIDEO);
+            }
+            List<Surface> surfaces = new ArrayList<>(recordSurfaces);
+            for (Surface surface : recordSurfaces) recordRequestBuilder.addTarget(surface);
+            // not a target of the repeating request, used only by the snapshot requests
+            if (withVideoSnapshot) surfaces.add(imageReader.getSurface());
 
-            if (currentCameraId.equals(faceFrontCameraId) && frontCameraStreamConfigurationMap == null)
-                frontCameraStreamConfigurationMap = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-            else if (currentCameraId.equals(faceBackCameraId) && backCameraStreamConfigurationMap == null)
-                backCameraStreamConfigurationMap = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            createCaptureSession(surfaces, new CameraCaptureSession.StateCallback() {
+                @Override
+                public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
+                    captureSession = cameraCaptureSession;
+                    submittedPreviewRequest = null;
+                    captureMetadata.onDiscontinuity();
+
+                    recordRequestBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+                    recordRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, getPreviewAeMode());
+                    try {
+                        setRepeatingRequest(recordRequestBuilder.build(), recordCaptureCallback);
+                    } catch (Exception e) {
+                    }
 
+                    try {
+                        startVideoRecorder();
+                    } catch (Exception ignore) {
+                        Log.e(TAG, "videoRecorder.start(): ", ignore);
+                    }
+
+                    isVideoRecording = true;
+                    videoSnapshotAvailable = withVideoSnapshot;
+
+                    callbackQueue.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (cameraVideoListener != null) cameraVideoListener.onVideoRecordStarted(videoSize);
+                        }
+                    });
+                }
+
+                @Override
+                public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
+                    Log.d(TAG, "onConfigureFailed");
+                    if (withVideoSnapshot) {
+                        Log.d(TAG, "Still image stream is not supported with the recording, video snapshots are disabled.");
+                        createRecordSession(false);
+                    }
+                }
+            }, backgroundHandler);
+        } catch (Exception e) {
+            Log.e(TAG, "startVideoRecord: ", e);
+        }
+    }
+
+    /***
+     * Takes a photo in the session of the recording. The repeating request isn't stopped and the focus isn't locked,
+     * so the recording continues without a gap.
+     */
+    private void takeVideoSnapshot() {
+        if (!isVideoRecording || !videoSnapshotAvailable || captureSession == null || cameraDevice == null) {
+            Log.d(TAG, "Video snapshot is not available.");
+            notifyPhotoTakeError();
+            return;
+        }
+
+        CaptureRequest snapshotRequest;
+        try {
+            CaptureRequest.Builder snapshotRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_VIDEO_SNAPSHOT);
+            snapshotRequestBuilder.addTarget(imageReader.getSurface());
+            // the frame goes to the recorder as well, otherwise it's missing in the video
+            for (Surface surface : recordSurfaces) snapshotRequestBuilder.addTarget(surface);
+            snapshotRequestBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+            // the frame rate of the recording doesn't change for the snapshot
+            setFpsRange(snapshotRequestBuilder, FpsRangeSelector.MODE_VIDEO);
+            snapshotRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, getPreviewAeMode());
+            snapshotRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION, getPhotoOrientation(configurationProvider.getSensorPosition()));
+            snapshotRequestBuilder.setTag(VIDEO_SNAPSHOT_TAG);
+            snapshotRequest = snapshotRequestBuilder.build();
+        } catch (Exception e) {
+            Log.e(TAG, "Error creating video snapshot request: ", e);
+            notifyPhotoTakeError();
+            return;
+        }
+
+        videoFrameStats.onSnapshotStarted();
+        try {
+            captureSession.capture(snapshotRequest, recordCaptureCallback, backgroundHandler);
+        } catch (Exception e) {
+            Log.e(TAG, "Error taking video snapshot: ", e);
+            videoFrameStats.onSnapshotFinished();
+            notifyPhotoTakeError();
+        }
+    }
+
+    @Override
+    void onFrameAnalyzersChanged() {
+        if (backgroundHandler == null) return;
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                boolean streaming = frameAnalysisSurface != null;
+                boolean resized = streaming && imageFrameSource != null && !imageFrameSource.isSizedFor(frameDispatcher);
+                if ((streaming == frameDispatcher.hasAnalyzers() && !resized) || isVideoRecording || highSpeedVideoEnabled
+                        || cameraDevice == null || texture == null) return;
+
+                // analysis stream is a part of the session
+                startPreview(texture);
+            }
+        });
+    }
+
+    /***
+     * @return surface of the low resolution YUV stream, or null if there are no analyzers
+     * or the high speed session is used, it can't have the extra stream
+     */
+    private Surface getFrameAnalysisSurface() {
+        if (!frameDispatcher.hasAnalyzers() || highSpeedVideoEnabled) return null;
+
+        if (imageFrameSource != null && !imageFrameSource.isSizedFor(frameDispatcher)) {
+            // the analyzers can hold more frames than the reader has images
+            imageFrameSource.close();
+            imageFrameSource = null;
+        }
+        if (imageFrameSource == null) {
             StreamConfigurationMap map = currentCameraId.equals(faceBackCameraId) ? backCameraStreamConfigurationMap : frontCameraStreamConfigurationMap;
-            if (configurationProvider.getMediaQuality() == AnncaConfiguration.MEDIA_QUALITY_AUTO) {
-                camcorderProfile = CameraHelper.getCamcorderProfile(currentCameraId, configurationProvider.getVideoFileSize(), configurationProvider.getMinimumVideoDuration());
+            Size analysisSize = CameraHelper.getAnalysisSize(Size.fromArray2(map.getOutputSizes(ImageFormat.YUV_420_888)),
+                    previewSize, MAX_ANALYSIS_WIDTH);
+            imageFrameSource = new ImageFrameSource(frameDispatcher, analysisSize.getWidth(), analysisSize.getHeight());
+        }
+        imageFrameSource.setRotation(getPhotoOrientation(configurationProvider.getSensorPosition()));
+        return imageFrameSource.getSurface();
+    }
+
+    private void notifyPhotoTakeError() {
+        final CameraPhotoListener photoListener = cameraPhotoListener;
+        if (photoListener == null) return;
+        callbackQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                photoListener.onPhotoTakeError();
+            }
+        });
+    }
+
+    private void startPreview(SurfaceTexture texture) {
+        try {
+            if (texture == null) return;
+
+            this.texture = texture;
+            previewHealthMonitor.start();
+
+            texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
+
+            workingSurface = new Surface(texture);
+
+            // constrained high speed session takes only the preview and the recorder surfaces
+            List<Surface> surfaces = highSpeedVideoEnabled
+                    ? new ArrayList<>(Collections.singletonList(workingSurface))
+                    : new ArrayList<>(Arrays.asList(workingSurface, imageReader.getSurface()));
+
+            CaptureRequest.Builder previewRequestBuilder;
+            if (zeroShutterLagImageReader != null) {
+                previewRequestBuilder = createZeroShutterLagRequestBuilder();
+                previewRequestBuilder.addTarget(zeroShutterLagImageReader.getSurface());
+                surfaces.add(zeroShutterLagImageReader.getSurface());
+            } else if (highSpeedVideoEnabled) {
+                previewRequestBuilder = createHighSpeedRequestBuilder();
+            } else {
+                previewRequestBuilder
+                        = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            }
+            previewRequestBuilder.addTarget(workingSurface);
+
+            frameAnalysisSurface = getFrameAnalysisSurface();
+            if (frameAnalysisSurface != null) {
+                surfaces.add(frameAnalysisSurface);
+                previewRequestBuilder.addTarget(frameAnalysisSurface);
+            }
+
+            if (persistentSessionEnabled) {
+                // recorder has to be prepared before the session is configured, the surface gets its size from it
+                if (persistentRecorderSurface == null)
+                    persistentRecorderSurface = MediaCodec.createPersistentInputSurface();
+                if (prepareVideoRecorderInAdvance()) surfaces.add(persistentRecorderSurface);
+                else persistentSessionEnabled = false;
+            }
+            if (isPreRollEnabled()) {
+                // encoder keeps running during the preview to fill the pre-roll buffer
+                previewRequestBuilder.addTarget(persistentRecorderSurface);
+            }
+            // high speed range is set by the builder and doesn't change
+            previewRequests = PreviewRequestCache.forCaptureRequests(previewRequestBuilder, new PreviewRequestCache.State(
+                    configurationProvider.getFlashMode(),
+                    highSpeedVideoEnabled ? null : getFpsRange(getPreviewFpsMode())));
+
+            final SurfaceTexture surfaceTexture = texture;
+            createPreviewSession(surfaces,
+                    new CameraCaptureSession.StateCallback() {
+                        @Override
+                        public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
+                            updatePreview(cameraCaptureSession);
+                        }
+
+                        @Override
+                        public void onConfigureFailed(
+                                @NonNull CameraCaptureSession cameraCaptureSession) {
+                            Log.d(TAG, "Fail while starting preview: ");
+                            if (highSpeedVideoEnabled) {
+                                Log.e(TAG, "Constrained high speed session can't be configured.");
+                                if (cameraOpenListener != null) {
+                                    callbackQueue.post(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            cameraOpenListener.onCameraOpenError();
+                                        }
+                                    });
+                                }
+                            } else if (persistentSessionEnabled) {
+                                Log.d(TAG, "Persistent recorder surface is not supported, falling back to separate record session.");
+                                persistentSessionEnabled = false;
+                                releasePreparedVideoRecorder();
+                                startPreview(surfaceTexture);
+                            } else if (zeroShutterLagImageReader != null) {
+                                // photos are taken the regular way without the reprocessable session
+                                zeroShutterLagInputFormat = -1;
+                                closeZeroShutterLag();
+                                startPreview(surfaceTexture);
+                            }
+                        }
+                    });
+        } catch (Exception e) {
+            Log.e(TAG, "Error while preparing surface for preview: ", e);
+        }
+    }
+
+    @Override
+    protected void onMaxDurationReached() {
+        stopVideoRecord();
+    }
+
+    @Override
+    protected void onMaxFileSizeReached() {
+        stopVideoRecord();
+    }
+
+    @Override
+    protected int getPhotoOrientation(@AnncaConfiguration.SensorPosition int sensorPosition) {
+        return getVideoOrientation(sensorPosition);
+    }
+
+    @Override
+    protected int getVideoOrientation(@AnncaConfiguration.SensorPosition int sensorPosition) {
+        int degrees = 0;
+        switch (sensorPosition) {
+            case AnncaConfiguration.SENSOR_POSITION_UP:
+                degrees = 0;
+                break; // Natural orientation
+            case AnncaConfiguration.SENSOR_POSITION_LEFT:
+                degrees = 90;
+                break; // Landscape left
+            case AnncaConfiguration.SENSOR_POSITION_UP_SIDE_DOWN:
+                degrees = 180;
+                break;// Upside down
+            case AnncaConfiguration.SENSOR_POSITION_RIGHT:
+                degrees = 270;
+                break;// Landscape right
+            case AnncaConfiguration.SENSOR_POSITION_UNSPECIFIED:
+                break;
+        }
+
+        int rotate;
+        if (Objects.equals(currentCameraId, faceFrontCameraId)) {
+            rotate = (360 + faceFrontCameraOrientation + degrees) % 360;
+        } else {
+            rotate = (360 + faceBackCameraOrientation - degrees) % 360;
+        }
+        return rotate;
+    }
+
+    private void closeCamera() {
+        BurstSession session = burstSession;
+        if (session != null) abortBurst(session);
+        previewHealthMonitor.stop();
+
+        closePreviewSession();
+        releaseTexture();
+        closeCameraDevice();
+        closeImageReader();
+        releasePreparedVideoRecorder();
+        releaseVideoRecorder();
+        releasePersistentRecorderSurface();
+    }
+
+    private void releasePersistentRecorderSurface() {
+        if (null != persistentRecorderSurface) {
+            persistentRecorderSurface.release();
+            persistentRecorderSurface = null;
+        }
+    }
+
+    private void releaseTexture() {
+        if (null != texture) {
+            texture.release();
+            texture = null;
+        }
+    }
+
+    private void closeImageReader() {
+        closeStillImageReaders();
+        if (null != imageFrameSource) {
+            imageFrameSource.close();
+            imageFrameSource = null;
+            frameAnalysisSurface = null;
+        }
+    }
+
+    private void createStillImageReaders() {
+        deferredStillImages = 0;
+        imageReader = ImageReader.newInstance(photoSize.getWidth(), photoSize.getHeight(),
+                ImageFormat.JPEG, MAX_STILL_IMAGES);
+        imageReader.setOnImageAvailableListener(this, backgroundHandler);
+
+        if (isZeroShutterLagEnabled()) {
+            Size inputSize = getZeroShutterLagInputSize();
+            zeroShutterLagBuffer = new ZeroShutterLagBuffer(configurationProvider.getZeroShutterLagBufferSize());
+            // one extra image for the frame being reprocessed and one for the frame being acquired
+            zeroShutterLagImageReader = ImageReader.newInstance(inputSize.getWidth(), inputSize.getHeight(),
+                    zeroShutterLagInputFormat, zeroShutterLagBuffer.getCapacity() + 2);
+            zeroShutterLagImageReader.setOnImageAvailableListener(zeroShutterLagImageListener, backgroundHandler);
+        }
+    }
+
+    private void closeStillImageReaders() {
+        if (null != imageReader) {
+            imageReader.close();
+            imageReader = null;
+        }
+        closeZeroShutterLag();
+    }
+
+    private void closeZeroShutterLag() {
+        ZeroShutterLagBuffer buffer = zeroShutterLagBuffer;
+        zeroShutterLagBuffer = null;
+        if (null != buffer) buffer.close();
+
+        if (null != zeroShutterLagImageReader) {
+            zeroShutterLagImageReader.close();
+            zeroShutterLagImageReader = null;
+        }
+    }
+
+    private void closeCameraDevice() {
+        if (null != cameraDevice) {
+            cameraDevice.close();
+            cameraDevice = null;
+        }
+    }
+
+    @Override
+    protected void prepareCameraOutputs() {
+        try {
+            CameraCharacteristics characteristics = getCameraCharacteristics(currentCameraId);
+
+            OutputConfig outputConfig = getOutputConfig(currentCameraId);
+            if (outputConfig == null) return;
+            applyOutputConfig(outputConfig);
+
+            highSpeedFpsRange = outputConfig.getHighSpeedFpsRange();
+            highSpeedVideoEnabled = highSpeedFpsRange != null;
+            captureMetadata.reset();
+
+            zeroShutterLagInputFormat = getZeroShutterLagInputFormat(characteristics, getStreamConfigurationMap(currentCameraId));
+            createStillImageReaders();
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+                realtimeSensorTimestamp = timestampSource != null
+                        && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+            } else realtimeSensorTimestamp = false;
+
+            availableFpsRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+            fpsRangeSelector = availableFpsRanges != null && availableFpsRanges.length > 0
+                    ? FpsRangeSelector.fromCamera2(availableFpsRanges) : null;
+            lowLightPreview = false;
+
+            Integer hardwareLevel = characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+            // legacy devices stop the preview while taking the still image
+            videoSnapshotSupported = hardwareLevel != null
+                    && hardwareLevel != CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY;
+
+            persistentSessionEnabled = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                    && configurationProvider.getMediaAction() != AnncaConfiguration.MEDIA_ACTION_PHOTO
+                    && zeroShutterLagImageReader == null;
+            if (persistentSessionEnabled) {
+                // prepared while the camera is opening, so the preview session doesn't wait for the recorder
+                if (persistentRecorderSurface == null)
+                    persistentRecorderSurface = MediaCodec.createPersistentInputSurface();
+                prepareVideoRecorderInAdvance();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error while setup camera sizes.", e);
+        }
+    }
+
+    @Override
+    OutputConfig createOutputConfig(String cameraId) {
+        try {
+            CameraCharacteristics characteristics = getCameraCharacteristics(cameraId);
+            StreamConfigurationMap map = getStreamConfigurationMap(cameraId);
+
+            int mediaQuality = configurationProvider.getMediaQuality();
+            CamcorderProfile camcorderProfile;
+            if (mediaQuality == AnncaConfiguration.MEDIA_QUALITY_AUTO) {
+                camcorderProfile = CameraHelper.getCamcorderProfile(cameraId, configurationProvider.getVideoFileSize(), configurationProvider.getMinimumVideoDuration());
             } else
-                camcorderProfile = CameraHelper.getCamcorderProfile(configurationProvider.getMediaQuality(), currentCameraId);
+                camcorderProfile = CameraHelper.getCamcorderProfile(mediaQuality, cameraId);
 
-            videoSize = CameraHelper.chooseOptimalSize(Size.fromArray2(map.getOutputSizes(MediaRecorder.class)),
+            Size[] videoSizes = Size.fromArray2(map.getOutputSizes(MediaRecorder.class));
+            Size videoSize = CameraHelper.chooseOptimalSize(videoSizes,
                     windowSize.getWidth(), windowSize.getHeight(), new Size(camcorderProfile.videoFrameWidth, camcorderProfile.videoFrameHeight));
 
             if (videoSize == null || videoSize.getWidth() > camcorderProfile.videoFrameWidth
                     || videoSize.getHeight() > camcorderProfile.videoFrameHeight)
-                videoSize = CameraHelper.getSizeWithClosestRatio(Size.fromArray2(map.getOutputSizes(MediaRecorder.class)), camcorderProfile.videoFrameWidth, camcorderProfile.videoFrameHeight);
-            else if (videoSize == null || videoSize.getWidth() > camcorderProfile.videoFrameWidth
-                    || videoSize.getHeight() > camcorderProfile.videoFrameHeight)
-                videoSize = CameraHelper.getSizeWithClosestRatio(Size.fromArray2(map.getOutputSizes(MediaRecorder.class)), camcorderProfile.videoFrameWidth, camcorderProfile.videoFrameHeight);
+                videoSize = CameraHelper.getSizeWithClosestRatio(videoSizes, camcorderProfile.videoFrameWidth, camcorderProfile.videoFrameHeight);
 
-            photoSize = CameraHelper.getPictureSize(Size.fromArray2(map.getOutputSizes(ImageFormat.JPEG)),
-                    configurationProvider.getMediaQuality() == AnncaConfiguration.MEDIA_QUALITY_AUTO
-                            ? AnncaConfiguration.MEDIA_QUALITY_HIGHEST : configurationProvider.getMediaQuality());
+            Size photoSize = CameraHelper.getPictureSize(Size.fromArray2(map.getOutputSizes(ImageFormat.JPEG)),
+                    mediaQuality == AnncaConfiguration.MEDIA_QUALITY_AUTO
+                            ? AnncaConfiguration.MEDIA_QUALITY_HIGHEST : mediaQuality);
 
-            imageReader = ImageReader.newInstance(photoSize.getWidth(), photoSize.getHeight(),
-                    ImageFormat.JPEG, 2);
-            imageReader.setOnImageAvailableListener(this, backgroundHandler);
+            if (configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_VIDEO_HIGH_SPEED) {
+                OutputConfig highSpeedConfig = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                        ? createHighSpeedOutputConfig(cameraId, characteristics, map, photoSize) : null;
+                if (highSpeedConfig != null) return highSpeedConfig;
+                Log.d(TAG, "Constrained high speed recording is not supported, recording a regular video.");
+            }
 
+            Size[] previewSizes = Size.fromArray2(map.getOutputSizes(SurfaceTexture.class));
+            Size previewSize;
             if (configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_PHOTO
                     || configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_UNSPECIFIED) {
 
                 if (windowSize.getHeight() * windowSize.getWidth() > photoSize.getWidth() * photoSize.getHeight()) {
-                    previewSize = CameraHelper.getOptimalPreviewSize(Size.fromArray2(map.getOutputSizes(SurfaceTexture.class)), photoSize.getWidth(), photoSize.getHeight());
+                    previewSize = CameraHelper.getOptimalPreviewSize(previewSizes, photoSize.getWidth(), photoSize.getHeight());
                 } else {
-                    previewSize = CameraHelper.getOptimalPreviewSize(Size.fromArray2(map.getOutputSizes(SurfaceTexture.class)), windowSize.getWidth(), windowSize.getHeight());
+                    previewSize = CameraHelper.getOptimalPreviewSize(previewSizes, windowSize.getWidth(), windowSize.getHeight());
                 }
 
                 if (previewSize == null)
-                    previewSize = CameraHelper.chooseOptimalSize(Size.fromArray2(map.getOutputSizes(SurfaceTexture.class)), windowSize.getWidth(), windowSize.getHeight(), photoSize);
+                    previewSize = CameraHelper.chooseOptimalSize(previewSizes, windowSize.getWidth(), windowSize.getHeight(), photoSize);
 
             } else {
                 if (windowSize.getHeight() * windowSize.getWidth() > videoSize.getWidth() * videoSize.getHeight()) {
-                    previewSize = CameraHelper.getOptimalPreviewSize(Size.fromArray2(map.getOutputSizes(SurfaceTexture.class)), videoSize.getWidth(), videoSize.getHeight());
+                    previewSize = CameraHelper.getOptimalPreviewSize(previewSizes, videoSize.getWidth(), videoSize.getHeight());
                 } else {
-                    previewSize = CameraHelper.getOptimalPreviewSize(Size.fromArray2(map.getOutputSizes(SurfaceTexture.class)), windowSize.getWidth(), windowSize.getHeight());
+                    previewSize = CameraHelper.getOptimalPreviewSize(previewSizes, windowSize.getWidth(), windowSize.getHeight());
                 }
 
                 if (previewSize == null)
-                    previewSize = CameraHelper.getSizeWithClosestRatio(Size.fromArray2(map.getOutputSizes(SurfaceTexture.class)), videoSize.getWidth(), videoSize.getHeight());
+                    previewSize = CameraHelper.getSizeWithClosestRatio(previewSizes, videoSize.getWidth(), videoSize.getHeight());
             }
+            return new OutputConfig(mediaQuality, camcorderProfile, previewSize, photoSize, videoSize, null);
         } catch (Exception e) {
             Log.e(TAG, "Error while setup camera sizes.", e);
         }
+        return null;
+    }
+
+    /***
+     * Chooses the high speed size for the quality the same way as the picture size, and the highest frame rate
+     * for it. Camcorder profile is adjusted to the chosen size and frame rate, both outputs of the high speed
+     * session have the same size.
+     *
+     * @return null if the camera can't record in the constrained high speed session
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    private OutputConfig createHighSpeedOutputConfig(String cameraId, CameraCharacteristics characteristics,
+                                                     StreamConfigurationMap map, Size photoSize) {
+        int[] capabilities = characteristics.get(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+        boolean supported = false;
+        if (capabilities != null) {
+            for (int capability : capabilities) {
+                if (capability == CameraMetadata.REQUEST_AVAILABLE_CAPABILITIES_CONSTRAINED_HIGH_SPEED_VIDEO)
+                    supported = true;
+            }
+        }
+        android.util.Size[] highSpeedSizes = supported ? map.getHighSpeedVideoSizes() : null;
+        if (highSpeedSizes == null || highSpeedSizes.length == 0) return null;
+
+        int mediaQuality = configurationProvider.getMediaQuality() == AnncaConfiguration.MEDIA_QUALITY_AUTO
+                ? AnncaConfiguration.MEDIA_QUALITY_HIGHEST : configurationProvider.getMediaQuality();
+        Size size = CameraHelper.getPictureSize(Size.fromArray2(highSpeedSizes), mediaQuality);
+        if (size == null) return null;
+
+        Range<Integer> fpsRange = null;
+        for (android.util.Size highSpeedSize : highSpeedSizes) {
+            if (highSpeedSize.getWidth() == size.getWidth() && highSpeedSize.getHeight() == size.getHeight())
+                fpsRange = CameraHelper.getHighSpeedFpsRange(map.getHighSpeedVideoFpsRangesFor(highSpeedSize));
+        }
+        if (fpsRange == null) return null;
+
+        CamcorderProfile highSpeedProfile = CameraHelper.getHighSpeedCamcorderProfile(mediaQuality, cameraId,
+                size, fpsRange.getUpper());
+        if (highSpeedProfile == null) return null;
+
+        Log.d(TAG, "High speed recording " + size.getWidth() + "x" + size.getHeight() + " at " + fpsRange.getUpper() + " fps");
+        return new OutputConfig(configurationProvider.getMediaQuality(), highSpeedProfile, size, photoSize, size, fpsRange);
+    }
+
+    /***
+     * PRIVATE frames are preferred, the camera reprocesses them without a copy.
+     *
+     * @return format of the zero shutter lag ring the camera can reprocess to JPEG, -1 if it can't reprocess
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    private static int getZeroShutterLagInputFormat(CameraCharacteristics characteristics, StreamConfigurationMap map) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return -1;
+
+        int[] capabilities = characteristics.get(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+        if (capabilities == null) return -1;
+
+        boolean privateReprocessing = false;
+        boolean yuvReprocessing = false;
+        for (int capability : capabilities) {
+            if (capability == CameraMetadata.REQUEST_AVAILABLE_CAPABILITIES_PRIVATE_REPROCESSING)
+                privateReprocessing = true;
+            else if (capability == CameraMetadata.REQUEST_AVAILABLE_CAPABILITIES_YUV_REPROCESSING)
+                yuvReprocessing = true;
+        }
+        if (privateReprocessing && isReprocessedToJpeg(map, ImageFormat.PRIVATE)) return ImageFormat.PRIVATE;
+        if (yuvReprocessing && isReprocessedToJpeg(map, ImageFormat.YUV_420_888)) return ImageFormat.YUV_420_888;
+        return -1;
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private static boolean isReprocessedToJpeg(StreamConfigurationMap map, int inputFormat) {
+        int[] outputFormats = map.getValidOutputFormatsForInput(inputFormat);
+        if (outputFormats == null) return false;
+        for (int outputFormat : outputFormats) {
+            if (outputFormat == ImageFormat.JPEG) return true;
+        }
+        return false;
+    }
+
+    /***
+     * @return the photo size if the camera reprocesses it, otherwise the largest input size
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    private Size getZeroShutterLagInputSize() {
+        Size[] inputSizes = Size.fromArray2(getStreamConfigurationMap(currentCameraId).getInputSizes(zeroShutterLagInputFormat));
+        Size largest = photoSize;
+        long largestArea = 0;
+        for (Size inputSize : inputSizes) {
+            if (inputSize.getWidth() == photoSize.getWidth() && inputSize.getHeight() == photoSize.getHeight())
+                return inputSize;
+            long area = (long) inputSize.getWidth() * inputSize.getHeight();
+            if (area > largestArea) {
+                largestArea = area;
+                largest = inputSize;
+            }
+        }
+        return largest;
+    }
+
+    private CameraCharacteristics getCameraCharacteristics(String cameraId) {
+        return cameraId.equals(faceBackCameraId) ? backCameraCharacteristics : frontCameraCharacteristics;
+    }
+
+    private StreamConfigurationMap getStreamConfigurationMap(String cameraId) {
+        if (cameraId.equals(faceBackCameraId)) {
+            if (backCameraStreamConfigurationMap == null)
+                backCameraStreamConfigurationMap = backCameraCharacteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            return backCameraStreamConfigurationMap;
+        }
+        if (frontCameraStreamConfigurationMap == null)
+            frontCameraStreamConfigurationMap = frontCameraCharacteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        return frontCameraStreamConfigurationMap;
     }
 
     @Override
     protected boolean prepareVideoRecorder() {
+        if (isMediaCodecEncoderEnabled()) return prepareVideoEncoderEngine();
+
         videoRecorder = new MediaRecorder();
         try {
             videoRecorder.setAudioSource(MediaRecorder.AudioSource.CAMCORDER);
@@ -583,12 +1385,10 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
             videoRecorder.setAudioSamplingRate(camcorderProfile.audioSampleRate);
             videoRecorder.setAudioEncoder(camcorderProfile.audioCodec);
 
-            File outputFile = outputPath;
-            String outputFilePath = outputFile.toString();
-            videoRecorder.setOutputFile(outputFilePath);
+            setVideoRecorderOutput(videoRecorder);
 
-            if (configurationProvider.getVideoFileSize() > 0) {
-                videoRecorder.setMaxFileSize(configurationProvider.getVideoFileSize());
+            if (getRecorderMaxFileSize() > 0) {
+                videoRecorder.setMaxFileSize(getRecorderMaxFileSize());
                 videoRecorder.setOnInfoListener(this);
             }
             if (configurationProvider.getVideoDuration() > 0) {
@@ -597,6 +1397,8 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
             }
             videoRecorder.setOrientationHint(getVideoOrientation(configurationProvider.getSensorPosition()));
 
+            if (persistentSessionEnabled) videoRecorder.setInputSurface(persistentRecorderSurface);
+
             videoRecorder.prepare();
 
             return true;
@@ -612,17 +1414,259 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
         return false;
     }
 
+    private boolean prepareVideoEncoderEngine() {
+        if (videoOutputSink != null) {
+            // the muxer of the encoder writes its segments to files
+            Log.e(TAG, "Video encoder can't record to " + videoOutputSink);
+            return false;
+        }
+        try {
+            EncoderConfig encoderConfig = new EncoderConfig.Builder()
+                    .setOutputFile(getVideoRecordingFile(videoOutputPath))
+                    .setVideoSize(videoSize.getWidth(), videoSize.getHeight())
+                    .setVideoFrameRate(camcorderProfile.videoFrameRate)
+                    .setVideoBitRate(camcorderProfile.videoBitRate)
+                    .setAudio(camcorderProfile.audioSampleRate, camcorderProfile.audioChannels, camcorderProfile.audioBitRate)
+                    .setOrientationHint(getVideoOrientation(configurationProvider.getSensorPosition()))
+                    .setMaxFileSize(isVideoSegmentationEnabled() ? -1 : configurationProvider.getVideoFileSize())
+                    .setSegmentSize(isVideoSegmentationEnabled() ? configurationProvider.getVideoSegmentSize() : -1)
+                    .setMaxDuration(configurationProvider.getVideoDuration())
+                    .setRealtimeClock(realtimeSensorTimestamp)
+                    .setPreRollDuration(isPreRollEnabled() ? configurationProvider.getPreRollMillis() : -1)
+                    .build();
+
+            videoEncoderEngine = new MediaCodecEncoderEngine(encoderConfig, videoEncoderListener);
+            videoEncoderEngine.prepare(persistentSessionEnabled ? persistentRecorderSurface : null);
+            return true;
+        } catch (Throwable error) {
+            Log.e(TAG, "Error during preparing video encoder: " + error.getMessage());
+        }
+
+        releaseVideoRecorder();
+        return false;
+    }
+
+    @Override
+    protected void releaseVideoRecorder() {
+        super.releaseVideoRecorder();
+        stopBitrateControl();
+
+        if (videoEncoderEngine != null) {
+            videoEncoderEngine.release();
+            videoEncoderEngine = null;
+        }
+    }
+
+    @Override
+    boolean hasVideoRecorder() {
+        return super.hasVideoRecorder() || videoEncoderEngine != null;
+    }
+
+    private Surface getVideoRecorderSurface() {
+        return videoEncoderEngine != null ? videoEncoderEngine.getInputSurface() : videoRecorder.getSurface();
+    }
+
+    private void startVideoRecorder() {
+        videoFrameStats.reset();
+        if (videoEncoderEngine != null) {
+            videoEncoderEngine.start();
+            startBitrateControl();
+        } else videoRecorder.start();
+        startVideoSegments();
+    }
+
+    /***
+     * Keeps the recording within the file size budget for the expected duration,
+     * MediaRecorder can't change the bit rate while recording so it's done only for the codec engine.
+     */
+    private void startBitrateControl() {
+        long targetDuration = configurationProvider.getVideoDuration() > 0
+                ? configurationProvider.getVideoDuration() : configurationProvider.getMinimumVideoDuration();
+        if (configurationProvider.getVideoFileSize() <= 0 || targetDuration <= 0 || isVideoSegmentationEnabled()) return;
+
+        bitrateController = new BitrateController(configurationProvider.getVideoFileSize(), targetDuration,
+                camcorderProfile.videoBitRate, camcorderProfile.audioBitRate);
+        videoRecordStartTime = SystemClock.elapsedRealtime();
+        backgroundHandler.postDelayed(bitrateControlRunnable, BITRATE_CONTROL_PERIOD_MS);
+    }
+
+    private boolean pauseVideoRecorder() {
+        if (videoEncoderEngine == null) return pauseMediaRecorder();
+        if (!videoEncoderEngine.pause()) return false;
+
+        if (bitrateController != null) {
+            backgroundHandler.removeCallbacks(bitrateControlRunnable);
+            videoRecordPauseTime = SystemClock.elapsedRealtime();
+        }
+        return true;
+    }
+
+    private boolean resumeVideoRecorder() {
+        if (videoEncoderEngine == null) return resumeMediaRecorder();
+        if (!videoEncoderEngine.resume()) return false;
+
+        if (bitrateController != null) {
+            // the paused time isn't a part of the file duration
+            videoRecordStartTime += SystemClock.elapsedRealtime() - videoRecordPauseTime;
+            backgroundHandler.postDelayed(bitrateControlRunnable, BITRATE_CONTROL_PERIOD_MS);
+        }
+        return true;
+    }
+
+    private void stopBitrateControl() {
+        if (backgroundHandler != null) backgroundHandler.removeCallbacks(bitrateControlRunnable);
+        bitrateController = null;
+    }
+
+    private void stopVideoRecorder() {
+        try {
+            if (videoEncoderEngine != null) videoEncoderEngine.stop();
+            else if (videoRecorder != null) videoRecorder.stop();
+        } finally {
+            finishVideoOutput();
+        }
+    }
+
+    @Override
+    boolean isVideoSegmentationEnabled() {
+        return super.isVideoSegmentationEnabled()
+                || (videoOutputSink == null && configurationProvider.getVideoSegmentSize() > 0
+                && isMediaCodecEncoderEnabled());
+    }
+
+    private boolean isMediaCodecEncoderEnabled() {
+        return configurationProvider.getVideoEncoder() == AnncaConfiguration.VIDEO_ENCODER_MEDIA_CODEC;
+    }
+
+    private void startPersistentVideoRecord(OutputSink videoSink) {
+        if (isVideoRecording || captureSession == null || cameraDevice == null) return;
+
+        if (!prepareVideoOutput(videoSink)) {
+            notifyVideoRecordError();
+            return;
+        }
+
+        try {
+            startVideoRecorder();
+
+            recordSurfaces.clear();
+            recordSurfaces.add(workingSurface);
+            recordSurfaces.add(persistentRecorderSurface);
+            if (frameAnalysisSurface != null) recordSurfaces.add(frameAnalysisSurface);
+
+            CaptureRequest.Builder recordRequestBuilder;
+            if (highSpeedVideoEnabled) {
+                recordRequestBuilder = createHighSpeedRequestBuilder();
+            } else {
+                recordRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+                setFpsRange(recordRequestBuilder, FpsRangeSelector.MODE_VIDEO);
+            }
+            for (Surface surface : recordSurfaces) recordRequestBuilder.addTarget(surface);
+            recordRequestBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+            recordRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, getPreviewAeMode());
+            setRepeatingRequest(recordRequestBuilder.build(), recordCaptureCallback);
+            submittedPreviewRequest = null;
+
+            isVideoRecording = true;
+            // still image reader is a part of the preview session, unless it's the high speed one
+            videoSnapshotAvailable = videoSnapshotSupported && !highSpeedVideoEnabled;
+        } catch (Exception e) {
+            Log.e(TAG, "startPersistentVideoRecord: ", e);
+            releaseVideoRecorder();
+            notifyVideoRecordError();
+            return;
+        }
+
+        if (cameraVideoListener != null) {
+            callbackQueue.post(new Runnable() {
+                @Override
+                public void run() {
+                    cameraVideoListener.onVideoRecordStarted(videoSize);
+                }
+            });
+        }
+    }
+
+    private void stopPersistentVideoRecord() {
+        submitPreviewRequest(true);
+
+        try {
+            stopVideoRecorder();
+        } catch (Exception ignore) {
+        }
+        isVideoRecording = false;
+        isVideoRecordPaused = false;
+        videoSnapshotAvailable = false;
+        releaseVideoRecorder();
+
+        final File videoFile = videoOutputPath;
+        if (cameraVideoListener != null) {
+            callbackQueue.post(new Runnable() {
+                @Override
+                public void run() {
+                    cameraVideoListener.onVideoRecordStopped(videoFile);
+                }
+            });
+        }
+
+        if (!prepareVideoRecorderInAdvance()) Log.e(TAG, "Can't prepare recorder for the next recording.");
+        else if (isPreRollEnabled()) startPreRoll();
+    }
+
+    private void notifyVideoRecordError() {
+        if (cameraVideoListener != null) {
+            callbackQueue.post(new Runnable() {
+                @Override
+                public void run() {
+                    cameraVideoListener.onVideoRecordError();
+                }
+            });
+        }
+    }
+
     private void updatePreview(CameraCaptureSession cameraCaptureSession) {
         if (null == cameraDevice) {
             return;
         }
         captureSession = cameraCaptureSession;
-        setFlashModeAndBuildPreviewRequest(configurationProvider.getFlashMode());
+        captureMetadata.onDiscontinuity();
+        resetZeroShutterLagWriter();
+        submitPreviewRequest(true);
 
         if (cameraOpenListener != null) cameraOpenListener.onCameraReady();
+        // persistent recorder is prepared together with the session
+        if (!persistentSessionEnabled && configurationProvider.getMediaAction() != AnncaConfiguration.MEDIA_ACTION_PHOTO)
+            prepareNextVideoRecorder();
+        if (isPreRollEnabled()) {
+            cameraQueue.post(new Runnable() {
+                @Override
+                public void run() {
+                    startPreRoll();
+                }
+            });
+        }
+    }
+
+    private void startPreRoll() {
+        if (videoEncoderEngine != null && !isVideoRecording) videoEncoderEngine.startPreRoll();
+    }
+
+    private boolean isPreRollEnabled() {
+        return persistentSessionEnabled && isMediaCodecEncoderEnabled() && configurationProvider.getPreRollMillis() > 0;
+    }
+
+    @Override
+    public long getPreRollBufferedBytes() {
+        VideoEncoderEngine engine = videoEncoderEngine;
+        return engine != null ? engine.getPreRollBufferedBytes() : 0;
     }
 
     private void closePreviewSession() {
+        submittedPreviewRequest = null;
+        if (zeroShutterLagImageWriter != null) {
+            zeroShutterLagImageWriter.close();
+            zeroShutterLagImageWriter = null;
+        }
         if (captureSession != null) {
             captureSession.close();
             try {
@@ -634,12 +1678,181 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
         }
     }
 
-    private void lockFocus() {
+    private boolean isZeroShutterLagEnabled() {
+        return configurationProvider.getZeroShutterLagBufferSize() > 0 && zeroShutterLagInputFormat >= 0
+                && configurationProvider.getMediaAction() != AnncaConfiguration.MEDIA_ACTION_VIDEO
+                && configurationProvider.getMediaAction() != AnncaConfiguration.MEDIA_ACTION_VIDEO_HIGH_SPEED;
+    }
+
+    /***
+     * Video preview runs at the frame rate of the recording, so it doesn't change when the recording starts.
+     */
+    @FpsRangeSelector.Mode
+    private int getPreviewFpsMode() {
+        if (configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_VIDEO
+                || configurationProvider.getMediaAction() == AnncaConfiguration.MEDIA_ACTION_VIDEO_HIGH_SPEED)
+            return FpsRangeSelector.MODE_VIDEO;
+        return lowLightPreview ? FpsRangeSelector.MODE_LOW_LIGHT : FpsRangeSelector.MODE_PREVIEW;
+    }
+
+    /***
+     * @return null if the camera doesn't report the ranges
+     */
+    private Range<Integer> getFpsRange(@FpsRangeSelector.Mode int mode) {
+        if (fpsRangeSelector == null) return null;
+
+        int frameRate = mode == FpsRangeSelector.MODE_VIDEO && camcorderProfile != null
+                ? camcorderProfile.videoFrameRate : FpsRangeSelector.PREVIEW_FRAME_RATE;
+        int index = fpsRangeSelector.select(mode, frameRate);
+        return index >= 0 ? availableFpsRanges[index] : null;
+    }
+
+    private void setFpsRange(CaptureRequest.Builder builder, @FpsRangeSelector.Mode int mode) {
+        Range<Integer> fpsRange = getFpsRange(mode);
+        if (fpsRange != null) builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+    }
+
+    /***
+     * Switches the photo preview to the low light range when the exposure takes the whole frame,
+     * and back when it's shorter than half of the frame at the preview frame rate.
+     */
+    private void updateLowLightPreview(CaptureResult result) {
+        if (previewState != STATE_PREVIEW || isVideoRecording || highSpeedVideoEnabled || captureSession == null
+                || getPreviewFpsMode() == FpsRangeSelector.MODE_VIDEO) return;
+
+        Long exposureTime = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+        Range<Integer> previewRange = getFpsRange(FpsRangeSelector.MODE_PREVIEW);
+        if (exposureTime == null || previewRange == null
+                || previewRange.equals(getFpsRange(FpsRangeSelector.MODE_LOW_LIGHT))) return;
+
+        boolean lowLight = lowLightPreview
+                ? FpsRangeSelector.isExposureLimited(exposureTime * 2, previewRange.getUpper())
+                : FpsRangeSelector.isExposureLimited(exposureTime, previewRange.getUpper());
+        if (lowLight == lowLightPreview) return;
+
+        lowLightPreview = lowLight;
+        PreviewRequestCache<CaptureRequest.Builder, CaptureRequest> requests = previewRequests;
+        if (requests != null) updatePreviewState(requests.getState().withFpsRange(getFpsRange(getPreviewFpsMode())));
+    }
+
+    private CaptureRequest.Builder createHighSpeedRequestBuilder() throws CameraAccessException {
+        CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+        builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, highSpeedFpsRange);
+        return builder;
+    }
+
+    /***
+     * The session of the zero shutter lag preview takes the frames of the ring back for the reprocessing.
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    private void createPreviewSession(List<Surface> surfaces, CameraCaptureSession.StateCallback callback)
+            throws CameraAccessException {
+        if (zeroShutterLagImageReader == null) {
+            createCaptureSession(surfaces, callback, null);
+            return;
+        }
+        InputConfiguration inputConfiguration = new InputConfiguration(zeroShutterLagImageReader.getWidth(),
+                zeroShutterLagImageReader.getHeight(), zeroShutterLagImageReader.getImageFormat());
+        cameraDevice.createReprocessableCaptureSession(inputConfiguration, surfaces, callback, null);
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private void createCaptureSession(List<Surface> surfaces, CameraCaptureSession.StateCallback callback, Handler handler)
+            throws CameraAccessException {
+        if (highSpeedVideoEnabled) cameraDevice.createConstrainedHighSpeedCaptureSession(surfaces, callback, handler);
+        else cameraDevice.createCaptureSession(surfaces, callback, handler);
+    }
+
+    /***
+     * High speed session accepts only the burst of the requests made from the given one by the session.
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    private void setRepeatingRequest(CaptureRequest request, CameraCaptureSession.CaptureCallback callback)
+            throws CameraAccessException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                && captureSession instanceof CameraConstrainedHighSpeedCaptureSession) {
+            List<CaptureRequest> requests = ((CameraConstrainedHighSpeedCaptureSession) captureSession)
+                    .createHighSpeedRequestList(request);
+            captureSession.setRepeatingBurst(requests, callback, backgroundHandler);
+        } else captureSession.setRepeatingRequest(request, callback, backgroundHandler);
+    }
+
+    private CaptureRequest.Builder createZeroShutterLagRequestBuilder() throws CameraAccessException {
         try {
-            previewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_START);
+            return cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_ZERO_SHUTTER_LAG);
+        } catch (IllegalArgumentException notSupported) {
+            return cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+        }
+    }
 
+    /***
+     * Drops the input images queued to the writer, a new writer is created for the reprocessable session.
+     */
+    private void resetZeroShutterLagWriter() {
+        if (zeroShutterLagImageWriter != null) zeroShutterLagImageWriter.close();
+        zeroShutterLagImageWriter = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && zeroShutterLagImageReader != null
+                && captureSession != null && captureSession.isReprocessable())
+            zeroShutterLagImageWriter = ImageWriter.newInstance(captureSession.getInputSurface(), 2);
+    }
+
+    /***
+     * Reprocesses the buffered frame closest to the shutter into the still image reader.
+     *
+     * @return false if there is no frame to reprocess, the photo is taken the regular way then,
+     * true if the frame is reprocessed or the photo error is reported
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    private boolean takeZeroShutterLagPhoto(long shutterTimestamp) {
+        ZeroShutterLagBuffer buffer = zeroShutterLagBuffer;
+        if (buffer == null || zeroShutterLagImageWriter == null || captureSession == null || cameraDevice == null)
+            return false;
+
+        ZeroShutterLagBuffer.Capture capture = buffer.takeClosest(shutterTimestamp);
+        if (capture == null) return false;
+
+        CaptureRequest reprocessRequest;
+        try {
+            CaptureRequest.Builder reprocessRequestBuilder = cameraDevice.createReprocessCaptureRequest(capture.getResult());
+            reprocessRequestBuilder.addTarget(imageReader.getSurface());
+            reprocessRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION, getPhotoOrientation(configurationProvider.getSensorPosition()));
+            reprocessRequest = reprocessRequestBuilder.build();
+        } catch (Exception e) {
+            Log.e(TAG, "Error creating reprocess request: ", e);
+            capture.getImage().close();
+            return false;
+        }
+
+        try {
+            // the writer owns the image from now on
+            zeroShutterLagImageWriter.queueInputImage(capture.getImage());
+        } catch (Exception e) {
+            Log.e(TAG, "Error queueing zero shutter lag frame: ", e);
+            capture.getImage().close();
+            return false;
+        }
+
+        try {
+            captureSession.capture(reprocessRequest, reprocessCaptureCallback, backgroundHandler);
+            pendingReprocessCaptures++;
+        } catch (Exception e) {
+            Log.e(TAG, "Error reprocessing zero shutter lag frame: ", e);
+            // the queued frame would be taken by the next reprocess request
+            try {
+                resetZeroShutterLagWriter();
+            } catch (Exception resetError) {
+                zeroShutterLagImageWriter = null;
+            }
+            notifyPhotoTakeError();
+        }
+        return true;
+    }
+
+    private void lockFocus() {
+        try {
             previewState = STATE_WAITING_LOCK;
-            captureSession.capture(previewRequestBuilder.build(), captureCallback, backgroundHandler);
+            captureSession.capture(previewRequests.getRequest(PreviewRequestCache.TRIGGER_FOCUS_LOCK),
+                    captureCallback, backgroundHandler);
         } catch (Exception ignore) {
         }
     }
@@ -692,9 +1905,9 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
 
     private void runPreCaptureSequence() {
         try {
-            previewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER, CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_START);
             previewState = STATE_WAITING_PRE_CAPTURE;
-            captureSession.capture(previewRequestBuilder.build(), captureCallback, backgroundHandler);
+            captureSession.capture(previewRequests.getRequest(PreviewRequestCache.TRIGGER_PRECAPTURE),
+                    captureCallback, backgroundHandler);
         } catch (CameraAccessException e) {
         }
     }
@@ -711,17 +1924,10 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
             captureBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
             captureBuilder.set(CaptureRequest.JPEG_ORIENTATION, getPhotoOrientation(configurationProvider.getSensorPosition()));
 
-            CameraCaptureSession.CaptureCallback CaptureCallback = new CameraCaptureSession.CaptureCallback() {
-                @Override
-                public void onCaptureCompleted(@NonNull CameraCaptureSession session,
-                                               @NonNull CaptureRequest request,
-                                               @NonNull TotalCaptureResult result) {
-                    Log.d(TAG, "onCaptureCompleted: ");
-                }
-            };
-
             captureSession.stopRepeating();
-            captureSession.capture(captureBuilder.build(), CaptureCallback, null);
+            submittedPreviewRequest = null;
+            captureMetadata.onDiscontinuity();
+            captureSession.capture(captureBuilder.build(), stillCaptureCallback, backgroundHandler);
 
         } catch (CameraAccessException e) {
             Log.e(TAG, "Error during capturing picture");
@@ -730,78 +1936,198 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
 
     private void unlockFocus() {
         try {
-            previewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
-            captureSession.capture(previewRequestBuilder.build(), captureCallback, backgroundHandler);
+            captureSession.capture(previewRequests.getRequest(PreviewRequestCache.TRIGGER_FOCUS_CANCEL),
+                    captureCallback, backgroundHandler);
             previewState = STATE_PREVIEW;
-            captureSession.setRepeatingRequest(previewRequest, captureCallback, backgroundHandler);
+            submitPreviewRequest(true);
         } catch (Exception e) {
             Log.e(TAG, "Error during focus unlocking");
         }
     }
 
-    private void setFlashModeAndBuildPreviewRequest(@AnncaConfiguration.FlashMode int flashMode) {
-        try {
+    private void onCaptureMetadata(CaptureResult result) {
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (timestamp == null) return;
 
-            switch (flashMode) {
-                case AnncaConfiguration.FLASH_MODE_AUTO:
-                    previewRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
-                    previewRequestBuilder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_SINGLE);
-                    break;
-                case AnncaConfiguration.FLASH_MODE_ON:
-                    previewRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
-                    previewRequestBuilder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_SINGLE);
-                    break;
-                case AnncaConfiguration.FLASH_MODE_OFF:
-                    previewRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
-                    previewRequestBuilder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_OFF);
-                    break;
-                default:
-                    previewRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
-                    previewRequestBuilder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_SINGLE);
-                    break;
-            }
-
-            previewRequest = previewRequestBuilder.build();
+        Long frameDuration = result.get(CaptureResult.SENSOR_FRAME_DURATION);
+        Long exposureTime = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+        Integer sensitivity = result.get(CaptureResult.SENSOR_SENSITIVITY);
+        long exposure = exposureTime != null ? exposureTime : -1;
+        int iso = sensitivity != null ? sensitivity : -1;
+        captureMetadata.record(result.getFrameNumber(), timestamp, frameDuration != null ? frameDuration : 0, exposure, iso);
 
-            try {
-                captureSession.setRepeatingRequest(previewRequest, captureCallback, backgroundHandler);
-            } catch (Exception e) {
-                Log.e(TAG, "Error updating preview: ", e);
-            }
-        } catch (Exception ignore) {
-            Log.e(TAG, "Error setting flash: ", ignore);
+        CaptureMetadataListener listener = captureMetadataListener;
+        if (listener != null) listener.onCaptureMetadata(new FrameMetadata(result.getFrameNumber(), timestamp, exposure, iso));
+    }
+
+    /***
+     * Changes of the state made within one frame are submitted together, the last one wins.
+     */
+    private void updatePreviewState(PreviewRequestCache.State state) {
+        PreviewRequestCache<CaptureRequest.Builder, CaptureRequest> requests = previewRequests;
+        if (requests == null || !requests.setState(state)) return;
+
+        synchronized (this) {
+            if (previewUpdateScheduled || backgroundHandler == null) return;
+            previewUpdateScheduled = true;
+
+            Range<Integer> fpsRange = state.getFpsRange();
+            int frameRate = fpsRange != null ? fpsRange.getUpper() : FpsRangeSelector.PREVIEW_FRAME_RATE;
+            long delay = previewSubmitTime + 1000 / frameRate - SystemClock.elapsedRealtime();
+            backgroundHandler.postDelayed(previewUpdateRunnable, Math.max(0, delay));
+        }
+    }
+
+    /***
+     * @param force - submit even if the request of the current state is already repeating,
+     *              e.g. after the repeating request was replaced by the recording or stopped for a photo
+     */
+    private void submitPreviewRequest(boolean force) {
+        PreviewRequestCache<CaptureRequest.Builder, CaptureRequest> requests = previewRequests;
+        if (requests == null || captureSession == null) return;
+
+        CaptureRequest request = requests.getRequest();
+        if (!force && request == submittedPreviewRequest) return;
+        try {
+            setRepeatingRequest(request, captureCallback);
+            submittedPreviewRequest = request;
+            previewSubmitTime = SystemClock.elapsedRealtime();
+        } catch (Exception e) {
+            Log.e(TAG, "Error updating preview: ", e);
         }
     }
 
+    private int getPreviewAeMode() {
+        PreviewRequestCache<CaptureRequest.Builder, CaptureRequest> requests = previewRequests;
+        return requests != null ? requests.getAeMode() : PreviewRequestCache.getAeMode(configurationProvider.getFlashMode());
+    }
+
     @Override
     public void onImageAvailable(ImageReader imageReader) {
-        File outputFile = outputPath;
-        backgroundHandler.post(new ImageSaver(imageReader.acquireNextImage(), outputFile, new ImageSaver.ImageSaverCallback() {
+        Image image;
+        try {
+            image = imageReader.acquireNextImage();
+        } catch (IllegalStateException error) {
+            // all the images are being written, it's acquired when one of them is closed
+            deferredStillImages++;
+            return;
+        }
+        if (image != null) dispatchStillImage(image);
+    }
+
+    private void dispatchStillImage(Image image) {
+        BurstSession session = burstSession;
+        if (session != null && session.hasPendingCaptures()) {
+            saveBurstFrame(session, image);
+        } else if (pendingReprocessCaptures > 0) {
+            // zero shutter lag photo, the focus wasn't locked for it
+            pendingReprocessCaptures--;
+            saveImage(image, false);
+        } else if (isVideoRecording) {
+            // video snapshot, the repeating request of the recording has to stay as it is
+            videoFrameStats.onSnapshotFinished();
+            saveImage(image, false);
+        } else saveImage(image, true);
+    }
+
+    /***
+     * The listener isn't called again for the images left in the reader, so the deferred one is acquired here.
+     */
+    private void onStillImageClosed() {
+        cameraQueue.post(new Runnable() {
+            @Override
+            public void run() {
+                ImageReader reader = imageReader;
+                if (deferredStillImages == 0 || reader == null) return;
+
+                Image image;
+                try {
+                    image = reader.acquireNextImage();
+                } catch (IllegalStateException error) {
+                    return;
+                }
+                deferredStillImages--;
+                if (image != null) dispatchStillImage(image);
+            }
+        });
+    }
+
+    /***
+     * Image is written on the file writing queue, never on the camera thread. Rejected image is closed
+     * and its capture failed.
+     */
+    private void writeStillImage(final ImageSaver imageSaver, BurstSession session) {
+        Runnable writeTask = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    imageSaver.run();
+                } finally {
+                    onStillImageClosed();
+                }
+            }
+        };
+        boolean posted = session != null ? session.execute(writeTask) : ioQueue.post(writeTask);
+        if (!posted) {
+            Log.e(TAG, "File writing queue rejected the image.");
+            imageSaver.cancel();
+            onStillImageClosed();
+        }
+    }
+
+    private void saveBurstFrame(final BurstSession session, Image image) {
+        final int frameIndex = session.nextFrameIndex();
+        writeStillImage(new ImageSaver(image, session.getFile(frameIndex), new ImageSaver.ImageSaverCallback() {
+            @Override
+            public void onSuccessFinish() {
+                onBurstFrameSaved(session, frameIndex);
+            }
+
+            @Override
+            public void onError() {
+                onBurstFrameFailed(session);
+            }
+        }).setSyncPolicy(configurationProvider.getOutputSyncPolicy())
+                .setWriteMode(configurationProvider.getImageWriteMode()), session);
+    }
+
+    private void saveImage(Image image, final boolean unlockFocus) {
+        final OutputSink outputSink = photoSink;
+        writeStillImage(new ImageSaver(image, outputSink, null, new ImageSaver.ImageSaverCallback() {
             @Override
             public void onSuccessFinish() {
-                Log.d(TAG, "onPhotoSuccessFinish: ");
                 if (cameraPhotoListener != null) {
-                    uiHandler.post(new Runnable() {
+                    callbackQueue.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            cameraPhotoListener.onPhotoTaken(outputSink.getFile());
+                        }
+                    });
+                }
+                if (unlockFocus) {
+                    cameraQueue.post(new Runnable() {
                         @Override
                         public void run() {
-                            cameraPhotoListener.onPhotoTaken(outputPath);
+                            unlockFocus();
                         }
                     });
                 }
-                unlockFocus();
             }
 
             @Override
             public void onError() {
-                Log.d(TAG, "onPhotoError: ");
-                uiHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        cameraPhotoListener.onPhotoTakeError();
-                    }
-                });
+                notifyPhotoTakeError();
+                if (unlockFocus) {
+                    cameraQueue.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            unlockFocus();
+                        }
+                    });
+                }
             }
-        }));
+        }).setSyncPolicy(configurationProvider.getOutputSyncPolicy())
+                .setWriteMode(configurationProvider.getImageWriteMode()), null);
     }
 
     @Override
@@ -821,6 +2147,7 @@ public final class Camera2Manager extends BaseCameraManager<String, TextureView.
 
     @Override
     public void onSurfaceTextureUpdated(SurfaceTexture surfaceTexture) {
+        previewHealthMonitor.onFrame();
     }
 
 }
@@ -0,0 +1,105 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import io.github.memfis19.annca.internal.manager.CaptureMetrics;
+
+/**
+ * Keeps the metadata of the recent captures in fixed arrays, so recording a frame doesn't allocate.
+ * A frame is counted as dropped when its frame number skips the previous one, e.g. the capture failed,
+ * or when the gap between the sensor timestamps is longer than one and a half of the frame duration.
+ * The larger of the two counts is taken for each gap, so one drop is not counted twice.
+ */
+final class CaptureMetadataRing {
+
+    static final int DEFAULT_CAPACITY = 120;
+
+    private final long[] timestamps;
+    private final long[] exposureTimes;
+    private final int[] sensitivities;
+    private int size = 0;
+    private int next = 0;
+
+    private long lastFrameNumber = -1;
+    private long lastTimestamp = -1;
+    private long frames = 0;
+    private long droppedFrames = 0;
+    private final long[] exposureHistogram = new long[CaptureMetrics.getExposureBucketCount()];
+
+    CaptureMetadataRing(int capacity) {
+        timestamps = new long[capacity];
+        exposureTimes = new long[capacity];
+        sensitivities = new int[capacity];
+    }
+
+    synchronized void reset() {
+        size = 0;
+        next = 0;
+        lastFrameNumber = -1;
+        lastTimestamp = -1;
+        frames = 0;
+        droppedFrames = 0;
+        for (int i = 0; i < exposureHistogram.length; ++i) exposureHistogram[i] = 0;
+    }
+
+    /***
+     * Called when requests not recorded here are submitted or the session is changed,
+     * the next frame isn't compared with the previous one.
+     */
+    synchronized void onDiscontinuity() {
+        lastFrameNumber = -1;
+        lastTimestamp = -1;
+    }
+
+    /***
+     * @param timestamp     - sensor timestamp of the frame in nanoseconds
+     * @param frameDuration - frame duration reported by the camera in nanoseconds, or 0 if unknown
+     * @param exposureTime  - exposure time in nanoseconds, or -1 if unknown
+     * @param sensitivity   - ISO sensitivity, or -1 if unknown
+     */
+    synchronized void record(long frameNumber, long timestamp, long frameDuration, long exposureTime, int sensitivity) {
+        frames++;
+
+        long dropped = 0;
+        if (lastFrameNumber >= 0 && frameNumber > lastFrameNumber + 1) dropped = frameNumber - lastFrameNumber - 1;
+        if (lastTimestamp >= 0 && frameDuration > 0 && timestamp - lastTimestamp > frameDuration * 3 / 2)
+            dropped = Math.max(dropped, (timestamp - lastTimestamp + frameDuration / 2) / frameDuration - 1);
+        droppedFrames += dropped;
+
+        if (frameNumber > lastFrameNumber) lastFrameNumber = frameNumber;
+        if (timestamp > lastTimestamp) lastTimestamp = timestamp;
+        if (exposureTime >= 0) exposureHistogram[CaptureMetrics.getExposureBucket(exposureTime)]++;
+
+        timestamps[next] = timestamp;
+        exposureTimes[next] = exposureTime;
+        sensitivities[next] = sensitivity;
+        next = (next + 1) % timestamps.length;
+        if (size < timestamps.length) size++;
+    }
+
+    synchronized CaptureMetrics getMetrics() {
+        long firstTimestamp = Long.MAX_VALUE;
+        long lastTimestamp = Long.MIN_VALUE;
+        long exposureSum = 0;
+        int exposureCount = 0;
+        long sensitivitySum = 0;
+        int sensitivityCount = 0;
+        for (int i = 0; i < size; ++i) {
+            firstTimestamp = Math.min(firstTimestamp, timestamps[i]);
+            lastTimestamp = Math.max(lastTimestamp, timestamps[i]);
+            if (exposureTimes[i] >= 0) {
+                exposureSum += exposureTimes[i];
+                exposureCount++;
+            }
+            if (sensitivities[i] >= 0) {
+                sensitivitySum += sensitivities[i];
+                sensitivityCount++;
+            }
+        }
+
+        float fps = size > 1 && lastTimestamp > firstTimestamp
+                ? (size - 1) * 1000000000f / (lastTimestamp - firstTimestamp) : 0;
+        return new CaptureMetrics(frames, droppedFrames, fps,
+                exposureCount > 0 ? exposureSum / exposureCount : -1,
+                sensitivityCount > 0 ? (int) (sensitivitySum / sensitivityCount) : -1,
+                exposureHistogram);
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import android.annotation.TargetApi;
+import android.hardware.Camera;
+import android.os.Build;
+import android.util.Range;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.List;
+
+/**
+ * Chooses the auto exposure target frame rate range for the preview and the recording.
+ * Ranges with the upper bound closest to the target frame rate are considered first, then the lower
+ * bound is chosen by the mode: fixed as much as possible for the video, not lower than
+ * {@link #MIN_PREVIEW_FPS} for the preview and the lowest one in low light, so the exposure can be longer.
+ */
+final class FpsRangeSelector {
+
+    static final int MODE_PREVIEW = 0;
+    static final int MODE_VIDEO = 1;
+    static final int MODE_LOW_LIGHT = 2;
+
+    @IntDef({MODE_PREVIEW, MODE_VIDEO, MODE_LOW_LIGHT})
+    @Retention(RetentionPolicy.SOURCE)
+    @interface Mode {
+    }
+
+    static final int PREVIEW_FRAME_RATE = 30;
+    static final int MIN_PREVIEW_FPS = 20;
+
+    // Camera1 reports the ranges in frames per second multiplied by 1000, e.g. 30000 for 30 fps
+    private static final int CAMERA1_SCALE = 1000;
+
+    private final int[] lowerBounds;
+    private final int[] upperBounds;
+
+    private FpsRangeSelector(int count) {
+        lowerBounds = new int[count];
+        upperBounds = new int[count];
+    }
+
+    static FpsRangeSelector fromCamera1(List<int[]> ranges) {
+        FpsRangeSelector selector = new FpsRangeSelector(ranges.size());
+        for (int i = 0; i < ranges.size(); ++i) {
+            int[] range = ranges.get(i);
+            selector.lowerBounds[i] = range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX] / CAMERA1_SCALE;
+            selector.upperBounds[i] = range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / CAMERA1_SCALE;
+        }
+        return selector;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    static FpsRangeSelector fromCamera2(Range<Integer>[] ranges) {
+        FpsRangeSelector selector = new FpsRangeSelector(ranges.length);
+        for (int i = 0; i < ranges.length; ++i) {
+            selector.lowerBounds[i] = ranges[i].getLower();
+            selector.upperBounds[i] = ranges[i].getUpper();
+        }
+        return selector;
+    }
+
+    /***
+     * @param frameRate - target frame rate, the upper bound of the range
+     * @return index of the chosen range in the list given to the selector, -1 if there are no ranges
+     */
+    int select(@Mode int mode, int frameRate) {
+        int upper = -1;
+        for (int candidate : upperBounds) {
+            int distance = Math.abs(candidate - frameRate);
+            int bestDistance = Math.abs(upper - frameRate);
+            if (upper < 0 || distance < bestDistance || (distance == bestDistance && candidate > upper))
+                upper = candidate;
+        }
+
+        int result = -1;
+        for (int i = 0; i < upperBounds.length; ++i) {
+            if (upperBounds[i] != upper) continue;
+            if (result < 0 || isBetterLowerBound(mode, upper, lowerBounds[i], lowerBounds[result])) result = i;
+        }
+        return result;
+    }
+
+    /***
+     * @return true if the exposure takes almost the whole frame, so the frame rate limits it
+     */
+    static boolean isExposureLimited(long exposureTimeNanos, int frameRate) {
+        return frameRate > 0 && exposureTimeNanos * frameRate >= 900000000L;
+    }
+
+    private static boolean isBetterLowerBound(@Mode int mode, int upper, int lower, int bestLower) {
+        switch (mode) {
+            case MODE_VIDEO:
+                return lower > bestLower;
+            case MODE_LOW_LIGHT:
+                return lower < bestLower;
+            case MODE_PREVIEW:
+            default:
+                int minLower = Math.min(MIN_PREVIEW_FPS, upper);
+                if (lower >= minLower && bestLower >= minLower) return lower < bestLower;
+                return lower > bestLower;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import android.media.CamcorderProfile;
+import android.util.Range;
+
+import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
+import io.github.memfis19.annca.internal.utils.Size;
+
+/**
+ * Output sizes and the camcorder profile chosen for one camera. Computed once per camera and media quality,
+ * so switching between the cameras doesn't repeat the profile lookups and the size selection.
+ */
+final class OutputConfig {
+
+    @AnncaConfiguration.MediaQuality
+    private final int mediaQuality;
+    private final CamcorderProfile camcorderProfile;
+    private final Size previewSize;
+    private final Size photoSize;
+    private final Size videoSize;
+    private final Range<Integer> highSpeedFpsRange;
+
+    /***
+     * @param highSpeedFpsRange - frame rate of the constrained high speed recording, null for the regular one
+     */
+    OutputConfig(@AnncaConfiguration.MediaQuality int mediaQuality, CamcorderProfile camcorderProfile,
+                 Size previewSize, Size photoSize, Size videoSize, Range<Integer> highSpeedFpsRange) {
+        this.mediaQuality = mediaQuality;
+        this.camcorderProfile = camcorderProfile;
+        this.previewSize = previewSize;
+        this.photoSize = photoSize;
+        this.videoSize = videoSize;
+        this.highSpeedFpsRange = highSpeedFpsRange;
+    }
+
+    int getMediaQuality() {
+        return mediaQuality;
+    }
+
+    CamcorderProfile getCamcorderProfile() {
+        return camcorderProfile;
+    }
+
+    Size getPreviewSize() {
+        return previewSize;
+    }
+
+    Size getPhotoSize() {
+        return photoSize;
+    }
+
+    Size getVideoSize() {
+        return videoSize;
+    }
+
+    Range<Integer> getHighSpeedFpsRange() {
+        return highSpeedFpsRange;
+    }
+
+    /***
+     * @return true if the other configuration has the same preview, so the preview surface can be kept
+     */
+    boolean hasSamePreview(OutputConfig other) {
+        return isSameSize(previewSize, other.previewSize)
+                && (highSpeedFpsRange == null ? other.highSpeedFpsRange == null : highSpeedFpsRange.equals(other.highSpeedFpsRange));
+    }
+
+    boolean hasSamePhotoSize(OutputConfig other) {
+        return isSameSize(photoSize, other.photoSize);
+    }
+
+    /***
+     * @return true if the recorder prepared for the other configuration can be used for this one
+     */
+    boolean hasSameVideo(OutputConfig other) {
+        return isSameSize(videoSize, other.videoSize)
+                && camcorderProfile.videoFrameWidth == other.camcorderProfile.videoFrameWidth
+                && camcorderProfile.videoFrameHeight == other.camcorderProfile.videoFrameHeight
+                && camcorderProfile.videoFrameRate == other.camcorderProfile.videoFrameRate
+                && camcorderProfile.videoBitRate == other.camcorderProfile.videoBitRate
+                && camcorderProfile.audioBitRate == other.camcorderProfile.audioBitRate;
+    }
+
+    private static boolean isSameSize(Size first, Size second) {
+        return first.getWidth() == second.getWidth() && first.getHeight() == second.getHeight();
+    }
+}
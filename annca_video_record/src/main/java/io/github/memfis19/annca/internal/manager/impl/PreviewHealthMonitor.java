@@ -0,0 +1,91 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import android.os.SystemClock;
+
+import java.util.Arrays;
+
+import io.github.memfis19.annca.internal.analysis.PreviewFrameSource;
+import io.github.memfis19.annca.internal.manager.PreviewHealth;
+
+/**
+ * Timestamps the frames delivered to the preview. A frame costs one write into a fixed array,
+ * the percentiles are computed only when the snapshot is taken, so the monitor stays on all the time.
+ */
+final class PreviewHealthMonitor implements PreviewFrameSource.FrameTimestampListener {
+
+    static final int WINDOW_SIZE = 128;
+    // six frames at 30 fps, shorter gaps are the jank seen in the percentiles
+    static final long STALL_INTERVAL_NANOS = 200000000L;
+
+    private final long[] intervals = new long[WINDOW_SIZE];
+    private int size = 0;
+    private int next = 0;
+
+    private boolean running = false;
+    private long lastFrameTime = -1;
+    private long frames = 0;
+    private long stalls = 0;
+
+    /***
+     * Starts counting from zero, called when the preview is started.
+     */
+    synchronized void start() {
+        running = true;
+        lastFrameTime = -1;
+        size = 0;
+        next = 0;
+        frames = 0;
+        stalls = 0;
+    }
+
+    synchronized void stop() {
+        running = false;
+    }
+
+    @Override
+    public synchronized void onFrameTimestamp(long timestampNanos) {
+        if (!running) return;
+
+        frames++;
+        if (lastFrameTime >= 0) {
+            long interval = timestampNanos - lastFrameTime;
+            if (interval > STALL_INTERVAL_NANOS) stalls++;
+            intervals[next] = interval;
+            next = (next + 1) % intervals.length;
+            if (size < intervals.length) size++;
+        }
+        lastFrameTime = timestampNanos;
+    }
+
+    void onFrame() {
+        onFrameTimestamp(SystemClock.elapsedRealtimeNanos());
+    }
+
+    /***
+     * @return null if the preview isn't monitored
+     */
+    synchronized PreviewHealth getHealth() {
+        if (!running) return null;
+
+        long[] sorted = Arrays.copyOf(intervals, size);
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long interval : sorted) sum += interval;
+
+        long sinceLastFrame = SystemClock.elapsedRealtimeNanos() - lastFrameTime;
+        boolean stalled = lastFrameTime >= 0 && sinceLastFrame > STALL_INTERVAL_NANOS;
+        return new PreviewHealth(frames, sum > 0 ? size * 1000000000f / sum : 0,
+                toMillis(percentile(sorted, 50)), toMillis(percentile(sorted, 90)),
+                toMillis(percentile(sorted, 99)), toMillis(size > 0 ? sorted[size - 1] : 0),
+                stalls, stalled);
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+
+    private static float toMillis(long nanos) {
+        return nanos / 1000000f;
+    }
+}
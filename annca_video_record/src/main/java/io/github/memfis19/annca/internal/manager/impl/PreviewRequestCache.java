@@ -0,0 +1,188 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import android.annotation.TargetApi;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.os.Build;
+import android.util.Range;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
+
+/**
+ * Preview requests built for each state of the preview, e.g. flash auto or flash off with the preview frame rate.
+ * The request of a state is built once and reused when the preview returns to it, the focus and the precapture
+ * triggers are built as separate requests, so they are never left in the repeating one.
+ *
+ * @param <B> - builder shared by all the states
+ * @param <R> - built request
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+final class PreviewRequestCache<B, R> {
+
+    static final int TRIGGER_NONE = 0;
+    static final int TRIGGER_FOCUS_LOCK = 1;
+    static final int TRIGGER_PRECAPTURE = 2;
+    static final int TRIGGER_FOCUS_CANCEL = 3;
+
+    private static final int TRIGGER_COUNT = 4;
+
+    interface RequestFactory<B, R> {
+
+        /***
+         * @return request with the values of the state, the trigger is set only in the returned request
+         */
+        R build(B builder, State state, int trigger);
+    }
+
+    /**
+     * Values of the keys changed by the manager, the rest of the request comes from the builder.
+     */
+    static final class State {
+
+        @AnncaConfiguration.FlashMode
+        private final int flashMode;
+        private final Range<Integer> fpsRange;
+
+        /***
+         * @param fpsRange - null to keep the range of the builder
+         */
+        State(@AnncaConfiguration.FlashMode int flashMode, Range<Integer> fpsRange) {
+            this.flashMode = flashMode;
+            this.fpsRange = fpsRange;
+        }
+
+        State withFlashMode(@AnncaConfiguration.FlashMode int flashMode) {
+            return new State(flashMode, fpsRange);
+        }
+
+        State withFpsRange(Range<Integer> fpsRange) {
+            return new State(flashMode, fpsRange);
+        }
+
+        Range<Integer> getFpsRange() {
+            return fpsRange;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) return true;
+            if (!(object instanceof State)) return false;
+
+            State state = (State) object;
+            return flashMode == state.flashMode
+                    && (fpsRange == state.fpsRange || (fpsRange != null && fpsRange.equals(state.fpsRange)));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = flashMode;
+            result = 31 * result + (fpsRange != null ? fpsRange.hashCode() : 0);
+            return result;
+        }
+    }
+
+    private static final RequestFactory<CaptureRequest.Builder, CaptureRequest> CAPTURE_REQUEST_FACTORY =
+            new RequestFactory<CaptureRequest.Builder, CaptureRequest>() {
+                @Override
+                public CaptureRequest build(CaptureRequest.Builder builder, State state, int trigger) {
+                    return buildCaptureRequest(builder, state, trigger);
+                }
+            };
+
+    private final B builder;
+    private final RequestFactory<B, R> factory;
+    private final Map<State, Object[]> requests = new HashMap<>();
+    private State state;
+
+    PreviewRequestCache(B builder, RequestFactory<B, R> factory, State state) {
+        this.builder = builder;
+        this.factory = factory;
+        this.state = state;
+    }
+
+    static PreviewRequestCache<CaptureRequest.Builder, CaptureRequest> forCaptureRequests(CaptureRequest.Builder builder,
+                                                                                        State state) {
+        return new PreviewRequestCache<>(builder, CAPTURE_REQUEST_FACTORY, state);
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /***
+     * @return false if the state is the same, the repeating request doesn't have to be changed
+     */
+    synchronized boolean setState(State state) {
+        if (this.state.equals(state)) return false;
+        this.state = state;
+        return true;
+    }
+
+    synchronized R getRequest() {
+        return getRequest(TRIGGER_NONE);
+    }
+
+    /***
+     * @return request of the current state, the trigger is set only in the returned request
+     */
+    @SuppressWarnings("unchecked")
+    synchronized R getRequest(int trigger) {
+        Object[] stateRequests = requests.get(state);
+        if (stateRequests == null) {
+            stateRequests = new Object[TRIGGER_COUNT];
+            requests.put(state, stateRequests);
+        }
+        if (stateRequests[trigger] == null) stateRequests[trigger] = factory.build(builder, state, trigger);
+        return (R) stateRequests[trigger];
+    }
+
+    /***
+     * Changes the builder shared by all the states, the built requests are dropped.
+     */
+    synchronized B editBuilder() {
+        requests.clear();
+        return builder;
+    }
+
+    synchronized int getAeMode() {
+        return getAeMode(state.flashMode);
+    }
+
+    static int getAeMode(@AnncaConfiguration.FlashMode int flashMode) {
+        switch (flashMode) {
+            case AnncaConfiguration.FLASH_MODE_ON:
+            case AnncaConfiguration.FLASH_MODE_OFF:
+                return CaptureRequest.CONTROL_AE_MODE_ON;
+            case AnncaConfiguration.FLASH_MODE_AUTO:
+            default:
+                return CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH;
+        }
+    }
+
+    private static CaptureRequest buildCaptureRequest(CaptureRequest.Builder builder, State state, int trigger) {
+        builder.set(CaptureRequest.CONTROL_AE_MODE, getAeMode(state.flashMode));
+        builder.set(CaptureRequest.FLASH_MODE, state.flashMode == AnncaConfiguration.FLASH_MODE_OFF
+                ? CameraMetadata.FLASH_MODE_OFF : CameraMetadata.FLASH_MODE_SINGLE);
+        if (state.fpsRange != null) builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, state.fpsRange);
+
+        switch (trigger) {
+            case TRIGGER_FOCUS_LOCK:
+                builder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_START);
+                break;
+            case TRIGGER_PRECAPTURE:
+                builder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER, CameraMetadata.CONTROL_AE_PRECAPTURE_TRIGGER_START);
+                break;
+            case TRIGGER_FOCUS_CANCEL:
+                builder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
+                break;
+        }
+        CaptureRequest request = builder.build();
+
+        builder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_IDLE);
+        builder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER, CameraMetadata.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
+        return request;
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import android.os.Handler;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.github.memfis19.annca.internal.manager.QueueStats;
+
+/**
+ * Queue of the tasks of the camera manager with the depth and wait time counters. Tasks run either
+ * on the thread of a handler or on a bounded executor. When the bounded queue is full or released the task
+ * is rejected, it never runs on the posting thread, so the producer has to hold back or fail the task itself.
+ */
+final class TaskQueue implements Executor {
+
+    private final String name;
+    private final Handler handler;
+    private final ThreadPoolExecutor executor;
+
+    private int depth = 0;
+    private int maxDepth = 0;
+    private long executedTasks = 0;
+    private long totalWaitMillis = 0;
+    private long maxWaitMillis = 0;
+
+    private TaskQueue(String name, Handler handler, ThreadPoolExecutor executor) {
+        this.name = name;
+        this.handler = handler;
+        this.executor = executor;
+    }
+
+    /***
+     * @return queue running the tasks on the thread of the handler, the handler isn't owned by the queue
+     */
+    static TaskQueue forHandler(String name, Handler handler) {
+        return new TaskQueue(name, handler, null);
+    }
+
+    /***
+     * @param capacity - tasks waiting for the thread, the running one is not counted
+     * @return queue with one background priority thread
+     */
+    static TaskQueue newBounded(final String name, int capacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(capacity), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, name);
+            }
+        }, new ThreadPoolExecutor.AbortPolicy());
+        return new TaskQueue(name, null, executor);
+    }
+
+    /***
+     * @throws RejectedExecutionException if the queue is full or released
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (!post(task)) throw new RejectedExecutionException("Task rejected by " + name);
+    }
+
+    /***
+     * @return false if the queue is full or released and the task is dropped
+     */
+    boolean post(final Runnable task) {
+        final long postTime = SystemClock.elapsedRealtime();
+        onPosted();
+
+        Runnable measuredTask = new Runnable() {
+            @Override
+            public void run() {
+                onStarted(SystemClock.elapsedRealtime() - postTime);
+                try {
+                    task.run();
+                } finally {
+                    onFinished();
+                }
+            }
+        };
+
+        if (handler != null) {
+            if (handler.post(measuredTask)) return true;
+        } else {
+            try {
+                executor.execute(measuredTask);
+                return true;
+            } catch (RejectedExecutionException ignore) {
+                // full queue, or released meanwhile by another thread
+            }
+        }
+        onFinished();
+        return false;
+    }
+
+    synchronized QueueStats getStats() {
+        return new QueueStats(name, depth, maxDepth, executedTasks, totalWaitMillis, maxWaitMillis);
+    }
+
+    /***
+     * Tasks already posted to the executor are still run.
+     */
+    void release() {
+        if (executor != null) executor.shutdown();
+    }
+
+    private synchronized void onPosted() {
+        depth++;
+        if (depth > maxDepth) maxDepth = depth;
+    }
+
+    private synchronized void onStarted(long waitMillis) {
+        executedTasks++;
+        totalWaitMillis += waitMillis;
+        if (waitMillis > maxWaitMillis) maxWaitMillis = waitMillis;
+    }
+
+    private synchronized void onFinished() {
+        depth--;
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+/**
+ * Counts the frames the camera didn't deliver to the recorder. A frame is considered dropped when the gap
+ * between two sensor timestamps is longer than one and a half of the frame duration reported for the frame,
+ * so the lower frame rate chosen by the auto exposure is not counted. Drops while a video snapshot
+ * is in progress are counted separately to show the cost of the snapshots.
+ */
+final class VideoFrameStats {
+
+    private long lastTimestamp = -1;
+    private long frames = 0;
+    private long droppedFrames = 0;
+    private long failedFrames = 0;
+    private long snapshotDroppedFrames = 0;
+    private int snapshots = 0;
+    private int snapshotsInProgress = 0;
+
+    synchronized void reset() {
+        lastTimestamp = -1;
+        frames = 0;
+        droppedFrames = 0;
+        failedFrames = 0;
+        snapshotDroppedFrames = 0;
+        snapshots = 0;
+        snapshotsInProgress = 0;
+    }
+
+    /***
+     * @param timestamp     - sensor timestamp of the frame in nanoseconds
+     * @param frameDuration - frame duration reported by the camera in nanoseconds, or 0 if unknown
+     */
+    synchronized void onFrameCompleted(long timestamp, long frameDuration) {
+        frames++;
+        if (lastTimestamp >= 0 && frameDuration > 0 && timestamp - lastTimestamp > frameDuration * 3 / 2) {
+            long dropped = (timestamp - lastTimestamp + frameDuration / 2) / frameDuration - 1;
+            droppedFrames += dropped;
+            if (snapshotsInProgress > 0) snapshotDroppedFrames += dropped;
+        }
+        if (timestamp > lastTimestamp) lastTimestamp = timestamp;
+    }
+
+    synchronized void onFrameFailed() {
+        failedFrames++;
+    }
+
+    synchronized void onSnapshotStarted() {
+        snapshots++;
+        snapshotsInProgress++;
+    }
+
+    /***
+     * Called when the snapshot image is received or the capture failed.
+     */
+    synchronized void onSnapshotFinished() {
+        if (snapshotsInProgress > 0) snapshotsInProgress--;
+    }
+
+    synchronized long getFrames() {
+        return frames;
+    }
+
+    synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    synchronized long getFailedFrames() {
+        return failedFrames;
+    }
+
+    synchronized long getSnapshotDroppedFrames() {
+        return snapshotDroppedFrames;
+    }
+
+    synchronized int getSnapshots() {
+        return snapshots;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "frames: " + frames + ", dropped: " + droppedFrames + ", failed: " + failedFrames
+                + ", snapshots: " + snapshots + ", dropped during snapshots: " + snapshotDroppedFrames;
+    }
+}
@@ -0,0 +1,180 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import android.annotation.TargetApi;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.Image;
+import android.os.Build;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Bounded ring of the most recent full resolution PRIVATE or YUV frames used for zero shutter lag capture.
+ * Each frame is paired with its capture result, which the reprocess request is made from. Oldest frame is closed
+ * and evicted as soon as the capacity is reached, so the memory used never exceeds capacity frames of the ring reader.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+final class ZeroShutterLagBuffer {
+
+    /**
+     * Frame taken from the buffer with its capture result, the image is owned by the taker.
+     */
+    static final class Capture {
+
+        private final Image image;
+        private final TotalCaptureResult result;
+
+        private Capture(Image image, TotalCaptureResult result) {
+            this.image = image;
+            this.result = result;
+        }
+
+        Image getImage() {
+            return image;
+        }
+
+        TotalCaptureResult getResult() {
+            return result;
+        }
+    }
+
+    private final int capacity;
+    private final ArrayDeque<Image> frames;
+    // results and images of a frame arrive in any order, twice the capacity keeps the results of the buffered frames
+    private final ArrayDeque<TotalCaptureResult> results;
+
+    private long bufferedBytes = 0;
+    private long evictedFrames = 0;
+    private boolean closed = false;
+
+    ZeroShutterLagBuffer(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be > 0.");
+        this.capacity = capacity;
+        this.frames = new ArrayDeque<>(capacity);
+        this.results = new ArrayDeque<>(capacity * 2);
+    }
+
+    /***
+     * The buffer becomes the owner of the image, it's closed right away if the buffer is closed.
+     */
+    synchronized void add(Image image) {
+        if (image == null) return;
+        if (closed) {
+            image.close();
+            return;
+        }
+
+        while (frames.size() >= capacity) {
+            release(frames.pollFirst());
+            evictedFrames++;
+        }
+        frames.addLast(image);
+        bufferedBytes += sizeOf(image);
+    }
+
+    synchronized void addResult(TotalCaptureResult result) {
+        if (closed || result == null) return;
+
+        while (results.size() >= capacity * 2) results.pollFirst();
+        results.addLast(result);
+    }
+
+    /***
+     * Removes the frame with the sensor timestamp closest to the given one from the buffer,
+     * only the frames with a capture result can be taken.
+     *
+     * @param timestamp - sensor timestamp in nanoseconds, or a negative value to take the newest frame
+     * @return the frame or null if there is no frame with its result
+     */
+    synchronized Capture takeClosest(long timestamp) {
+        Image closest = null;
+        TotalCaptureResult closestResult = null;
+        long minDiff = Long.MAX_VALUE;
+        Iterator<Image> iterator = frames.descendingIterator();
+        while (iterator.hasNext()) {
+            Image frame = iterator.next();
+            TotalCaptureResult result = getResult(frame.getTimestamp());
+            if (result == null) continue;
+
+            long diff = timestamp >= 0 ? Math.abs(frame.getTimestamp() - timestamp) : 0;
+            if (diff < minDiff) {
+                minDiff = diff;
+                closest = frame;
+                closestResult = result;
+            }
+            if (timestamp < 0) break;
+        }
+        if (closest == null) return null;
+
+        frames.remove(closest);
+        results.remove(closestResult);
+        bufferedBytes -= sizeOf(closest);
+        return new Capture(closest, closestResult);
+    }
+
+    synchronized void clear() {
+        Iterator<Image> iterator = frames.iterator();
+        while (iterator.hasNext()) {
+            release(iterator.next());
+            iterator.remove();
+        }
+        results.clear();
+        bufferedBytes = 0;
+    }
+
+    /***
+     * Closes the buffered frames, the frames added later are closed as they come.
+     */
+    synchronized void close() {
+        closed = true;
+        clear();
+    }
+
+    synchronized int getSize() {
+        return frames.size();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    synchronized long getEvictedFrames() {
+        return evictedFrames;
+    }
+
+    private TotalCaptureResult getResult(long timestamp) {
+        for (TotalCaptureResult result : results) {
+            Long resultTimestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+            if (resultTimestamp != null && resultTimestamp == timestamp) return result;
+        }
+        return null;
+    }
+
+    private void release(Image image) {
+        if (image == null) return;
+        bufferedBytes -= sizeOf(image);
+        try {
+            image.close();
+        } catch (Exception ignore) {
+        }
+    }
+
+    private static long sizeOf(Image image) {
+        try {
+            long size = 0;
+            for (Image.Plane plane : image.getPlanes()) {
+                ByteBuffer buffer = plane.getBuffer();
+                if (buffer != null) size += buffer.capacity();
+            }
+            return size;
+        } catch (Exception ignore) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.github.memfis19.annca.internal.manager.listener;
+
+/**
+ * Receives decisions of the adaptive bit rate control made during recording, called on the main thread.
+ */
+public interface BitrateListener {
+
+    /***
+     * @param videoBitRate    - new bit rate requested from the video encoder
+     * @param measuredBitRate - bit rate of the file during the last control period
+     * @param writtenBytes    - bytes written to the file so far
+     * @param elapsedMillis   - time since the recording start
+     */
+    void onBitrateChanged(int videoBitRate, long measuredBitRate, long writtenBytes, long elapsedMillis);
+}
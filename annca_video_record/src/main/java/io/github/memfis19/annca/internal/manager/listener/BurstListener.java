@@ -0,0 +1,15 @@
+package io.github.memfis19.annca.internal.manager.listener;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Receives results of CameraManager.takeBurst, all methods are called on the main thread.
+ */
+public interface BurstListener {
+    void onBurstFrameSaved(File frameFile, int frameIndex);
+
+    void onBurstCompleted(List<File> frameFiles, float framesPerSecond);
+
+    void onBurstError();
+}
@@ -0,0 +1,17 @@
+package io.github.memfis19.annca.internal.manager.listener;
+
+/**
+ * Receives the result of CameraManager.reconfigureOutputs, all methods are called on the main thread.
+ */
+public interface CameraReconfigureListener {
+
+    /***
+     * Outputs are changed for the current configuration, the camera and the preview stay open.
+     */
+    void onOutputsReconfigured();
+
+    /***
+     * The change can't be applied to the open camera, e.g. the preview size is different, the camera has to be reopened.
+     */
+    void onReconfigureRequiresReopen();
+}
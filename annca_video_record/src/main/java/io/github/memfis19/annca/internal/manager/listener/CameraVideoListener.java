@@ -12,5 +12,9 @@ public interface CameraVideoListener {
 
     void onVideoRecordStopped(File videoFile);
 
+    void onVideoRecordPaused();
+
+    void onVideoRecordResumed();
+
     void onVideoRecordError();
 }
@@ -0,0 +1,11 @@
+package io.github.memfis19.annca.internal.manager.listener;
+
+import io.github.memfis19.annca.internal.manager.FrameMetadata;
+
+/**
+ * Receives the metadata of each completed capture. Called on the camera thread for every frame,
+ * so the listener has to return quickly.
+ */
+public interface CaptureMetadataListener {
+    void onCaptureMetadata(FrameMetadata frameMetadata);
+}
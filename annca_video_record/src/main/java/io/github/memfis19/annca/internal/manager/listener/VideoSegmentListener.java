@@ -0,0 +1,15 @@
+package io.github.memfis19.annca.internal.manager.listener;
+
+import java.io.File;
+
+/**
+ * Receives the files of a segmented recording as soon as each of them is finalized, called on the main thread.
+ */
+public interface VideoSegmentListener {
+
+    /***
+     * @param segmentFile  - complete playable file
+     * @param segmentIndex - zero based index, the first segment is the file passed to startVideoRecord
+     */
+    void onVideoSegmentCompleted(File segmentFile, int segmentIndex);
+}
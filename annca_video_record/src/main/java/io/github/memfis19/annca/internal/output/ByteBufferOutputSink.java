@@ -0,0 +1,94 @@
+package io.github.memfis19.annca.internal.output;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
+
+/**
+ * Keeps the output in memory, e.g. for an upload right after the capture. The direct buffer is allocated for the size
+ * announced when the channel is opened, so the output is copied once, it grows only if more is written.
+ * The buffer is reused by the next output which fits in it. The recorders need a file, so it takes only photos.
+ */
+public final class ByteBufferOutputSink implements OutputSink {
+
+    private static final int MIN_CAPACITY = 64 * 1024;
+
+    private ByteBuffer buffer;
+    private ByteBuffer result;
+
+    /***
+     * @return read only view of the committed output, null before the commit
+     */
+    public synchronized ByteBuffer getBuffer() {
+        return result != null ? result.asReadOnlyBuffer() : null;
+    }
+
+    @Override
+    public File getFile() {
+        return null;
+    }
+
+    @Override
+    public synchronized WritableByteChannel openChannel(int expectedSize) {
+        if (buffer == null || buffer.capacity() < expectedSize) {
+            buffer = ByteBuffer.allocateDirect(Math.max(expectedSize, MIN_CAPACITY));
+        } else buffer.clear();
+        result = null;
+        return new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer source) throws ClosedChannelException {
+                synchronized (ByteBufferOutputSink.this) {
+                    if (result != null) throw new ClosedChannelException();
+
+                    int length = source.remaining();
+                    if (buffer.remaining() < length) grow(buffer.position() + length);
+                    buffer.put(source);
+                    return length;
+                }
+            }
+
+            @Override
+            public boolean isOpen() {
+                synchronized (ByteBufferOutputSink.this) {
+                    return result == null;
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public FileDescriptor openFileDescriptor() {
+        return null;
+    }
+
+    @Override
+    public synchronized boolean commit(@AnncaConfiguration.OutputSyncPolicy int syncPolicy) {
+        if (result != null) return true;
+        if (buffer == null) return false;
+
+        buffer.flip();
+        result = buffer;
+        return true;
+    }
+
+    @Override
+    public synchronized void abort() {
+        if (buffer != null) buffer.clear();
+        result = null;
+    }
+
+    private void grow(int minimumCapacity) {
+        ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(minimumCapacity, buffer.capacity() * 2));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
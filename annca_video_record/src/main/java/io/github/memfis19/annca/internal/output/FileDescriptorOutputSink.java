@@ -0,0 +1,56 @@
+package io.github.memfis19.annca.internal.output;
+
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.nio.channels.WritableByteChannel;
+
+import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
+import io.github.memfis19.annca.internal.utils.AtomicOutputFile;
+
+/**
+ * Writes the output to a descriptor opened by the app, e.g. received from another process.
+ * The descriptor stays open after the commit, it's closed by its owner.
+ */
+public final class FileDescriptorOutputSink implements OutputSink {
+
+    private final ParcelFileDescriptor descriptor;
+    private FileOutputStream output;
+
+    public FileDescriptorOutputSink(ParcelFileDescriptor descriptor) {
+        this.descriptor = descriptor;
+    }
+
+    @Override
+    public File getFile() {
+        return null;
+    }
+
+    /***
+     * @return channel writing from the current position of the descriptor
+     */
+    @Override
+    public synchronized WritableByteChannel openChannel(int expectedSize) {
+        if (output == null) output = new FileOutputStream(descriptor.getFileDescriptor());
+        return output.getChannel();
+    }
+
+    @Override
+    public FileDescriptor openFileDescriptor() {
+        return descriptor.getFileDescriptor();
+    }
+
+    @Override
+    public synchronized boolean commit(@AnncaConfiguration.OutputSyncPolicy int syncPolicy) {
+        // the stream doesn't buffer, it's dropped without closing the descriptor it shares
+        output = null;
+        return AtomicOutputFile.sync(descriptor.getFileDescriptor(), syncPolicy);
+    }
+
+    @Override
+    public synchronized void abort() {
+        output = null;
+    }
+}
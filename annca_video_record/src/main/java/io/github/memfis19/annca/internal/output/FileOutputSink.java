@@ -0,0 +1,86 @@
+package io.github.memfis19.annca.internal.output;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
+import io.github.memfis19.annca.internal.utils.AtomicOutputFile;
+
+/**
+ * Writes the output to the temp file of {@link AtomicOutputFile} and renames it to the file on commit.
+ */
+public final class FileOutputSink implements OutputSink {
+
+    private final File file;
+    private RandomAccessFile output;
+
+    public FileOutputSink(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    /***
+     * @return file the output is written to until the commit
+     */
+    public File getTempFile() {
+        return AtomicOutputFile.getTempFile(file);
+    }
+
+    @Override
+    public synchronized FileChannel openChannel(int expectedSize) throws IOException {
+        return open().getChannel();
+    }
+
+    @Override
+    public synchronized FileDescriptor openFileDescriptor() throws IOException {
+        return open().getFD();
+    }
+
+    /***
+     * The temp file is synced by its path, it could be replaced while it was open, e.g. by ExifInterface.
+     */
+    @Override
+    public synchronized boolean commit(@AnncaConfiguration.OutputSyncPolicy int syncPolicy) {
+        close();
+        if (AtomicOutputFile.commit(file, syncPolicy)) return true;
+
+        AtomicOutputFile.abort(file);
+        return false;
+    }
+
+    @Override
+    public synchronized void abort() {
+        close();
+        AtomicOutputFile.abort(file);
+    }
+
+    private RandomAccessFile open() throws IOException {
+        if (output == null) {
+            output = new RandomAccessFile(getTempFile(), "rw");
+            output.setLength(0);
+        }
+        return output;
+    }
+
+    private void close() {
+        if (output == null) return;
+        try {
+            output.close();
+        } catch (IOException ignore) {
+        } finally {
+            output = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.memfis19.annca.internal.output;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
+
+/**
+ * Destination of a photo or a video. The output is written once to the channel or the descriptor opened by the sink,
+ * then the sink is committed or aborted, both close what was opened.
+ */
+public interface OutputSink {
+
+    /***
+     * @return file of the output, null if the output isn't written to a file, e.g. to a content Uri
+     */
+    File getFile();
+
+    /***
+     * @param expectedSize - bytes about to be written, 0 if it isn't known, a memory sink allocates them at once
+     * @return channel the whole output is written to from its start, owned by the sink
+     */
+    WritableByteChannel openChannel(int expectedSize) throws IOException;
+
+    /***
+     * @return seekable descriptor for the recorders, owned by the sink, null if the sink can't give one
+     */
+    FileDescriptor openFileDescriptor() throws IOException;
+
+    /***
+     * Makes the written output visible, synced according to the policy.
+     *
+     * @return false if the output can't be committed, it's aborted then
+     */
+    boolean commit(@AnncaConfiguration.OutputSyncPolicy int syncPolicy);
+
+    /***
+     * Drops the output that won't be completed.
+     */
+    void abort();
+}
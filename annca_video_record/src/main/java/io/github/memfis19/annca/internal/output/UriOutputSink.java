@@ -0,0 +1,127 @@
+package io.github.memfis19.annca.internal.output;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
+import io.github.memfis19.annca.internal.utils.AtomicOutputFile;
+
+/**
+ * Writes the output to a content Uri, e.g. a MediaStore entry. A pending MediaStore entry is published on commit
+ * and deleted on abort, so the gallery never shows a partial file.
+ */
+public final class UriOutputSink implements OutputSink {
+
+    private static final String TAG = "UriOutputSink";
+
+    private final ContentResolver contentResolver;
+    private final Uri uri;
+    private final boolean pending;
+    private ParcelFileDescriptor descriptor;
+    private FileOutputStream output;
+
+    /***
+     * @param pending - true if the Uri is a MediaStore entry inserted with IS_PENDING, Android 10+
+     */
+    public UriOutputSink(ContentResolver contentResolver, Uri uri, boolean pending) {
+        this.contentResolver = contentResolver;
+        this.uri = uri;
+        this.pending = pending && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    @Override
+    public File getFile() {
+        return null;
+    }
+
+    @Override
+    public synchronized WritableByteChannel openChannel(int expectedSize) throws IOException {
+        // the stream owns the descriptor, closing it closes the descriptor once
+        if (output == null) output = new ParcelFileDescriptor.AutoCloseOutputStream(open());
+        return output.getChannel();
+    }
+
+    @Override
+    public synchronized FileDescriptor openFileDescriptor() throws IOException {
+        return open().getFileDescriptor();
+    }
+
+    @Override
+    public synchronized boolean commit(@AnncaConfiguration.OutputSyncPolicy int syncPolicy) {
+        boolean committed = descriptor != null && AtomicOutputFile.sync(descriptor.getFileDescriptor(), syncPolicy);
+        close();
+        if (committed && pending) {
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.MediaColumns.IS_PENDING, 0);
+            try {
+                committed = contentResolver.update(uri, values, null, null) > 0;
+            } catch (RuntimeException error) {
+                committed = false;
+            }
+        }
+        if (!committed) {
+            Log.e(TAG, "Can't commit " + uri);
+            abort();
+        }
+        return committed;
+    }
+
+    @Override
+    public synchronized void abort() {
+        close();
+        if (!pending) return;
+        try {
+            contentResolver.delete(uri, null, null);
+        } catch (RuntimeException error) {
+            Log.e(TAG, "Can't delete " + uri + ": " + error.getMessage());
+        }
+    }
+
+    /***
+     * A revoked or a wrong Uri fails like a missing one, the resolver throws a runtime exception for it.
+     */
+    private ParcelFileDescriptor open() throws FileNotFoundException {
+        if (descriptor == null) {
+            try {
+                descriptor = contentResolver.openFileDescriptor(uri, "rwt");
+            } catch (RuntimeException error) {
+                throw new FileNotFoundException("Can't open " + uri + ": " + error.getMessage());
+            }
+            if (descriptor == null) throw new FileNotFoundException("Can't open " + uri);
+        }
+        return descriptor;
+    }
+
+    private void close() {
+        try {
+            if (output != null) output.close();
+            else if (descriptor != null) descriptor.close();
+        } catch (IOException error) {
+            Log.e(TAG, "Can't close " + uri + ": " + error.getMessage());
+        } finally {
+            output = null;
+            descriptor = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return uri.toString();
+    }
+}
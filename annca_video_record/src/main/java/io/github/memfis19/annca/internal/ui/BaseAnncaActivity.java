@@ -11,6 +11,9 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.view.WindowManager;
 
+import java.io.File;
+import java.util.ArrayList;
+
 import io.github.memfis19.annca.R;
 import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
 import io.github.memfis19.annca.internal.ui.model.PhotoQualityOption;
@@ -63,6 +66,12 @@ public abstract class BaseAnncaActivity<CameraId> extends AnncaCameraActivity<Ca
     protected long videoFileSize = -1;
     protected int minimumVideoDuration = -1;
     protected String filePath = "";
+    protected int zeroShutterLagBufferSize = -1;
+    protected int videoEncoder = AnncaConfiguration.VIDEO_ENCODER_MEDIA_RECORDER;
+    protected int preRollMillis = -1;
+    protected long videoSegmentSize = -1;
+    protected int outputSyncPolicy = AnncaConfiguration.OUTPUT_SYNC_NONE;
+    protected int imageWriteMode = AnncaConfiguration.IMAGE_WRITE_CHANNEL;
 
     @MediaActionSwitchView.MediaActionState
     protected int currentMediaActionState;
@@ -73,6 +82,9 @@ public abstract class BaseAnncaActivity<CameraId> extends AnncaCameraActivity<Ca
     @AnncaConfiguration.MediaResultBehaviour
     private int mediaResultBehaviour = AnncaConfiguration.PREVIEW;
 
+    // photos taken during the current recording, returned with the video
+    private final ArrayList<String> videoSnapshotPaths = new ArrayList<>();
+
     @AnncaConfiguration.MediaQuality
     protected int newQuality = AnncaConfiguration.MEDIA_QUALITY_MEDIUM;
 
@@ -86,7 +98,8 @@ public abstract class BaseAnncaActivity<CameraId> extends AnncaCameraActivity<Ca
         super.onProcessBundle(savedInstanceState);
 
         extractConfiguration(getIntent().getExtras());
-        currentMediaActionState = mediaAction == AnncaConfiguration.MEDIA_ACTION_VIDEO ?
+        currentMediaActionState = mediaAction == AnncaConfiguration.MEDIA_ACTION_VIDEO
+                || mediaAction == AnncaConfiguration.MEDIA_ACTION_VIDEO_HIGH_SPEED ?
                 MediaActionSwitchView.ACTION_VIDEO : MediaActionSwitchView.ACTION_PHOTO;
     }
 
@@ -127,6 +140,9 @@ public abstract class BaseAnncaActivity<CameraId> extends AnncaCameraActivity<Ca
                     case AnncaConfiguration.MEDIA_ACTION_VIDEO:
                         mediaAction = AnncaConfiguration.MEDIA_ACTION_VIDEO;
                         break;
+                    case AnncaConfiguration.MEDIA_ACTION_VIDEO_HIGH_SPEED:
+                        mediaAction = AnncaConfiguration.MEDIA_ACTION_VIDEO_HIGH_SPEED;
+                        break;
                     default:
                         mediaAction = AnncaConfiguration.MEDIA_ACTION_UNSPECIFIED;
                         break;
@@ -204,6 +220,24 @@ public abstract class BaseAnncaActivity<CameraId> extends AnncaCameraActivity<Ca
             if (bundle.containsKey(AnncaConfiguration.Arguments.MINIMUM_VIDEO_DURATION))
                 minimumVideoDuration = bundle.getInt(AnncaConfiguration.Arguments.MINIMUM_VIDEO_DURATION);
 
+            if (bundle.containsKey(AnncaConfiguration.Arguments.ZERO_SHUTTER_LAG_BUFFER_SIZE))
+                zeroShutterLagBufferSize = bundle.getInt(AnncaConfiguration.Arguments.ZERO_SHUTTER_LAG_BUFFER_SIZE);
+
+            if (bundle.containsKey(AnncaConfiguration.Arguments.VIDEO_ENCODER))
+                videoEncoder = bundle.getInt(AnncaConfiguration.Arguments.VIDEO_ENCODER);
+
+            if (bundle.containsKey(AnncaConfiguration.Arguments.PRE_ROLL_MILLIS))
+                preRollMillis = bundle.getInt(AnncaConfiguration.Arguments.PRE_ROLL_MILLIS);
+
+            if (bundle.containsKey(AnncaConfiguration.Arguments.VIDEO_SEGMENT_SIZE))
+                videoSegmentSize = bundle.getLong(AnncaConfiguration.Arguments.VIDEO_SEGMENT_SIZE);
+
+            if (bundle.containsKey(AnncaConfiguration.Arguments.OUTPUT_SYNC_POLICY))
+                outputSyncPolicy = bundle.getInt(AnncaConfiguration.Arguments.OUTPUT_SYNC_POLICY);
+
+            if (bundle.containsKey(AnncaConfiguration.Arguments.IMAGE_WRITE_MODE))
+                imageWriteMode = bundle.getInt(AnncaConfiguration.Arguments.IMAGE_WRITE_MODE);
+
             if (bundle.containsKey(AnncaConfiguration.Arguments.FLASH_MODE))
                 switch (bundle.getInt(AnncaConfiguration.Arguments.FLASH_MODE)) {
                     case AnncaConfiguration.FLASH_MODE_AUTO:
@@ -348,6 +382,16 @@ public abstract class BaseAnncaActivity<CameraId> extends AnncaCameraActivity<Ca
         getCameraController().stopVideoRecord();
     }
 
+    @Override
+    public void onPauseRecordingButtonPressed() {
+        getCameraController().pauseVideoRecord();
+    }
+
+    @Override
+    public void onResumeRecordingButtonPressed() {
+        getCameraController().resumeVideoRecord();
+    }
+
     @Override
     protected void onScreenRotation(int degrees) {
         cameraControlPanel.rotateControls(degrees);
@@ -390,6 +434,36 @@ public abstract class BaseAnncaActivity<CameraId> extends AnncaCameraActivity<Ca
         return flashMode;
     }
 
+    @Override
+    public int getZeroShutterLagBufferSize() {
+        return zeroShutterLagBufferSize;
+    }
+
+    @Override
+    public int getVideoEncoder() {
+        return videoEncoder;
+    }
+
+    @Override
+    public int getPreRollMillis() {
+        return preRollMillis;
+    }
+
+    @Override
+    public long getVideoSegmentSize() {
+        return videoSegmentSize;
+    }
+
+    @Override
+    public int getOutputSyncPolicy() {
+        return outputSyncPolicy;
+    }
+
+    @Override
+    public int getImageWriteMode() {
+        return imageWriteMode;
+    }
+
     @Override
     public Activity getActivity() {
         return this;
@@ -433,8 +507,15 @@ public abstract class BaseAnncaActivity<CameraId> extends AnncaCameraActivity<Ca
         startPreviewActivity();
     }
 
+    @Override
+    public void onVideoSnapshotTaken(File snapshotFile) {
+        videoSnapshotPaths.add(snapshotFile.toString());
+    }
+
     @Override
     public void onVideoRecordStart(int width, int height) {
+        videoSnapshotPaths.clear();
+        cameraControlPanel.allowRecordPause(getCameraController().getCameraManager().isVideoRecordPauseSupported());
         cameraControlPanel.onStartVideoRecord(getCameraController().getOutputFile());
     }
 
@@ -445,13 +526,32 @@ public abstract class BaseAnncaActivity<CameraId> extends AnncaCameraActivity<Ca
         startPreviewActivity();
     }
 
+    @Override
+    public void onVideoRecordPause() {
+        cameraControlPanel.onPauseVideoRecord();
+    }
+
+    @Override
+    public void onVideoRecordResume() {
+        cameraControlPanel.onResumeVideoRecord();
+    }
+
+    @Override
+    public void onCameraReconfigured() {
+        cameraControlPanel.unLockControls();
+        cameraControlPanel.allowRecord(true);
+    }
+
     @Override
     public void releaseCameraPreview() {
         clearCameraPreview();
     }
 
     private void startPreviewActivity() {
-        if (mediaResultBehaviour == AnncaConfiguration.PREVIEW) {
+        if (getCameraController().getOutputFile() == null) {
+            // the output was written to a sink without a file, there is nothing to preview
+            getCameraController().openCamera();
+        } else if (mediaResultBehaviour == AnncaConfiguration.PREVIEW) {
             Intent intent = PreviewActivity.newIntent(this,
                     getMediaAction(), getCameraController().getOutputFile().toString());
             startActivityForResult(intent, REQUEST_PREVIEW_CODE);
@@ -474,6 +574,10 @@ public abstract class BaseAnncaActivity<CameraId> extends AnncaCameraActivity<Ca
                     Intent resultIntent = new Intent();
                     resultIntent.putExtra(AnncaConfiguration.Arguments.FILE_PATH,
                             PreviewActivity.getMediaFilePatch(data));
+                    if (!videoSnapshotPaths.isEmpty()) {
+                        resultIntent.putStringArrayListExtra(AnncaConfiguration.Arguments.VIDEO_SNAPSHOT_PATHS,
+                                videoSnapshotPaths);
+                    }
                     setResult(RESULT_OK, resultIntent);
                     finish();
                 } else if (PreviewActivity.isResultCancel(data)) {
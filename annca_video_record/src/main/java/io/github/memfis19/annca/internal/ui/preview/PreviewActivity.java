@@ -119,7 +119,8 @@ public class PreviewActivity extends AppCompatActivity implements View.OnClickLi
         mediaAction = args.getInt(MEDIA_ACTION_ARG);
         previewFilePath = args.getString(FILE_PATH_ARG);
 
-        if (mediaAction == AnncaConfiguration.MEDIA_ACTION_VIDEO) {
+        if (mediaAction == AnncaConfiguration.MEDIA_ACTION_VIDEO
+                || mediaAction == AnncaConfiguration.MEDIA_ACTION_VIDEO_HIGH_SPEED) {
             displayVideo(savedInstanceState);
         } else if (mediaAction == AnncaConfiguration.MEDIA_ACTION_PHOTO) {
             displayImage();
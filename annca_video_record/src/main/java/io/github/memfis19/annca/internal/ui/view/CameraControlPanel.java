@@ -124,8 +124,9 @@ public class CameraControlPanel extends RelativeLayout
 
     public void setup(int mediaAction) {
         this.mediaAction = mediaAction;
-        if (AnncaConfiguration.MEDIA_ACTION_VIDEO == mediaAction) {
-            recordButton.setup(mediaAction, this);
+        if (AnncaConfiguration.MEDIA_ACTION_VIDEO == mediaAction
+                || AnncaConfiguration.MEDIA_ACTION_VIDEO_HIGH_SPEED == mediaAction) {
+            recordButton.setup(AnncaConfiguration.MEDIA_ACTION_VIDEO, this);
             flashSwitchView.setVisibility(GONE);
         } else {
             recordButton.setup(AnncaConfiguration.MEDIA_ACTION_PHOTO, this);
@@ -141,7 +142,7 @@ public class CameraControlPanel extends RelativeLayout
     }
 
     public void setMediaFilePath(final File mediaFile) {
-        this.mediaFilePath = mediaFile.toString();
+        this.mediaFilePath = mediaFile != null ? mediaFile.toString() : null;
     }
 
     public void setMaxVideoFileSize(long maxVideoFileSize) {
@@ -210,7 +211,8 @@ public class CameraControlPanel extends RelativeLayout
 
     public void onStartVideoRecord(final File mediaFile) {
         setMediaFilePath(mediaFile);
-        if (maxVideoFileSize > 0) {
+        // the size is watched only for the videos recorded to a file
+        if (maxVideoFileSize > 0 && mediaFile != null) {
             recordSizeText.setText("1Mb" + " / " + maxVideoFileSize / (1024 * 1024) + "Mb");
             recordSizeText.setVisibility(VISIBLE);
             try {
@@ -244,6 +246,10 @@ public class CameraControlPanel extends RelativeLayout
         recordButton.setEnabled(isAllowed);
     }
 
+    public void allowRecordPause(boolean isAllowed) {
+        recordButton.setPauseEnabled(isAllowed);
+    }
+
     public void allowCameraSwitching(boolean isAllowed) {
         cameraSwitchView.setVisibility(isAllowed ? VISIBLE : GONE);
     }
@@ -263,6 +269,16 @@ public class CameraControlPanel extends RelativeLayout
         recordButton.setRecordState(RecordButton.READY_FOR_RECORD_STATE);
     }
 
+    public void onPauseVideoRecord() {
+        countDownTimer.pause();
+        recordButton.setRecordState(RecordButton.RECORD_PAUSED_STATE);
+    }
+
+    public void onResumeVideoRecord() {
+        countDownTimer.resume();
+        recordButton.setRecordState(RecordButton.RECORD_IN_PROGRESS_STATE);
+    }
+
     @Override
     public void onStartRecordingButtonPressed() {
 
@@ -281,6 +297,18 @@ public class CameraControlPanel extends RelativeLayout
             recordButtonListener.onStopRecordingButtonPressed();
     }
 
+    @Override
+    public void onPauseRecordingButtonPressed() {
+        if (recordButtonListener != null)
+            recordButtonListener.onPauseRecordingButtonPressed();
+    }
+
+    @Override
+    public void onResumeRecordingButtonPressed() {
+        if (recordButtonListener != null)
+            recordButtonListener.onResumeRecordingButtonPressed();
+    }
+
     @Override
     public void onMediaActionChanged(int mediaActionState) {
         setMediaActionState(mediaActionState);
@@ -288,7 +316,7 @@ public class CameraControlPanel extends RelativeLayout
             onMediaActionStateChangeListener.onMediaActionChanged(this.mediaActionState);
     }
 
-    abstract class TimerTaskBase {
+    abstract class TimerTaskBase implements Runnable {
         Handler handler = new Handler(Looper.getMainLooper());
         TextView timerView;
         boolean alive = false;
@@ -302,6 +330,17 @@ public class CameraControlPanel extends RelativeLayout
         abstract void stop();
 
         abstract void start();
+
+        void pause() {
+            alive = false;
+            handler.removeCallbacks(this);
+        }
+
+        void resume() {
+            if (alive) return;
+            alive = true;
+            handler.postDelayed(this, DateTimeUtils.SECOND);
+        }
     }
 
     private class CountdownTask extends TimerTaskBase implements Runnable {
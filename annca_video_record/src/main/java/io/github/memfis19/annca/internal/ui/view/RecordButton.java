@@ -24,14 +24,18 @@ import io.github.memfis19.annca.internal.utils.Utils;
 
 /**
  * Created by memfis on 7/6/16.
+ * <p>
+ * Click starts and stops the recording. When the pause is enabled a long click pauses it,
+ * in the paused state a click resumes and a long click stops the recording.
  */
 public class RecordButton extends AppCompatImageButton {
 
     public static final int TAKE_PHOTO_STATE = 0;
     public static final int READY_FOR_RECORD_STATE = 1;
     public static final int RECORD_IN_PROGRESS_STATE = 2;
+    public static final int RECORD_PAUSED_STATE = 3;
 
-    @IntDef({TAKE_PHOTO_STATE, READY_FOR_RECORD_STATE, RECORD_IN_PROGRESS_STATE})
+    @IntDef({TAKE_PHOTO_STATE, READY_FOR_RECORD_STATE, RECORD_IN_PROGRESS_STATE, RECORD_PAUSED_STATE})
     @Retention(RetentionPolicy.SOURCE)
     public @interface RecordState {
     }
@@ -43,6 +47,10 @@ public class RecordButton extends AppCompatImageButton {
         void onStartRecordingButtonPressed();
 
         void onStopRecordingButtonPressed();
+
+        void onPauseRecordingButtonPressed();
+
+        void onResumeRecordingButtonPressed();
     }
 
     private Context context;
@@ -59,6 +67,7 @@ public class RecordButton extends AppCompatImageButton {
     private int iconPaddingStop = 18;
 
     private RecordButtonListener listener;
+    private boolean pauseEnabled = false;
 
     public RecordButton(@NonNull Context context) {
         this(context, null, 0);
@@ -87,7 +96,9 @@ public class RecordButton extends AppCompatImageButton {
             setBackgroundDrawable(ContextCompat.getDrawable(context, R.drawable.circle_frame_background));
 
         setIcon();
-        setOnClickListener(new RecordClickListener());
+        RecordClickListener recordClickListener = new RecordClickListener();
+        setOnClickListener(recordClickListener);
+        setOnLongClickListener(recordClickListener);
         setSoundEffectsEnabled(false);
         setIconPadding(iconPadding);
     }
@@ -121,9 +132,13 @@ public class RecordButton extends AppCompatImageButton {
         this.listener = listener;
     }
 
+    public void setPauseEnabled(boolean pauseEnabled) {
+        this.pauseEnabled = pauseEnabled;
+    }
+
     private void setIcon() {
         if (AnncaConfiguration.MEDIA_ACTION_VIDEO == mediaAction) {
-            if (READY_FOR_RECORD_STATE == currentState) {
+            if (READY_FOR_RECORD_STATE == currentState || RECORD_PAUSED_STATE == currentState) {
                 setImageDrawable(startRecordDrawable);
                 setIconPadding(iconPadding);
             } else if (RECORD_IN_PROGRESS_STATE == currentState) {
@@ -173,7 +188,20 @@ public class RecordButton extends AppCompatImageButton {
         }
     }
 
-    private class RecordClickListener implements OnClickListener {
+    // state is changed by the owner when the recorder confirms the pause or the resume
+    private void pauseRecording() {
+        if (listener != null) {
+            listener.onPauseRecordingButtonPressed();
+        }
+    }
+
+    private void resumeRecording() {
+        if (listener != null) {
+            listener.onResumeRecordingButtonPressed();
+        }
+    }
+
+    private class RecordClickListener implements OnClickListener, OnLongClickListener {
 
         private final static int CLICK_DELAY = 1000;
 
@@ -193,6 +221,8 @@ public class RecordButton extends AppCompatImageButton {
                     startRecording(sound);
                 } else if (RECORD_IN_PROGRESS_STATE == currentState) {
                     stopRecording(sound);
+                } else if (RECORD_PAUSED_STATE == currentState) {
+                    resumeRecording();
                 }
             } else {
                 if (TAKE_PHOTO_STATE == currentState) {
@@ -201,10 +231,30 @@ public class RecordButton extends AppCompatImageButton {
                     startRecording();
                 } else if (RECORD_IN_PROGRESS_STATE == currentState) {
                     stopRecording();
+                } else if (RECORD_PAUSED_STATE == currentState) {
+                    resumeRecording();
                 }
             }
             setIcon();
         }
+
+        @Override
+        public boolean onLongClick(View view) {
+            if (!pauseEnabled) return false;
+            if (RECORD_IN_PROGRESS_STATE != currentState && RECORD_PAUSED_STATE != currentState) return false;
+
+            if (SystemClock.elapsedRealtime() - lastClickTime < CLICK_DELAY) {
+                return true;
+            } else lastClickTime = SystemClock.elapsedRealtime();
+
+            if (RECORD_IN_PROGRESS_STATE == currentState) {
+                pauseRecording();
+            } else if (Build.VERSION.SDK_INT > 15) {
+                stopRecording(new MediaActionSound());
+            } else stopRecording();
+            setIcon();
+            return true;
+        }
     }
 
 }
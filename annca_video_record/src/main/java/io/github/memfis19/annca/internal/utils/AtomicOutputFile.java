@@ -0,0 +1,200 @@
+package io.github.memfis19.annca.internal.utils;
+
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Set;
+
+import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
+
+/**
+ * Output files are written to a hidden temp file next to them and renamed when they are complete,
+ * so a crash while writing never leaves a truncated file under the final name. The temp file is synced
+ * before the rename according to {@link AnncaConfiguration.OutputSyncPolicy}.
+ */
+public final class AtomicOutputFile {
+
+    private static final String TAG = "AtomicOutputFile";
+
+    static final String TEMP_PREFIX = ".";
+    static final String TEMP_SUFFIX = ".partial";
+
+    private static long commits = 0;
+    private static long failedCommits = 0;
+    private static long syncs = 0;
+    private static long totalSyncNanos = 0;
+    private static long maxSyncNanos = 0;
+    private static long totalRenameNanos = 0;
+    private static long deletedTempFiles = 0;
+    private static final Set<String> sweptDirectories = new HashSet<>();
+
+    private AtomicOutputFile() {
+    }
+
+    /***
+     * @return file the output is written to before the commit
+     */
+    public static File getTempFile(File file) {
+        return new File(file.getParentFile(), TEMP_PREFIX + file.getName() + TEMP_SUFFIX);
+    }
+
+    /***
+     * Syncs the temp file written by someone else, e.g. the recorder, and renames it to the file.
+     */
+    public static boolean commit(File file, @AnncaConfiguration.OutputSyncPolicy int syncPolicy) {
+        File tempFile = getTempFile(file);
+        if (!tempFile.exists()) {
+            onCommitFailed(file, "no temp file");
+            return false;
+        }
+        if (syncPolicy == AnncaConfiguration.OUTPUT_SYNC_NONE) return rename(file, syncPolicy);
+
+        RandomAccessFile output = null;
+        try {
+            output = new RandomAccessFile(tempFile, "rw");
+            return commit(file, output.getChannel(), syncPolicy);
+        } catch (IOException error) {
+            onCommitFailed(file, error.getMessage());
+            return false;
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    /***
+     * Syncs the channel of the temp file and renames it to the file, the channel is closed by the caller.
+     */
+    public static boolean commit(File file, FileChannel channel, @AnncaConfiguration.OutputSyncPolicy int syncPolicy) {
+        if (syncPolicy != AnncaConfiguration.OUTPUT_SYNC_NONE) {
+            long startTime = SystemClock.elapsedRealtimeNanos();
+            try {
+                // data keeps the file content, full also keeps its metadata, e.g. the modification time
+                channel.force(syncPolicy == AnncaConfiguration.OUTPUT_SYNC_FULL);
+            } catch (IOException error) {
+                onCommitFailed(file, error.getMessage());
+                return false;
+            }
+            onSynced(SystemClock.elapsedRealtimeNanos() - startTime);
+        }
+        return rename(file, syncPolicy);
+    }
+
+    /***
+     * Syncs the output written to a descriptor that isn't renamed, e.g. a content Uri, counted in the sync time.
+     */
+    public static boolean sync(FileDescriptor descriptor, @AnncaConfiguration.OutputSyncPolicy int syncPolicy) {
+        if (syncPolicy == AnncaConfiguration.OUTPUT_SYNC_NONE) return true;
+
+        long startTime = SystemClock.elapsedRealtimeNanos();
+        try {
+            if (syncPolicy == AnncaConfiguration.OUTPUT_SYNC_FULL) Os.fsync(descriptor);
+            else Os.fdatasync(descriptor);
+        } catch (ErrnoException error) {
+            Log.e(TAG, "Can't sync output: " + error.getMessage());
+            return false;
+        }
+        onSynced(SystemClock.elapsedRealtimeNanos() - startTime);
+        return true;
+    }
+
+    /***
+     * Deletes the temp file of the output that won't be committed.
+     */
+    public static void abort(File file) {
+        File tempFile = getTempFile(file);
+        if (tempFile.exists() && !tempFile.delete()) Log.e(TAG, "Can't delete " + tempFile.getName());
+    }
+
+    /***
+     * Deletes the temp files left in the directory by the writes interrupted by a crash. Only the first call
+     * of the process sweeps the directory, it has to be made before anything is written there,
+     * the later calls could delete the temp files of the outputs being written.
+     *
+     * @return number of the deleted files, 0 if the directory was already swept
+     */
+    public static int deleteOrphanedTempFiles(File directory) {
+        if (directory == null) return 0;
+        synchronized (AtomicOutputFile.class) {
+            if (!sweptDirectories.add(directory.getAbsolutePath())) return 0;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) return 0;
+
+        int deleted = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isFile() && name.startsWith(TEMP_PREFIX) && name.endsWith(TEMP_SUFFIX) && file.delete()) deleted++;
+        }
+        if (deleted > 0) {
+            synchronized (AtomicOutputFile.class) {
+                deletedTempFiles += deleted;
+            }
+        }
+        return deleted;
+    }
+
+    public static synchronized OutputCommitStats getStats() {
+        return new OutputCommitStats(commits, failedCommits, syncs, totalSyncNanos, maxSyncNanos,
+                totalRenameNanos, deletedTempFiles);
+    }
+
+    private static boolean rename(File file, @AnncaConfiguration.OutputSyncPolicy int syncPolicy) {
+        long startTime = SystemClock.elapsedRealtimeNanos();
+        if (!getTempFile(file).renameTo(file)) {
+            onCommitFailed(file, "rename failed");
+            return false;
+        }
+        if (syncPolicy == AnncaConfiguration.OUTPUT_SYNC_FULL) syncDirectory(file.getParentFile());
+
+        synchronized (AtomicOutputFile.class) {
+            commits++;
+            totalRenameNanos += SystemClock.elapsedRealtimeNanos() - startTime;
+        }
+        return true;
+    }
+
+    /***
+     * The rename is kept after a power loss only when the directory is synced.
+     */
+    private static void syncDirectory(File directory) {
+        if (directory == null) return;
+        try {
+            FileDescriptor descriptor = Os.open(directory.getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(descriptor);
+            } finally {
+                Os.close(descriptor);
+            }
+        } catch (ErrnoException error) {
+            Log.e(TAG, "Can't sync directory: " + error.getMessage());
+        }
+    }
+
+    private static synchronized void onSynced(long syncNanos) {
+        syncs++;
+        totalSyncNanos += syncNanos;
+        if (syncNanos > maxSyncNanos) maxSyncNanos = syncNanos;
+    }
+
+    private static void onCommitFailed(File file, String reason) {
+        Log.e(TAG, "Can't commit " + file.getName() + ": " + reason);
+        synchronized (AtomicOutputFile.class) {
+            failedCommits++;
+        }
+    }
+}
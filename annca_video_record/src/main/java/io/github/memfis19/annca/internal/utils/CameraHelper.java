@@ -10,6 +10,7 @@ import android.os.Build;
 import android.os.Environment;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.Range;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
@@ -19,6 +20,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
 
@@ -72,9 +74,16 @@ public final class CameraHelper {
         }
     }
 
-    public static File getOutputMediaFile(Context context, @AnncaConfiguration.MediaAction int mediaAction) {
-        File mediaStorageDir = new File(Environment.getExternalStoragePublicDirectory(
+    /***
+     * @return directory of the photos and the videos, it may not exist yet
+     */
+    public static File getOutputMediaDirectory(Context context) {
+        return new File(Environment.getExternalStoragePublicDirectory(
                 Environment.DIRECTORY_PICTURES), context.getPackageName());
+    }
+
+    public static File getOutputMediaFile(Context context, @AnncaConfiguration.MediaAction int mediaAction) {
+        File mediaStorageDir = getOutputMediaDirectory(context);
 
         if (!mediaStorageDir.exists()) {
             if (!mediaStorageDir.mkdirs()) {
@@ -88,7 +97,8 @@ public final class CameraHelper {
         if (mediaAction == AnncaConfiguration.MEDIA_ACTION_PHOTO) {
             mediaFile = new File(mediaStorageDir.getPath() + File.separator +
                     "IMG_" + timeStamp + ".jpg");
-        } else if (mediaAction == AnncaConfiguration.MEDIA_ACTION_VIDEO) {
+        } else if (mediaAction == AnncaConfiguration.MEDIA_ACTION_VIDEO
+                || mediaAction == AnncaConfiguration.MEDIA_ACTION_VIDEO_HIGH_SPEED) {
             mediaFile = new File(mediaStorageDir.getPath() + File.separator +
                     "VID_" + timeStamp + ".mp4");
         } else {
@@ -98,6 +108,36 @@ public final class CameraHelper {
         return mediaFile;
     }
 
+    public static List<File> getBurstOutputMediaFiles(Context context, int count) {
+        File firstFrameFile = getOutputMediaFile(context, AnncaConfiguration.MEDIA_ACTION_PHOTO);
+        if (firstFrameFile == null) return null;
+
+        String name = firstFrameFile.getName();
+        String baseName = name.substring(0, name.lastIndexOf('.'));
+
+        List<File> result = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            result.add(new File(firstFrameFile.getParentFile(),
+                    baseName + "_BURST" + String.format(Locale.US, "%03d", i + 1) + ".jpg"));
+        }
+        return result;
+    }
+
+    /***
+     * @return file next to the first segment of the recording, named after it
+     */
+    public static File getVideoSegmentFile(File firstSegmentFile, int segmentIndex) {
+        if (segmentIndex == 0) return firstSegmentFile;
+
+        String name = firstSegmentFile.getName();
+        int extensionIndex = name.lastIndexOf('.');
+        String baseName = extensionIndex > 0 ? name.substring(0, extensionIndex) : name;
+        String extension = extensionIndex > 0 ? name.substring(extensionIndex) : "";
+
+        return new File(firstSegmentFile.getParentFile(),
+                baseName + "_PART" + String.format(Locale.US, "%03d", segmentIndex + 1) + extension);
+    }
+
     @SuppressWarnings("deprecation")
     public static Size getPictureSize(List<Size> choices, @AnncaConfiguration.MediaQuality int mediaQuality) {
         if (choices == null || choices.isEmpty()) return null;
@@ -349,6 +389,26 @@ public final class CameraHelper {
         }
     }
 
+    /***
+     * @return the biggest size not wider than maxWidth with the aspect ratio of the preview, or the smallest size
+     */
+    public static Size getAnalysisSize(Size[] choices, Size previewSize, int maxWidth) {
+        final double ASPECT_TOLERANCE = 0.05;
+        double targetRatio = (double) previewSize.getWidth() / previewSize.getHeight();
+
+        Size result = null;
+        Size smallest = null;
+        for (Size option : choices) {
+            if (smallest == null || option.getWidth() * option.getHeight() < smallest.getWidth() * smallest.getHeight())
+                smallest = option;
+
+            double ratio = (double) option.getWidth() / option.getHeight();
+            if (option.getWidth() > maxWidth || Math.abs(ratio - targetRatio) > ASPECT_TOLERANCE) continue;
+            if (result == null || option.getWidth() > result.getWidth()) result = option;
+        }
+        return result != null ? result : smallest;
+    }
+
     private static double calculateApproximateVideoSize(CamcorderProfile camcorderProfile, int seconds) {
         return ((camcorderProfile.videoBitRate / (float) 1 + camcorderProfile.audioBitRate / (float) 1) * seconds) / (float) 8;
     }
@@ -452,6 +512,67 @@ public final class CameraHelper {
         }
     }
 
+    /***
+     * Fixed ranges are preferred, the recording of the constrained high speed session requires them.
+     *
+     * @return the fps range with the highest frame rate, or null if there are no ranges
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    public static Range<Integer> getHighSpeedFpsRange(Range<Integer>[] ranges) {
+        if (ranges == null) return null;
+
+        Range<Integer> result = null;
+        for (Range<Integer> range : ranges) {
+            if (result == null) {
+                result = range;
+                continue;
+            }
+            boolean fixed = range.getLower().equals(range.getUpper());
+            boolean resultFixed = result.getLower().equals(result.getUpper());
+            if (fixed != resultFixed) {
+                if (fixed) result = range;
+            } else if (range.getUpper() > result.getUpper()) result = range;
+        }
+        return result;
+    }
+
+    /***
+     * Uses the high speed profile of the same size if the device has it, otherwise the regular profile
+     * of the quality. Bit rate is scaled to the size and the frame rate of the high speed stream.
+     *
+     * @return profile for the high speed recording with the given size and frame rate
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public static CamcorderProfile getHighSpeedCamcorderProfile(@AnncaConfiguration.MediaQuality int mediaQuality,
+                                                                String cameraId, Size size, int frameRate) {
+        if (TextUtils.isEmpty(cameraId)) {
+            return null;
+        }
+        int cameraIdInt = Integer.parseInt(cameraId);
+
+        CamcorderProfile camcorderProfile = null;
+        int[] highSpeedQualities = new int[]{CamcorderProfile.QUALITY_HIGH_SPEED_480P,
+                CamcorderProfile.QUALITY_HIGH_SPEED_720P, CamcorderProfile.QUALITY_HIGH_SPEED_1080P};
+        for (int quality : highSpeedQualities) {
+            if (!CamcorderProfile.hasProfile(cameraIdInt, quality)) continue;
+            CamcorderProfile profile = CamcorderProfile.get(cameraIdInt, quality);
+            if (profile.videoFrameWidth == size.getWidth() && profile.videoFrameHeight == size.getHeight()) {
+                camcorderProfile = profile;
+                break;
+            }
+        }
+        if (camcorderProfile == null) camcorderProfile = getCamcorderProfile(mediaQuality, cameraIdInt);
+
+        double scale = (double) frameRate / camcorderProfile.videoFrameRate
+                * size.getWidth() * size.getHeight()
+                / ((double) camcorderProfile.videoFrameWidth * camcorderProfile.videoFrameHeight);
+        camcorderProfile.videoBitRate = (int) Math.min(Integer.MAX_VALUE, camcorderProfile.videoBitRate * scale);
+        camcorderProfile.videoFrameRate = frameRate;
+        camcorderProfile.videoFrameWidth = size.getWidth();
+        camcorderProfile.videoFrameHeight = size.getHeight();
+        return camcorderProfile;
+    }
+
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
     private static class CompareSizesByArea2 implements Comparator<Size> {
         @Override
@@ -0,0 +1,50 @@
+package io.github.memfis19.annca.internal.utils;
+
+/**
+ * Snapshot of the counters of the images written by {@link ImageSaver}. The write time covers the EXIF and
+ * the channel writes, the commit of the file is counted in {@link OutputCommitStats}.
+ */
+public final class ImageSaveStats {
+
+    private final long savedImages;
+    private final long totalBytes;
+    private final long totalWriteNanos;
+    private final long maxWriteNanos;
+
+    public ImageSaveStats(long savedImages, long totalBytes, long totalWriteNanos, long maxWriteNanos) {
+        this.savedImages = savedImages;
+        this.totalBytes = totalBytes;
+        this.totalWriteNanos = totalWriteNanos;
+        this.maxWriteNanos = maxWriteNanos;
+    }
+
+    public long getSavedImages() {
+        return savedImages;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public float getAverageWriteMillis() {
+        return savedImages > 0 ? totalWriteNanos / 1000000f / savedImages : 0;
+    }
+
+    public float getMaxWriteMillis() {
+        return maxWriteNanos / 1000000f;
+    }
+
+    /***
+     * @return write throughput of all the saved images
+     */
+    public float getBytesPerMillisecond() {
+        return totalWriteNanos > 0 ? totalBytes * 1000000f / totalWriteNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "saved images: " + savedImages + ", bytes: " + totalBytes
+                + ", average write, ms: " + getAverageWriteMillis() + ", max write, ms: " + getMaxWriteMillis()
+                + ", bytes/ms: " + getBytesPerMillisecond();
+    }
+}
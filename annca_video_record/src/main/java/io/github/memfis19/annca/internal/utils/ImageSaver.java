@@ -3,12 +3,18 @@ package io.github.memfis19.annca.internal.utils;
 import android.annotation.TargetApi;
 import android.media.Image;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
+import io.github.memfis19.annca.internal.output.FileOutputSink;
+import io.github.memfis19.annca.internal.output.OutputSink;
 
 /**
  * Created by memfis on 7/6/16.
@@ -17,9 +23,19 @@ public class ImageSaver implements Runnable {
 
     private final static String TAG = "ImageSaver";
 
+    private static long savedImages = 0;
+    private static long totalBytes = 0;
+    private static long totalWriteNanos = 0;
+    private static long maxWriteNanos = 0;
+
     private final Image image;
-    private final File file;
+    private final OutputSink sink;
+    private final JpegExifWriter exifWriter;
     private ImageSaverCallback imageSaverCallback;
+    @AnncaConfiguration.ImageWriteMode
+    private int writeMode = AnncaConfiguration.IMAGE_WRITE_CHANNEL;
+    @AnncaConfiguration.OutputSyncPolicy
+    private int syncPolicy = AnncaConfiguration.OUTPUT_SYNC_NONE;
 
     public interface ImageSaverCallback {
         void onSuccessFinish();
@@ -28,35 +44,115 @@ public class ImageSaver implements Runnable {
     }
 
     public ImageSaver(Image image, File file, ImageSaverCallback imageSaverCallback) {
+        this(image, file, null, imageSaverCallback);
+    }
+
+    /***
+     * @param exifWriter - writes the JPEG with its EXIF changed, null to write the image as it is
+     */
+    public ImageSaver(Image image, File file, JpegExifWriter exifWriter, ImageSaverCallback imageSaverCallback) {
+        this(image, new FileOutputSink(file), exifWriter, imageSaverCallback);
+    }
+
+    /***
+     * @param sink - destination of the image, the write modes apply only to the sinks writing to a file
+     */
+    public ImageSaver(Image image, OutputSink sink, JpegExifWriter exifWriter, ImageSaverCallback imageSaverCallback) {
         this.image = image;
-        this.file = file;
+        this.sink = sink;
+        this.exifWriter = exifWriter;
         this.imageSaverCallback = imageSaverCallback;
     }
 
+    /***
+     * @param writeMode - how the image is written to the file, {@link AnncaConfiguration#IMAGE_WRITE_CHANNEL} by default
+     */
+    public ImageSaver setWriteMode(@AnncaConfiguration.ImageWriteMode int writeMode) {
+        this.writeMode = writeMode;
+        return this;
+    }
+
+    /***
+     * @param syncPolicy - how the image is synced when the sink is committed
+     */
+    public ImageSaver setSyncPolicy(@AnncaConfiguration.OutputSyncPolicy int syncPolicy) {
+        this.syncPolicy = syncPolicy;
+        return this;
+    }
+
     @TargetApi(Build.VERSION_CODES.KITKAT)
     @Override
     public void run() {
+        // direct buffer of the image, written without copying it to the heap
         ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-        byte[] bytes = new byte[buffer.remaining()];
-        buffer.get(bytes);
-        FileOutputStream output = null;
+        int size = buffer.remaining();
+        long startTime = SystemClock.elapsedRealtimeNanos();
         try {
-            output = new FileOutputStream(file);
-            output.write(bytes);
+            int expectedSize = exifWriter != null ? exifWriter.getWrittenLength(buffer) : size;
+            WritableByteChannel output = sink.openChannel(expectedSize);
+            // the channel of a content Uri is write only, it can't be mapped
+            if (sink instanceof FileOutputSink) {
+                FileChannel channel = (FileChannel) output;
+                if (writeMode == AnncaConfiguration.IMAGE_WRITE_MAPPED && exifWriter == null) {
+                    // the mapping extends the file to the size of the image
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, size).put(buffer);
+                } else {
+                    // reserves the space for the image, the EXIF changes can only make it longer
+                    if (writeMode != AnncaConfiguration.IMAGE_WRITE_CHANNEL && size > 0) {
+                        channel.write(ByteBuffer.allocate(1), size - 1);
+                    }
+                    write(buffer, channel);
+                    channel.truncate(channel.position());
+                }
+            } else {
+                write(buffer, output);
+            }
+
+            onImageWritten(size, SystemClock.elapsedRealtimeNanos() - startTime);
+            if (!sink.commit(syncPolicy)) throw new IOException("Can't commit the image to " + sink);
             imageSaverCallback.onSuccessFinish();
-        } catch (IOException ignore) {
-            Log.e(TAG, "Can't save the image file.");
-            imageSaverCallback.onError();
+        } catch (IOException error) {
+            onSaveFailed(error);
+        } catch (RuntimeException error) {
+            // e.g. the content Uri of the sink is revoked
+            onSaveFailed(error);
         } finally {
             image.close();
-            if (null != output) {
-                try {
-                    output.close();
-                } catch (IOException e) {
-                    Log.e(TAG, "Can't release image or close the output stream.");
-                }
-            }
         }
     }
 
+    /***
+     * Drops the image when the saver can't be run, the error is reported to the callback.
+     */
+    public void cancel() {
+        image.close();
+        if (sink != null) sink.abort();
+        imageSaverCallback.onError();
+    }
+
+    private void onSaveFailed(Exception error) {
+        Log.e(TAG, "Can't save the image to " + sink + ": " + error.getMessage());
+        sink.abort();
+        imageSaverCallback.onError();
+    }
+
+    /***
+     * @return write time of the saved images, the commit isn't counted, it's in {@link AtomicOutputFile#getStats()}
+     */
+    public static synchronized ImageSaveStats getStats() {
+        return new ImageSaveStats(savedImages, totalBytes, totalWriteNanos, maxWriteNanos);
+    }
+
+    private static synchronized void onImageWritten(long bytes, long writeNanos) {
+        savedImages++;
+        totalBytes += bytes;
+        totalWriteNanos += writeNanos;
+        if (writeNanos > maxWriteNanos) maxWriteNanos = writeNanos;
+    }
+
+    private void write(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        if (exifWriter != null) exifWriter.write(buffer, channel);
+        else while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
 }
@@ -0,0 +1,288 @@
+package io.github.memfis19.annca.internal.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes a JPEG with the orientation and the date set in its EXIF segment, so the file is written once
+ * instead of being rewritten by ExifInterface.saveAttributes(). The JPEG is written in slices around the changed
+ * bytes, it isn't copied:
+ * a SHORT orientation already present in IFD0 is patched in place,
+ * missing tags and an orientation of another type are written to a copy of IFD0 appended to the EXIF segment,
+ * the original data stays at its offsets,
+ * and a JPEG without EXIF gets a new APP1 segment.
+ */
+public final class JpegExifWriter {
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP1 = 0xE1;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_SHORT = 3;
+
+    private static final int EXIF_HEADER_LENGTH = 6;
+    private static final int IFD_ENTRY_LENGTH = 12;
+    private static final int DATE_TIME_LENGTH = 20;
+    private static final int MAX_SEGMENT_LENGTH = 0xFFFF;
+
+    private final int orientation;
+    private long dateTime = -1;
+
+    /***
+     * @param orientation - ExifInterface.ORIENTATION_* value, 0 to keep the orientation of the JPEG
+     */
+    public JpegExifWriter(int orientation) {
+        this.orientation = orientation;
+    }
+
+    /***
+     * @param dateTime - time in milliseconds, written only if the JPEG has no date
+     */
+    public JpegExifWriter setDateTime(long dateTime) {
+        this.dateTime = dateTime;
+        return this;
+    }
+
+    /***
+     * Writes the JPEG from its position to its limit, the position of the buffer isn't changed.
+     *
+     * @return false if the JPEG was written without the metadata, e.g. it isn't a JPEG or its EXIF segment is full
+     */
+    public boolean write(ByteBuffer jpeg, WritableByteChannel channel) throws IOException {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        boolean changed = prepare(jpeg, buffers);
+        if (!changed) {
+            buffers.clear();
+            buffers.add(jpeg.duplicate());
+        }
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+        return changed;
+    }
+
+    /***
+     * @return number of the bytes {@link #write(ByteBuffer, WritableByteChannel)} writes for the JPEG
+     */
+    public int getWrittenLength(ByteBuffer jpeg) {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        if (!prepare(jpeg, buffers)) return jpeg.remaining();
+
+        int length = 0;
+        for (ByteBuffer buffer : buffers) length += buffer.remaining();
+        return length;
+    }
+
+    private boolean prepare(ByteBuffer jpeg, List<ByteBuffer> buffers) {
+        if (orientation <= 0 && dateTime < 0) return false;
+
+        int start = jpeg.position();
+        int end = jpeg.limit();
+        if (end - start < 4 || unsignedByte(jpeg, start) != 0xFF || unsignedByte(jpeg, start + 1) != MARKER_SOI) {
+            return false;
+        }
+
+        int insertion = start + 2;
+        int offset = start + 2;
+        while (offset + 4 <= end) {
+            if (unsignedByte(jpeg, offset) != 0xFF) break;
+            int marker = unsignedByte(jpeg, offset + 1);
+            if (marker == 0xFF) {
+                offset++;
+                continue;
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) break;
+
+            int segmentLength = unsignedShort(jpeg, offset + 2, ByteOrder.BIG_ENDIAN);
+            int segmentEnd = offset + 2 + segmentLength;
+            if (segmentLength < 2 || segmentEnd > end) break;
+
+            if (marker == MARKER_APP1 && isExifSegment(jpeg, offset + 4, segmentEnd)) {
+                return prepareExif(jpeg, offset, segmentEnd, buffers);
+            }
+            // APP1 goes after the JFIF segment, which has to be the first one
+            if (marker == MARKER_APP0 && offset == start + 2) insertion = segmentEnd;
+            offset = segmentEnd;
+        }
+
+        buffers.add(slice(jpeg, start, insertion));
+        buffers.add(createExifSegment());
+        buffers.add(slice(jpeg, insertion, end));
+        return true;
+    }
+
+    private boolean prepareExif(ByteBuffer jpeg, int segmentStart, int segmentEnd, List<ByteBuffer> buffers) {
+        int tiff = segmentStart + 4 + EXIF_HEADER_LENGTH;
+        if (tiff + 8 > segmentEnd) return false;
+
+        ByteOrder order;
+        if (unsignedByte(jpeg, tiff) == 'I' && unsignedByte(jpeg, tiff + 1) == 'I') order = ByteOrder.LITTLE_ENDIAN;
+        else if (unsignedByte(jpeg, tiff) == 'M' && unsignedByte(jpeg, tiff + 1) == 'M') order = ByteOrder.BIG_ENDIAN;
+        else return false;
+
+        long ifdOffset = unsignedInt(jpeg, tiff + 4, order);
+        int ifd = tiff + (int) Math.min(ifdOffset, Integer.MAX_VALUE - tiff);
+        if (ifdOffset < 8 || ifd + 2 > segmentEnd) return false;
+        int entryCount = unsignedShort(jpeg, ifd, order);
+        int entriesEnd = ifd + 2 + entryCount * IFD_ENTRY_LENGTH;
+        if (entriesEnd + 4 > segmentEnd) return false;
+
+        int orientationEntry = -1;
+        boolean orientationInPlace = false;
+        boolean hasDateTime = false;
+        for (int i = 0; i < entryCount; ++i) {
+            int entry = ifd + 2 + i * IFD_ENTRY_LENGTH;
+            int tag = unsignedShort(jpeg, entry, order);
+            if (tag == TAG_ORIENTATION) {
+                orientationEntry = i;
+                orientationInPlace = unsignedShort(jpeg, entry + 2, order) == TYPE_SHORT
+                        && unsignedInt(jpeg, entry + 4, order) == 1;
+            } else if (tag == TAG_DATE_TIME) hasDateTime = true;
+        }
+
+        boolean addOrientation = orientation > 0 && orientationEntry < 0;
+        // an orientation of another type is replaced in the copy of IFD0, the tag can't be there twice
+        boolean replaceOrientation = orientation > 0 && orientationEntry >= 0 && !orientationInPlace;
+        boolean addDateTime = dateTime >= 0 && !hasDateTime;
+        if (!addOrientation && !replaceOrientation && !addDateTime) {
+            if (orientation <= 0) return false;
+            int orientationValue = ifd + 2 + orientationEntry * IFD_ENTRY_LENGTH + 8;
+            buffers.add(slice(jpeg, jpeg.position(), orientationValue));
+            buffers.add(ByteBuffer.allocate(2).order(order).putShort(0, (short) orientation));
+            buffers.add(slice(jpeg, orientationValue + 2, jpeg.limit()));
+            return true;
+        }
+
+        // copy of IFD0 with the changed tags, placed at the end of the segment on an even offset
+        int padding = (segmentEnd - tiff) % 2;
+        int newIfdOffset = segmentEnd - tiff + padding;
+        List<byte[]> entries = new ArrayList<>();
+        for (int i = 0; i < entryCount; ++i) {
+            byte[] entry = new byte[IFD_ENTRY_LENGTH];
+            ByteBuffer source = jpeg.duplicate();
+            source.position(ifd + 2 + i * IFD_ENTRY_LENGTH);
+            source.get(entry);
+            if (orientation > 0 && i == orientationEntry) entry = createOrientationEntry(order);
+            entries.add(entry);
+        }
+        int newEntryCount = entryCount + (addOrientation ? 1 : 0) + (addDateTime ? 1 : 0);
+        int dateTimeOffset = newIfdOffset + 2 + newEntryCount * IFD_ENTRY_LENGTH + 4;
+        if (addOrientation) insertEntry(entries, createOrientationEntry(order), order);
+        if (addDateTime) insertEntry(entries, createDateTimeEntry(dateTimeOffset, order), order);
+
+        ByteBuffer newIfd = ByteBuffer.allocate(padding + 2 + newEntryCount * IFD_ENTRY_LENGTH + 4
+                + (addDateTime ? DATE_TIME_LENGTH : 0)).order(order);
+        newIfd.position(padding);
+        newIfd.putShort((short) newEntryCount);
+        for (byte[] entry : entries) newIfd.put(entry);
+        newIfd.putInt((int) unsignedInt(jpeg, entriesEnd, order));
+        if (addDateTime) newIfd.put(formatDateTime(dateTime));
+        newIfd.flip();
+
+        int newSegmentLength = segmentEnd - segmentStart - 2 + newIfd.remaining();
+        if (newSegmentLength > MAX_SEGMENT_LENGTH) return false;
+
+        buffers.add(slice(jpeg, jpeg.position(), segmentStart + 2));
+        buffers.add(ByteBuffer.allocate(2).putShort(0, (short) newSegmentLength));
+        buffers.add(slice(jpeg, segmentStart + 4, tiff + 4));
+        buffers.add(ByteBuffer.allocate(4).order(order).putInt(0, newIfdOffset));
+        buffers.add(slice(jpeg, tiff + 8, segmentEnd));
+        buffers.add(newIfd);
+        buffers.add(slice(jpeg, segmentEnd, jpeg.limit()));
+        return true;
+    }
+
+    private ByteBuffer createExifSegment() {
+        ByteOrder order = ByteOrder.BIG_ENDIAN;
+        List<byte[]> entries = new ArrayList<>();
+        int entryCount = (orientation > 0 ? 1 : 0) + (dateTime >= 0 ? 1 : 0);
+        int dateTimeOffset = 8 + 2 + entryCount * IFD_ENTRY_LENGTH + 4;
+        if (orientation > 0) insertEntry(entries, createOrientationEntry(order), order);
+        if (dateTime >= 0) insertEntry(entries, createDateTimeEntry(dateTimeOffset, order), order);
+
+        int tiffLength = dateTimeOffset + (dateTime >= 0 ? DATE_TIME_LENGTH : 0);
+        ByteBuffer segment = ByteBuffer.allocate(4 + EXIF_HEADER_LENGTH + tiffLength).order(order);
+        segment.put((byte) 0xFF).put((byte) MARKER_APP1);
+        segment.putShort((short) (2 + EXIF_HEADER_LENGTH + tiffLength));
+        segment.put(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+        segment.put(new byte[]{'M', 'M', 0, 42});
+        segment.putInt(8);
+        segment.putShort((short) entryCount);
+        for (byte[] entry : entries) segment.put(entry);
+        segment.putInt(0);
+        if (dateTime >= 0) segment.put(formatDateTime(dateTime));
+        segment.flip();
+        return segment;
+    }
+
+    private byte[] createOrientationEntry(ByteOrder order) {
+        ByteBuffer entry = ByteBuffer.allocate(IFD_ENTRY_LENGTH).order(order);
+        entry.putShort((short) TAG_ORIENTATION).putShort((short) TYPE_SHORT).putInt(1).putShort((short) orientation);
+        return entry.array();
+    }
+
+    private static byte[] createDateTimeEntry(int valueOffset, ByteOrder order) {
+        ByteBuffer entry = ByteBuffer.allocate(IFD_ENTRY_LENGTH).order(order);
+        entry.putShort((short) TAG_DATE_TIME).putShort((short) TYPE_ASCII).putInt(DATE_TIME_LENGTH).putInt(valueOffset);
+        return entry.array();
+    }
+
+    /***
+     * IFD entries have to be sorted by the tag.
+     */
+    private static void insertEntry(List<byte[]> entries, byte[] entry, ByteOrder order) {
+        int tag = ByteBuffer.wrap(entry).order(order).getShort(0) & 0xFFFF;
+        int index = 0;
+        while (index < entries.size()
+                && (ByteBuffer.wrap(entries.get(index)).order(order).getShort(0) & 0xFFFF) < tag) index++;
+        entries.add(index, entry);
+    }
+
+    private static byte[] formatDateTime(long dateTime) {
+        String value = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US).format(new Date(dateTime));
+        byte[] bytes = new byte[DATE_TIME_LENGTH];
+        for (int i = 0; i < value.length() && i < DATE_TIME_LENGTH - 1; ++i) bytes[i] = (byte) value.charAt(i);
+        return bytes;
+    }
+
+    private static boolean isExifSegment(ByteBuffer jpeg, int offset, int segmentEnd) {
+        return offset + EXIF_HEADER_LENGTH <= segmentEnd
+                && jpeg.get(offset) == 'E' && jpeg.get(offset + 1) == 'x' && jpeg.get(offset + 2) == 'i'
+                && jpeg.get(offset + 3) == 'f' && jpeg.get(offset + 4) == 0 && jpeg.get(offset + 5) == 0;
+    }
+
+    private static ByteBuffer slice(ByteBuffer jpeg, int from, int to) {
+        ByteBuffer slice = jpeg.duplicate();
+        slice.limit(to);
+        slice.position(from);
+        return slice;
+    }
+
+    private static int unsignedByte(ByteBuffer buffer, int offset) {
+        return buffer.get(offset) & 0xFF;
+    }
+
+    private static int unsignedShort(ByteBuffer buffer, int offset, ByteOrder order) {
+        int first = unsignedByte(buffer, offset);
+        int second = unsignedByte(buffer, offset + 1);
+        return order == ByteOrder.BIG_ENDIAN ? (first << 8) | second : (second << 8) | first;
+    }
+
+    private static long unsignedInt(ByteBuffer buffer, int offset, ByteOrder order) {
+        long high = unsignedShort(buffer, order == ByteOrder.BIG_ENDIAN ? offset : offset + 2, order);
+        long low = unsignedShort(buffer, order == ByteOrder.BIG_ENDIAN ? offset + 2 : offset, order);
+        return (high << 16) | low;
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.memfis19.annca.internal.utils;
+
+/**
+ * Snapshot of the counters of the committed output files. The sync time is counted apart from the rename,
+ * it's the cost of the sync policy.
+ */
+public final class OutputCommitStats {
+
+    private final long commits;
+    private final long failedCommits;
+    private final long syncs;
+    private final long totalSyncNanos;
+    private final long maxSyncNanos;
+    private final long totalRenameNanos;
+    private final long deletedTempFiles;
+
+    public OutputCommitStats(long commits, long failedCommits, long syncs, long totalSyncNanos, long maxSyncNanos,
+                             long totalRenameNanos, long deletedTempFiles) {
+        this.commits = commits;
+        this.failedCommits = failedCommits;
+        this.syncs = syncs;
+        this.totalSyncNanos = totalSyncNanos;
+        this.maxSyncNanos = maxSyncNanos;
+        this.totalRenameNanos = totalRenameNanos;
+        this.deletedTempFiles = deletedTempFiles;
+    }
+
+    public long getCommits() {
+        return commits;
+    }
+
+    public long getFailedCommits() {
+        return failedCommits;
+    }
+
+    public long getSyncs() {
+        return syncs;
+    }
+
+    public float getAverageSyncMillis() {
+        return syncs > 0 ? totalSyncNanos / 1000000f / syncs : 0;
+    }
+
+    public float getMaxSyncMillis() {
+        return maxSyncNanos / 1000000f;
+    }
+
+    public float getAverageRenameMillis() {
+        return commits > 0 ? totalRenameNanos / 1000000f / commits : 0;
+    }
+
+    /***
+     * @return temp files left by an interrupted write and deleted by the cleanup
+     */
+    public long getDeletedTempFiles() {
+        return deletedTempFiles;
+    }
+
+    @Override
+    public String toString() {
+        return "commits: " + commits + ", failed: " + failedCommits + ", syncs: " + syncs
+                + ", average sync, ms: " + getAverageSyncMillis() + ", max sync, ms: " + getMaxSyncMillis()
+                + ", average rename, ms: " + getAverageRenameMillis() + ", deleted temp files: " + deletedTempFiles;
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.memfis19.annca.internal.analysis;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class AnalyzerWorkerTest {
+
+    private static final class BlockedAnalyzer implements FrameAnalyzer {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch gate = new CountDownLatch(1);
+
+        @Override
+        public void analyze(Frame frame) {
+            started.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class CountingRecycler implements Frame.Recycler {
+
+        private final AtomicInteger recycledFrames = new AtomicInteger();
+
+        @Override
+        public void recycle(Frame frame) {
+            recycledFrames.incrementAndGet();
+        }
+    }
+
+    private final CountingRecycler recycler = new CountingRecycler();
+
+    @Test(timeout = 5000)
+    public void blockingBackpressureDoesNotWaitForAnalyzer() throws Exception {
+        BlockedAnalyzer analyzer = new BlockedAnalyzer();
+        AnalyzerWorker worker = new AnalyzerWorker(analyzer, FrameAnalyzer.BACKPRESSURE_BLOCK_PRODUCER);
+        worker.start();
+
+        worker.offer(newFrame());
+        analyzer.started.await();
+        for (int i = 0; i < AnalyzerWorker.BLOCKING_QUEUE_CAPACITY + 2; i++) worker.offer(newFrame());
+
+        // the queue is full, the newest frames are dropped right away
+        assertEquals(2, worker.getDroppedFrames());
+        assertEquals(2, recycler.recycledFrames.get());
+
+        analyzer.gate.countDown();
+        worker.stop();
+        assertEquals(AnalyzerWorker.BLOCKING_QUEUE_CAPACITY + 3, recycler.recycledFrames.get());
+    }
+
+    @Test(timeout = 5000)
+    public void keepLatestDropsOlderFrames() throws Exception {
+        BlockedAnalyzer analyzer = new BlockedAnalyzer();
+        AnalyzerWorker worker = new AnalyzerWorker(analyzer, FrameAnalyzer.BACKPRESSURE_KEEP_LATEST);
+        worker.start();
+
+        worker.offer(newFrame());
+        analyzer.started.await();
+        worker.offer(newFrame());
+        worker.offer(newFrame());
+        worker.offer(newFrame());
+
+        assertEquals(2, worker.getDroppedFrames());
+        analyzer.gate.countDown();
+        worker.stop();
+        assertEquals(4, recycler.recycledFrames.get());
+    }
+
+    private Frame newFrame() {
+        Frame frame = new Frame(null, recycler);
+        frame.open();
+        return frame;
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.memfis19.annca.internal.analysis;
+
+import android.graphics.ImageFormat;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class PreviewFrameSourceTest {
+
+    private static final Frame.Recycler NO_RECYCLER = new Frame.Recycler() {
+        @Override
+        public void recycle(Frame frame) {
+        }
+    };
+
+    @Test
+    public void nv21HasLumaAndInterleavedChromaPlanes() {
+        Frame frame = newFrame(640 * 480 * 3 / 2, 640, 480, ImageFormat.NV21);
+
+        assertEquals(2, frame.getPlaneCount());
+        assertPlane(frame, 0, 0, 640 * 480, 640, 1);
+        assertPlane(frame, 1, 640 * 480, 640 * 480 / 2, 640, 2);
+    }
+
+    @Test
+    public void yv12RowsAreAlignedTo16Bytes() {
+        // 16 aligned luma rows of 176, chroma rows of 88 aligned to 96
+        int ySize = 176 * 144;
+        int uvSize = 96 * 72;
+        Frame frame = newFrame(ySize + 2 * uvSize, 176, 144, ImageFormat.YV12);
+
+        assertEquals(3, frame.getPlaneCount());
+        assertPlane(frame, 0, 0, ySize, 176, 1);
+        // U follows V in the buffer
+        assertPlane(frame, 1, ySize + uvSize, uvSize, 96, 1);
+        assertPlane(frame, 2, ySize, uvSize, 96, 1);
+    }
+
+    @Test
+    public void yv12LumaStrideIsPadded() {
+        int ySize = 208 * 100;
+        int uvSize = 112 * 50;
+        Frame frame = newFrame(ySize + 2 * uvSize, 200, 100, ImageFormat.YV12);
+
+        assertPlane(frame, 0, 0, ySize, 208, 1);
+        assertPlane(frame, 2, ySize, uvSize, 112, 1);
+    }
+
+    @Test
+    public void otherFormatsHaveOnePlane() {
+        Frame frame = newFrame(320 * 240 * 2, 320, 240, ImageFormat.YUY2);
+
+        assertEquals(1, frame.getPlaneCount());
+        assertPlane(frame, 0, 0, 320 * 240 * 2, 320, 1);
+    }
+
+    private static Frame newFrame(int size, int width, int height, int format) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) data[i] = (byte) i;
+        Frame frame = new Frame(ByteBuffer.wrap(data), NO_RECYCLER);
+        frame.set(width, height, format, 0, 0);
+        PreviewFrameSource.addPlanes(frame, width, height, format);
+        return frame;
+    }
+
+    private static void assertPlane(Frame frame, int index, int offset, int size, int rowStride, int pixelStride) {
+        ByteBuffer plane = frame.getPlane(index);
+        assertEquals(size, plane.remaining());
+        assertEquals((byte) offset, plane.get(0));
+        assertEquals(rowStride, frame.getRowStride(index));
+        assertEquals(pixelStride, frame.getPixelStride(index));
+    }
+}
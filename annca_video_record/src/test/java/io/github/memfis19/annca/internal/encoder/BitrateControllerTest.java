@@ -0,0 +1,100 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BitrateControllerTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void targetSizeIsRequired() {
+        new BitrateController(0, 1000, 800000, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void initialBitRateIsRequired() {
+        new BitrateController(1000000, 1000, 0, 0);
+    }
+
+    @Test
+    public void emptyPeriodIsIgnored() {
+        BitrateController controller = new BitrateController(10000000, 100000, 800000, 0);
+
+        assertEquals(BitrateController.NO_CHANGE, controller.onProgress(0, 0));
+        assertEquals(BitrateController.NO_CHANGE, controller.onProgress(-10, 1000));
+        assertEquals(0, controller.getMeasuredBitRate());
+    }
+
+    @Test
+    public void recordingOnBudgetKeepsBitRate() {
+        // 100 KB/s for 100 s fits exactly into the size without the safety margin
+        BitrateController controller = new BitrateController(10309279, 100000, 800000, 0);
+
+        assertEquals(BitrateController.NO_CHANGE, controller.onProgress(10000, 1000000));
+        assertEquals(800000, controller.getMeasuredBitRate());
+        assertEquals(1f, controller.getEfficiency(), 0.001f);
+        assertEquals(800000, controller.getVideoBitRate());
+    }
+
+    @Test
+    public void overshootLowersBitRateByLimitedStep() {
+        BitrateController controller = new BitrateController(10000000, 100000, 800000, 0);
+
+        // twice the requested rate
+        int bitRate = controller.onProgress(10000, 2000000);
+
+        assertEquals(1600000, controller.getMeasuredBitRate());
+        assertEquals(1.5f, controller.getEfficiency(), 0.001f);
+        assertEquals(560000, bitRate);
+        assertEquals(560000, controller.getVideoBitRate());
+    }
+
+    @Test
+    public void undershootRaisesBitRateUpToDoubleOfInitial() {
+        BitrateController controller = new BitrateController(1000000000, 100000, 1000000, 0);
+
+        long writtenBytes = 0;
+        for (int second = 1; second <= 10; second++) {
+            int previous = controller.getVideoBitRate();
+            writtenBytes += previous / 8;
+            controller.onProgress(second * 1000, writtenBytes);
+            assertTrue(controller.getVideoBitRate() <= previous * 1.3f);
+        }
+
+        assertEquals(2000000, controller.getVideoBitRate());
+    }
+
+    @Test
+    public void bitRateDoesNotGoBelowMinimum() {
+        BitrateController controller = new BitrateController(1000000, 100000, 800000, 0);
+
+        long writtenBytes = 0;
+        for (int second = 1; second <= 20; second++) {
+            writtenBytes += 500000;
+            controller.onProgress(second * 1000, writtenBytes);
+        }
+
+        assertEquals(100000, controller.getVideoBitRate());
+        assertEquals(3f, controller.getEfficiency(), 0.001f);
+    }
+
+    @Test
+    public void audioBitRateIsLeftOutOfTheBudget() {
+        // the audio takes the whole budget, the video goes down by the maximum step
+        BitrateController controller = new BitrateController(1250000, 100000, 800000, 100000);
+
+        int bitRate = controller.onProgress(10000, 1125000);
+
+        assertEquals(560000, bitRate);
+    }
+
+    @Test
+    public void noChangeAfterTargetDuration() {
+        BitrateController controller = new BitrateController(10000000, 10000, 800000, 0);
+
+        assertEquals(BitrateController.NO_CHANGE, controller.onProgress(10000, 5000000));
+        assertEquals(4000000, controller.getMeasuredBitRate());
+        assertEquals(800000, controller.getVideoBitRate());
+    }
+}
@@ -0,0 +1,186 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Codec which reports its format first and then the queued output samples, every input buffer
+ * is echoed as an output sample of the same size.
+ */
+final class FakeEncoderCodec<F> implements EncoderCodec<F> {
+
+    static final class Input {
+
+        final int size;
+        final long presentationTimeUs;
+        final int flags;
+
+        private Input(int size, long presentationTimeUs, int flags) {
+            this.size = size;
+            this.presentationTimeUs = presentationTimeUs;
+            this.flags = flags;
+        }
+    }
+
+    private static final class Output {
+
+        private final ByteBuffer data;
+        private final long presentationTimeUs;
+        private final int flags;
+
+        private Output(ByteBuffer data, long presentationTimeUs, int flags) {
+            this.data = data;
+            this.presentationTimeUs = presentationTimeUs;
+            this.flags = flags;
+        }
+    }
+
+    private final F outputFormat;
+    private final ByteBuffer inputBuffer;
+    private final ArrayDeque<Output> outputs = new ArrayDeque<>();
+    private final List<Input> inputs = new ArrayList<>();
+
+    private Output currentOutput;
+    private boolean formatReported = false;
+    private boolean inputAvailable = true;
+    private volatile CountDownLatch outputGate;
+
+    private boolean started = false;
+    private boolean stopped = false;
+    private boolean released = false;
+    private int keyFrameRequests = 0;
+
+    FakeEncoderCodec(F outputFormat, int inputBufferSize) {
+        this.outputFormat = outputFormat;
+        this.inputBuffer = ByteBuffer.allocate(inputBufferSize);
+    }
+
+    synchronized void addOutput(int size, long presentationTimeUs, int flags) {
+        outputs.addLast(new Output(ByteBuffer.allocate(size), presentationTimeUs, flags));
+    }
+
+    synchronized void setInputAvailable(boolean inputAvailable) {
+        this.inputAvailable = inputAvailable;
+    }
+
+    /***
+     * The draining thread is blocked in dequeueOutputBuffer until the gate is opened.
+     */
+    void setOutputGate(CountDownLatch outputGate) {
+        this.outputGate = outputGate;
+    }
+
+    synchronized List<Input> getInputs() {
+        return new ArrayList<>(inputs);
+    }
+
+    synchronized boolean isStarted() {
+        return started;
+    }
+
+    synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    synchronized boolean isReleased() {
+        return released;
+    }
+
+    synchronized int getKeyFrameRequests() {
+        return keyFrameRequests;
+    }
+
+    @Override
+    public synchronized void start() {
+        started = true;
+    }
+
+    @Override
+    public synchronized int dequeueInputBuffer(long timeoutUs) {
+        return inputAvailable ? 0 : EncoderCodec.INFO_TRY_AGAIN_LATER;
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        return inputBuffer;
+    }
+
+    @Override
+    public synchronized void queueInputBuffer(int index, int size, long presentationTimeUs, int flags) {
+        inputs.add(new Input(size, presentationTimeUs, flags));
+        if (size > 0) addOutput(size, presentationTimeUs, 0);
+        if ((flags & SampleInfo.FLAG_END_OF_STREAM) != 0) addOutput(0, presentationTimeUs, SampleInfo.FLAG_END_OF_STREAM);
+    }
+
+    @Override
+    public synchronized void signalEndOfInputStream() {
+        addOutput(0, 0, SampleInfo.FLAG_END_OF_STREAM);
+    }
+
+    @Override
+    public void setVideoBitRate(int bitRate) {
+    }
+
+    @Override
+    public synchronized void requestKeyFrame() {
+        keyFrameRequests++;
+    }
+
+    @Override
+    public int dequeueOutputBuffer(SampleInfo sampleInfo, long timeoutUs) {
+        CountDownLatch gate = outputGate;
+        if (gate != null) {
+            try {
+                gate.await();
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (this) {
+            if (!formatReported) {
+                formatReported = true;
+                return EncoderCodec.INFO_OUTPUT_FORMAT_CHANGED;
+            }
+            currentOutput = outputs.pollFirst();
+            if (currentOutput != null) {
+                sampleInfo.set(0, currentOutput.data.capacity(), currentOutput.presentationTimeUs, currentOutput.flags);
+                return 0;
+            }
+        }
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+        return EncoderCodec.INFO_TRY_AGAIN_LATER;
+    }
+
+    @Override
+    public synchronized ByteBuffer getOutputBuffer(int index) {
+        return currentOutput != null ? currentOutput.data : null;
+    }
+
+    @Override
+    public synchronized void releaseOutputBuffer(int index) {
+        currentOutput = null;
+    }
+
+    @Override
+    public F getOutputFormat() {
+        return outputFormat;
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopped = true;
+    }
+
+    @Override
+    public synchronized void release() {
+        released = true;
+    }
+}
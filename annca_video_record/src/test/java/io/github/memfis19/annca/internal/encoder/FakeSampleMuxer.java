@@ -0,0 +1,98 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Muxer keeping a copy of the written samples, it throws on stop without samples like MediaMuxer.
+ */
+final class FakeSampleMuxer<F> implements SampleMuxer<F> {
+
+    static final class Sample {
+
+        final int trackIndex;
+        final byte[] data;
+        final long presentationTimeUs;
+        final int flags;
+
+        private Sample(int trackIndex, byte[] data, long presentationTimeUs, int flags) {
+            this.trackIndex = trackIndex;
+            this.data = data;
+            this.presentationTimeUs = presentationTimeUs;
+            this.flags = flags;
+        }
+    }
+
+    private final List<F> formats = new ArrayList<>();
+    private final List<Sample> samples = new ArrayList<>();
+
+    private boolean started = false;
+    private boolean stopped = false;
+    private boolean released = false;
+    private Thread stopThread;
+
+    @Override
+    public synchronized int addTrack(F format) {
+        if (started) throw new IllegalStateException("Muxer is already started.");
+        formats.add(format);
+        return formats.size() - 1;
+    }
+
+    @Override
+    public synchronized void start() {
+        started = true;
+    }
+
+    @Override
+    public synchronized void writeSampleData(int trackIndex, ByteBuffer buffer, SampleInfo sampleInfo) {
+        if (!started || stopped) throw new IllegalStateException("Muxer isn't started.");
+        ByteBuffer source = buffer.duplicate();
+        source.limit(sampleInfo.offset + sampleInfo.size).position(sampleInfo.offset);
+        byte[] data = new byte[sampleInfo.size];
+        source.get(data);
+        samples.add(new Sample(trackIndex, data, sampleInfo.presentationTimeUs, sampleInfo.flags));
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopThread = Thread.currentThread();
+        stopped = true;
+        if (samples.isEmpty()) throw new IllegalStateException("Muxer stopped without samples.");
+    }
+
+    @Override
+    public synchronized void release() {
+        released = true;
+    }
+
+    synchronized List<F> getFormats() {
+        return new ArrayList<>(formats);
+    }
+
+    synchronized List<Sample> getSamples() {
+        return new ArrayList<>(samples);
+    }
+
+    synchronized List<Sample> getSamples(int trackIndex) {
+        List<Sample> trackSamples = new ArrayList<>();
+        for (Sample sample : samples) if (sample.trackIndex == trackIndex) trackSamples.add(sample);
+        return trackSamples;
+    }
+
+    synchronized boolean isStarted() {
+        return started;
+    }
+
+    synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    synchronized boolean isReleased() {
+        return released;
+    }
+
+    synchronized Thread getStopThread() {
+        return stopThread;
+    }
+}
@@ -0,0 +1,176 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import android.media.MediaFormat;
+import android.view.Surface;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MediaCodecEncoderEngineTest {
+
+    private static final class FakeAudioInput implements AudioInput {
+
+        private volatile boolean stopped = false;
+        private volatile boolean released = false;
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public int read(ByteBuffer buffer, int size) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+            int read = Math.min(size, 64);
+            buffer.position(buffer.position() + read);
+            return read;
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+
+    private static final class FakeComponentFactory implements MediaCodecEncoderEngine.ComponentFactory {
+
+        private final FakeEncoderCodec<MediaFormat> videoCodec = new FakeEncoderCodec<>(null, 0);
+        private final FakeEncoderCodec<MediaFormat> audioCodec = new FakeEncoderCodec<>(null, 256);
+        private final FakeAudioInput audioInput = new FakeAudioInput();
+        private final FakeSampleMuxer<MediaFormat> muxer = new FakeSampleMuxer<>();
+
+        @Override
+        public EncoderCodec<MediaFormat> createVideoCodec(EncoderConfig config, Surface persistentInputSurface) {
+            return videoCodec;
+        }
+
+        @Override
+        public Surface getInputSurface(EncoderCodec<MediaFormat> videoCodec) {
+            return null;
+        }
+
+        @Override
+        public EncoderCodec<MediaFormat> createAudioCodec(EncoderConfig config) {
+            return audioCodec;
+        }
+
+        @Override
+        public AudioInput createAudioInput(EncoderConfig config) {
+            return audioInput;
+        }
+
+        @Override
+        public SampleMuxer<MediaFormat> createMuxer(EncoderConfig config, File outputFile) {
+            return muxer;
+        }
+    }
+
+    private final FakeComponentFactory factory = new FakeComponentFactory();
+
+    @Test(timeout = 5000)
+    public void videoIsFinalizedOnStop() throws Exception {
+        MediaCodecEncoderEngine engine = createEngine(false);
+        engine.prepare(null);
+        assertTrue(factory.videoCodec.isStarted());
+
+        factory.videoCodec.addOutput(100, 1000, SampleInfo.FLAG_KEY_FRAME);
+        factory.videoCodec.addOutput(50, 34000, 0);
+        engine.start();
+        while (factory.muxer.getSamples().size() < 2) Thread.sleep(1);
+
+        assertTrue(engine.stop());
+        assertTrue(factory.muxer.isStopped());
+        assertTrue(factory.muxer.isReleased());
+        assertTrue(factory.videoCodec.isReleased());
+        assertEquals(150, engine.getWrittenBytes());
+    }
+
+    @Test(timeout = 5000)
+    public void audioAndVideoAreMuxedTogether() throws Exception {
+        MediaCodecEncoderEngine engine = createEngine(true);
+        engine.prepare(null);
+
+        factory.videoCodec.addOutput(100, 1000, SampleInfo.FLAG_KEY_FRAME);
+        engine.start();
+        while (factory.muxer.getSamples(0).isEmpty() || factory.muxer.getSamples(1).isEmpty()) Thread.sleep(1);
+
+        assertTrue(engine.stop());
+        assertEquals(2, factory.muxer.getFormats().size());
+        assertTrue(factory.audioInput.stopped);
+        assertTrue(factory.audioInput.released);
+        assertTrue(factory.audioCodec.isReleased());
+        assertTrue(factory.videoCodec.isReleased());
+        assertTrue(factory.muxer.isReleased());
+    }
+
+    @Test(timeout = 10000)
+    public void componentsAreReleasedOnlyAfterThreadsExit() throws Exception {
+        MediaCodecEncoderEngine engine = createEngine(false);
+        engine.prepare(null);
+        CountDownLatch gate = new CountDownLatch(1);
+        factory.videoCodec.setOutputGate(gate);
+
+        engine.start();
+        // the draining thread is stuck in the codec past the stop timeout
+        assertFalse(engine.stop());
+        engine.release();
+        assertFalse(factory.videoCodec.isReleased());
+        assertFalse(factory.muxer.isReleased());
+
+        gate.countDown();
+        while (!factory.videoCodec.isReleased()) Thread.sleep(1);
+        assertTrue(factory.muxer.isReleased());
+    }
+
+    @Test(timeout = 5000)
+    public void resumeRequestsKeyFrame() throws Exception {
+        MediaCodecEncoderEngine engine = createEngine(false);
+        engine.prepare(null);
+        engine.start();
+
+        assertTrue(engine.pause());
+        assertFalse(engine.pause());
+        assertTrue(engine.resume());
+        assertEquals(1, factory.videoCodec.getKeyFrameRequests());
+
+        engine.release();
+        assertTrue(factory.videoCodec.isReleased());
+    }
+
+    @Test
+    public void stopWithoutStartFails() throws Exception {
+        MediaCodecEncoderEngine engine = createEngine(false);
+        engine.prepare(null);
+
+        assertFalse(engine.stop());
+        assertFalse(engine.setVideoBitRate(1000));
+        engine.release();
+        assertTrue(factory.videoCodec.isReleased());
+        assertTrue(factory.muxer.isReleased());
+    }
+
+    private MediaCodecEncoderEngine createEngine(boolean audioEnabled) {
+        EncoderConfig config = new EncoderConfig.Builder()
+                .setOutputFile(new File("video.mp4"))
+                .setVideoSize(640, 480)
+                .setVideoBitRate(1000000)
+                .setAudioEnabled(audioEnabled)
+                .build();
+        return new MediaCodecEncoderEngine(config, null, factory);
+    }
+}
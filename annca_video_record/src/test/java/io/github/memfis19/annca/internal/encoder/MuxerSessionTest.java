@@ -0,0 +1,173 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class MuxerSessionTest {
+
+    private static final class FakeSegmentCallback implements MuxerSession.SegmentCallback<String> {
+
+        private final List<FakeSampleMuxer<String>> muxers = new ArrayList<>();
+        private final List<Integer> finalizedSegments = new ArrayList<>();
+        private final List<Thread> finalizingThreads = new ArrayList<>();
+
+        @Override
+        public synchronized SampleMuxer<String> createNextMuxer(int segmentIndex) throws IOException {
+            FakeSampleMuxer<String> muxer = new FakeSampleMuxer<>();
+            muxers.add(muxer);
+            return muxer;
+        }
+
+        @Override
+        public synchronized void onSegmentFinalized(int segmentIndex, boolean valid) {
+            if (valid) finalizedSegments.add(segmentIndex);
+            finalizingThreads.add(Thread.currentThread());
+        }
+    }
+
+    private final FakeSampleMuxer<String> muxer = new FakeSampleMuxer<>();
+
+    @Test(expected = IllegalArgumentException.class)
+    public void trackIsRequired() {
+        new MuxerSession<>(muxer, 0, MuxerSession.NO_LIMIT, MuxerSession.NO_LIMIT, null);
+    }
+
+    @Test
+    public void samplesBeforeAllTracksAreWrittenOnStart() {
+        MuxerSession<String> session = new MuxerSession<>(muxer, 2, MuxerSession.NO_LIMIT, MuxerSession.NO_LIMIT, null);
+        int video = session.addTrack("video", true);
+        write(session, video, 100, 5000, SampleInfo.FLAG_KEY_FRAME);
+        write(session, video, 50, 38000, 0);
+        assertFalse(muxer.isStarted());
+
+        int audio = session.addTrack("audio", false);
+        write(session, audio, 20, 6000, 0);
+
+        assertTrue(muxer.isStarted());
+        List<FakeSampleMuxer.Sample> samples = muxer.getSamples();
+        assertEquals(3, samples.size());
+        assertEquals(0, samples.get(0).presentationTimeUs);
+        assertEquals(33000, samples.get(1).presentationTimeUs);
+        assertEquals(1000, samples.get(2).presentationTimeUs);
+        assertTrue(session.stop());
+        assertTrue(muxer.isReleased());
+    }
+
+    @Test
+    public void timestampsIncreasePerTrack() {
+        MuxerSession<String> session = new MuxerSession<>(muxer, 1, MuxerSession.NO_LIMIT, MuxerSession.NO_LIMIT, null);
+        int video = session.addTrack("video", true);
+
+        write(session, video, 10, 1000, SampleInfo.FLAG_KEY_FRAME);
+        write(session, video, 10, 1000, 0);
+        write(session, video, 10, 1000, 0);
+        // before the first written sample
+        write(session, video, 10, 500, 0);
+
+        List<FakeSampleMuxer.Sample> samples = muxer.getSamples();
+        assertEquals(3, samples.size());
+        assertEquals(1, session.getDroppedSamples());
+        assertEquals(0, samples.get(0).presentationTimeUs);
+        assertEquals(1, samples.get(1).presentationTimeUs);
+        assertEquals(2, samples.get(2).presentationTimeUs);
+    }
+
+    @Test
+    public void stopWithoutSamplesFails() {
+        MuxerSession<String> session = new MuxerSession<>(muxer, 1, MuxerSession.NO_LIMIT, MuxerSession.NO_LIMIT, null);
+        session.addTrack("video", true);
+
+        assertFalse(session.stop());
+        assertTrue(muxer.isReleased());
+    }
+
+    @Test(timeout = 5000)
+    public void finishedSegmentIsFinalizedInBackground() {
+        FakeSegmentCallback callback = new FakeSegmentCallback();
+        MuxerSession<String> session = new MuxerSession<>(muxer, 1, MuxerSession.NO_LIMIT, MuxerSession.NO_LIMIT, null);
+        session.setSegmentation(100, callback);
+        int video = session.addTrack("video", true);
+
+        write(session, video, 100, 0, SampleInfo.FLAG_KEY_FRAME);
+        write(session, video, 50, 33000, 0);
+        write(session, video, 100, 66000, SampleInfo.FLAG_KEY_FRAME);
+
+        assertEquals(1, session.getSegmentIndex());
+        assertEquals(1, callback.muxers.size());
+        FakeSampleMuxer<String> nextMuxer = callback.muxers.get(0);
+        assertEquals(1, nextMuxer.getSamples().size());
+        assertEquals(0, nextMuxer.getSamples().get(0).presentationTimeUs);
+
+        assertTrue(session.stop());
+        // all the finished segments are finalized when the session stops
+        assertTrue(muxer.isStopped());
+        assertTrue(muxer.isReleased());
+        assertNotNull(muxer.getStopThread());
+        assertNotSame(Thread.currentThread(), muxer.getStopThread());
+        assertEquals(Thread.currentThread(), nextMuxer.getStopThread());
+        assertEquals(1, callback.finalizedSegments.size());
+        assertEquals(0, (int) callback.finalizedSegments.get(0));
+        assertNotSame(Thread.currentThread(), callback.finalizingThreads.get(0));
+    }
+
+    @Test(timeout = 5000)
+    public void lateAudioIsCarriedIntoNextSegment() {
+        FakeSegmentCallback callback = new FakeSegmentCallback();
+        MuxerSession<String> session = new MuxerSession<>(muxer, 2, MuxerSession.NO_LIMIT, MuxerSession.NO_LIMIT, null);
+        session.setSegmentation(100, callback);
+        int video = session.addTrack("video", true);
+        int audio = session.addTrack("audio", false);
+
+        write(session, video, 100, 0, SampleInfo.FLAG_KEY_FRAME);
+        write(session, audio, 10, 80000, 0);
+        write(session, video, 100, 100000, SampleInfo.FLAG_KEY_FRAME);
+        // encoded before the key frame, comes after it
+        write(session, audio, 10, 95000, 0);
+
+        FakeSampleMuxer<String> nextMuxer = callback.muxers.get(0);
+        List<FakeSampleMuxer.Sample> videoSamples = nextMuxer.getSamples(video);
+        List<FakeSampleMuxer.Sample> audioSamples = nextMuxer.getSamples(audio);
+        assertEquals(1, audioSamples.size());
+        // both tracks keep their distance
+        assertEquals(5000, videoSamples.get(0).presentationTimeUs - audioSamples.get(0).presentationTimeUs);
+        assertTrue(audioSamples.get(0).presentationTimeUs >= 0);
+        assertEquals(0, session.getDroppedSamples());
+        assertTrue(session.stop());
+    }
+
+    @Test
+    public void pausedTimeIsCutOut() {
+        MuxerSession<String> session = new MuxerSession<>(muxer, 1, MuxerSession.NO_LIMIT, MuxerSession.NO_LIMIT, null);
+        int video = session.addTrack("video", true);
+
+        write(session, video, 10, 0, SampleInfo.FLAG_KEY_FRAME);
+        write(session, video, 10, 33000, 0);
+        session.pause();
+        write(session, video, 10, 66000, SampleInfo.FLAG_KEY_FRAME);
+        session.resume();
+        write(session, video, 10, 1000000, 0);
+        write(session, video, 10, 1033000, SampleInfo.FLAG_KEY_FRAME);
+
+        List<FakeSampleMuxer.Sample> samples = muxer.getSamples();
+        // the key frame after resume follows the last written frame
+        assertEquals(3, samples.size());
+        assertEquals(33001, samples.get(2).presentationTimeUs);
+        assertEquals(1000000, session.getPausedDurationUs());
+    }
+
+    private static void write(MuxerSession<String> session, int trackIndex, int size, long timeUs, int flags) {
+        SampleInfo info = new SampleInfo();
+        info.set(0, size, timeUs, flags);
+        session.writeSample(trackIndex, ByteBuffer.allocate(size), info);
+    }
+}
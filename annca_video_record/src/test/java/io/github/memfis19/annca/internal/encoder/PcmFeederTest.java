@@ -0,0 +1,133 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PcmFeederTest {
+
+    private static final class FakeAudioInput implements AudioInput {
+
+        private final int bytesPerRead;
+        private final List<Integer> requestedSizes = new ArrayList<>();
+        private boolean started = false;
+        private boolean stopped = false;
+
+        private FakeAudioInput(int bytesPerRead) {
+            this.bytesPerRead = bytesPerRead;
+        }
+
+        @Override
+        public void start() {
+            started = true;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer, int size) {
+            requestedSizes.add(size);
+            if (bytesPerRead < 0) return bytesPerRead;
+            int read = Math.min(size, bytesPerRead);
+            buffer.position(buffer.position() + read);
+            return read;
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+
+    @Test
+    public void timestampsFollowReadSamples() {
+        FakeAudioInput input = new FakeAudioInput(200);
+        FakeEncoderCodec<String> codec = new FakeEncoderCodec<>("audio", 1024);
+        // mono, 2 bytes per frame, 100 frames per read are 100 ms at 1 kHz
+        PcmFeeder feeder = new PcmFeeder(input, codec, 1000, 1);
+
+        feeder.start(5000);
+        assertTrue(feeder.feed(false));
+        assertTrue(feeder.feed(false));
+
+        List<FakeEncoderCodec.Input> inputs = codec.getInputs();
+        assertTrue(input.started);
+        assertEquals(2, inputs.size());
+        assertEquals(200, inputs.get(0).size);
+        assertEquals(5000, inputs.get(0).presentationTimeUs);
+        assertEquals(105000, inputs.get(1).presentationTimeUs);
+        assertEquals(205000, feeder.getPresentationTimeUs());
+    }
+
+    @Test
+    public void readsWholeFramesOnly() {
+        FakeAudioInput input = new FakeAudioInput(1000);
+        FakeEncoderCodec<String> codec = new FakeEncoderCodec<>("audio", 10);
+        // stereo, 4 bytes per frame
+        PcmFeeder feeder = new PcmFeeder(input, codec, 1000, 2);
+
+        feeder.start(0);
+        feeder.feed(false);
+
+        assertEquals(8, (int) input.requestedSizes.get(0));
+        assertEquals(8, codec.getInputs().get(0).size);
+    }
+
+    @Test
+    public void noInputBufferIsReported() {
+        FakeAudioInput input = new FakeAudioInput(200);
+        FakeEncoderCodec<String> codec = new FakeEncoderCodec<>("audio", 1024);
+        codec.setInputAvailable(false);
+        PcmFeeder feeder = new PcmFeeder(input, codec, 1000, 1);
+
+        feeder.start(0);
+
+        assertFalse(feeder.feed(false));
+        assertTrue(codec.getInputs().isEmpty());
+        assertTrue(input.requestedSizes.isEmpty());
+    }
+
+    @Test
+    public void failedReadQueuesEmptyBufferWithoutAdvancingTime() {
+        FakeAudioInput input = new FakeAudioInput(-3);
+        FakeEncoderCodec<String> codec = new FakeEncoderCodec<>("audio", 1024);
+        PcmFeeder feeder = new PcmFeeder(input, codec, 1000, 1);
+
+        feeder.start(7000);
+        feeder.feed(false);
+
+        assertEquals(0, codec.getInputs().get(0).size);
+        assertEquals(7000, feeder.getPresentationTimeUs());
+    }
+
+    @Test
+    public void endOfStreamIsQueuedOnce() {
+        FakeAudioInput input = new FakeAudioInput(200);
+        FakeEncoderCodec<String> codec = new FakeEncoderCodec<>("audio", 1024);
+        PcmFeeder feeder = new PcmFeeder(input, codec, 1000, 1);
+
+        feeder.start(0);
+        feeder.feed(false);
+        feeder.stop();
+        assertTrue(feeder.feed(true));
+        assertTrue(feeder.feed(true));
+        assertTrue(feeder.feed(false));
+
+        List<FakeEncoderCodec.Input> inputs = codec.getInputs();
+        assertTrue(input.stopped);
+        assertEquals(2, inputs.size());
+        assertEquals(0, inputs.get(1).size);
+        assertEquals(SampleInfo.FLAG_END_OF_STREAM, inputs.get(1).flags);
+        assertEquals(100000, inputs.get(1).presentationTimeUs);
+        // the end of stream doesn't read the input
+        assertEquals(1, input.requestedSizes.size());
+    }
+}
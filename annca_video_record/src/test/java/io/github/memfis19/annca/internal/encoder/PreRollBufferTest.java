@@ -0,0 +1,210 @@
+package io.github.memfis19.annca.internal.encoder;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PreRollBufferTest {
+
+    private static final int VIDEO = 0;
+    private static final int AUDIO = 1;
+    private static final int OFFSET = 3;
+
+    private static final class DrainedSample {
+
+        private final int trackIndex;
+        private final byte[] data;
+        private final long presentationTimeUs;
+
+        private DrainedSample(int trackIndex, byte[] data, long presentationTimeUs) {
+            this.trackIndex = trackIndex;
+            this.data = data;
+            this.presentationTimeUs = presentationTimeUs;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void durationIsRequired() {
+        new PreRollBuffer(0, 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeIsRequired() {
+        new PreRollBuffer(1000, 0);
+    }
+
+    @Test
+    public void drainStartsFromVideoKeyFrame() {
+        PreRollBuffer buffer = newBuffer(1000000, 10000);
+
+        add(buffer, AUDIO, 1, 10, 0, 0);
+        add(buffer, VIDEO, 2, 20, 10, 0);
+        add(buffer, VIDEO, 3, 30, 20, SampleInfo.FLAG_KEY_FRAME);
+        add(buffer, AUDIO, 4, 40, 25, 0);
+        add(buffer, VIDEO, 5, 50, 30, 0);
+        assertEquals(20, buffer.getEarliestTimeUs());
+
+        List<DrainedSample> samples = drain(buffer);
+
+        assertEquals(3, samples.size());
+        assertSample(samples.get(0), VIDEO, 3, 30, 20);
+        assertSample(samples.get(1), AUDIO, 4, 40, 25);
+        assertSample(samples.get(2), VIDEO, 5, 50, 30);
+        assertEquals(0, buffer.getBufferedBytes());
+        assertEquals(0, buffer.getSampleCount());
+        assertEquals(30, buffer.getEvictedBytes());
+    }
+
+    @Test
+    public void oldGroupsAreEvictedAfterDuration() {
+        PreRollBuffer buffer = newBuffer(1000000, 100000);
+
+        add(buffer, VIDEO, 1, 10, 0, SampleInfo.FLAG_KEY_FRAME);
+        add(buffer, VIDEO, 2, 10, 500000, 0);
+        add(buffer, VIDEO, 3, 10, 1000000, SampleInfo.FLAG_KEY_FRAME);
+        add(buffer, VIDEO, 4, 10, 1500000, 0);
+        add(buffer, VIDEO, 5, 10, 2000000, SampleInfo.FLAG_KEY_FRAME);
+
+        assertEquals(3, buffer.getSampleCount());
+        assertEquals(1000000, buffer.getBufferedDurationUs());
+        assertEquals(20, buffer.getEvictedBytes());
+        assertEquals(3, drain(buffer).get(0).data[0]);
+    }
+
+    @Test
+    public void oldGroupsAreEvictedOverByteLimit() {
+        PreRollBuffer buffer = newBuffer(10000000, 1000);
+
+        for (int group = 0; group < 3; group++) {
+            add(buffer, VIDEO, group, 300, group * 1000, SampleInfo.FLAG_KEY_FRAME);
+            add(buffer, VIDEO, group, 100, group * 1000 + 500, 0);
+        }
+
+        assertEquals(800, buffer.getBufferedBytes());
+        assertEquals(400, buffer.getEvictedBytes());
+        assertEquals(1, drain(buffer).get(0).data[0]);
+    }
+
+    @Test
+    public void newestGroupIsKeptOverByteLimit() {
+        PreRollBuffer buffer = newBuffer(10000000, 1000);
+
+        add(buffer, VIDEO, 1, 600, 0, SampleInfo.FLAG_KEY_FRAME);
+        add(buffer, VIDEO, 2, 600, 1000, 0);
+        add(buffer, VIDEO, 3, 600, 2000, 0);
+
+        assertEquals(1800, buffer.getBufferedBytes());
+        assertTrue(buffer.getCapacity() <= 2000);
+        List<DrainedSample> samples = drain(buffer);
+        assertEquals(3, samples.size());
+        assertSample(samples.get(2), VIDEO, 3, 600, 2000);
+    }
+
+    @Test
+    public void groupOverDoubleLimitIsDropped() {
+        PreRollBuffer buffer = newBuffer(10000000, 1000);
+
+        add(buffer, VIDEO, 1, 600, 0, SampleInfo.FLAG_KEY_FRAME);
+        add(buffer, VIDEO, 2, 600, 1000, 0);
+        add(buffer, VIDEO, 3, 600, 2000, 0);
+        add(buffer, VIDEO, 4, 300, 3000, 0);
+
+        assertEquals(300, buffer.getBufferedBytes());
+        assertTrue(drain(buffer).isEmpty());
+        assertEquals(2100, buffer.getEvictedBytes());
+    }
+
+    @Test
+    public void ringIsReusedAcrossWrapAround() {
+        PreRollBuffer buffer = newBuffer(10000000, 3000);
+        for (int i = 0; i < 30; i++) add(buffer, VIDEO, i, 150, i * 1000, SampleInfo.FLAG_KEY_FRAME);
+        int capacity = buffer.getCapacity();
+
+        for (int i = 30; i < 500; i++) {
+            int flags = i % 3 == 0 ? SampleInfo.FLAG_KEY_FRAME : 0;
+            add(buffer, i % 2 == 0 ? VIDEO : AUDIO, i, 90 + i % 50, i * 1000, flags);
+        }
+
+        assertEquals(capacity, buffer.getCapacity());
+        assertEquals(3000, capacity);
+        assertTrue(buffer.getBufferedBytes() <= 3000);
+        List<DrainedSample> samples = drain(buffer);
+        assertTrue(!samples.isEmpty());
+        long previousTimeUs = -1;
+        for (DrainedSample sample : samples) {
+            int index = (int) (sample.presentationTimeUs / 1000);
+            assertEquals(90 + index % 50, sample.data.length);
+            for (byte value : sample.data) assertEquals((byte) index, value);
+            assertTrue(sample.presentationTimeUs > previousTimeUs);
+            previousTimeUs = sample.presentationTimeUs;
+        }
+    }
+
+    @Test
+    public void samplesWithoutVideoTrackAreEvictedOneByOne() {
+        PreRollBuffer buffer = new PreRollBuffer(10000000, 100);
+
+        add(buffer, AUDIO, 1, 40, 0, 0);
+        add(buffer, AUDIO, 2, 40, 10, 0);
+        add(buffer, AUDIO, 3, 40, 20, 0);
+
+        assertEquals(80, buffer.getBufferedBytes());
+        List<DrainedSample> samples = drain(buffer);
+        assertEquals(2, samples.size());
+        assertEquals(2, samples.get(0).data[0]);
+    }
+
+    @Test
+    public void sourceBufferIsNotChanged() {
+        PreRollBuffer buffer = newBuffer(1000000, 1000);
+        ByteBuffer source = ByteBuffer.allocate(20);
+        source.position(5).limit(15);
+        SampleInfo info = new SampleInfo();
+        info.set(2, 10, 0, SampleInfo.FLAG_KEY_FRAME);
+
+        buffer.add(VIDEO, source, info);
+
+        assertEquals(5, source.position());
+        assertEquals(15, source.limit());
+        assertEquals(10, buffer.getBufferedBytes());
+    }
+
+    private static PreRollBuffer newBuffer(long durationUs, long maxBytes) {
+        PreRollBuffer buffer = new PreRollBuffer(durationUs, maxBytes);
+        buffer.setVideoTrackIndex(VIDEO);
+        return buffer;
+    }
+
+    private static void add(PreRollBuffer buffer, int trackIndex, int value, int size, long timeUs, int flags) {
+        ByteBuffer data = ByteBuffer.allocate(OFFSET + size);
+        for (int i = 0; i < size; i++) data.put(OFFSET + i, (byte) value);
+        SampleInfo info = new SampleInfo();
+        info.set(OFFSET, size, timeUs, flags);
+        buffer.add(trackIndex, data, info);
+    }
+
+    private static List<DrainedSample> drain(PreRollBuffer buffer) {
+        final List<DrainedSample> samples = new ArrayList<>();
+        buffer.drain(new PreRollBuffer.SampleConsumer() {
+            @Override
+            public void onSample(int trackIndex, ByteBuffer buffer, SampleInfo info) {
+                byte[] data = new byte[info.size];
+                for (int i = 0; i < info.size; i++) data[i] = buffer.get(info.offset + i);
+                samples.add(new DrainedSample(trackIndex, data, info.presentationTimeUs));
+            }
+        });
+        return samples;
+    }
+
+    private static void assertSample(DrainedSample sample, int trackIndex, int value, int size, long timeUs) {
+        assertEquals(trackIndex, sample.trackIndex);
+        assertEquals(size, sample.data.length);
+        assertEquals((byte) value, sample.data[0]);
+        assertEquals(timeUs, sample.presentationTimeUs);
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BurstSessionTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+    };
+
+    private static final Executor REJECTING_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            throw new RejectedExecutionException();
+        }
+    };
+
+    private final List<File> files = Arrays.asList(new File("a.jpg"), new File("b.jpg"), new File("c.jpg"));
+
+    @Test
+    public void framesAreCapturedInOrder() {
+        BurstSession session = new BurstSession(files, null, DIRECT_EXECUTOR);
+
+        assertEquals(3, session.getFrameCount());
+        for (int i = 0; i < files.size(); i++) {
+            assertTrue(session.hasPendingCaptures());
+            int frameIndex = session.nextFrameIndex();
+            assertEquals(i, frameIndex);
+            assertSame(files.get(i), session.getFile(frameIndex));
+        }
+        assertFalse(session.hasPendingCaptures());
+    }
+
+    @Test
+    public void lastFrameFinishesBurst() {
+        BurstSession session = new BurstSession(files, null, DIRECT_EXECUTOR);
+        for (int i = 0; i < files.size(); i++) session.nextFrameIndex();
+
+        assertFalse(session.onFrameSaved());
+        assertFalse(session.onFrameFailed());
+        assertTrue(session.onFrameSaved());
+        assertTrue(session.hasFailedFrames());
+    }
+
+    @Test
+    public void framesInFlightCountCapturedNotFinishedFrames() {
+        BurstSession session = new BurstSession(files, null, DIRECT_EXECUTOR);
+        session.nextFrameIndex();
+        session.nextFrameIndex();
+        assertEquals(2, session.getFramesInFlight());
+
+        session.onFrameSaved();
+        assertEquals(1, session.getFramesInFlight());
+        session.onFrameFailed();
+        assertEquals(0, session.getFramesInFlight());
+    }
+
+    @Test
+    public void executeRunsTaskOnWriteExecutor() {
+        BurstSession session = new BurstSession(files, null, DIRECT_EXECUTOR);
+        final boolean[] run = new boolean[1];
+
+        boolean posted = session.execute(new Runnable() {
+            @Override
+            public void run() {
+                run[0] = true;
+            }
+        });
+
+        assertTrue(posted);
+        assertTrue(run[0]);
+    }
+
+    @Test
+    public void rejectedTaskIsNotRun() {
+        BurstSession session = new BurstSession(files, null, REJECTING_EXECUTOR);
+        final boolean[] run = new boolean[1];
+
+        boolean posted = session.execute(new Runnable() {
+            @Override
+            public void run() {
+                run[0] = true;
+            }
+        });
+
+        assertFalse(posted);
+        assertFalse(run[0]);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void filesCantBeModified() {
+        new BurstSession(files, null, DIRECT_EXECUTOR).getFiles().clear();
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import org.junit.Test;
+
+import io.github.memfis19.annca.internal.manager.CaptureMetrics;
+
+import static org.junit.Assert.assertEquals;
+
+public class CaptureMetadataRingTest {
+
+    private static final long FRAME_DURATION = 33333333L;
+
+    private final CaptureMetadataRing ring = new CaptureMetadataRing(10);
+
+    @Test
+    public void continuousFramesAreNotDropped() {
+        for (int i = 0; i < 5; i++) ring.record(i, i * FRAME_DURATION, FRAME_DURATION, 10000000L, 100);
+
+        CaptureMetrics metrics = ring.getMetrics();
+        assertEquals(5, metrics.getFrames());
+        assertEquals(0, metrics.getDroppedFrames());
+        assertEquals(30f, metrics.getEffectiveFps(), 0.01f);
+        assertEquals(10000000L, metrics.getAverageExposureTime());
+        assertEquals(100, metrics.getAverageSensitivity());
+    }
+
+    @Test
+    public void skippedFrameNumbersAreDropped() {
+        ring.record(0, 0, 0, -1, -1);
+        ring.record(3, FRAME_DURATION, 0, -1, -1);
+
+        assertEquals(2, ring.getMetrics().getDroppedFrames());
+    }
+
+    @Test
+    public void timestampGapIsDropped() {
+        ring.record(0, 0, FRAME_DURATION, -1, -1);
+        ring.record(1, FRAME_DURATION * 4, FRAME_DURATION, -1, -1);
+
+        // one gap counted once by the larger of the two counts
+        assertEquals(3, ring.getMetrics().getDroppedFrames());
+    }
+
+    @Test
+    public void discontinuityIsNotDropped() {
+        ring.record(0, 0, FRAME_DURATION, -1, -1);
+        ring.onDiscontinuity();
+        ring.record(10, FRAME_DURATION * 20, FRAME_DURATION, -1, -1);
+        ring.record(11, FRAME_DURATION * 21, FRAME_DURATION, -1, -1);
+
+        assertEquals(3, ring.getMetrics().getFrames());
+        assertEquals(0, ring.getMetrics().getDroppedFrames());
+    }
+
+    @Test
+    public void interleavedBurstFramesAreNotDropped() {
+        // preview and burst results of the same session share the frame numbers
+        ring.record(0, 0, FRAME_DURATION, -1, -1);
+        ring.record(1, FRAME_DURATION, FRAME_DURATION, -1, -1);
+        ring.record(2, FRAME_DURATION * 2, FRAME_DURATION, -1, -1);
+        ring.record(3, FRAME_DURATION * 3, FRAME_DURATION, -1, -1);
+
+        assertEquals(0, ring.getMetrics().getDroppedFrames());
+    }
+
+    @Test
+    public void olderFramesAreOverwritten() {
+        for (int i = 0; i < 25; i++) ring.record(i, i * FRAME_DURATION, FRAME_DURATION, i < 15 ? 1000 : 20000000L, -1);
+
+        CaptureMetrics metrics = ring.getMetrics();
+        assertEquals(25, metrics.getFrames());
+        // only the last ten frames are averaged
+        assertEquals(20000000L, metrics.getAverageExposureTime());
+        assertEquals(-1, metrics.getAverageSensitivity());
+        assertEquals(15, metrics.getExposureHistogram()[0]);
+        assertEquals(10, metrics.getExposureHistogram()[CaptureMetrics.getExposureBucket(20000000L)]);
+    }
+
+    @Test
+    public void resetClearsCounts() {
+        ring.record(0, 0, FRAME_DURATION, 1000, 100);
+        ring.record(5, FRAME_DURATION * 5, FRAME_DURATION, 1000, 100);
+        ring.reset();
+
+        CaptureMetrics metrics = ring.getMetrics();
+        assertEquals(0, metrics.getFrames());
+        assertEquals(0, metrics.getDroppedFrames());
+        assertEquals(0f, metrics.getEffectiveFps(), 0f);
+        assertEquals(-1, metrics.getAverageExposureTime());
+    }
+}
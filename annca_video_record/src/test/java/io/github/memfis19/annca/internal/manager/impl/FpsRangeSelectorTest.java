@@ -0,0 +1,76 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FpsRangeSelectorTest {
+
+    // ranges of a typical back camera in the Camera1 units
+    private static final int[][] RANGES = {{15000, 15000}, {7000, 30000}, {15000, 30000}, {20000, 30000},
+            {24000, 30000}, {30000, 30000}, {60000, 60000}};
+
+    private final FpsRangeSelector selector = FpsRangeSelector.fromCamera1(toList(RANGES));
+
+    @Test
+    public void noRanges() {
+        FpsRangeSelector empty = FpsRangeSelector.fromCamera1(new ArrayList<int[]>());
+
+        assertEquals(-1, empty.select(FpsRangeSelector.MODE_PREVIEW, 30));
+    }
+
+    @Test
+    public void videoPrefersFixedFrameRate() {
+        assertEquals(5, selector.select(FpsRangeSelector.MODE_VIDEO, 30));
+    }
+
+    @Test
+    public void previewKeepsMinimumFrameRate() {
+        // the lowest lower bound which isn't below the minimum preview frame rate
+        assertEquals(3, selector.select(FpsRangeSelector.MODE_PREVIEW, 30));
+    }
+
+    @Test
+    public void lowLightPrefersLongestExposure() {
+        assertEquals(1, selector.select(FpsRangeSelector.MODE_LOW_LIGHT, 30));
+    }
+
+    @Test
+    public void previewFallsBackToHighestLowerBound() {
+        FpsRangeSelector lowRanges = FpsRangeSelector.fromCamera1(toList(new int[][]{{5000, 30000}, {10000, 30000}}));
+
+        assertEquals(1, lowRanges.select(FpsRangeSelector.MODE_PREVIEW, 30));
+    }
+
+    @Test
+    public void closestUpperBoundIsChosen() {
+        assertEquals(6, selector.select(FpsRangeSelector.MODE_VIDEO, 50));
+        assertEquals(0, selector.select(FpsRangeSelector.MODE_VIDEO, 15));
+        // same distance, the higher frame rate wins
+        assertEquals(6, selector.select(FpsRangeSelector.MODE_VIDEO, 45));
+    }
+
+    @Test
+    public void previewBelowMinimumFrameRate() {
+        // the target itself is below the minimum, the range is fixed to it
+        assertEquals(0, selector.select(FpsRangeSelector.MODE_PREVIEW, 15));
+    }
+
+    @Test
+    public void exposureLimitedByFrameRate() {
+        assertTrue(FpsRangeSelector.isExposureLimited(33000000L, 30));
+        assertFalse(FpsRangeSelector.isExposureLimited(10000000L, 30));
+        assertFalse(FpsRangeSelector.isExposureLimited(33000000L, 0));
+    }
+
+    private static List<int[]> toList(int[][] ranges) {
+        List<int[]> list = new ArrayList<>();
+        for (int[] range : ranges) list.add(range);
+        return list;
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import org.junit.Test;
+
+import io.github.memfis19.annca.internal.manager.PreviewHealth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class PreviewHealthMonitorTest {
+
+    private static final long INTERVAL_NANOS = 33000000L;
+
+    private final PreviewHealthMonitor monitor = new PreviewHealthMonitor();
+
+    @Test
+    public void noHealthWhenStopped() {
+        monitor.onFrameTimestamp(INTERVAL_NANOS);
+        assertNull(monitor.getHealth());
+
+        monitor.start();
+        monitor.stop();
+        assertNull(monitor.getHealth());
+    }
+
+    @Test
+    public void framesBeforeStartAreIgnored() {
+        monitor.onFrameTimestamp(INTERVAL_NANOS);
+        monitor.start();
+
+        PreviewHealth health = monitor.getHealth();
+        assertNotNull(health);
+        assertEquals(0, health.getFrames());
+        assertEquals(0f, health.getFps(), 0f);
+    }
+
+    @Test
+    public void intervalsAndStallsAreMeasured() {
+        monitor.start();
+        long timestamp = 1000000000L;
+        for (int i = 0; i < 150; i++) {
+            monitor.onFrameTimestamp(timestamp);
+            timestamp += INTERVAL_NANOS;
+        }
+        // one frame late and one stall over the threshold
+        timestamp += 17000000L;
+        monitor.onFrameTimestamp(timestamp);
+        timestamp += PreviewHealthMonitor.STALL_INTERVAL_NANOS + 50000000L;
+        monitor.onFrameTimestamp(timestamp);
+
+        PreviewHealth health = monitor.getHealth();
+        assertEquals(152, health.getFrames());
+        assertEquals(1, health.getStalls());
+        assertEquals(33f, health.getMedianIntervalMillis(), 0.01f);
+        assertEquals(33f, health.getP90IntervalMillis(), 0.01f);
+        assertEquals(50f, health.getP99IntervalMillis(), 0.01f);
+        assertEquals(250f, health.getMaxIntervalMillis(), 0.01f);
+    }
+
+    @Test
+    public void windowKeepsRecentIntervals() {
+        monitor.start();
+        long timestamp = 0;
+        monitor.onFrameTimestamp(timestamp);
+        for (int i = 0; i < PreviewHealthMonitor.WINDOW_SIZE; i++) {
+            timestamp += 100000000L;
+            monitor.onFrameTimestamp(timestamp);
+        }
+        for (int i = 0; i < PreviewHealthMonitor.WINDOW_SIZE; i++) {
+            timestamp += INTERVAL_NANOS;
+            monitor.onFrameTimestamp(timestamp);
+        }
+
+        PreviewHealth health = monitor.getHealth();
+        assertEquals(PreviewHealthMonitor.WINDOW_SIZE * 2 + 1, health.getFrames());
+        assertEquals(33f, health.getMaxIntervalMillis(), 0.01f);
+        assertEquals(1000f / 33f, health.getFps(), 0.01f);
+    }
+
+    @Test
+    public void startResetsCounters() {
+        monitor.start();
+        monitor.onFrameTimestamp(0);
+        monitor.onFrameTimestamp(PreviewHealthMonitor.STALL_INTERVAL_NANOS * 2);
+
+        monitor.start();
+
+        PreviewHealth health = monitor.getHealth();
+        assertEquals(0, health.getFrames());
+        assertEquals(0, health.getStalls());
+        assertEquals(0f, health.getMaxIntervalMillis(), 0f);
+    }
+}
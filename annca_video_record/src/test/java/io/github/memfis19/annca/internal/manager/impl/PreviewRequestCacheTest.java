@@ -0,0 +1,122 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import android.hardware.camera2.CaptureRequest;
+import android.util.Range;
+
+import org.junit.Test;
+
+import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PreviewRequestCacheTest {
+
+    private static final class CountingFactory implements PreviewRequestCache.RequestFactory<Object, String> {
+
+        private int builtRequests = 0;
+
+        @Override
+        public String build(Object builder, PreviewRequestCache.State state, int trigger) {
+            builtRequests++;
+            return "request " + builtRequests + ", trigger " + trigger;
+        }
+    }
+
+    private final Object builder = new Object();
+    private final CountingFactory factory = new CountingFactory();
+    private final Range<Integer> previewRange = new Range<>(20, 30);
+    private final Range<Integer> lowLightRange = new Range<>(7, 30);
+
+    @Test
+    public void requestOfStateIsBuiltOnce() {
+        PreviewRequestCache<Object, String> cache = newCache(AnncaConfiguration.FLASH_MODE_AUTO, previewRange);
+
+        String request = cache.getRequest();
+
+        assertSame(request, cache.getRequest());
+        assertSame(request, cache.getRequest(PreviewRequestCache.TRIGGER_NONE));
+        assertEquals(1, factory.builtRequests);
+    }
+
+    @Test
+    public void triggersAreSeparateRequests() {
+        PreviewRequestCache<Object, String> cache = newCache(AnncaConfiguration.FLASH_MODE_AUTO, previewRange);
+
+        String request = cache.getRequest();
+        String focusLock = cache.getRequest(PreviewRequestCache.TRIGGER_FOCUS_LOCK);
+        String precapture = cache.getRequest(PreviewRequestCache.TRIGGER_PRECAPTURE);
+
+        assertNotEquals(request, focusLock);
+        assertNotEquals(focusLock, precapture);
+        assertSame(focusLock, cache.getRequest(PreviewRequestCache.TRIGGER_FOCUS_LOCK));
+        assertEquals(3, factory.builtRequests);
+    }
+
+    @Test
+    public void returningToStateReusesRequest() {
+        PreviewRequestCache<Object, String> cache = newCache(AnncaConfiguration.FLASH_MODE_AUTO, previewRange);
+        String autoRequest = cache.getRequest();
+
+        assertTrue(cache.setState(cache.getState().withFlashMode(AnncaConfiguration.FLASH_MODE_OFF)));
+        String offRequest = cache.getRequest();
+        assertTrue(cache.setState(cache.getState().withFlashMode(AnncaConfiguration.FLASH_MODE_AUTO)));
+
+        assertSame(autoRequest, cache.getRequest());
+        assertNotEquals(autoRequest, offRequest);
+        assertEquals(2, factory.builtRequests);
+    }
+
+    @Test
+    public void fpsRangeIsPartOfState() {
+        PreviewRequestCache<Object, String> cache = newCache(AnncaConfiguration.FLASH_MODE_AUTO, previewRange);
+        String previewRequest = cache.getRequest();
+
+        assertTrue(cache.setState(cache.getState().withFpsRange(lowLightRange)));
+        assertSame(lowLightRange, cache.getState().getFpsRange());
+        String lowLightRequest = cache.getRequest();
+        assertTrue(cache.setState(cache.getState().withFpsRange(previewRange)));
+
+        assertNotEquals(previewRequest, lowLightRequest);
+        assertSame(previewRequest, cache.getRequest());
+        assertEquals(2, factory.builtRequests);
+    }
+
+    @Test
+    public void sameStateIsNotChanged() {
+        PreviewRequestCache<Object, String> cache = newCache(AnncaConfiguration.FLASH_MODE_ON, previewRange);
+
+        assertFalse(cache.setState(new PreviewRequestCache.State(AnncaConfiguration.FLASH_MODE_ON, previewRange)));
+        assertFalse(cache.setState(cache.getState().withFpsRange(previewRange)));
+        assertTrue(cache.setState(cache.getState().withFpsRange(null)));
+        assertFalse(cache.setState(new PreviewRequestCache.State(AnncaConfiguration.FLASH_MODE_ON, null)));
+    }
+
+    @Test
+    public void editingBuilderDropsRequests() {
+        PreviewRequestCache<Object, String> cache = newCache(AnncaConfiguration.FLASH_MODE_AUTO, previewRange);
+        String request = cache.getRequest();
+
+        assertSame(builder, cache.editBuilder());
+
+        assertNotEquals(request, cache.getRequest());
+        assertEquals(2, factory.builtRequests);
+    }
+
+    @Test
+    public void aeModeFollowsFlashMode() {
+        assertEquals(CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH, PreviewRequestCache.getAeMode(AnncaConfiguration.FLASH_MODE_AUTO));
+        assertEquals(CaptureRequest.CONTROL_AE_MODE_ON, PreviewRequestCache.getAeMode(AnncaConfiguration.FLASH_MODE_ON));
+        assertEquals(CaptureRequest.CONTROL_AE_MODE_ON, PreviewRequestCache.getAeMode(AnncaConfiguration.FLASH_MODE_OFF));
+
+        PreviewRequestCache<Object, String> cache = newCache(AnncaConfiguration.FLASH_MODE_OFF, previewRange);
+        assertEquals(CaptureRequest.CONTROL_AE_MODE_ON, cache.getAeMode());
+    }
+
+    private PreviewRequestCache<Object, String> newCache(@AnncaConfiguration.FlashMode int flashMode, Range<Integer> fpsRange) {
+        return new PreviewRequestCache<>(builder, factory, new PreviewRequestCache.State(flashMode, fpsRange));
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.memfis19.annca.internal.manager.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class TaskQueueTest {
+
+    private TaskQueue queue;
+    private CountDownLatch started;
+    private CountDownLatch blocker;
+
+    @Before
+    public void setUp() {
+        queue = TaskQueue.newBounded("test", 1);
+        started = new CountDownLatch(1);
+        blocker = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        blocker.countDown();
+        queue.release();
+    }
+
+    @Test
+    public void fullQueueRejectsTask() throws Exception {
+        assertTrue(queue.post(blockingTask()));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        assertTrue(queue.post(noopTask()));
+
+        assertFalse(queue.post(noopTask()));
+        assertEquals(2, queue.getStats().getDepth());
+    }
+
+    @Test
+    public void rejectedTaskNeverRunsOnPostingThread() throws Exception {
+        final AtomicReference<Thread> runThread = new AtomicReference<>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        queue.post(blockingTask());
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        queue.post(noopTask());
+
+        boolean posted = queue.post(new Runnable() {
+            @Override
+            public void run() {
+                runThread.set(Thread.currentThread());
+                finished.countDown();
+            }
+        });
+
+        assertFalse(posted);
+        blocker.countDown();
+        assertFalse(finished.await(200, TimeUnit.MILLISECONDS));
+        assertNotSame(Thread.currentThread(), runThread.get());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void executeThrowsWhenFull() throws Exception {
+        queue.execute(blockingTask());
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        queue.execute(noopTask());
+        queue.execute(noopTask());
+    }
+
+    @Test
+    public void releasedQueueRejectsTaskAndKeepsDepth() {
+        queue.release();
+
+        assertFalse(queue.post(noopTask()));
+        assertEquals(0, queue.getStats().getDepth());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void executeThrowsWhenReleased() {
+        queue.release();
+        queue.execute(noopTask());
+    }
+
+    @Test
+    public void depthReturnsToZeroWhenTasksFinish() throws Exception {
+        final CountDownLatch finished = new CountDownLatch(1);
+        queue.post(blockingTask());
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        queue.post(new Runnable() {
+            @Override
+            public void run() {
+                finished.countDown();
+            }
+        });
+        assertEquals(2, queue.getStats().getMaxDepth());
+
+        blocker.countDown();
+        assertTrue(finished.await(1, TimeUnit.SECONDS));
+        // depth is decremented after the task returns
+        for (int i = 0; i < 100 && queue.getStats().getDepth() > 0; i++) Thread.sleep(5);
+
+        assertEquals(0, queue.getStats().getDepth());
+        assertEquals(2, queue.getStats().getExecutedTasks());
+    }
+
+    private Runnable blockingTask() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    blocker.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignore) {
+                }
+            }
+        };
+    }
+
+    private static Runnable noopTask() {
+        return new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+    }
+}
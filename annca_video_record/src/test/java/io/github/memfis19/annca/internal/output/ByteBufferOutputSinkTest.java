@@ -0,0 +1,92 @@
+package io.github.memfis19.annca.internal.output;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ByteBufferOutputSinkTest {
+
+    private final ByteBufferOutputSink sink = new ByteBufferOutputSink();
+
+    @Test
+    public void outputIsVisibleAfterCommit() throws IOException {
+        WritableByteChannel channel = sink.openChannel(3);
+        channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        assertNull(sink.getBuffer());
+
+        assertTrue(sink.commit(AnncaConfiguration.OUTPUT_SYNC_FULL));
+
+        ByteBuffer buffer = sink.getBuffer();
+        assertTrue(buffer.isReadOnly());
+        assertTrue(buffer.isDirect());
+        assertEquals(3, buffer.remaining());
+        assertEquals(3, buffer.get(2));
+        assertFalse(channel.isOpen());
+        assertNull(sink.getFile());
+    }
+
+    @Test
+    public void expectedSizeIsAllocatedAtOnce() throws IOException {
+        int size = 1024 * 1024;
+        WritableByteChannel channel = sink.openChannel(size);
+        channel.write(ByteBuffer.allocate(size / 2));
+        channel.write(ByteBuffer.allocate(size / 2));
+        assertTrue(sink.commit(AnncaConfiguration.OUTPUT_SYNC_NONE));
+
+        ByteBuffer buffer = sink.getBuffer();
+        assertEquals(size, buffer.remaining());
+        assertEquals(size, buffer.capacity());
+    }
+
+    @Test
+    public void bufferGrowsOverExpectedSize() throws IOException {
+        byte[] data = new byte[200 * 1024];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) i;
+
+        WritableByteChannel channel = sink.openChannel(0);
+        channel.write(ByteBuffer.wrap(data, 0, 1000));
+        channel.write(ByteBuffer.wrap(data, 1000, data.length - 1000));
+        assertTrue(sink.commit(AnncaConfiguration.OUTPUT_SYNC_NONE));
+
+        ByteBuffer buffer = sink.getBuffer();
+        assertEquals(data.length, buffer.remaining());
+        for (int i = 0; i < data.length; i += 997) assertEquals(data[i], buffer.get(i));
+    }
+
+    @Test(expected = IOException.class)
+    public void committedChannelIsClosed() throws IOException {
+        WritableByteChannel channel = sink.openChannel(1);
+        assertTrue(sink.commit(AnncaConfiguration.OUTPUT_SYNC_NONE));
+
+        channel.write(ByteBuffer.allocate(1));
+    }
+
+    @Test
+    public void abortDropsOutput() throws IOException {
+        sink.openChannel(1).write(ByteBuffer.allocate(1));
+
+        sink.abort();
+
+        assertNull(sink.getBuffer());
+    }
+
+    @Test
+    public void commitWithoutOutputFails() {
+        assertFalse(sink.commit(AnncaConfiguration.OUTPUT_SYNC_NONE));
+        assertNull(sink.getBuffer());
+    }
+
+    @Test
+    public void noDescriptorForRecorders() throws IOException {
+        assertNull(sink.openFileDescriptor());
+    }
+}
@@ -0,0 +1,87 @@
+package io.github.memfis19.annca.internal.output;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileOutputSinkTest {
+
+    private File directory;
+    private File file;
+    private FileOutputSink sink;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sink").toFile();
+        file = new File(directory, "photo.jpg");
+        sink = new FileOutputSink(file);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) for (File child : files) child.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void outputIsWrittenToTempFileUntilCommit() throws IOException {
+        sink.openChannel(4).write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}));
+
+        assertFalse(file.exists());
+        assertTrue(sink.getTempFile().exists());
+        assertTrue(sink.commit(AnncaConfiguration.OUTPUT_SYNC_DATA));
+
+        assertEquals(file, sink.getFile());
+        assertEquals(4, file.length());
+        assertFalse(sink.getTempFile().exists());
+    }
+
+    @Test
+    public void channelIsOpenedOnce() throws IOException {
+        FileChannel channel = sink.openChannel(0);
+
+        assertTrue(channel == sink.openChannel(0));
+        sink.abort();
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void reopenedSinkTruncatesTempFile() throws IOException {
+        sink.openChannel(0).write(ByteBuffer.allocate(100));
+        sink.abort();
+
+        sink.openChannel(0).write(ByteBuffer.allocate(10));
+        assertTrue(sink.commit(AnncaConfiguration.OUTPUT_SYNC_NONE));
+
+        assertEquals(10, file.length());
+    }
+
+    @Test
+    public void abortDeletesTempFile() throws IOException {
+        sink.openChannel(0).write(ByteBuffer.allocate(10));
+
+        sink.abort();
+
+        assertFalse(sink.getTempFile().exists());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void commitWithoutOutputFails() {
+        assertFalse(sink.commit(AnncaConfiguration.OUTPUT_SYNC_NONE));
+        assertFalse(file.exists());
+    }
+}
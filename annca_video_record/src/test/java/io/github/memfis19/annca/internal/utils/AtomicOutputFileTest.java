@@ -0,0 +1,143 @@
+package io.github.memfis19.annca.internal.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+import io.github.memfis19.annca.internal.configuration.AnncaConfiguration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AtomicOutputFileTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("output").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void tempFileIsHiddenNextToFile() {
+        File file = new File(directory, "photo.jpg");
+
+        File tempFile = AtomicOutputFile.getTempFile(file);
+
+        assertEquals(directory, tempFile.getParentFile());
+        assertEquals(".photo.jpg.partial", tempFile.getName());
+    }
+
+    @Test
+    public void commitRenamesTempFile() throws IOException {
+        File file = new File(directory, "photo.jpg");
+        writeFile(AtomicOutputFile.getTempFile(file), 100);
+        long commits = AtomicOutputFile.getStats().getCommits();
+
+        assertTrue(AtomicOutputFile.commit(file, AnncaConfiguration.OUTPUT_SYNC_NONE));
+
+        assertTrue(file.exists());
+        assertEquals(100, file.length());
+        assertFalse(AtomicOutputFile.getTempFile(file).exists());
+        assertEquals(commits + 1, AtomicOutputFile.getStats().getCommits());
+    }
+
+    @Test
+    public void commitWithoutTempFileFails() {
+        File file = new File(directory, "video.mp4");
+        long failedCommits = AtomicOutputFile.getStats().getFailedCommits();
+
+        assertFalse(AtomicOutputFile.commit(file, AnncaConfiguration.OUTPUT_SYNC_DATA));
+
+        assertFalse(file.exists());
+        assertEquals(failedCommits + 1, AtomicOutputFile.getStats().getFailedCommits());
+    }
+
+    @Test
+    public void syncIsCountedApartFromRename() throws IOException {
+        File file = new File(directory, "photo.jpg");
+        long syncs = AtomicOutputFile.getStats().getSyncs();
+
+        RandomAccessFile output = new RandomAccessFile(AtomicOutputFile.getTempFile(file), "rw");
+        try {
+            FileChannel channel = output.getChannel();
+            channel.write(ByteBuffer.allocate(50));
+            assertTrue(AtomicOutputFile.commit(file, channel, AnncaConfiguration.OUTPUT_SYNC_DATA));
+        } finally {
+            output.close();
+        }
+
+        assertEquals(50, file.length());
+        assertEquals(syncs + 1, AtomicOutputFile.getStats().getSyncs());
+    }
+
+    @Test
+    public void commitReplacesExistingFile() throws IOException {
+        File file = new File(directory, "photo.jpg");
+        writeFile(file, 10);
+        writeFile(AtomicOutputFile.getTempFile(file), 20);
+
+        assertTrue(AtomicOutputFile.commit(file, AnncaConfiguration.OUTPUT_SYNC_NONE));
+
+        assertEquals(20, file.length());
+    }
+
+    @Test
+    public void abortDeletesTempFile() throws IOException {
+        File file = new File(directory, "photo.jpg");
+        writeFile(AtomicOutputFile.getTempFile(file), 10);
+
+        AtomicOutputFile.abort(file);
+
+        assertFalse(AtomicOutputFile.getTempFile(file).exists());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void orphanedTempFilesAreDeletedOnce() throws IOException {
+        File photo = new File(directory, "photo.jpg");
+        File orphan = AtomicOutputFile.getTempFile(new File(directory, "video.mp4"));
+        writeFile(photo, 10);
+        writeFile(orphan, 10);
+        writeFile(new File(directory, ".hidden"), 10);
+        long deletedTempFiles = AtomicOutputFile.getStats().getDeletedTempFiles();
+
+        assertEquals(1, AtomicOutputFile.deleteOrphanedTempFiles(directory));
+
+        assertFalse(orphan.exists());
+        assertTrue(photo.exists());
+        assertTrue(new File(directory, ".hidden").exists());
+        assertEquals(deletedTempFiles + 1, AtomicOutputFile.getStats().getDeletedTempFiles());
+
+        // written by another manager after the sweep
+        File liveTempFile = AtomicOutputFile.getTempFile(new File(directory, "next.jpg"));
+        writeFile(liveTempFile, 10);
+        assertEquals(0, AtomicOutputFile.deleteOrphanedTempFiles(directory));
+        assertTrue(liveTempFile.exists());
+    }
+
+    private static void writeFile(File file, int size) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(new byte[size]);
+        } finally {
+            output.close();
+        }
+    }
+}
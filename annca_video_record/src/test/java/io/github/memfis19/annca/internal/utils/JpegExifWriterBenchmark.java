@@ -0,0 +1,140 @@
+package io.github.memfis19.annca.internal.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Single pass of JpegExifWriter against the two-pass path it replaced: the JPEG is written, then the file is read
+ * and written again with the metadata, as ExifInterface.saveAttributes() does.
+ */
+public class JpegExifWriterBenchmark {
+
+    private static final int JPEG_SIZE = 8 * 1024 * 1024;
+    private static final int ITERATIONS = 5;
+    private static final int ORIENTATION_ROTATE_90 = 6;
+
+    private static final class CountingChannel implements WritableByteChannel {
+
+        private final WritableByteChannel channel;
+        private long writtenBytes = 0;
+
+        private CountingChannel(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            int written = channel.write(source);
+            writtenBytes += written;
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private ByteBuffer jpeg;
+    private File singlePassFile;
+    private File twoPassFile;
+
+    @Before
+    public void setUp() throws IOException {
+        byte[] data = new byte[JPEG_SIZE];
+        new Random(42).nextBytes(data);
+        data[0] = (byte) 0xFF;
+        data[1] = (byte) 0xD8;
+        data[2] = (byte) 0xFF;
+        data[3] = (byte) 0xDA;
+        jpeg = ByteBuffer.allocateDirect(JPEG_SIZE);
+        jpeg.put(data).flip();
+        singlePassFile = File.createTempFile("single", ".jpg");
+        twoPassFile = File.createTempFile("two", ".jpg");
+    }
+
+    @After
+    public void tearDown() {
+        singlePassFile.delete();
+        twoPassFile.delete();
+    }
+
+    @Test
+    public void singlePassWritesTheFileOnce() throws IOException {
+        long singlePassNanos = Long.MAX_VALUE;
+        long twoPassNanos = Long.MAX_VALUE;
+        long singlePassBytes = 0;
+        long twoPassBytes = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            singlePassBytes = writeSinglePass();
+            singlePassNanos = Math.min(singlePassNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            twoPassBytes = writeTwoPass();
+            twoPassNanos = Math.min(twoPassNanos, System.nanoTime() - start);
+        }
+        System.out.println("JpegExifWriter single pass: " + singlePassNanos / 1000 + " us, " + singlePassBytes
+                + " bytes; two pass: " + twoPassNanos / 1000 + " us, " + twoPassBytes + " bytes");
+
+        assertArrayEquals(readFile(twoPassFile), readFile(singlePassFile));
+        // the two-pass path writes the whole JPEG one more time
+        assertEquals(JPEG_SIZE + singlePassBytes, twoPassBytes);
+    }
+
+    private long writeSinglePass() throws IOException {
+        FileOutputStream output = new FileOutputStream(singlePassFile);
+        try {
+            CountingChannel channel = new CountingChannel(output.getChannel());
+            new JpegExifWriter(ORIENTATION_ROTATE_90).write(jpeg, channel);
+            return channel.writtenBytes;
+        } finally {
+            output.close();
+        }
+    }
+
+    private long writeTwoPass() throws IOException {
+        long writtenBytes;
+        FileOutputStream output = new FileOutputStream(twoPassFile);
+        try {
+            CountingChannel channel = new CountingChannel(output.getChannel());
+            ByteBuffer source = jpeg.duplicate();
+            while (source.hasRemaining()) channel.write(source);
+            writtenBytes = channel.writtenBytes;
+        } finally {
+            output.close();
+        }
+
+        // the metadata pass reads the whole file and writes it again
+        ByteBuffer written = ByteBuffer.wrap(readFile(twoPassFile));
+        output = new FileOutputStream(twoPassFile);
+        try {
+            CountingChannel channel = new CountingChannel(output.getChannel());
+            new JpegExifWriter(ORIENTATION_ROTATE_90).write(written, channel);
+            return writtenBytes + channel.writtenBytes;
+        } finally {
+            output.close();
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+}
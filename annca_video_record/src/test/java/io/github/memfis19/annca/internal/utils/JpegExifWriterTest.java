@@ -0,0 +1,271 @@
+package io.github.memfis19.annca.internal.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JpegExifWriterTest {
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_MAKE = 0x010F;
+    private static final int TAG_SOFTWARE = 0x0131;
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+
+    private static final int ORIENTATION_NORMAL = 1;
+    private static final int ORIENTATION_ROTATE_90 = 6;
+
+    private static final byte[] JFIF = {'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0};
+    private static final byte[] SCAN = {(byte) 0xFF, (byte) 0xDA, 0, 4, 1, 2, 3, 4, 5, 6, (byte) 0xFF, (byte) 0xD9};
+
+    private static final class IfdEntry {
+
+        private final int tag;
+        private final int type;
+        private final int count;
+        private final int value;
+
+        private IfdEntry(int tag, int type, int count, int value) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.value = value;
+        }
+    }
+
+    @Test
+    public void notJpegIsWrittenUnchanged() throws IOException {
+        byte[] data = {1, 2, 3, 4, 5};
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertFalse(new JpegExifWriter(ORIENTATION_ROTATE_90).write(ByteBuffer.wrap(data), Channels.newChannel(output)));
+
+        assertArrayEquals(data, output.toByteArray());
+    }
+
+    @Test
+    public void exifSegmentIsAddedAfterJfif() throws IOException {
+        byte[] jpeg = jpeg(segment(0xE0, JFIF));
+
+        byte[] written = write(new JpegExifWriter(ORIENTATION_ROTATE_90).setDateTime(0), jpeg, true);
+
+        assertEquals(0xE0, written[3] & 0xFF);
+        int exifSegment = 2 + 4 + JFIF.length;
+        assertEquals(0xE1, written[exifSegment + 1] & 0xFF);
+        List<IfdEntry> entries = readIfd0(written);
+        assertEquals(2, entries.size());
+        assertOrientation(entries, TYPE_SHORT, ORIENTATION_ROTATE_90);
+        assertEquals(TAG_DATE_TIME, entries.get(1).tag);
+        assertEquals(TYPE_ASCII, entries.get(1).type);
+        assertEquals(20, entries.get(1).count);
+        assertTail(jpeg, written);
+    }
+
+    @Test
+    public void shortOrientationIsPatchedInPlace() throws IOException {
+        byte[] jpeg = jpeg(exif(ByteOrder.BIG_ENDIAN, 0,
+                new IfdEntry(TAG_ORIENTATION, TYPE_SHORT, 1, ORIENTATION_NORMAL)));
+
+        byte[] written = write(new JpegExifWriter(ORIENTATION_ROTATE_90), jpeg, true);
+
+        assertEquals(jpeg.length, written.length);
+        int changedBytes = 0;
+        for (int i = 0; i < jpeg.length; i++) if (jpeg[i] != written[i]) changedBytes++;
+        assertEquals(1, changedBytes);
+        List<IfdEntry> entries = readIfd0(written);
+        assertEquals(1, entries.size());
+        assertOrientation(entries, TYPE_SHORT, ORIENTATION_ROTATE_90);
+    }
+
+    @Test
+    public void orientationOfOtherTypeIsReplaced() throws IOException {
+        byte[] jpeg = jpeg(exif(ByteOrder.BIG_ENDIAN, 0,
+                new IfdEntry(TAG_MAKE, TYPE_ASCII, 4, 0x41424300),
+                new IfdEntry(TAG_ORIENTATION, TYPE_LONG, 1, ORIENTATION_NORMAL)));
+
+        byte[] written = write(new JpegExifWriter(ORIENTATION_ROTATE_90), jpeg, true);
+
+        List<IfdEntry> entries = readIfd0(written);
+        assertEquals(2, entries.size());
+        assertEquals(TAG_MAKE, entries.get(0).tag);
+        assertOrientation(entries, TYPE_SHORT, ORIENTATION_ROTATE_90);
+        assertTail(jpeg, written);
+    }
+
+    @Test
+    public void missingTagsAreAddedInMotorolaOrder() throws IOException {
+        assertMissingTagsAreAdded(ByteOrder.BIG_ENDIAN);
+    }
+
+    @Test
+    public void missingTagsAreAddedInIntelOrder() throws IOException {
+        assertMissingTagsAreAdded(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void fullSegmentIsWrittenUnchanged() throws IOException {
+        IfdEntry[] entries = new IfdEntry[(0xFFFF - 2 - 6 - 8 - 2 - 4) / 12];
+        for (int i = 0; i < entries.length; i++) entries[i] = new IfdEntry(0x8000 + i, TYPE_SHORT, 1, i);
+        byte[] jpeg = jpeg(exif(ByteOrder.BIG_ENDIAN, 0, entries));
+
+        byte[] written = write(new JpegExifWriter(ORIENTATION_ROTATE_90), jpeg, false);
+
+        assertArrayEquals(jpeg, written);
+    }
+
+    @Test
+    public void writtenLengthIsKnownBeforeWrite() throws IOException {
+        byte[] jpeg = jpeg(exif(ByteOrder.LITTLE_ENDIAN, 0, new IfdEntry(TAG_MAKE, TYPE_ASCII, 4, 0x41424300)));
+        JpegExifWriter writer = new JpegExifWriter(ORIENTATION_ROTATE_90).setDateTime(0);
+
+        int length = writer.getWrittenLength(ByteBuffer.wrap(jpeg));
+
+        assertEquals(write(writer, jpeg, true).length, length);
+        assertEquals(5, new JpegExifWriter(ORIENTATION_ROTATE_90).getWrittenLength(ByteBuffer.wrap(new byte[5])));
+    }
+
+    @Test
+    public void bufferPositionIsKept() throws IOException {
+        byte[] jpeg = jpeg(segment(0xE0, JFIF));
+        ByteBuffer buffer = ByteBuffer.allocate(jpeg.length + 10);
+        buffer.position(10);
+        buffer.put(jpeg).flip().position(10);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertTrue(new JpegExifWriter(ORIENTATION_ROTATE_90).write(buffer, Channels.newChannel(output)));
+
+        assertEquals(10, buffer.position());
+        assertOrientation(readIfd0(output.toByteArray()), TYPE_SHORT, ORIENTATION_ROTATE_90);
+    }
+
+    private static void assertMissingTagsAreAdded(ByteOrder order) throws IOException {
+        byte[] jpeg = jpeg(exif(order, 0x1234,
+                new IfdEntry(TAG_MAKE, TYPE_ASCII, 4, 0x41424300),
+                new IfdEntry(TAG_SOFTWARE, TYPE_ASCII, 4, 0x44454600)));
+
+        byte[] written = write(new JpegExifWriter(ORIENTATION_ROTATE_90).setDateTime(0), jpeg, true);
+
+        List<IfdEntry> entries = readIfd0(written);
+        assertEquals(4, entries.size());
+        // sorted by the tag
+        assertEquals(TAG_MAKE, entries.get(0).tag);
+        assertEquals(TAG_ORIENTATION, entries.get(1).tag);
+        assertEquals(TAG_SOFTWARE, entries.get(2).tag);
+        assertEquals(TAG_DATE_TIME, entries.get(3).tag);
+        assertOrientation(entries, TYPE_SHORT, ORIENTATION_ROTATE_90);
+        assertEquals(0x41424300, entries.get(0).value);
+        assertEquals(0x1234, readNextIfdOffset(written));
+        assertTail(jpeg, written);
+    }
+
+    private static byte[] write(JpegExifWriter writer, byte[] jpeg, boolean changed) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(changed, writer.write(ByteBuffer.wrap(jpeg), Channels.newChannel(output)));
+        return output.toByteArray();
+    }
+
+    private static void assertOrientation(List<IfdEntry> entries, int type, int orientation) {
+        IfdEntry orientationEntry = null;
+        for (IfdEntry entry : entries) {
+            if (entry.tag != TAG_ORIENTATION) continue;
+            assertTrue("Duplicate orientation", orientationEntry == null);
+            orientationEntry = entry;
+        }
+        assertTrue(orientationEntry != null);
+        assertEquals(type, orientationEntry.type);
+        assertEquals(orientation, orientationEntry.value);
+    }
+
+    /***
+     * The scan data follows the metadata unchanged.
+     */
+    private static void assertTail(byte[] jpeg, byte[] written) {
+        assertArrayEquals(SCAN, Arrays.copyOfRange(written, written.length - SCAN.length, written.length));
+        assertTrue(written.length > jpeg.length);
+    }
+
+    private static byte[] jpeg(byte[]... segments) {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        jpeg.write(0xFF);
+        jpeg.write(0xD8);
+        for (byte[] segment : segments) jpeg.write(segment, 0, segment.length);
+        jpeg.write(SCAN, 0, SCAN.length);
+        return jpeg.toByteArray();
+    }
+
+    private static byte[] segment(int marker, byte[] payload) {
+        ByteBuffer segment = ByteBuffer.allocate(4 + payload.length);
+        segment.put((byte) 0xFF).put((byte) marker).putShort((short) (2 + payload.length)).put(payload);
+        return segment.array();
+    }
+
+    private static byte[] exif(ByteOrder order, int nextIfdOffset, IfdEntry... entries) {
+        ByteBuffer payload = ByteBuffer.allocate(6 + 8 + 2 + entries.length * 12 + 4).order(order);
+        payload.put(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+        if (order == ByteOrder.BIG_ENDIAN) payload.put(new byte[]{'M', 'M', 0, 42});
+        else payload.put(new byte[]{'I', 'I', 42, 0});
+        payload.putInt(8);
+        payload.putShort((short) entries.length);
+        for (IfdEntry entry : entries) {
+            payload.putShort((short) entry.tag).putShort((short) entry.type).putInt(entry.count);
+            if (entry.type == TYPE_SHORT) payload.putShort((short) entry.value).putShort((short) 0);
+            else payload.putInt(entry.value);
+        }
+        payload.putInt(nextIfdOffset);
+        return segment(0xE1, payload.array());
+    }
+
+    private static int findTiff(byte[] jpeg) {
+        int offset = 2;
+        while (offset + 4 <= jpeg.length) {
+            int marker = jpeg[offset + 1] & 0xFF;
+            int length = ((jpeg[offset + 2] & 0xFF) << 8) | (jpeg[offset + 3] & 0xFF);
+            if (marker == 0xE1) return offset + 4 + 6;
+            offset += 2 + length;
+        }
+        throw new AssertionError("No EXIF segment");
+    }
+
+    private static ByteBuffer tiff(byte[] jpeg) {
+        int tiff = findTiff(jpeg);
+        ByteOrder order = jpeg[tiff] == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        ByteBuffer buffer = ByteBuffer.wrap(jpeg, tiff, jpeg.length - tiff).slice().order(order);
+        assertEquals(42, buffer.getShort(2));
+        return buffer;
+    }
+
+    private static List<IfdEntry> readIfd0(byte[] jpeg) {
+        ByteBuffer tiff = tiff(jpeg);
+        int ifd = tiff.getInt(4);
+        assertEquals(0, ifd % 2);
+        int count = tiff.getShort(ifd) & 0xFFFF;
+        List<IfdEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + i * 12;
+            int type = tiff.getShort(entry + 2) & 0xFFFF;
+            int value = type == TYPE_SHORT ? tiff.getShort(entry + 8) & 0xFFFF : tiff.getInt(entry + 8);
+            entries.add(new IfdEntry(tiff.getShort(entry) & 0xFFFF, type, tiff.getInt(entry + 4), value));
+        }
+        return entries;
+    }
+
+    private static int readNextIfdOffset(byte[] jpeg) {
+        ByteBuffer tiff = tiff(jpeg);
+        int ifd = tiff.getInt(4);
+        return tiff.getInt(ifd + 2 + (tiff.getShort(ifd) & 0xFFFF) * 12);
+    }
+}